@@ -13,28 +13,75 @@ import java.awt.Color;
  * El movimiento se calcula de forma lineal entre dos paradas, basado en un valor de "progreso"
  * que va de 0.0 a 1.0.
  * </p>
+ * <p>
+ * Los pasajeros a bordo se cuentan por parada de destino en un arreglo de enteros, sin un objeto por
+ * pasajero: al llegar a una parada bajan todos los de ese destino de una vez.
+ * </p>
+ * <p>
+ * Si se crea con un {@link OcupacionTramos}, el autobús no atraviesa a los demás: sigue al que va delante
+ * en su tramo ({@link #getLider()}) sin acercarse a menos de la distancia mínima y espera en cola si la
+ * parada siguiente no tiene andenes libres. Sin él, avanza libremente como si fuera el único.
+ * </p>
  */
 public class Autobus {
 
+    /** Pasajeros que caben en un autobús si no se indica otra capacidad. */
+    public static final int CAPACIDAD_POR_DEFECTO = 60;
+
     private final int id;
     private final Color color;
+    private final Ruta ruta;
     private double x, y;
     private int paradaActualIndex;
     private int paradaDestinoIndex;
     private double progreso;
     private EstadoAutobus estado;
-    private long tiempoDetenido; // Tiempo en milisegundos
+    private long tiempoDetenido; // Instante de llegada a la parada, en milisegundos de simulación
+    private final int capacidad;
+    private int ocupacion;
+    private final int[] bajanEn; // Pasajeros a bordo por índice de la parada donde bajan
+    private final OcupacionTramos tramos; // Puede ser null: sin interacción con otros autobuses
+    Autobus lider; // El siguiente autobús hacia adelante en el mismo tramo; lo mantiene OcupacionTramos
+    Autobus seguidor; // El anterior hacia atrás en el mismo tramo
 
     /**
      * Constructor para un nuevo autobús.
      *
-     * @param id             El identificador único del autobús.
-     * @param color          El color para representar el autobús en la GUI.
-     * @param paradaInicial La parada donde el autobús iniciará su recorrido.
+     * @param id    El identificador único del autobús.
+     * @param color El color para representar el autobús en la GUI.
+     * @param ruta  La ruta que recorrerá el autobús; inicia su recorrido en la primera parada.
+     */
+    public Autobus(int id, Color color, Ruta ruta) {
+        this(id, color, ruta, CAPACIDAD_POR_DEFECTO);
+    }
+
+    /**
+     * Constructor para un nuevo autobús con una capacidad dada.
+     *
+     * @param id        El identificador único del autobús.
+     * @param color     El color para representar el autobús en la GUI.
+     * @param ruta      La ruta que recorrerá el autobús; inicia su recorrido en la primera parada.
+     * @param capacidad El número máximo de pasajeros a bordo.
+     */
+    public Autobus(int id, Color color, Ruta ruta, int capacidad) {
+        this(id, color, ruta, capacidad, null);
+    }
+
+    /**
+     * Constructor para un nuevo autobús que comparte la ruta con otros.
+     *
+     * @param id        El identificador único del autobús.
+     * @param color     El color para representar el autobús en la GUI.
+     * @param ruta      La ruta que recorrerá el autobús; inicia su recorrido en la primera parada.
+     * @param capacidad El número máximo de pasajeros a bordo.
+     * @param tramos    El índice de ocupación de la ruta, compartido por todos sus autobuses, o {@code null}
+     *                  para que el autobús ignore a los demás.
      */
-    public Autobus(int id, Color color, Parada paradaInicial) {
+    public Autobus(int id, Color color, Ruta ruta, int capacidad, OcupacionTramos tramos) {
         this.id = id;
         this.color = color;
+        this.ruta = ruta;
+        Parada paradaInicial = ruta.getParadaPorIndice(0);
         this.x = paradaInicial.getCoordX();
         this.y = paradaInicial.getCoordY();
         this.paradaActualIndex = 0;
@@ -42,6 +89,9 @@ public class Autobus {
         this.progreso = 0.0;
         this.estado = EstadoAutobus.INACTIVO;
         this.tiempoDetenido = 0;
+        this.capacidad = capacidad;
+        this.bajanEn = new int[ruta.getLongitudRuta()];
+        this.tramos = tramos;
     }
 
     /**
@@ -51,21 +101,33 @@ public class Autobus {
      * la parada actual y la siguiente. Si el progreso alcanza o supera 1.0, el autobús
      * se considera {@code DETENIDO} en la parada de destino.
      * </p>
+     * <p>
+     * Con un {@link OcupacionTramos}, el avance se recorta para no alcanzar al líder ni entrar a una
+     * parada llena; el autobús nunca retrocede.
+     * </p>
      *
-     * @param ruta          La ruta que el autobús está siguiendo.
      * @param deltaProgreso El incremento en el progreso (un valor pequeño, ej. 0.01) para este tick de simulación.
+     * @param ahora         El instante actual de la simulación, en milisegundos.
      */
-    public void mover(Ruta ruta, double deltaProgreso) {
+    public void mover(double deltaProgreso, long ahora) {
         if (estado == EstadoAutobus.FINALIZADO || estado == EstadoAutobus.DETENIDO) {
             return;
         }
 
-        this.progreso += deltaProgreso;
+        double nuevoProgreso = this.progreso + deltaProgreso;
+        if (tramos != null) {
+            nuevoProgreso = Math.max(this.progreso, Math.min(nuevoProgreso, tramos.limiteProgreso(this, paradaActualIndex)));
+        }
+        this.progreso = nuevoProgreso;
 
         if (this.progreso >= 1.0) {
             this.progreso = 1.0; // Asegurar que el progreso no exceda 1.0
             this.estado = EstadoAutobus.DETENIDO;
-            this.tiempoDetenido = System.currentTimeMillis();
+            this.tiempoDetenido = ahora;
+            if (tramos != null) {
+                tramos.salir(this, paradaActualIndex);
+                tramos.ocuparAnden(paradaDestinoIndex);
+            }
 
             Parada paradaAlcanzada = ruta.getParadaPorIndice(paradaDestinoIndex);
             this.x = paradaAlcanzada.getCoordX();
@@ -86,16 +148,19 @@ public class Autobus {
      * <p>
      * Si no hay más paradas en la ruta, el estado del autobús cambia a {@code FINALIZADO}.
      * </p>
-     *
-     * @param ruta La ruta que el autobús está siguiendo.
      */
-    public void reanudarRuta(Ruta ruta) {
+    public void reanudarRuta() {
+        if (tramos != null && estado == EstadoAutobus.DETENIDO) {
+            tramos.liberarAnden(paradaDestinoIndex);
+        }
         this.estado = EstadoAutobus.EN_RUTA;
         this.progreso = 0.0;
         this.paradaActualIndex = this.paradaDestinoIndex;
         this.paradaDestinoIndex++;
         if (this.paradaDestinoIndex >= ruta.getLongitudRuta()) {
             this.estado = EstadoAutobus.FINALIZADO;
+        } else if (tramos != null) {
+            tramos.entrar(this, paradaActualIndex);
         }
     }
 
@@ -104,15 +169,50 @@ public class Autobus {
      */
     public void iniciarRuta() {
         this.estado = EstadoAutobus.EN_RUTA;
+        if (tramos != null) {
+            tramos.entrar(this, paradaActualIndex);
+        }
+    }
+
+    /**
+     * Baja a los pasajeros cuyo destino es la parada a la que llegó el autobús.
+     *
+     * @return Cuántos pasajeros bajaron.
+     */
+    public int bajarPasajeros() {
+        int cantidad = bajanEn[paradaDestinoIndex];
+        bajanEn[paradaDestinoIndex] = 0;
+        ocupacion -= cantidad;
+        return cantidad;
+    }
+
+    /**
+     * Sube pasajeros que viajan hasta una misma parada de la ruta.
+     *
+     * @param indiceDestino El índice de la parada donde bajarán; debe estar después de la actual.
+     * @param cantidad      Cuántos pasajeros suben; no debe exceder {@link #getLugaresLibres()}.
+     */
+    public void subirPasajeros(int indiceDestino, int cantidad) {
+        bajanEn[indiceDestino] += cantidad;
+        ocupacion += cantidad;
     }
 
     // --- Getters ---
 
     public int getId() { return id; }
     public Color getColor() { return color; }
+    public Ruta getRuta() { return ruta; }
     public int getX() { return (int) x; }
     public int getY() { return (int) y; }
     public EstadoAutobus getEstado() { return estado; }
     public long getTiempoDetenido() { return tiempoDetenido; }
     public int getParadaDestinoIndex() { return paradaDestinoIndex; }
+    public int getParadaActualIndex() { return paradaActualIndex; }
+    public int getCapacidad() { return capacidad; }
+    public int getOcupacion() { return ocupacion; }
+    public int getLugaresLibres() { return capacidad - ocupacion; }
+    public double getProgreso() { return progreso; }
+    /** @return El autobús que va delante en el mismo tramo, o {@code null} si va primero o no sigue a nadie. */
+    public Autobus getLider() { return lider; }
+    public OcupacionTramos getTramos() { return tramos; }
 }
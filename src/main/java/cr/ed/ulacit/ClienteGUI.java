@@ -1,15 +1,17 @@
 package cr.ed.ulacit;
 
-import cr.ed.ulacit.dto.RutaDTO;
+import cr.ed.ulacit.dto.RedDTO;
 import cr.ed.ulacit.dto.UpdatePayload;
+import cr.ed.ulacit.protocolo.Compresion;
+import cr.ed.ulacit.protocolo.ConexionSimulacion;
 import cr.ed.ulacit.servidor.EventoLog;
 
 import javax.swing.*;
 import java.awt.*;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.net.Socket;
 import java.util.Collections;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * La interfaz gráfica de usuario (GUI) para el cliente de la simulación.
@@ -21,30 +23,87 @@ import java.util.Collections;
  *     <li>Conectarse al servidor TCP.</li>
  *     <li>Recibir actualizaciones del servidor en un hilo separado para no bloquear la GUI.</li>
  *     <li>Actualizar el mapa y el log de eventos con los datos recibidos.</li>
+ *     <li>Recorrer el historial de posiciones con un deslizador, consultándolo al servidor.</li>
+ *     <li>Reconectarse si se pierde la conexión, reanudando la sesión para no perder eventos.</li>
  * </ul>
  * </p>
+ * <p>
+ * Los reintentos esperan cada vez el doble, hasta {@value #ESPERA_MAXIMA_MS} ms, más una fracción al azar:
+ * si el servidor se reinicia, los clientes que estaban conectados no vuelven todos en el mismo instante.
+ * </p>
  */
 public class ClienteGUI extends JFrame {
 
     private static final String HOST = "127.0.0.1";
     private static final int PUERTO = 12345;
+    private static final long ESPERA_INICIAL_MS = 500;
+    private static final long ESPERA_MAXIMA_MS = 30000;
 
     private final MapaPanel mapaPanel;
     private final JTextArea logArea;
+    private final JToggleButton botonEnVivo;
+    private final JSlider deslizadorHistorial;
+    private final Compresion compresion;
+    private volatile ConexionSimulacion conexion;
+    // Solo se usan en el EDT
+    private boolean moviendoDeslizador; // El cambio del deslizador viene del programa, no del usuario
+    private boolean consultaHistorialEnCurso;
+    private long ultimaSecuenciaEvento = -1;
 
     /**
-     * Constructor de la GUI del cliente. Configura la ventana y los componentes Swing.
+     * Constructor de la GUI del cliente, sin compresión.
      */
     public ClienteGUI() {
+        this(Compresion.NINGUNA, false);
+    }
+
+    /**
+     * Constructor de la GUI del cliente, con el mapa en modo pasivo.
+     *
+     * @param compresion El modo de compresión que se solicitará al servidor.
+     */
+    public ClienteGUI(Compresion compresion) {
+        this(compresion, false);
+    }
+
+    /**
+     * Constructor de la GUI del cliente. Configura la ventana y los componentes Swing.
+     *
+     * @param compresion      El modo de compresión que se solicitará al servidor.
+     * @param renderizadoActivo Si el mapa se dibuja con su propio hilo (ver {@link MapaPanel}).
+     */
+    public ClienteGUI(Compresion compresion, boolean renderizadoActivo) {
+        this.compresion = compresion;
         setTitle("Simulador de Autobuses - Cliente TCP");
         setSize(1200, 800);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
         setLayout(new BorderLayout());
 
-        mapaPanel = new MapaPanel(Collections.emptyList(), null);
+        mapaPanel = new MapaPanel(Collections.emptyList(), null, renderizadoActivo);
         add(mapaPanel, BorderLayout.CENTER);
 
+        // Controles del historial: en vivo, o el tick elegido con el deslizador
+        botonEnVivo = new JToggleButton("En vivo", true);
+        botonEnVivo.addActionListener(e -> {
+            if (botonEnVivo.isSelected()) {
+                mapaPanel.setTickHistorial(-1);
+            } else {
+                mostrarHistorial();
+            }
+        });
+        deslizadorHistorial = new JSlider(0, 0, 0);
+        deslizadorHistorial.addChangeListener(e -> {
+            if (!moviendoDeslizador) {
+                botonEnVivo.setSelected(false);
+                mostrarHistorial();
+            }
+        });
+        JPanel panelHistorial = new JPanel(new BorderLayout());
+        panelHistorial.add(botonEnVivo, BorderLayout.WEST);
+        panelHistorial.add(deslizadorHistorial, BorderLayout.CENTER);
+        add(panelHistorial, BorderLayout.NORTH);
+
         logArea = new JTextArea(10, 40);
         logArea.setEditable(false);
         logArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
@@ -53,56 +112,131 @@ public class ClienteGUI extends JFrame {
     }
 
     /**
-     * Inicia la conexión con el servidor en un hilo separado para no bloquear la GUI.
+     * Inicia la conexión con el servidor en un hilo separado para no bloquear la GUI. Si la conexión se
+     * pierde, el mismo hilo se reconecta.
      */
     public void conectarAlServidor() {
-        Thread connectionThread = new Thread(() -> {
-            try {
-                Socket socket = new Socket(HOST, PUERTO);
-                registrarEventoConTimestamp("Conectado al servidor en " + HOST + ":" + PUERTO);
-
-                ObjectInputStream objectInputStream = new ObjectInputStream(socket.getInputStream());
+        Thread connectionThread = new Thread(this::mantenerConexion);
+        connectionThread.setDaemon(true);
+        connectionThread.start();
+    }
 
-                // El primer objeto enviado por el servidor es la información de la ruta
-                final RutaDTO ruta = (RutaDTO) objectInputStream.readObject();
-                SwingUtilities.invokeLater(() -> mapaPanel.setRuta(ruta));
+    /**
+     * Conecta con el servidor y escucha sus actualizaciones; al perder la conexión, reintenta con espera
+     * exponencial y presenta la sesión anterior para reanudarla.
+     */
+    private void mantenerConexion() {
+        ConexionSimulacion anterior = null;
+        long espera = ESPERA_INICIAL_MS;
+        while (true) {
+            try {
+                // El saludo negocia la compresión; después el servidor envía la información de la red de rutas,
+                // o el estado actual si reanuda la sesión anterior
+                ConexionSimulacion conexion = anterior == null
+                        ? ConexionSimulacion.abrir(HOST, PUERTO, compresion)
+                        : ConexionSimulacion.reanudar(HOST, PUERTO, anterior);
+                this.conexion = conexion;
+                espera = ESPERA_INICIAL_MS;
+                if (conexion.isReanudada()) {
+                    registrarEventoConTimestamp("Sesión reanudada desde el tick " + anterior.getUltimoTick());
+                } else {
+                    registrarEventoConTimestamp("Conectado al servidor en " + HOST + ":" + PUERTO
+                            + " (compresión: " + conexion.getCompresion() + ")");
+                    final RedDTO red = conexion.getRed();
+                    SwingUtilities.invokeLater(() -> {
+                        ultimaSecuenciaEvento = -1; // Otra sesión: los eventos se numeran de nuevo
+                        mapaPanel.setRed(red);
+                    });
+                }
 
                 // Inicia el bucle para escuchar actualizaciones continuas del servidor
-                escucharActualizaciones(objectInputStream);
-
-            } catch (IOException | ClassNotFoundException e) {
-                registrarEventoConTimestamp("Error al conectar o comunicarse con el servidor: " + e.getMessage());
-                e.printStackTrace();
+                anterior = conexion;
+                escucharActualizaciones(conexion);
+                registrarEventoConTimestamp("Se ha perdido la conexión con el servidor; reconectando...");
+                conexion.close();
+            } catch (IOException e) {
+                if (espera == ESPERA_INICIAL_MS) {
+                    registrarEventoConTimestamp("Error al conectar con el servidor: " + e.getMessage());
+                }
             }
-        });
-        connectionThread.setDaemon(true);
-        connectionThread.start();
+            try {
+                Thread.sleep(espera + ThreadLocalRandom.current().nextLong(espera / 2 + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            espera = Math.min(espera * 2, ESPERA_MAXIMA_MS);
+        }
     }
 
     /**
-     * Bucle principal que se ejecuta en un hilo de fondo para recibir objetos del servidor.
+     * Bucle que se ejecuta en un hilo de fondo para recibir objetos del servidor, hasta que se pierde
+     * la conexión.
      *
-     * @param objectInputStream El stream del que se leen los datos del servidor.
+     * @param conexion La conexión de la que se leen los datos del servidor.
      */
-    private void escucharActualizaciones(ObjectInputStream objectInputStream) {
+    private void escucharActualizaciones(ConexionSimulacion conexion) {
         try {
             while (true) {
                 // Lee el payload que contiene tanto los autobuses como los eventos
-                final UpdatePayload payload = (UpdatePayload) objectInputStream.readObject();
+                final UpdatePayload payload = conexion.leerActualizacion();
 
                 // Actualiza la UI en el Event Dispatch Thread (EDT) para garantizar la seguridad del hilo en Swing
                 SwingUtilities.invokeLater(() -> {
-                    mapaPanel.setAutobuses(payload.getAutobuses());
+                    moviendoDeslizador = true;
+                    deslizadorHistorial.setMaximum((int) payload.getTick());
+                    if (botonEnVivo.isSelected()) {
+                        deslizadorHistorial.setValue((int) payload.getTick());
+                        mapaPanel.setAutobuses(payload.getAutobuses());
+                    }
+                    if (payload.getPasajerosEsperando() != null) {
+                        mapaPanel.setPasajerosEsperando(payload.getPasajerosEsperando());
+                    }
+                    moviendoDeslizador = false;
                     for (EventoLog evento : payload.getEventos()) {
+                        if (ultimaSecuenciaEvento >= 0 && evento.getSecuencia() > ultimaSecuenciaEvento + 1) {
+                            registrarEventoConTimestamp("(se omitieron " + (evento.getSecuencia() - ultimaSecuenciaEvento - 1)
+                                    + " eventos de la desconexión)");
+                        }
+                        ultimaSecuenciaEvento = evento.getSecuencia();
                         registrarEvento(evento.toString());
                     }
                 });
             }
-        } catch (IOException | ClassNotFoundException e) {
-            registrarEventoConTimestamp("Se ha perdido la conexión con el servidor: " + e.getMessage());
+        } catch (IOException e) {
+            // Se perdió la conexión; mantenerConexion() se encarga de reconectar
         }
     }
 
+    /**
+     * Pide al servidor la posición de la flota en el tick elegido con el deslizador y la muestra en el
+     * mapa. Se ejecuta en el EDT. Mientras hay una consulta en curso no se envía otra: al llegar la
+     * respuesta, si el deslizador se movió, se consulta la nueva posición.
+     */
+    private void mostrarHistorial() {
+        ConexionSimulacion actual = conexion;
+        if (actual == null || consultaHistorialEnCurso) {
+            return;
+        }
+        long tick = deslizadorHistorial.getValue();
+        consultaHistorialEnCurso = true;
+        actual.consultarFlotaEnTick(tick).whenComplete((autobuses, error) -> SwingUtilities.invokeLater(() -> {
+            consultaHistorialEnCurso = false;
+            if (botonEnVivo.isSelected()) {
+                return;
+            }
+            if (error != null) {
+                registrarEventoConTimestamp("No se pudo consultar el historial: " + error.getMessage());
+                return;
+            }
+            mapaPanel.setAutobuses(autobuses);
+            mapaPanel.setTickHistorial(tick);
+            if (deslizadorHistorial.getValue() != tick) {
+                mostrarHistorial();
+            }
+        }));
+    }
+
     /**
      * Añade un mensaje al área de log de la GUI.
      * Este método es seguro para ser llamado desde cualquier hilo.
@@ -126,9 +260,30 @@ public class ClienteGUI extends JFrame {
         registrarEvento(String.format("[%s] %s", timestamp, mensaje));
     }
 
+    /**
+     * Punto de entrada del cliente.
+     * <p>
+     * Uso: {@code ClienteGUI [--compresion ninguna|deflate|deflate_rapido] [--render pasivo|activo]}
+     * </p>
+     * <p>
+     * Con {@code --render activo} el mapa se dibuja hasta {@value MapaPanel#CUADROS_POR_SEGUNDO} veces por
+     * segundo desde un hilo propio; conviene con flotas de miles de autobuses.
+     * </p>
+     */
     public static void main(String[] args) {
+        Compresion compresion = Compresion.NINGUNA;
+        boolean activo = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--compresion")) {
+                compresion = Compresion.valueOf(args[++i].toUpperCase(Locale.ROOT));
+            } else if (args[i].equals("--render")) {
+                activo = args[++i].equalsIgnoreCase("activo");
+            }
+        }
+        final Compresion solicitada = compresion;
+        final boolean renderizadoActivo = activo;
         SwingUtilities.invokeLater(() -> {
-            ClienteGUI gui = new ClienteGUI();
+            ClienteGUI gui = new ClienteGUI(solicitada, renderizadoActivo);
             gui.setVisible(true);
             gui.conectarAlServidor();
         });
@@ -2,15 +2,22 @@ package cr.ed.ulacit;
 
 import cr.ed.ulacit.dto.AutobusDTO;
 import cr.ed.ulacit.dto.ParadaDTO;
+import cr.ed.ulacit.dto.RedDTO;
 import cr.ed.ulacit.dto.RutaDTO;
 
 import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferStrategy;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Un panel de Swing que renderiza el estado de la simulación de autobuses.
@@ -18,107 +25,155 @@ import java.util.List;
  * Esta clase es responsable de toda la representación gráfica:
  * <ul>
  *     <li>Dibuja una imagen de fondo como mapa.</li>
- *     <li>Dibuja la ruta de los autobuses como una serie de líneas y cuadrados.</li>
- *     <li>Dibuja cada autobús como un óvalo de color en su posición actual.</li>
+ *     <li>Dibuja cada ruta de la red como una serie de líneas y cuadrados.</li>
+ *     <li>Dibuja cada autobús como un óvalo de color en su posición actual, con una barra de ocupación.</li>
+ *     <li>Indica junto a cada parada cuántos pasajeros esperan.</li>
  * </ul>
- * El panel se actualiza a través de los métodos {@code setRuta} y {@code setAutobuses},
- * que son llamados por la {@link ClienteGUI} cuando se reciben nuevos datos del servidor.
+ * El panel se actualiza a través de los métodos {@code setRed} y {@code setAutobuses},
+ * que son llamados por la {@link ClienteGUI} cuando se reciben nuevos datos del servidor. Cuando se
+ * recorre el historial, {@code setTickHistorial} indica qué tick se está mostrando.
+ * </p>
+ * <p>
+ * La rueda del ratón acerca y aleja el mapa, arrastrar lo desplaza y un doble clic vuelve a la vista
+ * inicial. El dibujo lo hace un {@link RenderizadorMapa}, que solo dibuja lo que está en pantalla y
+ * simplifica los autobuses y las etiquetas cuando hay demasiados.
+ * </p>
+ * <p>
+ * Diseño: hay dos modos. En el pasivo (el de siempre) Swing decide cuándo repintar y el dibujo ocurre en
+ * {@code paintComponent}. En el activo, pensado para flotas grandes, el panel contiene un {@link Canvas}
+ * con un {@link BufferStrategy} y un hilo propio lo dibuja hasta {@value #CUADROS_POR_SEGUNDO} veces por
+ * segundo, solo cuando algo cambió; así el dibujo no compite con los eventos de la interfaz en el EDT.
  * </p>
  */
 public class MapaPanel extends JPanel {
 
-    private RutaDTO ruta;
-    private List<AutobusDTO> autobuses;
-    private BufferedImage mapaImagen;
+    /** El máximo de cuadros por segundo del modo activo. */
+    public static final int CUADROS_POR_SEGUNDO = 60;
+    private static final long NANOS_POR_CUADRO = 1_000_000_000L / CUADROS_POR_SEGUNDO;
+    // En el modo activo se vuelve a dibujar al menos con esta frecuencia, por si el sistema borró la ventana
+    private static final long NANOS_ENTRE_REDIBUJOS = 250_000_000L;
+    private static final double FACTOR_ZOOM = 1.15;
+
+    private final RenderizadorMapa renderizador = new RenderizadorMapa();
+    private final Canvas lienzo; // Solo en el modo activo
+    private volatile boolean dibujando;
+    private Thread hiloDibujo;
+
+    /**
+     * Constructor del panel del mapa en modo pasivo.
+     *
+     * @param autobuses La lista inicial de autobuses a dibujar (puede estar vacía).
+     * @param red       La red inicial a dibujar (puede ser nula).
+     */
+    public MapaPanel(List<AutobusDTO> autobuses, RedDTO red) {
+        this(autobuses, red, false);
+    }
 
     /**
      * Constructor del panel del mapa.
      *
      * @param autobuses La lista inicial de autobuses a dibujar (puede estar vacía).
-     * @param ruta      La ruta inicial a dibujar (puede ser nula).
+     * @param red       La red inicial a dibujar (puede ser nula).
+     * @param activo    Si se dibuja con un hilo propio sobre un {@link BufferStrategy} en lugar de con Swing.
      */
-    public MapaPanel(List<AutobusDTO> autobuses, RutaDTO ruta) {
-        this.autobuses = autobuses;
-        this.ruta = ruta;
-        cargarImagenDeMapa();
+    public MapaPanel(List<AutobusDTO> autobuses, RedDTO red, boolean activo) {
+        renderizador.setAutobuses(autobuses);
+        renderizador.setRed(red);
+        renderizador.setImagenFondo(cargarImagenDeMapa());
+        renderizador.setMostrarRendimiento(activo);
+
+        MouseAdapter raton = new ControlVista();
+        if (activo) {
+            setLayout(new BorderLayout());
+            lienzo = new Lienzo();
+            lienzo.setIgnoreRepaint(true);
+            lienzo.addMouseListener(raton);
+            lienzo.addMouseMotionListener(raton);
+            lienzo.addMouseWheelListener(raton);
+            add(lienzo, BorderLayout.CENTER);
+        } else {
+            lienzo = null;
+            addMouseListener(raton);
+            addMouseMotionListener(raton);
+            addMouseWheelListener(raton);
+        }
     }
 
     /**
      * Carga la imagen del mapa desde los recursos del proyecto.
      * Si no se encuentra la imagen, se imprime un error en la consola.
+     *
+     * @return La imagen, o {@code null} si no se pudo cargar.
      */
-    private void cargarImagenDeMapa() {
+    private BufferedImage cargarImagenDeMapa() {
         try (InputStream is = getClass().getResourceAsStream("/cr/ed/ulacit/mapa_cr.png")) {
             if (is == null) {
                 System.err.println("No se pudo encontrar el recurso del mapa. Asegúrate de que 'mapa_cr.png' esté en 'src/main/resources/cr/ed/ulacit'.");
-                mapaImagen = null;
-            } else {
-                mapaImagen = ImageIO.read(is);
+                return null;
             }
+            return ImageIO.read(is);
         } catch (IOException e) {
             System.err.println("Error al cargar la imagen del mapa: " + e.getMessage());
-            mapaImagen = null;
+            return null;
         }
     }
 
     /**
      * El método principal de dibujado de Swing. Se llama automáticamente cuando el panel necesita ser repintado.
+     * En el modo activo no hace nada: el lienzo tapa el panel y tiene su propio hilo de dibujo.
      *
      * @param g El contexto gráfico en el que dibujar.
      */
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
-        Graphics2D g2d = (Graphics2D) g;
-
-        // Dibuja el mapa de fondo
-        if (mapaImagen != null) {
-            g2d.drawImage(mapaImagen, 0, 0, getWidth(), getHeight(), this);
+        if (lienzo == null) {
+            renderizador.dibujar((Graphics2D) g, getWidth(), getHeight());
         }
+    }
 
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
-        // Dibuja la ruta
-        if (ruta != null) {
-            g2d.setColor(new Color(0, 0, 255, 150));
-            g2d.setStroke(new BasicStroke(3, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-            for (int i = 0; i < ruta.getParadas().size() - 1; i++) {
-                ParadaDTO p1 = ruta.getParadas().get(i);
-                ParadaDTO p2 = ruta.getParadas().get(i + 1);
-                g2d.drawLine(p1.getCoordX(), p1.getCoordY(), p2.getCoordX(), p2.getCoordY());
-            }
-
-            // Dibuja las paradas
-            g2d.setStroke(new BasicStroke(1));
-            for (ParadaDTO parada : ruta.getParadas()) {
-                g2d.setColor(Color.BLACK);
-                g2d.fillRect(parada.getCoordX() - 5, parada.getCoordY() - 5, 10, 10);
-                g2d.setColor(Color.DARK_GRAY);
-                g2d.drawString(parada.getNombre(), parada.getCoordX() + 12, parada.getCoordY() + 5);
-            }
-        }
+    /**
+     * Actualiza la red de rutas que se muestra en el mapa y solicita un repintado.
+     *
+     * @param red El nuevo DTO de la red.
+     */
+    public void setRed(RedDTO red) {
+        renderizador.setRed(red);
+        solicitarDibujo();
+    }
 
-        // Dibuja los autobuses
-        for (AutobusDTO bus : autobuses) {
-            if (bus.getEstado() != EstadoAutobus.INACTIVO) {
-                g2d.setColor(bus.getColor());
-                g2d.fillOval(bus.getX() - 10, bus.getY() - 10, 20, 20);
-                g2d.setColor(Color.BLACK);
-                g2d.drawOval(bus.getX() - 10, bus.getY() - 10, 20, 20);
-                g2d.setColor(Color.WHITE);
-                g2d.drawString(String.valueOf(bus.getId()), bus.getX() - 3, bus.getY() + 4);
-            }
-        }
+    /**
+     * Indica el tick del historial que se está mostrando y solicita un repintado.
+     *
+     * @param tickHistorial El tick mostrado, o -1 para volver al estado en vivo.
+     */
+    public void setTickHistorial(long tickHistorial) {
+        renderizador.setTickHistorial(tickHistorial);
+        solicitarDibujo();
     }
 
     /**
-     * Actualiza la ruta que se muestra en el mapa y solicita un repintado.
+     * Actualiza los pasajeros que esperan en las paradas y solicita un repintado.
      *
-     * @param ruta El nuevo DTO de la ruta.
+     * @param pasajerosEsperando Los pasajeros por parada de cada ruta, en el orden de las rutas de la red
+     *                           (ver {@link cr.ed.ulacit.dto.UpdatePayload#getPasajerosEsperando()}).
      */
-    public void setRuta(RutaDTO ruta) {
-        this.ruta = ruta;
-        repaint();
+    public void setPasajerosEsperando(int[] pasajerosEsperando) {
+        Map<Integer, Integer> porParada = new HashMap<>();
+        RedDTO red = renderizador.getRed();
+        if (red != null) {
+            int fila = 0;
+            for (RutaDTO ruta : red.getRutas()) {
+                for (ParadaDTO parada : ruta.getParadas()) {
+                    if (fila < pasajerosEsperando.length && pasajerosEsperando[fila] > 0) {
+                        porParada.merge(parada.getId(), pasajerosEsperando[fila], Integer::sum);
+                    }
+                    fila++;
+                }
+            }
+        }
+        renderizador.setPasajerosPorParada(porParada);
+        solicitarDibujo();
     }
 
     /**
@@ -127,7 +182,132 @@ public class MapaPanel extends JPanel {
      * @param autobuses La nueva lista de DTOs de autobuses.
      */
     public void setAutobuses(List<AutobusDTO> autobuses) {
-        this.autobuses = autobuses;
-        repaint();
+        renderizador.setAutobuses(autobuses);
+        solicitarDibujo();
+    }
+
+    /** En el modo pasivo pide a Swing que repinte; en el activo el hilo de dibujo ve el cambio solo. */
+    private void solicitarDibujo() {
+        if (lienzo == null) {
+            repaint();
+        }
+    }
+
+    /**
+     * El bucle del modo activo: dibuja en el búfer trasero y lo muestra, a lo sumo una vez por cuadro y
+     * solo si cambió algo, el tamaño del lienzo o pasó {@link #NANOS_ENTRE_REDIBUJOS} desde el último.
+     */
+    private void bucleDibujo() {
+        long versionDibujada = -1;
+        int anchoDibujado = -1;
+        int altoDibujado = -1;
+        long ultimoDibujo = 0;
+        long siguienteCuadro = System.nanoTime();
+        while (dibujando) {
+            BufferStrategy estrategia = lienzo.getBufferStrategy();
+            int ancho = lienzo.getWidth();
+            int alto = lienzo.getHeight();
+            long version = renderizador.getVersion();
+            long ahora = System.nanoTime();
+            if (estrategia != null && ancho > 0 && alto > 0 && (version != versionDibujada || ancho != anchoDibujado
+                    || alto != altoDibujado || ahora - ultimoDibujo >= NANOS_ENTRE_REDIBUJOS)) {
+                try {
+                    do {
+                        do {
+                            Graphics2D g = (Graphics2D) estrategia.getDrawGraphics();
+                            try {
+                                renderizador.dibujar(g, ancho, alto);
+                            } finally {
+                                g.dispose();
+                            }
+                        } while (estrategia.contentsRestored());
+                        estrategia.show();
+                    } while (estrategia.contentsLost());
+                    Toolkit.getDefaultToolkit().sync();
+                } catch (IllegalStateException e) {
+                    // El lienzo dejó de ser visible mientras se dibujaba; se reintenta en el siguiente cuadro
+                }
+                versionDibujada = version;
+                anchoDibujado = ancho;
+                altoDibujado = alto;
+                ultimoDibujo = ahora;
+            }
+
+            siguienteCuadro += NANOS_POR_CUADRO;
+            long espera = siguienteCuadro - System.nanoTime();
+            if (espera > 0) {
+                try {
+                    Thread.sleep(espera / 1_000_000, (int) (espera % 1_000_000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            } else {
+                siguienteCuadro = System.nanoTime(); // Atrasado: no se intenta recuperar los cuadros perdidos
+            }
+        }
+    }
+
+    /** El lienzo del modo activo; arranca el hilo de dibujo al mostrarse y lo detiene al quitarse. */
+    private class Lienzo extends Canvas {
+        @Override
+        public void addNotify() {
+            super.addNotify();
+            createBufferStrategy(2);
+            dibujando = true;
+            hiloDibujo = new Thread(MapaPanel.this::bucleDibujo, "dibujo-mapa");
+            hiloDibujo.setDaemon(true);
+            hiloDibujo.start();
+        }
+
+        @Override
+        public void removeNotify() {
+            dibujando = false;
+            hiloDibujo.interrupt();
+            try {
+                hiloDibujo.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.removeNotify();
+        }
+    }
+
+    /** Acerca con la rueda, desplaza al arrastrar y restablece la vista con doble clic. */
+    private class ControlVista extends MouseAdapter {
+        private Point anterior;
+
+        @Override
+        public void mousePressed(MouseEvent e) {
+            anterior = e.getPoint();
+        }
+
+        @Override
+        public void mouseDragged(MouseEvent e) {
+            if (anterior != null) {
+                renderizador.desplazar(e.getX() - anterior.x, e.getY() - anterior.y);
+                anterior = e.getPoint();
+                solicitarDibujo();
+            }
+        }
+
+        @Override
+        public void mouseReleased(MouseEvent e) {
+            anterior = null;
+        }
+
+        @Override
+        public void mouseClicked(MouseEvent e) {
+            if (e.getClickCount() == 2) {
+                renderizador.restablecerVista();
+                solicitarDibujo();
+            }
+        }
+
+        @Override
+        public void mouseWheelMoved(MouseWheelEvent e) {
+            renderizador.acercar(Math.pow(FACTOR_ZOOM, -e.getPreciseWheelRotation()), e.getX(), e.getY());
+            solicitarDibujo();
+        }
     }
 }
@@ -0,0 +1,172 @@
+package cr.ed.ulacit;
+
+/**
+ * El índice de ocupación de una {@link Ruta} durante una simulación: qué autobuses circulan por cada tramo
+ * (de la parada {@code i} a la {@code i + 1}), en el orden en que van, y cuántos ocupan cada parada.
+ * <p>
+ * Con él cada autobús conoce al que va delante en su tramo (su líder) sin revisar a los demás, y su
+ * avance queda limitado por él: no puede acercarse a menos de {@link #getDistanciaMinima()} píxeles, y
+ * solo entra a una parada si queda un andén libre; si no, espera en cola antes de la parada. Así aparecen
+ * el agrupamiento y las colas en las paradas concurridas, y cada tick sigue siendo O(n).
+ * </p>
+ * <p>
+ * Diseño: en un tramo nadie adelanta, así que el orden por posición es el orden de entrada. Cada tramo es
+ * una lista doblemente enlazada a través de los propios autobuses ({@link Autobus#getLider()}), que se
+ * actualiza de forma incremental: el autobús entra al final cuando sale de una parada y deja el frente
+ * cuando llega a la siguiente. El índice vive fuera de {@code Ruta}, que es inmutable y se comparte entre
+ * las réplicas de una simulación por lotes; hay uno por ruta en cada simulación y, como ella, no es seguro
+ * para hilos. Los andenes se cuentan por ruta: dos rutas que comparten una parada no se estorban.
+ * </p>
+ */
+public class OcupacionTramos {
+
+    /** La distancia mínima por defecto entre un autobús y su líder, en píxeles del mapa. */
+    public static final double DISTANCIA_MINIMA_POR_DEFECTO = 12;
+    /** Los autobuses de una misma ruta que caben a la vez en una parada si no se indica otra cantidad. */
+    public static final int ANDENES_POR_DEFECTO = 2;
+
+    private final double distanciaMinima;
+    private final int andenes;
+    private final double[] separacion; // Por tramo, la distancia mínima como fracción del tramo (a lo sumo 1)
+    private final Autobus[] primero; // Por tramo, el autobús más adelantado
+    private final Autobus[] ultimo; // Por tramo, el último autobús en entrar
+    private final int[] enTramo;
+    private final int[] enParada;
+
+    /**
+     * Crea el índice de una ruta con la distancia mínima y los andenes por defecto.
+     *
+     * @param ruta La ruta.
+     */
+    public OcupacionTramos(Ruta ruta) {
+        this(ruta, DISTANCIA_MINIMA_POR_DEFECTO, ANDENES_POR_DEFECTO);
+    }
+
+    /**
+     * @param ruta            La ruta.
+     * @param distanciaMinima La distancia mínima entre un autobús y su líder, en píxeles.
+     * @param andenes         Los autobuses de la ruta que caben a la vez en una parada (al menos 1).
+     */
+    public OcupacionTramos(Ruta ruta, double distanciaMinima, int andenes) {
+        if (distanciaMinima < 0 || andenes < 1) {
+            throw new IllegalArgumentException("Distancia mínima " + distanciaMinima + " o andenes " + andenes + " inválidos");
+        }
+        this.distanciaMinima = distanciaMinima;
+        this.andenes = andenes;
+        int paradas = ruta.getLongitudRuta();
+        int tramos = Math.max(0, paradas - 1);
+        this.separacion = new double[tramos];
+        this.primero = new Autobus[tramos];
+        this.ultimo = new Autobus[tramos];
+        this.enTramo = new int[tramos];
+        this.enParada = new int[paradas];
+        for (int i = 0; i < tramos; i++) {
+            Parada origen = ruta.getParadaPorIndice(i);
+            Parada destino = ruta.getParadaPorIndice(i + 1);
+            double longitud = Math.hypot(destino.getCoordX() - origen.getCoordX(), destino.getCoordY() - origen.getCoordY());
+            // En un tramo más corto que la distancia mínima (o de longitud 0) cabe un solo autobús
+            separacion[i] = longitud > distanciaMinima ? distanciaMinima / longitud : (distanciaMinima > 0 ? 1.0 : 0.0);
+        }
+    }
+
+    /**
+     * Agrega un autobús al final de un tramo.
+     *
+     * @param bus   El autobús, que no debe estar en ningún tramo.
+     * @param tramo El índice de la parada donde empieza el tramo.
+     */
+    void entrar(Autobus bus, int tramo) {
+        Autobus cola = ultimo[tramo];
+        bus.lider = cola;
+        bus.seguidor = null;
+        if (cola != null) {
+            cola.seguidor = bus;
+        } else {
+            primero[tramo] = bus;
+        }
+        ultimo[tramo] = bus;
+        enTramo[tramo]++;
+    }
+
+    /**
+     * Quita un autobús de un tramo; normalmente es el primero, que acaba de llegar a la parada.
+     *
+     * @param bus   El autobús.
+     * @param tramo El índice de la parada donde empieza el tramo.
+     */
+    void salir(Autobus bus, int tramo) {
+        if (bus.lider != null) {
+            bus.lider.seguidor = bus.seguidor;
+        } else {
+            primero[tramo] = bus.seguidor;
+        }
+        if (bus.seguidor != null) {
+            bus.seguidor.lider = bus.lider;
+        } else {
+            ultimo[tramo] = bus.lider;
+        }
+        bus.lider = null;
+        bus.seguidor = null;
+        enTramo[tramo]--;
+    }
+
+    /**
+     * Calcula hasta dónde puede avanzar un autobús en este tick: hasta la distancia mínima detrás de su
+     * líder o, si va primero, hasta la parada si hay un andén libre y hasta la distancia mínima antes de
+     * ella si no.
+     *
+     * @param bus   El autobús, que debe estar en el tramo.
+     * @param tramo El índice de la parada donde empieza el tramo.
+     * @return El progreso máximo en el tramo, entre 0 y 1 (puede ser menor que el progreso actual).
+     */
+    double limiteProgreso(Autobus bus, int tramo) {
+        if (bus.lider != null) {
+            return bus.lider.getProgreso() - separacion[tramo];
+        }
+        return enParada[tramo + 1] < andenes ? 1.0 : 1.0 - separacion[tramo];
+    }
+
+    /** @param parada El índice de la parada a la que llegó un autobús. */
+    void ocuparAnden(int parada) {
+        enParada[parada]++;
+    }
+
+    /** @param parada El índice de la parada de la que salió un autobús. */
+    void liberarAnden(int parada) {
+        enParada[parada]--;
+    }
+
+    /**
+     * @param tramo El índice de la parada donde empieza el tramo.
+     * @return El autobús más adelantado del tramo, o {@code null} si está vacío.
+     */
+    public Autobus getPrimero(int tramo) {
+        return primero[tramo];
+    }
+
+    /**
+     * @param tramo El índice de la parada donde empieza el tramo.
+     * @return Cuántos autobuses circulan por el tramo.
+     */
+    public int getAutobusesEnTramo(int tramo) {
+        return enTramo[tramo];
+    }
+
+    /**
+     * @param parada El índice de la parada en la ruta.
+     * @return Cuántos autobuses de la ruta están detenidos en la parada.
+     */
+    public int getAutobusesEnParada(int parada) {
+        return enParada[parada];
+    }
+
+    /** @return La distancia mínima entre un autobús y su líder, en píxeles. */
+    public double getDistanciaMinima() {
+        return distanciaMinima;
+    }
+
+    /** @return Los autobuses de la ruta que caben a la vez en una parada. */
+    public int getAndenes() {
+        return andenes;
+    }
+}
@@ -5,19 +5,25 @@ package cr.ed.ulacit;
  * <p>
  * Esta clase es un modelo de datos simple (POJO) que contiene la información esencial de una parada:
  * su identificador, su nombre y sus coordenadas (x, y) para la representación gráfica en el {@link MapaPanel}.
+ * También indica cuántos pasajeros llegan a ella por hora de simulación, en promedio; el modelo de demanda
+ * del servidor usa ese dato como tasa de un proceso de Poisson.
  * <p>
  * Diseño: Se optó por la inmutabilidad para los atributos (ID, nombre, coordenadas) asignándolos
  * únicamente en el constructor. Esto garantiza que una vez creada una parada, su estado no puede ser
  * modificado, lo que simplifica el manejo de datos en un entorno de simulación.
  */
 public class Parada {
+    /** Pasajeros por hora de simulación que llegan a una parada si no se indica otra tasa. */
+    public static final double PASAJEROS_POR_HORA_POR_DEFECTO = 120;
+
     private final int id;
     private final String nombre;
     private final int coordX; // Coordenada X en el panel gráfico
     private final int coordY; // Coordenada Y en el panel gráfico
+    private final double pasajerosPorHora;
 
     /**
-     * Constructor para crear una nueva parada.
+     * Constructor para crear una nueva parada con la demanda por defecto.
      *
      * @param id     El identificador único de la parada.
      * @param nombre El nombre descriptivo de la parada (ej. "Terminal Tica Bus").
@@ -25,10 +31,24 @@ public class Parada {
      * @param coordY La coordenada Y en el píxel del panel donde se dibujará la parada.
      */
     public Parada(int id, String nombre, int coordX, int coordY) {
+        this(id, nombre, coordX, coordY, PASAJEROS_POR_HORA_POR_DEFECTO);
+    }
+
+    /**
+     * Constructor para crear una nueva parada.
+     *
+     * @param id               El identificador único de la parada.
+     * @param nombre           El nombre descriptivo de la parada.
+     * @param coordX           La coordenada X en el píxel del panel donde se dibujará la parada.
+     * @param coordY           La coordenada Y en el píxel del panel donde se dibujará la parada.
+     * @param pasajerosPorHora Los pasajeros que llegan a la parada por hora de simulación, en promedio.
+     */
+    public Parada(int id, String nombre, int coordX, int coordY, double pasajerosPorHora) {
         this.id = id;
         this.nombre = nombre;
         this.coordX = coordX;
         this.coordY = coordY;
+        this.pasajerosPorHora = pasajerosPorHora;
     }
 
     // --- Getters ---
@@ -45,6 +65,9 @@ public class Parada {
     /** @return La coordenada Y para el dibujo. */
     public int getCoordY() { return coordY; }
 
+    /** @return Los pasajeros que llegan por hora de simulación, en promedio. */
+    public double getPasajerosPorHora() { return pasajerosPorHora; }
+
     /**
      * Proporciona una representación en cadena de la parada, útil para depuración.
      * @return Una cadena con los detalles de la parada.
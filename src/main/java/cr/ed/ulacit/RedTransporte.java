@@ -0,0 +1,65 @@
+package cr.ed.ulacit;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Representa una red de transporte completa: el conjunto de rutas y los viajes programados sobre ellas.
+ * <p>
+ * Diseño: Al igual que {@link Ruta}, se construye una sola vez (a partir de código o de archivos)
+ * y no se modifica durante la simulación.
+ * </p>
+ */
+public class RedTransporte {
+    private final List<Ruta> rutas;
+    private final List<Viaje> viajes;
+
+    /**
+     * Constructor para una nueva red.
+     *
+     * @param rutas  Las rutas de la red.
+     * @param viajes Los viajes programados sobre esas rutas.
+     */
+    public RedTransporte(List<Ruta> rutas, List<Viaje> viajes) {
+        this.rutas = rutas;
+        this.viajes = viajes;
+    }
+
+    /**
+     * Obtiene la parte de la red que le corresponde a un fragmento cuando la simulación se reparte entre
+     * varios procesos. Las rutas se asignan por turnos según su posición y cada viaje va con su ruta, de
+     * modo que los IDs de los autobuses no se repiten entre fragmentos.
+     *
+     * @param indice El índice del fragmento, de 0 a {@code total - 1}.
+     * @param total  El número total de fragmentos.
+     * @return Una nueva red con las rutas y viajes del fragmento.
+     */
+    public RedTransporte fragmento(int indice, int total) {
+        if (total < 1 || indice < 0 || indice >= total) {
+            throw new IllegalArgumentException("Fragmento inválido: " + indice + "/" + total);
+        }
+        List<Ruta> rutasFragmento = new ArrayList<>();
+        Map<Ruta, Boolean> incluidas = new IdentityHashMap<>();
+        for (int i = indice; i < rutas.size(); i += total) {
+            rutasFragmento.add(rutas.get(i));
+            incluidas.put(rutas.get(i), Boolean.TRUE);
+        }
+        List<Viaje> viajesFragmento = new ArrayList<>();
+        for (Viaje viaje : viajes) {
+            if (incluidas.containsKey(viaje.getRuta())) {
+                viajesFragmento.add(viaje);
+            }
+        }
+        return new RedTransporte(rutasFragmento, viajesFragmento);
+    }
+
+    // --- Getters ---
+
+    /** @return Las rutas de la red. */
+    public List<Ruta> getRutas() { return rutas; }
+
+    /** @return Los viajes programados. */
+    public List<Viaje> getViajes() { return viajes; }
+}
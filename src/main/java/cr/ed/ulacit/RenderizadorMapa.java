@@ -0,0 +1,555 @@
+package cr.ed.ulacit;
+
+import cr.ed.ulacit.dto.AutobusDTO;
+import cr.ed.ulacit.dto.ParadaDTO;
+import cr.ed.ulacit.dto.RedDTO;
+import cr.ed.ulacit.dto.RutaDTO;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.VolatileImage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dibuja el mapa de la simulación con zoom, desplazamiento y nivel de detalle según lo que hay en pantalla.
+ * <p>
+ * Lo usa {@link MapaPanel} tanto en el modo pasivo (desde {@code paintComponent}) como en el activo
+ * (desde su hilo de dibujo). Los datos se reciben desde el EDT con los métodos {@code set*} y se leen al
+ * dibujar desde el hilo que dibuja; cada uno se reemplaza completo, nunca se modifica.
+ * </p>
+ * <p>
+ * Diseño: lo que casi no cambia (la imagen de fondo, las rutas, las paradas y sus etiquetas) se dibuja en
+ * una capa {@link VolatileImage} que solo se regenera cuando cambia la vista, la red o los pasajeros en
+ * espera; en cada cuadro se copia de una vez y encima van los autobuses. De los autobuses solo se dibujan
+ * los que caen en la ventana, y cómo se dibujan depende de cuántos son ({@link NivelDetalle}): con pocos,
+ * cada uno con su óvalo, su número y su ocupación; con muchos, como puntos o como celdas de calor escritos
+ * directamente en los píxeles de una imagen, sin pasar por las primitivas de Java2D. Las etiquetas de las
+ * paradas se ocultan si la vista está lejos o si hay demasiadas paradas visibles, y con muchas más se
+ * ocultan también las paradas.
+ * </p>
+ */
+public class RenderizadorMapa {
+
+    /** Ancho del área de coordenadas de la red (la imagen del mapa ocupa todo el área). */
+    public static final int ANCHO_MUNDO = 1200;
+    /** Alto del área de coordenadas de la red. */
+    public static final int ALTO_MUNDO = 800;
+
+    private static final double ESCALA_MINIMA = 0.25;
+    private static final double ESCALA_MAXIMA = 32;
+    private static final int MAX_AUTOBUSES_COMPLETO = 2000;
+    private static final int MAX_AUTOBUSES_PUNTOS = 20000;
+    private static final int MAX_ETIQUETAS = 250;
+    private static final double ESCALA_ETIQUETAS = 0.75;
+    private static final int MAX_SEGMENTOS_SUAVIZADOS = 5000;
+    private static final int MAX_PARADAS_VISIBLES = 5000; // Con más, las paradas solo taparían el mapa
+    private static final int LADO_CELDA_CALOR = 8;
+    private static final Color COLOR_RUTA = new Color(0, 0, 255, 150);
+    private static final Color COLOR_FONDO = new Color(225, 232, 225);
+    private static final int[] RAMPA_CALOR = crearRampaCalor();
+
+    /** Cómo se dibujan los autobuses según cuántos hay en pantalla. */
+    public enum NivelDetalle {
+        /** Óvalo con color, número y barra de ocupación. */
+        COMPLETO,
+        /** Un punto de 3x3 píxeles del color del autobús. */
+        PUNTOS,
+        /** Celdas de {@value #LADO_CELDA_CALOR} píxeles coloreadas según cuántos autobuses contienen. */
+        CALOR
+    }
+
+    // Datos, escritos desde el EDT
+    private volatile Image imagenFondo;
+    private volatile Red red = new Red(null);
+    private volatile List<AutobusDTO> autobuses = Collections.emptyList();
+    private volatile Map<Integer, Integer> pasajerosPorParada = Collections.emptyMap();
+    private volatile long tickHistorial = -1;
+    private volatile Vista vista = new Vista(1, 0, 0);
+    private volatile boolean mostrarRendimiento;
+    private volatile long version;
+
+    // Estado del dibujo, solo lo usa el hilo que dibuja
+    private VolatileImage capaEstatica;
+    private Object[] claveCapa = new Object[0]; // Lo que se dibujó en la capa estática
+    private BufferedImage capaAutobuses;
+    private final Map<Integer, BufferedImage> sprites = new HashMap<>(); // Por color
+    private int[] pixeles;
+    private int[] conteoCeldas = new int[0];
+    private NivelDetalle ultimoNivel = NivelDetalle.COMPLETO;
+    private int ultimosVisibles;
+    private long ultimoCuadro;
+    private double nanosEntreCuadros;
+    private double nanosDibujo;
+
+    /** @param imagenFondo La imagen que ocupa el área del mapa, o {@code null} para un fondo liso. */
+    public void setImagenFondo(Image imagenFondo) {
+        this.imagenFondo = imagenFondo;
+        version++;
+    }
+
+    /** @param red La red a dibujar (puede ser nula). */
+    public void setRed(RedDTO red) {
+        this.red = new Red(red);
+        version++;
+    }
+
+    /** @param autobuses El estado de los autobuses; la lista no debe modificarse después. */
+    public void setAutobuses(List<AutobusDTO> autobuses) {
+        this.autobuses = autobuses;
+        version++;
+    }
+
+    /** @param pasajerosPorParada Los pasajeros en espera por ID de parada; el mapa no debe modificarse después. */
+    public void setPasajerosPorParada(Map<Integer, Integer> pasajerosPorParada) {
+        this.pasajerosPorParada = pasajerosPorParada;
+        version++;
+    }
+
+    /** @param tickHistorial El tick del historial que se muestra, o -1 para el estado en vivo. */
+    public void setTickHistorial(long tickHistorial) {
+        this.tickHistorial = tickHistorial;
+        version++;
+    }
+
+    /** @param mostrarRendimiento Si se muestran los cuadros por segundo y el nivel de detalle. */
+    public void setMostrarRendimiento(boolean mostrarRendimiento) {
+        this.mostrarRendimiento = mostrarRendimiento;
+        version++;
+    }
+
+    /** @return Un número que cambia cada vez que cambia algo de lo que se dibuja. */
+    public long getVersion() {
+        return version;
+    }
+
+    /** @return La red que se está dibujando, o {@code null}. */
+    public RedDTO getRed() {
+        return red.dto;
+    }
+
+    /**
+     * Acerca o aleja la vista manteniendo fijo el punto del mapa bajo el cursor.
+     *
+     * @param factor Mayor que 1 para acercar, menor que 1 para alejar.
+     * @param x      La coordenada X del cursor en la pantalla.
+     * @param y      La coordenada Y del cursor en la pantalla.
+     */
+    public void acercar(double factor, int x, int y) {
+        Vista v = vista;
+        double escala = Math.max(ESCALA_MINIMA, Math.min(ESCALA_MAXIMA, v.escala * factor));
+        double mundoX = v.origenX + x / v.escala;
+        double mundoY = v.origenY + y / v.escala;
+        vista = new Vista(escala, mundoX - x / escala, mundoY - y / escala);
+        version++;
+    }
+
+    /**
+     * Desplaza la vista.
+     *
+     * @param dx Píxeles de desplazamiento horizontal (positivo: el mapa se mueve a la derecha).
+     * @param dy Píxeles de desplazamiento vertical.
+     */
+    public void desplazar(int dx, int dy) {
+        Vista v = vista;
+        vista = new Vista(v.escala, v.origenX - dx / v.escala, v.origenY - dy / v.escala);
+        version++;
+    }
+
+    /** Vuelve a la vista inicial: escala 1, esquina superior izquierda del mapa. */
+    public void restablecerVista() {
+        vista = new Vista(1, 0, 0);
+        version++;
+    }
+
+    /** @return El nivel de detalle con que se dibujaron los autobuses en el último cuadro. */
+    public NivelDetalle getUltimoNivel() {
+        return ultimoNivel;
+    }
+
+    /** @return Cuántos autobuses había en pantalla en el último cuadro. */
+    public int getUltimosVisibles() {
+        return ultimosVisibles;
+    }
+
+    /**
+     * Dibuja un cuadro completo. Debe llamarse siempre desde el mismo hilo.
+     *
+     * @param g     El contexto gráfico del destino.
+     * @param ancho El ancho del destino en píxeles.
+     * @param alto  El alto del destino en píxeles.
+     */
+    public void dibujar(Graphics2D g, int ancho, int alto) {
+        long inicio = System.nanoTime();
+        if (ancho <= 0 || alto <= 0) {
+            return;
+        }
+        Vista v = vista;
+        dibujarCapaEstatica(g, v, ancho, alto);
+        dibujarAutobuses(g, v, ancho, alto);
+        dibujarSuperposiciones(g);
+
+        long fin = System.nanoTime();
+        if (ultimoCuadro != 0) {
+            nanosEntreCuadros += 0.1 * ((inicio - ultimoCuadro) - nanosEntreCuadros);
+        }
+        nanosDibujo += 0.1 * ((fin - inicio) - nanosDibujo);
+        ultimoCuadro = inicio;
+    }
+
+    /** Copia la capa estática, regenerándola si cambió lo que contiene o si su contenido se perdió. */
+    private void dibujarCapaEstatica(Graphics2D g, Vista v, int ancho, int alto) {
+        Red r = red;
+        Map<Integer, Integer> pasajeros = pasajerosPorParada;
+        Image fondo = imagenFondo;
+        Object[] clave = {r, pasajeros, fondo, v, ancho, alto};
+        boolean regenerar = !Arrays.equals(clave, claveCapa);
+        GraphicsConfiguration configuracion = g.getDeviceConfiguration();
+        if (capaEstatica == null || capaEstatica.getWidth() != ancho || capaEstatica.getHeight() != alto) {
+            capaEstatica = configuracion.createCompatibleVolatileImage(ancho, alto, Transparency.OPAQUE);
+            regenerar = true;
+        }
+        do {
+            int estado = capaEstatica.validate(configuracion);
+            if (estado == VolatileImage.IMAGE_INCOMPATIBLE) {
+                capaEstatica = configuracion.createCompatibleVolatileImage(ancho, alto, Transparency.OPAQUE);
+                regenerar = true;
+            } else if (estado == VolatileImage.IMAGE_RESTORED) {
+                regenerar = true;
+            }
+            if (regenerar) {
+                Graphics2D gc = capaEstatica.createGraphics();
+                try {
+                    dibujarEstatico(gc, v, r, pasajeros, fondo, ancho, alto);
+                } finally {
+                    gc.dispose();
+                }
+                claveCapa = clave;
+                regenerar = false;
+            }
+            g.drawImage(capaEstatica, 0, 0, null);
+            regenerar = capaEstatica.contentsLost();
+        } while (regenerar);
+    }
+
+    private void dibujarEstatico(Graphics2D g, Vista v, Red r, Map<Integer, Integer> pasajeros, Image fondo,
+                                 int ancho, int alto) {
+        g.setColor(COLOR_FONDO);
+        g.fillRect(0, 0, ancho, alto);
+        if (fondo != null) {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(fondo, v.aPantallaX(0), v.aPantallaY(0),
+                    (int) Math.round(ANCHO_MUNDO * v.escala), (int) Math.round(ALTO_MUNDO * v.escala), null);
+        }
+        if (r.dto == null) {
+            return;
+        }
+
+        // Rutas: solo los tramos que cruzan la ventana. Con muchos tramos se dibujan finos y sin suavizado.
+        int[] s = r.segmentos;
+        int visibles = 0;
+        int[] pantalla = new int[s.length];
+        for (int i = 0; i < s.length; i += 4) {
+            int x1 = v.aPantallaX(s[i]);
+            int y1 = v.aPantallaY(s[i + 1]);
+            int x2 = v.aPantallaX(s[i + 2]);
+            int y2 = v.aPantallaY(s[i + 3]);
+            if ((x1 < 0 && x2 < 0) || (x1 > ancho && x2 > ancho) || (y1 < 0 && y2 < 0) || (y1 > alto && y2 > alto)) {
+                continue;
+            }
+            pantalla[visibles++] = x1;
+            pantalla[visibles++] = y1;
+            pantalla[visibles++] = x2;
+            pantalla[visibles++] = y2;
+        }
+        boolean detallado = visibles / 4 <= MAX_SEGMENTOS_SUAVIZADOS;
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                detallado ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+        g.setColor(COLOR_RUTA);
+        g.setStroke(detallado ? new BasicStroke(3, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND) : new BasicStroke(1));
+        for (int i = 0; i < visibles; i += 4) {
+            g.drawLine(pantalla[i], pantalla[i + 1], pantalla[i + 2], pantalla[i + 3]);
+        }
+
+        // Paradas: cada una una vez aunque la compartan varias rutas
+        int n = r.paradaX.length;
+        int[] indices = new int[n];
+        int paradasVisibles = 0;
+        for (int i = 0; i < n; i++) {
+            int x = v.aPantallaX(r.paradaX[i]);
+            int y = v.aPantallaY(r.paradaY[i]);
+            if (x >= -10 && x <= ancho + 10 && y >= -10 && y <= alto + 10) {
+                indices[paradasVisibles++] = i;
+            }
+        }
+        if (paradasVisibles > MAX_PARADAS_VISIBLES) {
+            return;
+        }
+        int lado = (int) Math.max(2, Math.min(14, Math.round(10 * Math.sqrt(v.escala))));
+        boolean etiquetas = v.escala >= ESCALA_ETIQUETAS && paradasVisibles <= MAX_ETIQUETAS;
+        g.setStroke(new BasicStroke(1));
+        for (int k = 0; k < paradasVisibles; k++) {
+            int i = indices[k];
+            int x = v.aPantallaX(r.paradaX[i]);
+            int y = v.aPantallaY(r.paradaY[i]);
+            g.setColor(Color.BLACK);
+            g.fillRect(x - lado / 2, y - lado / 2, lado, lado);
+            if (etiquetas) {
+                g.setColor(Color.DARK_GRAY);
+                g.drawString(r.nombres[i], x + 12, y + 5);
+                int esperando = pasajeros.getOrDefault(r.ids[i], 0);
+                if (esperando > 0) {
+                    g.setColor(new Color(180, 0, 0));
+                    g.drawString(esperando + " esperando", x + 12, y + 18);
+                }
+            }
+        }
+    }
+
+    private void dibujarAutobuses(Graphics2D g, Vista v, int ancho, int alto) {
+        List<AutobusDTO> lista = autobuses;
+        int n = lista.size();
+        int visibles = 0;
+        for (int i = 0; i < n; i++) {
+            AutobusDTO bus = lista.get(i);
+            if (bus.getEstado() != EstadoAutobus.INACTIVO && v.visible(bus.getX(), bus.getY(), ancho, alto)) {
+                visibles++;
+            }
+        }
+        NivelDetalle nivel = visibles <= MAX_AUTOBUSES_COMPLETO && v.escala >= 0.5 ? NivelDetalle.COMPLETO
+                : visibles <= MAX_AUTOBUSES_PUNTOS ? NivelDetalle.PUNTOS : NivelDetalle.CALOR;
+        ultimoNivel = nivel;
+        ultimosVisibles = visibles;
+        if (visibles == 0) {
+            return;
+        }
+
+        if (nivel == NivelDetalle.COMPLETO) {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+            g.setStroke(new BasicStroke(1));
+            for (int i = 0; i < n; i++) {
+                AutobusDTO bus = lista.get(i);
+                if (bus.getEstado() != EstadoAutobus.INACTIVO && v.visible(bus.getX(), bus.getY(), ancho, alto)) {
+                    dibujarAutobus(g, bus, v.aPantallaX(bus.getX()), v.aPantallaY(bus.getY()));
+                }
+            }
+            return;
+        }
+
+        prepararCapaAutobuses(ancho, alto);
+        if (nivel == NivelDetalle.PUNTOS) {
+            for (int i = 0; i < n; i++) {
+                AutobusDTO bus = lista.get(i);
+                if (bus.getEstado() != EstadoAutobus.INACTIVO) {
+                    punto(v.aPantallaX(bus.getX()), v.aPantallaY(bus.getY()), ancho, alto, bus.getColor().getRGB());
+                }
+            }
+        } else {
+            int columnas = (ancho + LADO_CELDA_CALOR - 1) / LADO_CELDA_CALOR;
+            int filas = (alto + LADO_CELDA_CALOR - 1) / LADO_CELDA_CALOR;
+            if (conteoCeldas.length < columnas * filas) {
+                conteoCeldas = new int[columnas * filas];
+            } else {
+                Arrays.fill(conteoCeldas, 0, columnas * filas, 0);
+            }
+            for (int i = 0; i < n; i++) {
+                AutobusDTO bus = lista.get(i);
+                int x = v.aPantallaX(bus.getX());
+                int y = v.aPantallaY(bus.getY());
+                if (bus.getEstado() != EstadoAutobus.INACTIVO && x >= 0 && x < ancho && y >= 0 && y < alto) {
+                    conteoCeldas[(y / LADO_CELDA_CALOR) * columnas + x / LADO_CELDA_CALOR]++;
+                }
+            }
+            for (int c = 0; c < columnas * filas; c++) {
+                if (conteoCeldas[c] > 0) {
+                    celda(c % columnas, c / columnas, ancho, alto, RAMPA_CALOR[Math.min(RAMPA_CALOR.length - 1, conteoCeldas[c])]);
+                }
+            }
+        }
+        g.drawImage(capaAutobuses, 0, 0, null);
+    }
+
+    private void dibujarAutobus(Graphics2D g, AutobusDTO bus, int x, int y) {
+        g.drawImage(sprite(bus.getColor()), x - 11, y - 11, null);
+        g.setColor(Color.WHITE);
+        g.drawString(String.valueOf(bus.getId()), x - 3, y + 4);
+        if (bus.getCapacidad() > 0) {
+            // Barra de ocupación: verde con el autobús vacío, roja con el autobús lleno
+            double fraccion = Math.min(1.0, bus.getOcupacion() / (double) bus.getCapacidad());
+            g.setColor(Color.WHITE);
+            g.fillRect(x - 10, y + 12, 20, 4);
+            g.setColor(new Color((int) (255 * fraccion), (int) (180 * (1 - fraccion)), 0));
+            g.fillRect(x - 10, y + 12, (int) Math.round(20 * fraccion), 4);
+            g.setColor(Color.BLACK);
+            g.drawRect(x - 10, y + 12, 20, 4);
+        }
+    }
+
+    /**
+     * El óvalo suavizado de un autobús de ese color. Se dibuja una vez por color y luego solo se copia,
+     * que es varias veces más rápido que suavizar cada óvalo.
+     */
+    private BufferedImage sprite(Color color) {
+        return sprites.computeIfAbsent(color.getRGB(), rgb -> {
+            BufferedImage sprite = new BufferedImage(22, 22, BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D g = sprite.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setColor(color);
+            g.fillOval(1, 1, 20, 20);
+            g.setColor(Color.BLACK);
+            g.drawOval(1, 1, 20, 20);
+            g.dispose();
+            return sprite;
+        });
+    }
+
+    private void dibujarSuperposiciones(Graphics2D g) {
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        Font fuente = g.getFont();
+        int y = 10;
+        // Indica que lo que se ve es el historial y no el estado actual
+        if (tickHistorial >= 0) {
+            cartel(g, "Historial: tick " + tickHistorial, y);
+            y += 40;
+        }
+        if (mostrarRendimiento) {
+            double fps = nanosEntreCuadros > 0 ? 1e9 / nanosEntreCuadros : 0;
+            cartel(g, String.format("%.0f FPS · %.1f ms · %d autobuses · %s", fps, nanosDibujo / 1e6,
+                    ultimosVisibles, ultimoNivel.name().toLowerCase()), y);
+        }
+        g.setFont(fuente);
+    }
+
+    private static void cartel(Graphics2D g, String texto, int y) {
+        g.setFont(g.getFont().deriveFont(Font.BOLD, 16f));
+        int ancho = g.getFontMetrics().stringWidth(texto);
+        g.setColor(new Color(0, 0, 0, 160));
+        g.fillRoundRect(10, y, ancho + 20, 30, 10, 10);
+        g.setColor(Color.WHITE);
+        g.drawString(texto, 20, y + 21);
+    }
+
+    /** Deja lista y transparente la imagen sobre la que se escriben los puntos y las celdas. */
+    private void prepararCapaAutobuses(int ancho, int alto) {
+        if (capaAutobuses == null || capaAutobuses.getWidth() != ancho || capaAutobuses.getHeight() != alto) {
+            capaAutobuses = new BufferedImage(ancho, alto, BufferedImage.TYPE_INT_ARGB_PRE);
+            pixeles = ((DataBufferInt) capaAutobuses.getRaster().getDataBuffer()).getData();
+        } else {
+            Arrays.fill(pixeles, 0);
+        }
+    }
+
+    private void punto(int x, int y, int ancho, int alto, int argb) {
+        for (int fy = Math.max(0, y - 1); fy <= Math.min(alto - 1, y + 1); fy++) {
+            int fila = fy * ancho;
+            for (int fx = Math.max(0, x - 1); fx <= Math.min(ancho - 1, x + 1); fx++) {
+                pixeles[fila + fx] = argb;
+            }
+        }
+    }
+
+    private void celda(int columna, int fila, int ancho, int alto, int argb) {
+        int x0 = columna * LADO_CELDA_CALOR;
+        int y0 = fila * LADO_CELDA_CALOR;
+        int x1 = Math.min(ancho, x0 + LADO_CELDA_CALOR);
+        int y1 = Math.min(alto, y0 + LADO_CELDA_CALOR);
+        for (int y = y0; y < y1; y++) {
+            Arrays.fill(pixeles, y * ancho + x0, y * ancho + x1, argb);
+        }
+    }
+
+    /**
+     * Colores de las celdas de calor según cuántos autobuses contienen: de azul translúcido a rojo opaco,
+     * en escala logarítmica. Son colores con alfa premultiplicado, como la imagen donde se escriben.
+     */
+    private static int[] crearRampaCalor() {
+        int[] rampa = new int[256];
+        for (int i = 1; i < rampa.length; i++) {
+            double t = Math.min(1.0, Math.log(i) / Math.log(64));
+            int alfa = (int) (90 + 150 * t);
+            int rojo = (int) (255 * t);
+            int verde = (int) (160 * (1 - Math.abs(2 * t - 1)));
+            int azul = (int) (255 * (1 - t));
+            rampa[i] = (alfa << 24) | ((rojo * alfa / 255) << 16) | ((verde * alfa / 255) << 8) | (azul * alfa / 255);
+        }
+        return rampa;
+    }
+
+    /** La transformación de coordenadas del mapa a la pantalla. Inmutable. */
+    private static final class Vista {
+        private final double escala;
+        private final double origenX; // Coordenada del mapa en la esquina superior izquierda
+        private final double origenY;
+
+        private Vista(double escala, double origenX, double origenY) {
+            this.escala = escala;
+            this.origenX = origenX;
+            this.origenY = origenY;
+        }
+
+        int aPantallaX(int x) {
+            return (int) ((x - origenX) * escala);
+        }
+
+        int aPantallaY(int y) {
+            return (int) ((y - origenY) * escala);
+        }
+
+        boolean visible(int x, int y, int ancho, int alto) {
+            int px = aPantallaX(x);
+            int py = aPantallaY(y);
+            return px >= -12 && px <= ancho + 12 && py >= -12 && py <= alto + 20;
+        }
+    }
+
+    /** La red en arreglos listos para recorrer al dibujar, con cada parada una sola vez. Inmutable. */
+    private static final class Red {
+        private final RedDTO dto;
+        private final int[] segmentos; // x1, y1, x2, y2 por tramo
+        private final int[] ids;
+        private final String[] nombres;
+        private final int[] paradaX;
+        private final int[] paradaY;
+
+        private Red(RedDTO dto) {
+            this.dto = dto;
+            Map<Integer, ParadaDTO> unicas = new HashMap<>();
+            int tramos = 0;
+            List<RutaDTO> rutas = dto != null ? dto.getRutas() : Collections.emptyList();
+            for (RutaDTO ruta : rutas) {
+                tramos += Math.max(0, ruta.getParadas().size() - 1);
+                for (ParadaDTO parada : ruta.getParadas()) {
+                    unicas.putIfAbsent(parada.getId(), parada);
+                }
+            }
+            segmentos = new int[tramos * 4];
+            int k = 0;
+            for (RutaDTO ruta : rutas) {
+                List<ParadaDTO> paradas = ruta.getParadas();
+                for (int i = 0; i < paradas.size() - 1; i++) {
+                    segmentos[k++] = paradas.get(i).getCoordX();
+                    segmentos[k++] = paradas.get(i).getCoordY();
+                    segmentos[k++] = paradas.get(i + 1).getCoordX();
+                    segmentos[k++] = paradas.get(i + 1).getCoordY();
+                }
+            }
+            int n = unicas.size();
+            ids = new int[n];
+            nombres = new String[n];
+            paradaX = new int[n];
+            paradaY = new int[n];
+            int i = 0;
+            for (ParadaDTO parada : unicas.values()) {
+                ids[i] = parada.getId();
+                nombres[i] = parada.getNombre();
+                paradaX[i] = parada.getCoordX();
+                paradaY[i] = parada.getCoordY();
+                i++;
+            }
+        }
+    }
+}
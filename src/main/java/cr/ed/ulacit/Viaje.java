@@ -0,0 +1,38 @@
+package cr.ed.ulacit;
+
+/**
+ * Representa un viaje programado: un autobús que recorre una {@link Ruta} completa saliendo a una hora dada.
+ * <p>
+ * Diseño: Es la definición estática de la flota. El servidor crea un {@link Autobus} por cada viaje
+ * y programa su salida de la terminal a la hora indicada.
+ * </p>
+ */
+public class Viaje {
+    private final int id;
+    private final Ruta ruta;
+    private final int horaSalidaSeg; // Segundos desde la medianoche
+
+    /**
+     * Constructor para un nuevo viaje.
+     *
+     * @param id            El identificador único del viaje (y del autobús que lo realiza).
+     * @param ruta          La ruta que recorre el viaje.
+     * @param horaSalidaSeg La hora de salida de la terminal, en segundos desde la medianoche.
+     */
+    public Viaje(int id, Ruta ruta, int horaSalidaSeg) {
+        this.id = id;
+        this.ruta = ruta;
+        this.horaSalidaSeg = horaSalidaSeg;
+    }
+
+    // --- Getters ---
+
+    /** @return El ID único del viaje. */
+    public int getId() { return id; }
+
+    /** @return La ruta que recorre el viaje. */
+    public Ruta getRuta() { return ruta; }
+
+    /** @return La hora de salida, en segundos desde la medianoche. */
+    public int getHoraSalidaSeg() { return horaSalidaSeg; }
+}
@@ -0,0 +1,113 @@
+package cr.ed.ulacit.benchmark;
+
+import cr.ed.ulacit.RedTransporte;
+import cr.ed.ulacit.servidor.CargadorRedGtfs;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Mide el tiempo de carga de una red de escala nacional con {@link CargadorRedGtfs}.
+ * <p>
+ * Genera en un directorio temporal una red GTFS sintética (por defecto 30 000 paradas, 3 000 rutas de
+ * 30 paradas y 20 viajes por ruta, es decir 1,8 millones de líneas en {@code stop_times.txt}), la carga
+ * varias veces y reporta el mejor tiempo y la mediana. Termina con código 1 si la mediana supera el
+ * presupuesto de un segundo.
+ * </p>
+ * <p>
+ * Uso: {@code BenchmarkCargaRed [paradas] [rutas] [paradasPorRuta] [viajesPorRuta] [repeticiones]}
+ * </p>
+ */
+public class BenchmarkCargaRed {
+
+    private static final long PRESUPUESTO_MS = 1000;
+
+    public static void main(String[] args) throws IOException {
+        int paradas = argumento(args, 0, 30_000);
+        int rutas = argumento(args, 1, 3_000);
+        int paradasPorRuta = argumento(args, 2, 30);
+        int viajesPorRuta = argumento(args, 3, 20);
+        int repeticiones = argumento(args, 4, 7);
+
+        Path directorio = Files.createTempDirectory("red-gtfs");
+        try {
+            long inicioGeneracion = System.nanoTime();
+            generarRed(directorio, paradas, rutas, paradasPorRuta, viajesPorRuta, new Random(42));
+            System.out.printf("Red generada en %d ms (%d paradas, %d rutas, %d viajes, %d horarios)%n",
+                    (System.nanoTime() - inicioGeneracion) / 1_000_000, paradas, rutas,
+                    rutas * viajesPorRuta, (long) rutas * viajesPorRuta * paradasPorRuta);
+
+            long[] tiempos = new long[repeticiones];
+            RedTransporte red = null;
+            for (int i = 0; i < repeticiones; i++) {
+                long inicio = System.nanoTime();
+                red = new CargadorRedGtfs().cargar(directorio);
+                tiempos[i] = (System.nanoTime() - inicio) / 1_000_000;
+                System.out.printf("Carga %d: %d ms%n", i + 1, tiempos[i]);
+            }
+            Arrays.sort(tiempos);
+            long mediana = tiempos[repeticiones / 2];
+            System.out.printf("Rutas cargadas: %d, viajes: %d%n", red.getRutas().size(), red.getViajes().size());
+            System.out.printf("Mejor: %d ms, mediana: %d ms, presupuesto: %d ms%n", tiempos[0], mediana, PRESUPUESTO_MS);
+            if (mediana > PRESUPUESTO_MS) {
+                System.err.println("La carga excede el presupuesto.");
+                System.exit(1);
+            }
+        } finally {
+            try (Stream<Path> archivos = Files.walk(directorio)) {
+                archivos.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    private static void generarRed(Path directorio, int paradas, int rutas, int paradasPorRuta,
+                                   int viajesPorRuta, Random aleatorio) throws IOException {
+        try (BufferedWriter w = Files.newBufferedWriter(directorio.resolve("stops.txt"), StandardCharsets.UTF_8)) {
+            w.write("stop_id,stop_name,stop_lat,stop_lon\n");
+            for (int i = 0; i < paradas; i++) {
+                double lat = 8.0 + aleatorio.nextDouble() * 3.0;
+                double lon = -86.0 + aleatorio.nextDouble() * 3.5;
+                w.write("S" + i + ",\"Parada " + (i % 5000) + ", Sector " + (i / 5000) + "\","
+                        + String.format("%.6f,%.6f", lat, lon) + "\n");
+            }
+        }
+        try (BufferedWriter w = Files.newBufferedWriter(directorio.resolve("routes.txt"), StandardCharsets.UTF_8)) {
+            w.write("route_id,route_short_name,route_long_name\n");
+            for (int r = 0; r < rutas; r++) {
+                w.write("R" + r + "," + r + ",Ruta " + r + "\n");
+            }
+        }
+        try (BufferedWriter viajes = Files.newBufferedWriter(directorio.resolve("trips.txt"), StandardCharsets.UTF_8);
+             BufferedWriter horarios = Files.newBufferedWriter(directorio.resolve("stop_times.txt"), StandardCharsets.UTF_8)) {
+            viajes.write("route_id,service_id,trip_id\n");
+            horarios.write("trip_id,arrival_time,departure_time,stop_id,stop_sequence\n");
+            int[] secuencia = new int[paradasPorRuta];
+            for (int r = 0; r < rutas; r++) {
+                for (int i = 0; i < paradasPorRuta; i++) {
+                    secuencia[i] = aleatorio.nextInt(paradas);
+                }
+                for (int v = 0; v < viajesPorRuta; v++) {
+                    String viaje = "T" + r + "_" + v;
+                    viajes.write("R" + r + ",LV," + viaje + "\n");
+                    int hora = 5 * 3600 + v * 900;
+                    for (int i = 0; i < paradasPorRuta; i++) {
+                        String h = String.format("%02d:%02d:%02d", hora / 3600, (hora / 60) % 60, hora % 60);
+                        horarios.write(viaje + "," + h + "," + h + ",S" + secuencia[i] + "," + (i + 1) + "\n");
+                        hora += 120;
+                    }
+                }
+            }
+        }
+    }
+
+    private static int argumento(String[] args, int indice, int porDefecto) {
+        return args.length > indice ? Integer.parseInt(args[indice]) : porDefecto;
+    }
+}
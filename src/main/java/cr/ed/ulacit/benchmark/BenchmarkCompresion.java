@@ -0,0 +1,145 @@
+package cr.ed.ulacit.benchmark;
+
+import cr.ed.ulacit.dto.RedDTO;
+import cr.ed.ulacit.dto.UpdatePayload;
+import cr.ed.ulacit.protocolo.Compresion;
+import cr.ed.ulacit.protocolo.DiccionarioCompresion;
+import cr.ed.ulacit.protocolo.EntradaComprimida;
+import cr.ed.ulacit.protocolo.SalidaComprimida;
+import cr.ed.ulacit.servidor.EventoLog;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compara el ancho de banda y el costo de CPU de cada modo de {@link Compresion} para distintos tamaños
+ * de flota.
+ * <p>
+ * Para cada flota simula una serie de ticks con una {@link FlotaSintetica} y
+ * serializa las actualizaciones igual que {@code ClientHandler} (un {@code flush()} y un {@code reset()}
+ * por tick). Reporta los bytes por tick, la relación respecto a no comprimir, el tiempo de CPU del
+ * servidor por tick (serialización más compresión) y el del cliente (descompresión más deserialización).
+ * </p>
+ * <p>
+ * Uso: {@code BenchmarkCompresion [ticks] [flota ...]}
+ * </p>
+ */
+public class BenchmarkCompresion {
+
+    private static final ThreadMXBean HILOS = ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws IOException {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int[] flotas = {10, 100, 1_000, 10_000};
+        if (args.length > 1) {
+            flotas = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                flotas[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.printf("%8s %-15s %12s %8s %14s %14s%n",
+                "flota", "compresion", "bytes/tick", "ratio", "servidor us", "cliente us");
+        for (int flota : flotas) {
+            Escenario escenario = new Escenario(flota, ticks, new Random(42));
+            long bytesSinCompresion = 0;
+            for (Compresion compresion : Compresion.values()) {
+                medir(escenario, compresion); // Calentamiento del JIT
+                Medicion m = medir(escenario, compresion);
+                if (compresion == Compresion.NINGUNA) {
+                    bytesSinCompresion = m.bytes;
+                }
+                System.out.printf("%8d %-15s %12d %8.2f %14.1f %14.1f%n", flota, compresion,
+                        m.bytes / ticks, (double) bytesSinCompresion / m.bytes,
+                        m.nanosServidor / 1000.0 / ticks, m.nanosCliente / 1000.0 / ticks);
+            }
+        }
+    }
+
+    /**
+     * Escribe todas las actualizaciones del escenario con el modo indicado y luego las lee de vuelta.
+     */
+    private static Medicion medir(Escenario escenario, Compresion compresion) throws IOException {
+        ByteArrayOutputStream socket = new ByteArrayOutputStream();
+        SalidaComprimida comprimida = null;
+        OutputStream salida = socket;
+        if (compresion != Compresion.NINGUNA) {
+            comprimida = new SalidaComprimida(socket, compresion.getNivel(), SalidaComprimida.UMBRAL_POR_DEFECTO);
+            salida = comprimida;
+        }
+        ObjectOutputStream oos = new ObjectOutputStream(salida);
+        oos.writeObject(escenario.red);
+        oos.flush();
+        if (comprimida != null) {
+            comprimida.iniciarFlujo(DiccionarioCompresion.crear(escenario.red));
+        }
+        int bytesRed = socket.size();
+
+        long inicio = HILOS.getCurrentThreadCpuTime();
+        for (UpdatePayload payload : escenario.payloads) {
+            oos.writeObject(payload);
+            oos.flush();
+            oos.reset();
+        }
+        long nanosServidor = HILOS.getCurrentThreadCpuTime() - inicio;
+        byte[] enviados = socket.toByteArray();
+
+        InputStream flujo = new ByteArrayInputStream(enviados);
+        EntradaComprimida entrada = compresion != Compresion.NINGUNA ? new EntradaComprimida(flujo) : null;
+        ObjectInputStream ois = new ObjectInputStream(entrada != null ? entrada : flujo);
+        long nanosCliente;
+        try {
+            RedDTO red = (RedDTO) ois.readObject();
+            if (entrada != null) {
+                entrada.establecerDiccionario(DiccionarioCompresion.crear(red));
+            }
+            inicio = HILOS.getCurrentThreadCpuTime();
+            for (UpdatePayload esperado : escenario.payloads) {
+                UpdatePayload recibido = (UpdatePayload) ois.readObject();
+                if (recibido.getTick() != esperado.getTick()
+                        || recibido.getAutobuses().size() != esperado.getAutobuses().size()) {
+                    throw new IllegalStateException("La actualización del tick " + esperado.getTick() + " no coincide");
+                }
+            }
+            nanosCliente = HILOS.getCurrentThreadCpuTime() - inicio;
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+        return new Medicion(enviados.length - bytesRed, nanosServidor, nanosCliente);
+    }
+
+    private record Medicion(long bytes, long nanosServidor, long nanosCliente) {
+    }
+
+    /**
+     * Las actualizaciones que produce una flota sintética durante los ticks medidos. Se generan una sola
+     * vez para que todos los modos compriman exactamente lo mismo.
+     */
+    private static final class Escenario {
+        private static final int TICKS_PREVIOS = 2000; // Para repartir los autobuses a lo largo de sus rutas
+
+        private final RedDTO red;
+        private final List<UpdatePayload> payloads = new ArrayList<>();
+
+        private Escenario(int flota, int ticks, Random aleatorio) {
+            FlotaSintetica flotaSintetica = new FlotaSintetica(flota, aleatorio);
+            red = flotaSintetica.getRed();
+            for (int t = 0; t < TICKS_PREVIOS + ticks; t++) {
+                List<EventoLog> eventos = flotaSintetica.avanzar(t);
+                if (t >= TICKS_PREVIOS) {
+                    payloads.add(new UpdatePayload(t, flotaSintetica.estado(), eventos));
+                }
+            }
+        }
+    }
+}
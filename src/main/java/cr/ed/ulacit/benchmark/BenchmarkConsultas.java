@@ -0,0 +1,126 @@
+package cr.ed.ulacit.benchmark;
+
+import cr.ed.ulacit.dto.RedDTO;
+import cr.ed.ulacit.dto.UpdatePayload;
+import cr.ed.ulacit.protocolo.Compresion;
+import cr.ed.ulacit.protocolo.ConexionSimulacion;
+import cr.ed.ulacit.protocolo.TipoConsulta;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mide el canal de consultas contra un servidor (o pasarela) en ejecución, y cuánto afecta la carga de
+ * consultas a la cadencia de los ticks.
+ * <p>
+ * Primero registra los intervalos entre ticks sin consultas; luego mantiene un número fijo de consultas
+ * en curso (de todos los tipos, con IDs de autobús, parada y ruta variados) durante el mismo tiempo y
+ * vuelve a registrar los intervalos. Reporta la tasa de consultas, su latencia y los percentiles del
+ * intervalo entre ticks en ambas fases.
+ * </p>
+ * <p>
+ * Uso: {@code BenchmarkConsultas [host:puerto] [segundos] [consultasEnCurso]}
+ * </p>
+ */
+public class BenchmarkConsultas {
+
+    public static void main(String[] args) throws Exception {
+        String[] direccion = (args.length > 0 ? args[0] : "127.0.0.1:12345").split(":");
+        int segundos = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int enCurso = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+
+        try (ConexionSimulacion conexion = ConexionSimulacion.abrir(direccion[0], Integer.parseInt(direccion[1]), Compresion.NINGUNA)) {
+            RedDTO red = conexion.getRed();
+            int numRutas = red.getRutas().size();
+            int maxParada = red.getRutas().stream().flatMap(r -> r.getParadas().stream())
+                    .mapToInt(p -> p.getId()).max().orElse(1);
+
+            ConcurrentLinkedQueue<Long> intervalos = new ConcurrentLinkedQueue<>();
+            AtomicLong ultimoTick = new AtomicLong();
+            Thread lector = new Thread(() -> {
+                long anterior = 0;
+                try {
+                    while (true) {
+                        UpdatePayload payload = conexion.leerActualizacion();
+                        long ahora = System.nanoTime();
+                        if (anterior != 0) {
+                            intervalos.add(ahora - anterior);
+                        }
+                        anterior = ahora;
+                        ultimoTick.set(payload.getTick());
+                    }
+                } catch (IOException e) {
+                    // Fin de la medición o conexión perdida
+                }
+            }, "lector");
+            lector.setDaemon(true);
+            lector.start();
+
+            Thread.sleep(segundos * 1000L);
+            long[] sinConsultas = vaciar(intervalos);
+
+            Semaphore permisos = new Semaphore(enCurso);
+            ConcurrentLinkedQueue<Long> latencias = new ConcurrentLinkedQueue<>();
+            AtomicLong errores = new AtomicLong();
+            TipoConsulta[] tipos = TipoConsulta.values();
+            long fin = System.nanoTime() + segundos * 1_000_000_000L;
+            long enviadas = 0;
+            while (System.nanoTime() < fin) {
+                permisos.acquire();
+                TipoConsulta tipo = tipos[(int) (enviadas % tipos.length)];
+                long tick = ultimoTick.get();
+                int parametro = switch (tipo) {
+                    case ESTADO_AUTOBUS -> (int) (enviadas % 100) + 1;
+                    case PARADAS_RUTA -> (int) (enviadas % numRutas);
+                    case TABLERO_PARADA -> (int) (enviadas % maxParada) + 1;
+                    default -> 0;
+                };
+                long inicio = System.nanoTime();
+                conexion.consultar(tipo, parametro, Math.max(0, tick - 100), tick).whenComplete((r, e) -> {
+                    latencias.add(System.nanoTime() - inicio);
+                    if (e != null) {
+                        errores.incrementAndGet();
+                    }
+                    permisos.release();
+                });
+                enviadas++;
+            }
+            permisos.acquire(enCurso);
+            long[] conConsultas = vaciar(intervalos);
+            long[] tiemposRespuesta = vaciar(latencias);
+
+            System.out.printf("Consultas: %d en %d s (%.0f/s), %d con error, %d en curso a la vez%n",
+                    enviadas, segundos, (double) enviadas / segundos, errores.get(), enCurso);
+            System.out.printf("Latencia de consulta: p50 %.2f ms, p99 %.2f ms, máx %.2f ms%n",
+                    percentil(tiemposRespuesta, 50), percentil(tiemposRespuesta, 99), percentil(tiemposRespuesta, 100));
+            imprimirIntervalos("sin consultas", sinConsultas);
+            imprimirIntervalos("con consultas", conConsultas);
+        }
+    }
+
+    private static void imprimirIntervalos(String fase, long[] intervalos) {
+        System.out.printf("Intervalo entre ticks (%s): %d ticks, p50 %.2f ms, p99 %.2f ms, máx %.2f ms%n", fase,
+                intervalos.length, percentil(intervalos, 50), percentil(intervalos, 99), percentil(intervalos, 100));
+    }
+
+    private static long[] vaciar(ConcurrentLinkedQueue<Long> cola) {
+        long[] valores = new long[cola.size()];
+        for (int i = 0; i < valores.length; i++) {
+            valores[i] = cola.poll();
+        }
+        Arrays.sort(valores);
+        return valores;
+    }
+
+    /** @return El percentil indicado en milisegundos, de valores en nanosegundos ya ordenados. */
+    private static double percentil(long[] ordenados, int percentil) {
+        if (ordenados.length == 0) {
+            return 0;
+        }
+        int indice = Math.min(ordenados.length - 1, (int) Math.ceil(percentil / 100.0 * ordenados.length) - 1);
+        return ordenados[Math.max(0, indice)] / 1e6;
+    }
+}
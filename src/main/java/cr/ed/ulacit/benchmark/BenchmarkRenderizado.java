@@ -0,0 +1,70 @@
+package cr.ed.ulacit.benchmark;
+
+import cr.ed.ulacit.MapaPanel;
+import cr.ed.ulacit.RenderizadorMapa;
+import cr.ed.ulacit.dto.AutobusDTO;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Mide cuánto tarda el {@link RenderizadorMapa} en dibujar un cuadro con una flota grande, con la vista
+ * completa y con varios niveles de zoom, y lo compara con el presupuesto de un cuadro a
+ * {@value MapaPanel#CUADROS_POR_SEGUNDO} FPS.
+ * <p>
+ * Dibuja sobre una {@link BufferedImage}, así que puede ejecutarse sin pantalla
+ * ({@code -Djava.awt.headless=true}); mide el camino por software, que es el peor caso del modo activo.
+ * La flota avanza un tick entre cuadros y ese tiempo no se cuenta.
+ * </p>
+ * <p>
+ * Uso: {@code BenchmarkRenderizado [flota] [cuadros] [ancho] [alto]}
+ * </p>
+ */
+public class BenchmarkRenderizado {
+
+    private static final double PRESUPUESTO_MS = 1000.0 / MapaPanel.CUADROS_POR_SEGUNDO;
+    private static final int CUADROS_CALENTAMIENTO = 50;
+    private static final double[] ZOOMS = {1, 2, 4, 16};
+
+    public static void main(String[] args) {
+        int flota = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int cuadros = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        int ancho = args.length > 2 ? Integer.parseInt(args[2]) : RenderizadorMapa.ANCHO_MUNDO;
+        int alto = args.length > 3 ? Integer.parseInt(args[3]) : RenderizadorMapa.ALTO_MUNDO;
+
+        FlotaSintetica flotaSintetica = new FlotaSintetica(flota, new Random(42));
+        RenderizadorMapa renderizador = new RenderizadorMapa();
+        renderizador.setRed(flotaSintetica.getRed());
+        BufferedImage destino = new BufferedImage(ancho, alto, BufferedImage.TYPE_INT_RGB);
+        long tick = 0;
+
+        System.out.printf("Flota %d, %dx%d píxeles, presupuesto %.1f ms por cuadro%n", flota, ancho, alto, PRESUPUESTO_MS);
+        for (double zoom : ZOOMS) {
+            renderizador.restablecerVista();
+            renderizador.acercar(zoom, ancho / 2, alto / 2);
+            long[] tiempos = new long[cuadros];
+            for (int c = -CUADROS_CALENTAMIENTO; c < cuadros; c++) {
+                flotaSintetica.avanzar(tick++);
+                List<AutobusDTO> estado = flotaSintetica.estado();
+                renderizador.setAutobuses(estado);
+                Graphics2D g = destino.createGraphics();
+                long inicio = System.nanoTime();
+                renderizador.dibujar(g, ancho, alto);
+                long duracion = System.nanoTime() - inicio;
+                g.dispose();
+                if (c >= 0) {
+                    tiempos[c] = duracion;
+                }
+            }
+            Arrays.sort(tiempos);
+            double media = Arrays.stream(tiempos).average().orElse(0) / 1e6;
+            double p99 = tiempos[(int) (cuadros * 0.99)] / 1e6;
+            System.out.printf("Zoom %4.1fx: %6d visibles, nivel %-8s media %6.2f ms, p50 %6.2f ms, p99 %6.2f ms, %5.0f FPS posibles%s%n",
+                    zoom, renderizador.getUltimosVisibles(), renderizador.getUltimoNivel().name().toLowerCase(), media,
+                    tiempos[cuadros / 2] / 1e6, p99, 1000 / media, p99 > PRESUPUESTO_MS ? "  (fuera de presupuesto)" : "");
+        }
+    }
+}
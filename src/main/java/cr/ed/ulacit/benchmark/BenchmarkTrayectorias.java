@@ -0,0 +1,110 @@
+package cr.ed.ulacit.benchmark;
+
+import cr.ed.ulacit.dto.AutobusDTO;
+import cr.ed.ulacit.dto.TrayectoriaDTO;
+import cr.ed.ulacit.servidor.AlmacenTrayectorias;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Mide el {@link AlmacenTrayectorias}: bytes por autobús y tick, costo de registro en el tick y
+ * latencia de las consultas de historial, con derrame a disco.
+ * <p>
+ * Registra una {@link FlotaSintetica} durante los ticks indicados, guarda el estado real en algunos
+ * ticks al azar y verifica que {@code flotaEnTick} lo reproduzca exactamente. Extrapola el tamaño de un
+ * día completo (86 400 ticks, un tick por segundo simulado).
+ * </p>
+ * <p>
+ * Uso: {@code BenchmarkTrayectorias [flota] [ticks] [limiteMemoriaMB]}
+ * </p>
+ */
+public class BenchmarkTrayectorias {
+
+    private static final int TICKS_POR_DIA = 86_400;
+    private static final int VERIFICACIONES = 20;
+
+    public static void main(String[] args) throws IOException {
+        int flota = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 3_000;
+        long limiteMemoria = (args.length > 2 ? Long.parseLong(args[2]) : 16) * 1024 * 1024;
+
+        Random aleatorio = new Random(42);
+        FlotaSintetica flotaSintetica = new FlotaSintetica(flota, aleatorio);
+        Map<Long, List<AutobusDTO>> esperados = new HashMap<>();
+        for (int i = 0; i < VERIFICACIONES; i++) {
+            esperados.put((long) aleatorio.nextInt(ticks), null);
+        }
+
+        Path directorio = Files.createTempDirectory("trayectorias");
+        try (AlmacenTrayectorias almacen = new AlmacenTrayectorias(directorio, limiteMemoria)) {
+            long[] tiempos = new long[ticks];
+            for (int t = 0; t < ticks; t++) {
+                flotaSintetica.avanzar(t);
+                long inicio = System.nanoTime();
+                almacen.registrar(t, flotaSintetica.getAutobuses());
+                tiempos[t] = System.nanoTime() - inicio;
+                if (esperados.containsKey((long) t)) {
+                    esperados.put((long) t, flotaSintetica.estado());
+                }
+            }
+            Arrays.sort(tiempos);
+            double busTicks = (double) flota * ticks;
+            System.out.printf("Flota %d, %d ticks: %d muestras (%.1f%% de los autobús-tick)%n", flota, ticks,
+                    almacen.getMuestras(), 100.0 * almacen.getMuestras() / busTicks);
+            System.out.printf("Datos: %.1f MB, %.2f bytes por autobús-tick, %.2f bytes por muestra, %.1f MB en disco%n",
+                    almacen.getBytesDatos() / 1e6, almacen.getBytesDatos() / busTicks,
+                    (double) almacen.getBytesDatos() / almacen.getMuestras(), almacen.getBytesEnDisco() / 1e6);
+            System.out.printf("Día completo estimado: %.0f MB%n", almacen.getBytesDatos() / busTicks * flota * TICKS_POR_DIA / 1e6);
+            System.out.printf("Registro por tick: p50 %.3f ms, p99 %.3f ms, máx %.3f ms%n",
+                    tiempos[ticks / 2] / 1e6, tiempos[(int) (ticks * 0.99)] / 1e6, tiempos[ticks - 1] / 1e6);
+
+            // Consultas
+            long inicio = System.nanoTime();
+            long muestrasLeidas = 0;
+            int consultasTrayectoria = 200;
+            for (int i = 0; i < consultasTrayectoria; i++) {
+                TrayectoriaDTO trayectoria = almacen.trayectoria(1 + aleatorio.nextInt(flota), 0, ticks);
+                muestrasLeidas += trayectoria.getCantidad();
+            }
+            System.out.printf("Trayectoria completa de un autobús: %.3f ms en promedio (%d muestras)%n",
+                    (System.nanoTime() - inicio) / 1e6 / consultasTrayectoria, muestrasLeidas / consultasTrayectoria);
+
+            inicio = System.nanoTime();
+            int errores = 0;
+            for (Map.Entry<Long, List<AutobusDTO>> entrada : esperados.entrySet()) {
+                List<AutobusDTO> obtenidos = almacen.flotaEnTick(entrada.getKey());
+                errores += contarDiferencias(entrada.getValue(), obtenidos);
+            }
+            System.out.printf("Flota en un tick: %.2f ms en promedio%n", (System.nanoTime() - inicio) / 1e6 / esperados.size());
+            if (errores > 0) {
+                System.err.println("El historial no coincide con el estado real en " + errores + " autobuses.");
+                System.exit(1);
+            }
+            System.out.println("Verificación: el historial coincide con el estado real en " + esperados.size() + " ticks.");
+        } finally {
+            Files.deleteIfExists(directorio);
+        }
+    }
+
+    private static int contarDiferencias(List<AutobusDTO> esperados, List<AutobusDTO> obtenidos) {
+        if (esperados.size() != obtenidos.size()) {
+            return Math.abs(esperados.size() - obtenidos.size());
+        }
+        int diferencias = 0;
+        for (int i = 0; i < esperados.size(); i++) {
+            AutobusDTO e = esperados.get(i);
+            AutobusDTO o = obtenidos.get(i);
+            if (e.getId() != o.getId() || e.getX() != o.getX() || e.getY() != o.getY() || e.getEstado() != o.getEstado()) {
+                diferencias++;
+            }
+        }
+        return diferencias;
+    }
+}
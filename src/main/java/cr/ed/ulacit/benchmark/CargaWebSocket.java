@@ -0,0 +1,354 @@
+package cr.ed.ulacit.benchmark;
+
+import cr.ed.ulacit.servidor.GeneradorEscenarios;
+import cr.ed.ulacit.servidor.Servidor;
+import cr.ed.ulacit.servidor.ServidorWebSocket;
+import cr.ed.ulacit.servidor.Simulacion;
+import jdk.jfr.consumer.RecordingStream;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Prueba de carga del {@link ServidorWebSocket}: levanta un {@link Servidor} con una red sintética y el
+ * acceso WebSocket en este proceso, y le conecta miles de sesiones locales atendidas por un solo hilo con
+ * un {@link Selector}.
+ * <p>
+ * Las sesiones normales leen todo lo que llega y anotan, por cada tick, la latencia desde el instante en
+ * que estaba programado hasta que terminó de llegar el marco. Las sesiones lentas ({@code --lentas}) dejan
+ * de leer después del saludo, para comprobar que el servidor las descarta sin afectar a las demás.
+ * </p>
+ * <p>
+ * Al final compara con tres presupuestos y termina con código 1 si alguno no se cumple: el p99 de la
+ * duración del tick (eventos {@code cr.ed.ulacit.Tick} de JFR, para ver que las sesiones no cargan al hilo
+ * de simulación), el p99 de la latencia y que las sesiones normales no pierdan ticks.
+ * </p>
+ * <p>
+ * Uso: {@code CargaWebSocket [--sesiones N] [--lentas N] [--binario fraccion] [--duracion S]
+ * [--sintetica config] [--tick-p99 ms] [--latencia-p99 ms]}
+ * </p>
+ * <p>
+ * Cada sesión usa dos descriptores de archivo en este proceso (el del cliente y el del servidor), así que
+ * el límite del sistema ({@code ulimit -n}) debe ser mayor que el doble de las sesiones.
+ * </p>
+ */
+public class CargaWebSocket {
+
+    private static final long CALENTAMIENTO_MS = 5000;
+    private static final long ESPERA_EVENTOS_JFR_MS = 2000;
+    private static final int LATENCIA_MAXIMA_MS = 2000; // Las mayores se cuentan en la última casilla
+    private static final String PREFIJO_TICK = "{\"tipo\":\"tick\",\"tick\":";
+
+    public static void main(String[] args) throws Exception {
+        int numSesiones = 2000;
+        int lentas = 0;
+        double fraccionBinaria = 0;
+        int duracion = 30;
+        String sintetica = "rutas=10,viajes=20,intervalo=15,compartidas=0.2";
+        double limiteTickMs = Simulacion.TICK_SIMULACION / 2.0;
+        double limiteLatenciaMs = 2.0 * Simulacion.TICK_SIMULACION;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--sesiones":
+                    numSesiones = Integer.parseInt(args[++i]);
+                    break;
+                case "--lentas":
+                    lentas = Integer.parseInt(args[++i]);
+                    break;
+                case "--binario":
+                    fraccionBinaria = Double.parseDouble(args[++i]);
+                    break;
+                case "--duracion":
+                    duracion = Integer.parseInt(args[++i]);
+                    break;
+                case "--sintetica":
+                    sintetica = args[++i];
+                    break;
+                case "--tick-p99":
+                    limiteTickMs = Double.parseDouble(args[++i]);
+                    break;
+                case "--latencia-p99":
+                    limiteLatenciaMs = Double.parseDouble(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Opción desconocida: " + args[i]);
+            }
+        }
+
+        GeneradorEscenarios generador = GeneradorEscenarios.desdeTexto(sintetica);
+        long epoca = System.currentTimeMillis();
+        Servidor servidor = new Servidor(generador.generar(), 0, epoca, 4L * 1024 * 1024, 16 * 1024);
+        servidor.habilitarWebSocket(0);
+        servidor.arrancar();
+        ServidorWebSocket webSocket = servidor.getWebSocket();
+
+        List<Long> duracionesTick = new ArrayList<>();
+        RecordingStream flujoJfr = new RecordingStream();
+        flujoJfr.enable("cr.ed.ulacit.Tick").withThreshold(Duration.ZERO);
+        flujoJfr.onEvent("cr.ed.ulacit.Tick", evento -> {
+            synchronized (duracionesTick) {
+                duracionesTick.add(evento.getDuration().toNanos());
+            }
+        });
+        flujoJfr.startAsync();
+
+        Clientes clientes = new Clientes(epoca);
+        int binarias = (int) Math.round(numSesiones * fraccionBinaria);
+        for (int i = 0; i < numSesiones + lentas; i++) {
+            clientes.abrir(webSocket.getPuerto(), i < binarias, i >= numSesiones);
+        }
+        clientes.start();
+        System.out.printf("%d sesiones (%d binarias) y %d lentas sobre %d autobuses (%s)%n",
+                numSesiones, binarias, lentas, generador.getAutobuses(), generador);
+
+        Thread.sleep(CALENTAMIENTO_MS);
+        synchronized (duracionesTick) {
+            duracionesTick.clear();
+        }
+        long tickInicial = (System.currentTimeMillis() - epoca) / Simulacion.TICK_SIMULACION;
+        clientes.medir(tickInicial, Long.MAX_VALUE);
+        Thread.sleep(duracion * 1000L);
+        long tickFinal = (System.currentTimeMillis() - epoca) / Simulacion.TICK_SIMULACION;
+        clientes.medir(tickInicial, tickFinal);
+        Thread.sleep(ESPERA_EVENTOS_JFR_MS); // Los ticks hasta tickFinal terminan de llegar
+        flujoJfr.close();
+        int sesionesServidor = webSocket.getSesiones();
+        long descartados = webSocket.getMarcosDescartados();
+        long bytes = webSocket.getBytesEnviados();
+        clientes.detener();
+        servidor.detener();
+
+        long[] ticks;
+        synchronized (duracionesTick) {
+            ticks = duracionesTick.stream().mapToLong(Long::longValue).sorted().toArray();
+        }
+        double tickP99 = ticks.length == 0 ? 0 : ticks[Math.min(ticks.length - 1, (int) (ticks.length * 0.99))] / 1e6;
+        long esperados = tickFinal - tickInicial;
+        long perdidos = 0;
+        int abiertas = 0;
+        for (Sesion sesion : clientes.sesiones) {
+            if (!sesion.lenta) {
+                perdidos += Math.max(0, esperados - sesion.recibidos - 1); // Tolera el tick del borde
+                abiertas += sesion.abierta ? 1 : 0;
+            }
+        }
+        int latenciaP50 = clientes.percentilLatencia(0.5);
+        int latenciaP99 = clientes.percentilLatencia(0.99);
+
+        System.out.printf("Sesiones abiertas %d de %d; en el servidor al final %d%n",
+                abiertas, numSesiones, sesionesServidor);
+        System.out.printf("Ticks %d: tick p99 %.2f ms | latencia p50 %d ms p99 %d ms | ticks perdidos %d"
+                        + " | ticks descartados por el servidor %d | %.1f MB/s enviados%n",
+                esperados, tickP99, latenciaP50, latenciaP99, perdidos, descartados,
+                bytes / 1e6 / ((CALENTAMIENTO_MS + duracion * 1000L) / 1000.0));
+        List<String> fallas = new ArrayList<>();
+        if (abiertas < numSesiones) {
+            fallas.add((numSesiones - abiertas) + " sesiones sin abrir");
+        }
+        if (tickP99 > limiteTickMs) {
+            fallas.add(String.format("tick p99 %.2f ms", tickP99));
+        }
+        if (latenciaP99 > limiteLatenciaMs) {
+            fallas.add("latencia p99 " + latenciaP99 + " ms");
+        }
+        if (perdidos > 0) {
+            fallas.add(perdidos + " ticks perdidos");
+        }
+        System.out.println(fallas.isEmpty() ? "OK" : "FALLA: " + String.join(", ", fallas));
+        System.exit(fallas.isEmpty() ? 0 : 1);
+    }
+
+    /** Todas las sesiones del cliente, atendidas por un solo hilo. */
+    private static final class Clientes extends Thread {
+        private final Selector selector;
+        private final long epoca;
+        private final List<Sesion> sesiones = new ArrayList<>();
+        private final ByteBuffer lectura = ByteBuffer.allocate(256 * 1024); // Compartido: solo se lee en este hilo
+        private final long[] latencias = new long[LATENCIA_MAXIMA_MS + 1]; // Histograma de un ms por casilla
+        private volatile long tickInicial = Long.MAX_VALUE;
+        private volatile long tickFinal = Long.MAX_VALUE;
+        private volatile boolean detenido;
+
+        Clientes(long epoca) throws IOException {
+            super("clientes-websocket");
+            setDaemon(true);
+            this.selector = Selector.open();
+            this.epoca = epoca;
+        }
+
+        /** Conecta una sesión y envía su saludo; debe llamarse antes de {@link #start()}. */
+        void abrir(int puerto, boolean binaria, boolean lenta) throws IOException {
+            SocketChannel canal = SocketChannel.open(new InetSocketAddress("localhost", puerto));
+            byte[] clave = new byte[16];
+            ThreadLocalRandom.current().nextBytes(clave);
+            String saludo = "GET /" + (binaria ? "?formato=binario" : "") + " HTTP/1.1\r\nHost: localhost\r\n"
+                    + "Upgrade: websocket\r\nConnection: Upgrade\r\nSec-WebSocket-Version: 13\r\n"
+                    + "Sec-WebSocket-Key: " + Base64.getEncoder().encodeToString(clave) + "\r\n\r\n";
+            canal.write(ByteBuffer.wrap(saludo.getBytes(StandardCharsets.ISO_8859_1)));
+            canal.configureBlocking(false);
+            Sesion sesion = new Sesion(canal, lenta);
+            canal.register(selector, SelectionKey.OP_READ, sesion);
+            sesiones.add(sesion);
+        }
+
+        void medir(long desde, long hasta) {
+            tickInicial = desde;
+            tickFinal = hasta;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!detenido) {
+                    selector.select(100);
+                    long ahora = System.currentTimeMillis();
+                    for (SelectionKey clave : selector.selectedKeys()) {
+                        Sesion sesion = (Sesion) clave.attachment();
+                        lectura.clear();
+                        int leidos;
+                        try {
+                            leidos = sesion.canal.read(lectura);
+                        } catch (IOException e) {
+                            leidos = -1;
+                        }
+                        if (leidos < 0) {
+                            sesion.abierta = false;
+                            clave.cancel();
+                            continue;
+                        }
+                        lectura.flip();
+                        sesion.consumir(lectura, ahora, this);
+                        if (sesion.lenta && sesion.abierta) {
+                            clave.interestOps(0); // Deja de leer: el servidor debe descartar sus ticks
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                }
+            } catch (IOException e) {
+                System.err.println("Error en los clientes: " + e.getMessage());
+            }
+        }
+
+        void registrar(long tick, long ahora, Sesion sesion) {
+            if (tick > tickInicial && tick <= tickFinal) {
+                sesion.recibidos++;
+                long latencia = ahora - (epoca + tick * Simulacion.TICK_SIMULACION);
+                latencias[(int) Math.max(0, Math.min(LATENCIA_MAXIMA_MS, latencia))]++;
+            }
+        }
+
+        /** Solo después de {@link #detener()}. */
+        int percentilLatencia(double p) {
+            long total = Arrays.stream(latencias).sum();
+            long acumulado = 0;
+            for (int ms = 0; ms < latencias.length; ms++) {
+                acumulado += latencias[ms];
+                if (acumulado >= Math.ceil(p * total)) {
+                    return ms;
+                }
+            }
+            return LATENCIA_MAXIMA_MS;
+        }
+
+        void detener() throws IOException, InterruptedException {
+            detenido = true;
+            selector.wakeup();
+            join();
+            for (Sesion sesion : sesiones) {
+                sesion.canal.close();
+            }
+            selector.close();
+        }
+    }
+
+    /**
+     * Una sesión del cliente. Solo guarda la cabecera de cada marco y sus primeros bytes, de donde saca el
+     * número de tick; el resto del marco se salta sin copiarlo.
+     */
+    private static final class Sesion {
+        private final SocketChannel canal;
+        private final boolean lenta;
+        private boolean abierta;
+        private final StringBuilder saludo = new StringBuilder();
+        private final byte[] cabecera = new byte[10];
+        private int enCabecera;
+        private final byte[] prefijo = new byte[PREFIJO_TICK.length() + 20];
+        private int enPrefijo;
+        private long restantes = -1; // Bytes del contenido del marco actual por leer; -1 mientras se lee la cabecera
+        private long largo;
+        private long recibidos; // Ticks de la medición
+
+        Sesion(SocketChannel canal, boolean lenta) {
+            this.canal = canal;
+            this.lenta = lenta;
+        }
+
+        void consumir(ByteBuffer datos, long ahora, Clientes clientes) {
+            while (!abierta && datos.hasRemaining()) {
+                saludo.append((char) datos.get());
+                if (saludo.length() >= 4 && saludo.lastIndexOf("\r\n\r\n") == saludo.length() - 4) {
+                    abierta = saludo.toString().startsWith("HTTP/1.1 101");
+                    if (!abierta) {
+                        return;
+                    }
+                }
+            }
+            while (datos.hasRemaining()) {
+                if (restantes < 0) {
+                    cabecera[enCabecera++] = datos.get();
+                    int necesarios = enCabecera < 2 ? 2 : 2 + ((cabecera[1] & 0x7F) == 126 ? 2 : (cabecera[1] & 0x7F) == 127 ? 8 : 0);
+                    if (enCabecera == necesarios) {
+                        int corto = cabecera[1] & 0x7F;
+                        largo = corto == 126 ? ByteBuffer.wrap(cabecera, 2, 2).getShort() & 0xFFFF
+                                : corto == 127 ? ByteBuffer.wrap(cabecera, 2, 8).getLong() : corto;
+                        restantes = largo;
+                        enCabecera = 0;
+                        enPrefijo = 0;
+                    }
+                } else {
+                    int copiar = (int) Math.min(datos.remaining(), Math.min(restantes, prefijo.length - enPrefijo));
+                    datos.get(prefijo, enPrefijo, copiar);
+                    enPrefijo += copiar;
+                    restantes -= copiar;
+                    int saltar = (int) Math.min(datos.remaining(), restantes);
+                    datos.position(datos.position() + saltar);
+                    restantes -= saltar;
+                }
+                if (restantes == 0) {
+                    long tick = tickDelMarco();
+                    if (tick >= 0) {
+                        clientes.registrar(tick, ahora, this);
+                    }
+                    restantes = -1;
+                }
+            }
+        }
+
+        /** @return El tick del marco que acaba de terminar, o -1 si no es un tick. */
+        private long tickDelMarco() {
+            int opcode = cabecera[0] & 0x0F;
+            if (opcode == 2 && enPrefijo >= 9 && prefijo[0] == 1) {
+                return ByteBuffer.wrap(prefijo, 1, 8).getLong();
+            }
+            if (opcode == 1 && new String(prefijo, 0, enPrefijo, StandardCharsets.UTF_8).startsWith(PREFIJO_TICK)) {
+                long tick = 0;
+                for (int i = PREFIJO_TICK.length(); i < enPrefijo && prefijo[i] >= '0' && prefijo[i] <= '9'; i++) {
+                    tick = tick * 10 + (prefijo[i] - '0');
+                }
+                return tick;
+            }
+            return -1;
+        }
+    }
+}
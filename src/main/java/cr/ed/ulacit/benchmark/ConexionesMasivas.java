@@ -0,0 +1,339 @@
+package cr.ed.ulacit.benchmark;
+
+import cr.ed.ulacit.protocolo.Compresion;
+import cr.ed.ulacit.protocolo.Saludo;
+import cr.ed.ulacit.servidor.ClientHandler;
+import cr.ed.ulacit.servidor.GeneradorEscenarios;
+import cr.ed.ulacit.servidor.Servidor;
+import cr.ed.ulacit.servidor.Simulacion;
+import jdk.jfr.consumer.RecordingStream;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prueba de conexiones masivas del modo con hilos virtuales del {@link Servidor}
+ * ({@link Servidor#habilitarHilosVirtuales()}): levanta el servidor en este proceso y le conecta diez mil
+ * clientes desde un proceso hijo, cada uno con su hilo virtual que lee y descarta lo que llega.
+ * <p>
+ * Con todas las conexiones abiertas mide el heap que queda después de una recolección, por conexión, y
+ * los hilos de plataforma del servidor. Luego parte de los clientes se corta de golpe (con RST) y otra
+ * parte deja de leer sin cerrar la conexión, como un cliente colgado o un equipo que desapareció, y mide
+ * cuánto tarda el servidor en dar de baja a cada grupo.
+ * </p>
+ * <p>
+ * Al final compara con cuatro presupuestos y termina con código 1 si alguno no se cumple: que todas las
+ * conexiones se mantengan, la memoria por conexión, el p99 de la duración del tick (eventos
+ * {@code cr.ed.ulacit.Tick} de JFR) y el tiempo de detección de cada grupo. Una conexión cortada se nota
+ * apenas su hilo lector vuelve a correr, pero con la CPU saturada espera su turno detrás de los escritores;
+ * una que no lee, cuando se llenan los búferes del socket y pasa el plazo sin progreso del
+ * {@link ClientHandler}.
+ * </p>
+ * <p>
+ * Uso: {@code ConexionesMasivas [--conexiones N] [--muertas N] [--cortadas N] [--duracion S]
+ * [--sintetica config] [--memoria-conexion KB] [--tick-p99 ms] [--deteccion-cortadas ms]
+ * [--deteccion-muertas ms]}
+ * </p>
+ * <p>
+ * Los clientes van en otro proceso para que cada uno use un solo descriptor de archivo por conexión; aun
+ * así el límite del sistema ({@code ulimit -n}) debe ser mayor que la cantidad de conexiones.
+ * </p>
+ */
+public class ConexionesMasivas {
+
+    private static final long CALENTAMIENTO_MS = 5000;
+    private static final long ESPERA_CONEXIONES_MS = 120000;
+    private static final long ESPERA_DETECCION_MS = 60000;
+    private static final long ESPERA_EVENTOS_JFR_MS = 2000;
+    private static final int CONEXIONES_SIMULTANEAS = 256; // Para no desbordar la cola de aceptación
+    private static final int BUFFER_RECEPCION_MUERTAS = 16 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--clientes")) {
+            clientes(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+                    Integer.parseInt(args[4]));
+            return;
+        }
+        int numConexiones = 10000;
+        int muertas = 100;
+        int cortadas = 100;
+        int duracion = 20;
+        String sintetica = "rutas=2,viajes=4,intervalo=15";
+        long limiteMemoriaKb = 64;
+        double limiteTickMs = Simulacion.TICK_SIMULACION / 2.0;
+        long limiteCortadasMs = 5000;
+        long limiteMuertasMs = 25000;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--conexiones":
+                    numConexiones = Integer.parseInt(args[++i]);
+                    break;
+                case "--muertas":
+                    muertas = Integer.parseInt(args[++i]);
+                    break;
+                case "--cortadas":
+                    cortadas = Integer.parseInt(args[++i]);
+                    break;
+                case "--duracion":
+                    duracion = Integer.parseInt(args[++i]);
+                    break;
+                case "--sintetica":
+                    sintetica = args[++i];
+                    break;
+                case "--memoria-conexion":
+                    limiteMemoriaKb = Long.parseLong(args[++i]);
+                    break;
+                case "--tick-p99":
+                    limiteTickMs = Double.parseDouble(args[++i]);
+                    break;
+                case "--deteccion-cortadas":
+                    limiteCortadasMs = Long.parseLong(args[++i]);
+                    break;
+                case "--deteccion-muertas":
+                    limiteMuertasMs = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Opción desconocida: " + args[i]);
+            }
+        }
+
+        GeneradorEscenarios generador = GeneradorEscenarios.desdeTexto(sintetica);
+        Servidor servidor = new Servidor(generador.generar(), 0, System.currentTimeMillis(), 4L * 1024 * 1024, 16 * 1024);
+        servidor.habilitarHilosVirtuales();
+        servidor.arrancar();
+
+        List<Long> duracionesTick = new ArrayList<>();
+        RecordingStream flujoJfr = new RecordingStream();
+        flujoJfr.enable("cr.ed.ulacit.Tick").withThreshold(Duration.ZERO);
+        flujoJfr.onEvent("cr.ed.ulacit.Tick", evento -> {
+            synchronized (duracionesTick) {
+                duracionesTick.add(evento.getDuration().toNanos());
+            }
+        });
+        flujoJfr.startAsync();
+        Thread.sleep(CALENTAMIENTO_MS);
+        long heapBase = heapUsado();
+        int hilosBase = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process hijo = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                ConexionesMasivas.class.getName(), "--clientes", String.valueOf(servidor.getPuerto()),
+                String.valueOf(numConexiones), String.valueOf(muertas), String.valueOf(cortadas))
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        BufferedReader respuestas = new BufferedReader(new InputStreamReader(hijo.getInputStream()));
+        PrintWriter ordenes = new PrintWriter(hijo.getOutputStream(), true);
+
+        long inicio = System.currentTimeMillis();
+        int abiertas = Integer.parseInt(respuestas.readLine().split(" ")[1]);
+        while (servidor.getClientesConectados() < abiertas && System.currentTimeMillis() - inicio < ESPERA_CONEXIONES_MS) {
+            Thread.sleep(100);
+        }
+        System.out.printf("%d de %d conexiones abiertas en %.1f s; en el servidor %d, sobre %d autobuses (%s)%n",
+                abiertas, numConexiones, (System.currentTimeMillis() - inicio) / 1000.0,
+                servidor.getClientesConectados(), generador.getAutobuses(), generador);
+
+        Thread.sleep(CALENTAMIENTO_MS);
+        synchronized (duracionesTick) {
+            duracionesTick.clear();
+        }
+        ordenes.println("medir");
+        long bytesAntes = Long.parseLong(respuestas.readLine());
+        Thread.sleep(duracion * 1000L);
+        ordenes.println("medir");
+        long bytesDespues = Long.parseLong(respuestas.readLine());
+        Thread.sleep(ESPERA_EVENTOS_JFR_MS);
+        flujoJfr.close();
+        int mantenidas = servidor.getClientesConectados();
+        long memoriaPorConexion = (heapUsado() - heapBase) / Math.max(1, mantenidas);
+        int hilos = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        // Cortar de golpe unas conexiones y dejar de leer otras, y medir cuándo las da de baja el servidor
+        ordenes.println("cortar");
+        respuestas.readLine();
+        long t0 = System.nanoTime();
+        long deteccionCortadas = -1;
+        long deteccionMuertas = -1;
+        while (deteccionMuertas < 0 && System.nanoTime() - t0 < ESPERA_DETECCION_MS * 1_000_000) {
+            int conectados = servidor.getClientesConectados();
+            long transcurrido = (System.nanoTime() - t0) / 1_000_000;
+            if (deteccionCortadas < 0 && conectados <= mantenidas - cortadas) {
+                deteccionCortadas = transcurrido;
+            }
+            if (conectados <= mantenidas - cortadas - muertas) {
+                deteccionMuertas = transcurrido;
+            }
+            Thread.sleep(10);
+        }
+        int restantes = servidor.getClientesConectados();
+        ordenes.println("fin");
+        hijo.waitFor();
+        servidor.detener();
+
+        long[] ticks;
+        synchronized (duracionesTick) {
+            ticks = duracionesTick.stream().mapToLong(Long::longValue).sorted().toArray();
+        }
+        double tickP99 = ticks.length == 0 ? 0 : ticks[Math.min(ticks.length - 1, (int) (ticks.length * 0.99))] / 1e6;
+        int vivas = numConexiones - muertas - cortadas;
+        System.out.printf("Mantenidas %d | memoria %.1f KB por conexión | hilos de plataforma %d (antes %d) | tick p99 %.2f ms%n",
+                mantenidas, memoriaPorConexion / 1024.0, hilos, hilosBase, tickP99);
+        System.out.printf("Recibido por las conexiones vivas: %.1f KB/s cada una (cola de %d actualizaciones)%n",
+                (bytesDespues - bytesAntes) / 1024.0 / duracion / Math.max(1, vivas), ClientHandler.ACTUALIZACIONES_PENDIENTES);
+        System.out.printf("Detección: %d cortadas en %d ms | %d sin leer en %d ms | quedan %d conectadas%n",
+                cortadas, deteccionCortadas, muertas, deteccionMuertas, restantes);
+
+        boolean ok = true;
+        if (mantenidas < numConexiones) {
+            System.out.println("FALLA: el servidor mantuvo " + mantenidas + " de " + numConexiones + " conexiones");
+            ok = false;
+        }
+        if (memoriaPorConexion > limiteMemoriaKb * 1024) {
+            System.out.printf("FALLA: memoria por conexión %.1f KB > %d KB%n", memoriaPorConexion / 1024.0, limiteMemoriaKb);
+            ok = false;
+        }
+        if (tickP99 > limiteTickMs) {
+            System.out.printf("FALLA: tick p99 %.2f ms > %.2f ms%n", tickP99, limiteTickMs);
+            ok = false;
+        }
+        if (deteccionCortadas < 0 || deteccionCortadas > limiteCortadasMs) {
+            System.out.println("FALLA: conexiones cortadas detectadas en " + deteccionCortadas + " ms > " + limiteCortadasMs + " ms");
+            ok = false;
+        }
+        if (deteccionMuertas < 0 || deteccionMuertas > limiteMuertasMs) {
+            System.out.println("FALLA: conexiones sin leer detectadas en " + deteccionMuertas + " ms > " + limiteMuertasMs + " ms");
+            ok = false;
+        }
+        System.out.println(ok ? "OK" : "FALLA");
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static long heapUsado() throws InterruptedException {
+        System.gc();
+        Thread.sleep(500);
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * El proceso hijo: abre las conexiones, cada una con un hilo virtual que lee y descarta, y obedece las
+     * órdenes del padre por la entrada estándar ({@code medir}, {@code cortar}, {@code fin}). Las primeras
+     * {@code muertas} conexiones son las que dejan de leer y las siguientes {@code cortadas} las que se cortan.
+     */
+    private static void clientes(int puerto, int n, int muertas, int cortadas) throws Exception {
+        Socket[] sockets = new Socket[n];
+        LongAdder bytesVivas = new LongAdder();
+        AtomicInteger abiertas = new AtomicInteger();
+        CountDownLatch intentadas = new CountDownLatch(n);
+        Semaphore conectando = new Semaphore(CONEXIONES_SIMULTANEAS);
+        AtomicBoolean detenidas = new AtomicBoolean();
+        for (int i = 0; i < n; i++) {
+            int indice = i;
+            boolean muerta = i < muertas;
+            boolean viva = i >= muertas + cortadas;
+            conectando.acquire();
+            Thread.ofVirtual().start(() -> {
+                try {
+                    Socket socket = conectar(puerto, muerta, conectando);
+                    if (socket != null) {
+                        sockets[indice] = socket;
+                        abiertas.incrementAndGet();
+                    }
+                    intentadas.countDown();
+                    if (socket != null) {
+                        leer(socket, muerta ? detenidas : null, viva ? bytesVivas : null);
+                    }
+                } catch (IOException e) {
+                    // Cortada, o el servidor la cerró
+                }
+            });
+        }
+        intentadas.await();
+        System.out.println("abiertas " + abiertas.get());
+
+        BufferedReader ordenes = new BufferedReader(new InputStreamReader(System.in));
+        String orden;
+        while ((orden = ordenes.readLine()) != null) {
+            switch (orden) {
+                case "medir":
+                    System.out.println(bytesVivas.sum());
+                    break;
+                case "cortar":
+                    detenidas.set(true);
+                    for (int i = muertas; i < muertas + cortadas; i++) {
+                        if (sockets[i] != null) {
+                            sockets[i].setSoLinger(true, 0); // RST en lugar de FIN
+                            sockets[i].close();
+                        }
+                    }
+                    System.out.println("hecho");
+                    break;
+                case "fin":
+                    System.exit(0);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Orden desconocida: " + orden);
+            }
+        }
+    }
+
+    /**
+     * Abre una conexión y hace el saludo. Libera su lugar entre las conexiones simultáneas al terminar,
+     * con o sin éxito.
+     *
+     * @return El socket, o {@code null} si no se pudo conectar.
+     */
+    private static Socket conectar(int puerto, boolean muerta, Semaphore conectando) {
+        Socket socket = new Socket();
+        try {
+            if (muerta) {
+                socket.setReceiveBufferSize(BUFFER_RECEPCION_MUERTAS); // Se llena pronto, como si no respondiera
+            }
+            socket.connect(new InetSocketAddress("localhost", puerto));
+            DataOutputStream salida = new DataOutputStream(socket.getOutputStream());
+            new Saludo(Compresion.NINGUNA).escribir(salida);
+            salida.flush();
+            Saludo.leerRespuesta(new DataInputStream(socket.getInputStream()));
+            return socket;
+        } catch (IOException e) {
+            System.err.println("No se pudo conectar: " + e.getMessage());
+            return null;
+        } finally {
+            conectando.release();
+        }
+    }
+
+    /**
+     * Lee y descarta hasta que se cierre la conexión o, si hay señal de detención, hasta que se active.
+     *
+     * @param detener Si no es {@code null}, se deja de leer (sin cerrar) cuando se activa.
+     * @param bytes   Si no es {@code null}, donde se suman los bytes leídos.
+     */
+    private static void leer(Socket socket, AtomicBoolean detener, LongAdder bytes) throws IOException {
+        InputStream entrada = socket.getInputStream();
+        byte[] buffer = new byte[4096];
+        int leidos;
+        while ((detener == null || !detener.get()) && (leidos = entrada.read(buffer)) >= 0) {
+            if (bytes != null) {
+                bytes.add(leidos);
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package cr.ed.ulacit.benchmark;
+
+import cr.ed.ulacit.Autobus;
+import cr.ed.ulacit.EstadoAutobus;
+import cr.ed.ulacit.Parada;
+import cr.ed.ulacit.Ruta;
+import cr.ed.ulacit.dto.AutobusDTO;
+import cr.ed.ulacit.dto.ParadaDTO;
+import cr.ed.ulacit.dto.RedDTO;
+import cr.ed.ulacit.dto.RutaDTO;
+import cr.ed.ulacit.servidor.EventoLog;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Una flota de autobuses reales moviéndose sobre una red sintética, para los benchmarks que necesitan
+ * el estado de muchos autobuses sin levantar un servidor.
+ * <p>
+ * Los autobuses arrancan escalonados, se detienen cinco segundos de simulación en cada parada y, al
+ * terminar su ruta, vuelven a empezarla con el mismo ID, así que la flota nunca se vacía.
+ * </p>
+ */
+final class FlotaSintetica {
+
+    private static final int PARADAS_POR_RUTA = 12;
+    private static final int AUTOBUSES_POR_RUTA = 10;
+    private static final double VELOCIDAD_BASE = 0.01;
+    private static final long MS_POR_TICK = 50;
+    private static final long TIEMPO_PARADA_MS = 5000;
+    private static final int ESCALONADO_TICKS = 2000;
+    private static final Color[] COLORES = {Color.RED, Color.BLUE, Color.GREEN, Color.ORANGE, Color.MAGENTA,
+            Color.CYAN, Color.PINK, Color.YELLOW, Color.GRAY, Color.BLACK};
+
+    private final RedDTO red;
+    private final List<Autobus> autobuses;
+    private final Random aleatorio;
+
+    /**
+     * @param flota     La cantidad de autobuses.
+     * @param aleatorio La fuente de aleatoriedad (con semilla, para repetir la misma flota).
+     */
+    FlotaSintetica(int flota, Random aleatorio) {
+        this.aleatorio = aleatorio;
+        int numRutas = Math.max(1, flota / AUTOBUSES_POR_RUTA);
+        List<Ruta> rutas = new ArrayList<>();
+        List<RutaDTO> rutasDTO = new ArrayList<>();
+        int idParada = 1;
+        for (int r = 0; r < numRutas; r++) {
+            List<Parada> paradas = new ArrayList<>();
+            List<ParadaDTO> paradasDTO = new ArrayList<>();
+            for (int i = 0; i < PARADAS_POR_RUTA; i++, idParada++) {
+                Parada parada = new Parada(idParada, "Parada " + idParada, 50 + aleatorio.nextInt(1100), 50 + aleatorio.nextInt(700));
+                paradas.add(parada);
+                paradasDTO.add(new ParadaDTO(parada.getId(), parada.getNombre(), parada.getCoordX(), parada.getCoordY()));
+            }
+            rutas.add(new Ruta("Ruta " + (r + 1), paradas));
+            rutasDTO.add(new RutaDTO("Ruta " + (r + 1), paradasDTO));
+        }
+        this.red = new RedDTO(rutasDTO);
+
+        this.autobuses = new ArrayList<>(flota);
+        for (int i = 0; i < flota; i++) {
+            Autobus bus = new Autobus(i + 1, COLORES[i % COLORES.length], rutas.get(i % numRutas));
+            bus.iniciarRuta();
+            autobuses.add(bus);
+        }
+    }
+
+    /** @return La red sobre la que circula la flota. */
+    RedDTO getRed() {
+        return red;
+    }
+
+    /**
+     * @return Los autobuses. Un autobús que termina su ruta se reemplaza por uno nuevo en la misma posición.
+     */
+    List<Autobus> getAutobuses() {
+        return autobuses;
+    }
+
+    /**
+     * Avanza la flota un tick.
+     *
+     * @param tick El número de tick, desde 0.
+     * @return Los eventos ocurridos en el tick, con los mismos mensajes que genera el servidor.
+     */
+    List<EventoLog> avanzar(long tick) {
+        long ahora = tick * MS_POR_TICK;
+        List<EventoLog> eventos = new ArrayList<>();
+        String hora = String.format("%02d:%02d:%02d", 5 + tick / 3600, (tick / 60) % 60, tick % 60);
+        for (int i = 0; i < autobuses.size(); i++) {
+            Autobus bus = autobuses.get(i);
+            if (bus.getEstado() == EstadoAutobus.DETENIDO) {
+                if (ahora - bus.getTiempoDetenido() < TIEMPO_PARADA_MS) {
+                    continue;
+                }
+                bus.reanudarRuta();
+                if (bus.getEstado() == EstadoAutobus.FINALIZADO) {
+                    eventos.add(new EventoLog(hora, "El autobús " + bus.getId() + " ha finalizado su ruta."));
+                    bus = new Autobus(bus.getId(), bus.getColor(), bus.getRuta());
+                    bus.iniciarRuta();
+                    autobuses.set(i, bus);
+                    eventos.add(new EventoLog(hora, "El autobús " + bus.getId() + " ha iniciado su ruta."));
+                } else {
+                    eventos.add(new EventoLog(hora, "El autobús " + bus.getId() + " ha salido de la parada."));
+                }
+            }
+            // Al principio cada autobús arranca después de una espera distinta
+            if (tick < i % ESCALONADO_TICKS) {
+                continue;
+            }
+            bus.mover(VELOCIDAD_BASE * (1.0 + aleatorio.nextDouble() * 0.5 - 0.25), ahora);
+            if (bus.getEstado() == EstadoAutobus.DETENIDO) {
+                Parada parada = bus.getRuta().getParadaPorIndice(bus.getParadaDestinoIndex());
+                eventos.add(new EventoLog(hora, "El autobús " + bus.getId() + " ha llegado a la parada " + parada.getNombre() + "."));
+            }
+        }
+        return eventos;
+    }
+
+    /** @return El estado de cada autobús, como se transmite a los clientes. */
+    List<AutobusDTO> estado() {
+        List<AutobusDTO> dtos = new ArrayList<>(autobuses.size());
+        for (Autobus bus : autobuses) {
+            dtos.add(new AutobusDTO(bus.getId(), bus.getColor(), bus.getX(), bus.getY(), bus.getEstado()));
+        }
+        return dtos;
+    }
+}
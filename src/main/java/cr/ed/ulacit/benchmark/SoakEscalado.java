@@ -0,0 +1,302 @@
+package cr.ed.ulacit.benchmark;
+
+import cr.ed.ulacit.RedTransporte;
+import cr.ed.ulacit.dto.UpdatePayload;
+import cr.ed.ulacit.protocolo.Compresion;
+import cr.ed.ulacit.protocolo.ConexionSimulacion;
+import cr.ed.ulacit.servidor.GeneradorEscenarios;
+import cr.ed.ulacit.servidor.Servidor;
+import cr.ed.ulacit.servidor.Simulacion;
+import jdk.jfr.consumer.RecordingStream;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prueba de resistencia de extremo a extremo a escalas crecientes: en cada paso genera una red sintética
+ * ({@link GeneradorEscenarios}), levanta un {@link Servidor} real en este proceso, le conecta una población
+ * de clientes locales por TCP y, pasado un calentamiento, mide durante el tiempo indicado.
+ * <p>
+ * En cada paso verifica tres presupuestos y termina con código 1 si alguno no se cumple:
+ * <ul>
+ *     <li>Duración del tick: el p99 de los eventos {@code cr.ed.ulacit.Tick} de JFR, leídos en vivo con un
+ *     {@link RecordingStream}.</li>
+ *     <li>Latencia de difusión: el p99 de lo que tarda en llegar a un cliente cada tick, desde el instante
+ *     en que estaba programado (época + tick * {@value Simulacion#TICK_SIMULACION} ms).</li>
+ *     <li>Estabilidad de la memoria: el heap ocupado después de una recolección completa al final de la
+ *     medición, comparado con el del inicio, en MB por minuto. El servidor se crea con límites chicos para
+ *     el historial de trayectorias y el registro de eventos, que así se llenan durante el calentamiento: lo
+ *     que crece después es una estructura sin límite.</li>
+ * </ul>
+ * Además, cada cliente debe haber recibido todos los ticks de la medición.
+ * </p>
+ * <p>
+ * Uso: {@code SoakEscalado [--pasos 10x10,100x10,500x10] [--paradas N] [--intervalo S] [--clientes N]
+ * [--duracion S] [--compresion modo] [--tick-p99 ms] [--latencia-p99 ms] [--memoria-mb-min MB] [--semilla S]}
+ * </p>
+ * <p>
+ * Cada paso {@code RxV} es una red de {@code R} rutas con {@code V} viajes cada una. Conviene ejecutarlo con
+ * un heap fijo ({@code -Xms} igual a {@code -Xmx}) para que la medición de memoria sea estable.
+ * </p>
+ */
+public class SoakEscalado {
+
+    private static final double FRACCION_CALENTAMIENTO = 0.2;
+    private static final long CALENTAMIENTO_MINIMO_MS = 5000;
+    private static final long ESPERA_EVENTOS_JFR_MS = 2000; // El flujo de JFR entrega con hasta un segundo de retraso
+    // Límites chicos para las estructuras acotadas del servidor: se llenan durante el calentamiento, y lo
+    // que crezca después es crecimiento sin límite
+    private static final long MEMORIA_TRAYECTORIAS = 4L * 1024 * 1024;
+    private static final int EVENTOS_RETENIDOS = 16 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        String pasos = "10x10,100x10,500x10";
+        int paradas = 20;
+        int intervalo = 15;
+        int clientes = 4;
+        int duracion = 60;
+        Compresion compresion = Compresion.NINGUNA;
+        double limiteTickMs = Simulacion.TICK_SIMULACION / 2.0;
+        double limiteLatenciaMs = 2.0 * Simulacion.TICK_SIMULACION;
+        double limiteMemoriaMbMin = 16;
+        long semilla = 1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--pasos":
+                    pasos = args[++i];
+                    break;
+                case "--paradas":
+                    paradas = Integer.parseInt(args[++i]);
+                    break;
+                case "--intervalo":
+                    intervalo = Integer.parseInt(args[++i]);
+                    break;
+                case "--clientes":
+                    clientes = Integer.parseInt(args[++i]);
+                    break;
+                case "--duracion":
+                    duracion = Integer.parseInt(args[++i]);
+                    break;
+                case "--compresion":
+                    compresion = Compresion.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                    break;
+                case "--tick-p99":
+                    limiteTickMs = Double.parseDouble(args[++i]);
+                    break;
+                case "--latencia-p99":
+                    limiteLatenciaMs = Double.parseDouble(args[++i]);
+                    break;
+                case "--memoria-mb-min":
+                    limiteMemoriaMbMin = Double.parseDouble(args[++i]);
+                    break;
+                case "--semilla":
+                    semilla = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Opción desconocida: " + args[i]);
+            }
+        }
+
+        System.out.printf("Presupuestos: tick p99 <= %.1f ms, latencia p99 <= %.1f ms, memoria <= %.1f MB/min%n",
+                limiteTickMs, limiteLatenciaMs, limiteMemoriaMbMin);
+        boolean todoBien = true;
+        for (String paso : pasos.split(",")) {
+            String[] partes = paso.trim().split("x");
+            GeneradorEscenarios generador = new GeneradorEscenarios(Integer.parseInt(partes[0]), paradas,
+                    Integer.parseInt(partes[1]), intervalo, 0.2, semilla);
+            Resultado resultado = ejecutarPaso(generador, clientes, duracion * 1000L, compresion);
+            List<String> fallas = new ArrayList<>();
+            if (resultado.tickP99Ms > limiteTickMs) {
+                fallas.add(String.format("tick p99 %.2f ms", resultado.tickP99Ms));
+            }
+            if (resultado.latenciaP99Ms > limiteLatenciaMs) {
+                fallas.add(String.format("latencia p99 %.1f ms", resultado.latenciaP99Ms));
+            }
+            if (resultado.memoriaMbMin > limiteMemoriaMbMin) {
+                fallas.add(String.format("memoria %+.1f MB/min", resultado.memoriaMbMin));
+            }
+            if (resultado.ticksPerdidos > 0) {
+                fallas.add(resultado.ticksPerdidos + " ticks no recibidos");
+            }
+            System.out.printf("%-10s %6d autobuses | tick p50 %5.2f p99 %6.2f máx %6.2f ms | retraso máx %4d ms"
+                            + " | latencia p50 %5.1f p99 %6.1f ms | heap %6.1f -> %6.1f MB (%+.1f MB/min) | %s%n",
+                    paso.trim(), generador.getAutobuses(), resultado.tickP50Ms, resultado.tickP99Ms, resultado.tickMaxMs,
+                    resultado.retrasoMaxMs, resultado.latenciaP50Ms, resultado.latenciaP99Ms, resultado.heapInicialMb,
+                    resultado.heapFinalMb, resultado.memoriaMbMin, fallas.isEmpty() ? "OK" : "FALLA: " + String.join(", ", fallas));
+            todoBien &= fallas.isEmpty();
+        }
+        System.exit(todoBien ? 0 : 1);
+    }
+
+    private static Resultado ejecutarPaso(GeneradorEscenarios generador, int numClientes, long duracionMs,
+                                          Compresion compresion) throws Exception {
+        RedTransporte red = generador.generar();
+        long epoca = System.currentTimeMillis();
+        Servidor servidor = new Servidor(red, 0, epoca, MEMORIA_TRAYECTORIAS, EVENTOS_RETENIDOS);
+        servidor.arrancar();
+
+        // Duración de los ticks, desde los eventos de JFR del propio servidor
+        Medicion medicion = new Medicion();
+        List<Long> duracionesTick = new ArrayList<>();
+        AtomicLong retrasoMaximo = new AtomicLong();
+        RecordingStream flujoJfr = new RecordingStream();
+        flujoJfr.enable("cr.ed.ulacit.Tick").withThreshold(Duration.ZERO);
+        flujoJfr.onEvent("cr.ed.ulacit.Tick", evento -> {
+            if (medicion.contiene(evento.getStartTime())) {
+                synchronized (duracionesTick) {
+                    duracionesTick.add(evento.getDuration().toNanos());
+                }
+                retrasoMaximo.accumulateAndGet(evento.getLong("retraso"), Math::max);
+            }
+        });
+        flujoJfr.startAsync();
+
+        // Clientes
+        List<Cliente> clientes = new ArrayList<>();
+        for (int i = 0; i < numClientes; i++) {
+            Cliente cliente = new Cliente(ConexionSimulacion.abrir("localhost", servidor.getPuerto(), compresion), epoca, medicion);
+            clientes.add(cliente);
+            cliente.start();
+        }
+
+        long calentamiento = Math.max(CALENTAMIENTO_MINIMO_MS, (long) (duracionMs * FRACCION_CALENTAMIENTO));
+        Thread.sleep(calentamiento);
+        double heapInicial = heapDespuesDeRecolectar();
+        medicion.iniciar(servidorTick(epoca));
+        Thread.sleep(duracionMs);
+        medicion.terminar(servidorTick(epoca));
+        double heapFinal = heapDespuesDeRecolectar();
+
+        Thread.sleep(ESPERA_EVENTOS_JFR_MS);
+        flujoJfr.close();
+        servidor.detener();
+        for (Cliente cliente : clientes) {
+            cliente.cerrar();
+        }
+
+        Resultado resultado = new Resultado();
+        long[] ticks;
+        synchronized (duracionesTick) {
+            ticks = duracionesTick.stream().mapToLong(Long::longValue).sorted().toArray();
+        }
+        resultado.tickP50Ms = percentil(ticks, 0.5) / 1e6;
+        resultado.tickP99Ms = percentil(ticks, 0.99) / 1e6;
+        resultado.tickMaxMs = percentil(ticks, 1.0) / 1e6;
+        resultado.retrasoMaxMs = retrasoMaximo.get();
+        long[] latencias = clientes.stream().flatMapToLong(c -> Arrays.stream(c.latencias, 0, c.cantidad)).sorted().toArray();
+        resultado.latenciaP50Ms = percentil(latencias, 0.5);
+        resultado.latenciaP99Ms = percentil(latencias, 0.99);
+        long esperados = medicion.tickFinal - medicion.tickInicial;
+        for (Cliente cliente : clientes) {
+            resultado.ticksPerdidos += Math.max(0, esperados - cliente.cantidad - 1); // Tolera el tick del borde
+        }
+        resultado.heapInicialMb = heapInicial;
+        resultado.heapFinalMb = heapFinal;
+        resultado.memoriaMbMin = (heapFinal - heapInicial) / (duracionMs / 60000.0);
+        return resultado;
+    }
+
+    /** @return El tick que el servidor debería estar simulando ahora. */
+    private static long servidorTick(long epoca) {
+        return (System.currentTimeMillis() - epoca) / Simulacion.TICK_SIMULACION;
+    }
+
+    private static double heapDespuesDeRecolectar() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() / (1024.0 * 1024.0);
+    }
+
+    private static long percentil(long[] ordenados, double p) {
+        if (ordenados.length == 0) {
+            return 0;
+        }
+        int indice = (int) Math.ceil(p * ordenados.length) - 1;
+        return ordenados[Math.max(0, Math.min(ordenados.length - 1, indice))];
+    }
+
+    /** El intervalo en que se mide, en tiempo real y en ticks. */
+    private static final class Medicion {
+        private volatile Instant inicio = Instant.MAX;
+        private volatile Instant fin = Instant.MAX;
+        private volatile long tickInicial = Long.MAX_VALUE;
+        private volatile long tickFinal = Long.MAX_VALUE;
+
+        void iniciar(long tick) {
+            tickInicial = tick;
+            inicio = Instant.now();
+        }
+
+        void terminar(long tick) {
+            tickFinal = tick;
+            fin = Instant.now();
+        }
+
+        boolean contiene(Instant instante) {
+            return !instante.isBefore(inicio) && instante.isBefore(fin);
+        }
+
+        boolean contiene(long tick) {
+            return tick > tickInicial && tick <= tickFinal;
+        }
+    }
+
+    /** Un cliente que lee las actualizaciones y anota cuánto tardó cada tick de la medición en llegarle. */
+    private static final class Cliente extends Thread {
+        private final ConexionSimulacion conexion;
+        private final long epoca;
+        private final Medicion medicion;
+        private long[] latencias = new long[1024];
+        private int cantidad; // Lo lee el hilo principal después de cerrar la conexión
+
+        Cliente(ConexionSimulacion conexion, long epoca, Medicion medicion) {
+            super("cliente-soak");
+            setDaemon(true);
+            this.conexion = conexion;
+            this.epoca = epoca;
+            this.medicion = medicion;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    UpdatePayload payload = conexion.leerActualizacion();
+                    long latencia = System.currentTimeMillis() - (epoca + payload.getTick() * Simulacion.TICK_SIMULACION);
+                    if (medicion.contiene(payload.getTick())) {
+                        if (cantidad == latencias.length) {
+                            latencias = Arrays.copyOf(latencias, cantidad * 2);
+                        }
+                        latencias[cantidad++] = latencia;
+                    }
+                }
+            } catch (IOException e) {
+                // Conexión cerrada al terminar el paso
+            }
+        }
+
+        void cerrar() throws IOException, InterruptedException {
+            conexion.close();
+            join();
+        }
+    }
+
+    private static final class Resultado {
+        double tickP50Ms;
+        double tickP99Ms;
+        double tickMaxMs;
+        long retrasoMaxMs;
+        double latenciaP50Ms;
+        double latenciaP99Ms;
+        long ticksPerdidos;
+        double heapInicialMb;
+        double heapFinalMb;
+        double memoriaMbMin;
+    }
+}
@@ -12,13 +12,21 @@ public class AutobusDTO implements Serializable {
     private final int x;
     private final int y;
     private final EstadoAutobus estado;
+    private final int ocupacion;
+    private final int capacidad; // 0 si no se conoce (por ejemplo, en el historial)
 
     public AutobusDTO(int id, Color color, int x, int y, EstadoAutobus estado) {
+        this(id, color, x, y, estado, 0, 0);
+    }
+
+    public AutobusDTO(int id, Color color, int x, int y, EstadoAutobus estado, int ocupacion, int capacidad) {
         this.id = id;
         this.color = color;
         this.x = x;
         this.y = y;
         this.estado = estado;
+        this.ocupacion = ocupacion;
+        this.capacidad = capacidad;
     }
 
     public int getId() { return id; }
@@ -26,4 +34,6 @@ public class AutobusDTO implements Serializable {
     public int getX() { return x; }
     public int getY() { return y; }
     public EstadoAutobus getEstado() { return estado; }
+    public int getOcupacion() { return ocupacion; }
+    public int getCapacidad() { return capacidad; }
 }
@@ -0,0 +1,44 @@
+package cr.ed.ulacit.dto;
+
+import cr.ed.ulacit.EstadoAutobus;
+
+import java.io.Serializable;
+
+/**
+ * El estado detallado de un autobús en un tick, tal como se responde a una consulta.
+ */
+public class DetalleAutobusDTO implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final int id;
+    private final long tick;
+    private final String nombreRuta;
+    private final EstadoAutobus estado;
+    private final int x;
+    private final int y;
+    private final String paradaActual;
+    private final String paradaDestino;
+    private final double progreso;
+
+    public DetalleAutobusDTO(int id, long tick, String nombreRuta, EstadoAutobus estado, int x, int y,
+                             String paradaActual, String paradaDestino, double progreso) {
+        this.id = id;
+        this.tick = tick;
+        this.nombreRuta = nombreRuta;
+        this.estado = estado;
+        this.x = x;
+        this.y = y;
+        this.paradaActual = paradaActual;
+        this.paradaDestino = paradaDestino;
+        this.progreso = progreso;
+    }
+
+    public int getId() { return id; }
+    public long getTick() { return tick; }
+    public String getNombreRuta() { return nombreRuta; }
+    public EstadoAutobus getEstado() { return estado; }
+    public int getX() { return x; }
+    public int getY() { return y; }
+    public String getParadaActual() { return paradaActual; }
+    public String getParadaDestino() { return paradaDestino; }
+    public double getProgreso() { return progreso; }
+}
@@ -0,0 +1,33 @@
+package cr.ed.ulacit.dto;
+
+import java.io.Serializable;
+
+/**
+ * La llegada estimada de un autobús a una parada, una de las filas de un {@link TableroLlegadasDTO}.
+ * <p>
+ * Los instantes se expresan en el tiempo de la simulación: milisegundos desde la época del servidor más
+ * los ticks transcurridos, el mismo reloj que usan los eventos del registro.
+ * </p>
+ */
+public class LlegadaEstimadaDTO implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final int idAutobus;
+    private final long llegadaEstimadaMs;
+
+    /**
+     * Constructor de la llegada estimada.
+     *
+     * @param idAutobus         El ID del autobús que llegará a la parada.
+     * @param llegadaEstimadaMs El instante estimado de llegada, en milisegundos de la simulación.
+     */
+    public LlegadaEstimadaDTO(int idAutobus, long llegadaEstimadaMs) {
+        this.idAutobus = idAutobus;
+        this.llegadaEstimadaMs = llegadaEstimadaMs;
+    }
+
+    /** @return El ID del autobús que llegará a la parada. */
+    public int getIdAutobus() { return idAutobus; }
+
+    /** @return El instante estimado de llegada, en milisegundos de la simulación. */
+    public long getLlegadaEstimadaMs() { return llegadaEstimadaMs; }
+}
@@ -0,0 +1,29 @@
+package cr.ed.ulacit.dto;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * La red de transporte que el servidor envía a cada cliente al conectarse: las rutas con sus paradas.
+ * <p>
+ * Se envía una sola vez por conexión; las actualizaciones posteriores se refieren a ella por posición.
+ * Por ejemplo, los pasajeros en espera de {@link UpdatePayload#getPasajerosEsperando()} siguen el orden
+ * de {@link #getRutas()} y, dentro de cada ruta, el de sus paradas.
+ * </p>
+ */
+public class RedDTO implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final List<RutaDTO> rutas;
+
+    /**
+     * Constructor de la red.
+     *
+     * @param rutas Las rutas de la red, en el orden en que las referencian las actualizaciones.
+     */
+    public RedDTO(List<RutaDTO> rutas) {
+        this.rutas = rutas;
+    }
+
+    /** @return Las rutas de la red, en el orden en que las referencian las actualizaciones. */
+    public List<RutaDTO> getRutas() { return rutas; }
+}
@@ -0,0 +1,30 @@
+package cr.ed.ulacit.dto;
+
+import java.io.Serializable;
+
+/**
+ * Cuántos autobuses de la flota hay en cada estado en un tick.
+ */
+public class ResumenFlotaDTO implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final long tick;
+    private final int inactivos;
+    private final int enRuta;
+    private final int detenidos;
+    private final int finalizados;
+
+    public ResumenFlotaDTO(long tick, int inactivos, int enRuta, int detenidos, int finalizados) {
+        this.tick = tick;
+        this.inactivos = inactivos;
+        this.enRuta = enRuta;
+        this.detenidos = detenidos;
+        this.finalizados = finalizados;
+    }
+
+    public long getTick() { return tick; }
+    public int getInactivos() { return inactivos; }
+    public int getEnRuta() { return enRuta; }
+    public int getDetenidos() { return detenidos; }
+    public int getFinalizados() { return finalizados; }
+    public int getTotal() { return inactivos + enRuta + detenidos + finalizados; }
+}
@@ -0,0 +1,49 @@
+package cr.ed.ulacit.dto;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * El tablero de próximas llegadas de una parada, ordenado por hora estimada de llegada.
+ * <p>
+ * Es inmutable: el servidor publica una instancia nueva cada vez que cambia alguna predicción,
+ * por lo que puede compartirse entre hilos y clientes sin copiarla.
+ * </p>
+ */
+public class TableroLlegadasDTO implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final int idParada;
+    private final String nombreParada;
+    private final long generadoMs;
+    private final List<LlegadaEstimadaDTO> llegadas;
+
+    /**
+     * Constructor del tablero de llegadas.
+     *
+     * @param idParada     El ID de la parada.
+     * @param nombreParada El nombre de la parada.
+     * @param generadoMs   El instante de la simulación, en milisegundos, en que se calculó el tablero.
+     * @param llegadas     Las llegadas estimadas, de la más próxima a la más lejana.
+     */
+    public TableroLlegadasDTO(int idParada, String nombreParada, long generadoMs, List<LlegadaEstimadaDTO> llegadas) {
+        this.idParada = idParada;
+        this.nombreParada = nombreParada;
+        this.generadoMs = generadoMs;
+        this.llegadas = llegadas;
+    }
+
+    /** @return El ID de la parada. */
+    public int getIdParada() { return idParada; }
+
+    /** @return El nombre de la parada. */
+    public String getNombreParada() { return nombreParada; }
+
+    /**
+     * @return El instante de la simulación, en milisegundos, en que se calculó el tablero, o 0 si aún no
+     * ha habido ninguna predicción para la parada.
+     */
+    public long getGeneradoMs() { return generadoMs; }
+
+    /** @return Las llegadas estimadas, de la más próxima a la más lejana; vacía si no se espera ningún autobús. */
+    public List<LlegadaEstimadaDTO> getLlegadas() { return llegadas; }
+}
@@ -0,0 +1,36 @@
+package cr.ed.ulacit.dto;
+
+import cr.ed.ulacit.EstadoAutobus;
+
+import java.io.Serializable;
+
+/**
+ * Las posiciones registradas de un autobús en un rango de ticks, en columnas.
+ * <p>
+ * Solo hay una muestra por cada cambio de posición o de estado: entre dos muestras el autobús estuvo
+ * quieto en la posición de la primera. La primera muestra es la vigente al inicio del rango.
+ * </p>
+ */
+public class TrayectoriaDTO implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final int idAutobus;
+    private final long[] ticks;
+    private final int[] x;
+    private final int[] y;
+    private final byte[] estados;
+
+    public TrayectoriaDTO(int idAutobus, long[] ticks, int[] x, int[] y, byte[] estados) {
+        this.idAutobus = idAutobus;
+        this.ticks = ticks;
+        this.x = x;
+        this.y = y;
+        this.estados = estados;
+    }
+
+    public int getIdAutobus() { return idAutobus; }
+    public int getCantidad() { return ticks.length; }
+    public long getTick(int i) { return ticks[i]; }
+    public int getX(int i) { return x[i]; }
+    public int getY(int i) { return y[i]; }
+    public EstadoAutobus getEstado(int i) { return EstadoAutobus.values()[estados[i]]; }
+}
@@ -16,22 +16,48 @@ import java.util.List;
 public class UpdatePayload implements Serializable {
     private static final long serialVersionUID = 1L;
 
+    private final long tick;
     private final List<AutobusDTO> autobuses;
     private final List<EventoLog> eventos;
+    private final int[] pasajerosEsperando;
 
     /**
-     * Constructor para el payload de actualización.
+     * Constructor para el payload de actualización sin pasajeros en espera.
      *
+     * @param tick      El número de tick de simulación al que corresponde este estado.
      * @param autobuses La lista actual del estado de todos los autobuses.
      * @param eventos   La lista de nuevos eventos ocurridos desde la última actualización.
      */
-    public UpdatePayload(List<AutobusDTO> autobuses, List<EventoLog> eventos) {
+    public UpdatePayload(long tick, List<AutobusDTO> autobuses, List<EventoLog> eventos) {
+        this(tick, autobuses, eventos, null);
+    }
+
+    /**
+     * Constructor para el payload de actualización.
+     *
+     * @param tick               El número de tick de simulación al que corresponde este estado.
+     * @param autobuses          La lista actual del estado de todos los autobuses.
+     * @param eventos            La lista de nuevos eventos ocurridos desde la última actualización.
+     * @param pasajerosEsperando Los pasajeros que esperan en cada parada de cada ruta, o {@code null} si
+     *                           este tick no los incluye (ver {@link #getPasajerosEsperando()}).
+     */
+    public UpdatePayload(long tick, List<AutobusDTO> autobuses, List<EventoLog> eventos, int[] pasajerosEsperando) {
+        this.tick = tick;
         this.autobuses = autobuses;
         this.eventos = eventos;
+        this.pasajerosEsperando = pasajerosEsperando;
     }
 
     // --- Getters ---
 
+    /**
+     * @return El tick del estado. Crece en cada transmisión de una misma sesión del servidor, así que
+     * sirve también como su número de secuencia.
+     */
+    public long getTick() {
+        return tick;
+    }
+
     public List<AutobusDTO> getAutobuses() {
         return autobuses;
     }
@@ -39,4 +65,14 @@ public class UpdatePayload implements Serializable {
     public List<EventoLog> getEventos() {
         return eventos;
     }
+
+    /**
+     * Los pasajeros que esperan, uno por cada parada de cada ruta, en el orden de {@link RedDTO#getRutas()}
+     * y de las paradas de cada ruta. Solo se envían cada cierto número de ticks.
+     *
+     * @return El número de pasajeros por parada, o {@code null} si este tick no los incluye.
+     */
+    public int[] getPasajerosEsperando() {
+        return pasajerosEsperando;
+    }
 }
@@ -0,0 +1,48 @@
+package cr.ed.ulacit.protocolo;
+
+import java.util.zip.Deflater;
+
+/**
+ * Los modos de compresión que un cliente puede negociar con el servidor al conectarse.
+ */
+public enum Compresion {
+    /**
+     * Sin compresión: los objetos viajan tal como los escribe {@code ObjectOutputStream}.
+     */
+    NINGUNA(0, Deflater.NO_COMPRESSION),
+    /**
+     * Deflate en flujo con el nivel de compresión por defecto. Mejor relación de compresión.
+     */
+    DEFLATE(1, Deflater.DEFAULT_COMPRESSION),
+    /**
+     * Deflate en flujo con el nivel más rápido. Menos CPU a cambio de una relación algo peor.
+     */
+    DEFLATE_RAPIDO(2, Deflater.BEST_SPEED);
+
+    private final int codigo;
+    private final int nivel;
+
+    Compresion(int codigo, int nivel) {
+        this.codigo = codigo;
+        this.nivel = nivel;
+    }
+
+    /** @return El código con el que el modo viaja en el saludo. */
+    public int getCodigo() { return codigo; }
+
+    /** @return El nivel de {@link Deflater} que corresponde al modo. */
+    public int getNivel() { return nivel; }
+
+    /**
+     * @param codigo El código recibido en el saludo.
+     * @return El modo correspondiente, o {@link #NINGUNA} si el código es desconocido.
+     */
+    public static Compresion porCodigo(int codigo) {
+        for (Compresion compresion : values()) {
+            if (compresion.codigo == codigo) {
+                return compresion;
+            }
+        }
+        return NINGUNA;
+    }
+}
@@ -0,0 +1,270 @@
+package cr.ed.ulacit.protocolo;
+
+import cr.ed.ulacit.dto.AutobusDTO;
+import cr.ed.ulacit.dto.DetalleAutobusDTO;
+import cr.ed.ulacit.dto.RedDTO;
+import cr.ed.ulacit.dto.ResumenFlotaDTO;
+import cr.ed.ulacit.dto.RutaDTO;
+import cr.ed.ulacit.dto.TableroLlegadasDTO;
+import cr.ed.ulacit.dto.TrayectoriaDTO;
+import cr.ed.ulacit.dto.UpdatePayload;
+import cr.ed.ulacit.servidor.EventoLog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * El extremo cliente de una conexión con el servidor (o la pasarela).
+ * <p>
+ * Envía el {@link Saludo}, envuelve el socket según la compresión aceptada, lee la red inicial y deja
+ * listo el diccionario para las actualizaciones que siguen.
+ * </p>
+ * <p>
+ * Los métodos {@code consultar*} envían una {@link Consulta} y devuelven de inmediato un
+ * {@link CompletableFuture}; se pueden tener muchas en curso a la vez. Las respuestas llegan intercaladas
+ * con las actualizaciones y se entregan mientras algún hilo esté dentro de {@link #leerActualizacion()},
+ * que las separa del flujo y completa el futuro correspondiente.
+ * </p>
+ * <p>
+ * Si la conexión se pierde, {@link #reanudar(String, int, ConexionSimulacion)} abre otra presentando la
+ * sesión y el último tick de la anterior. Si el servidor es el mismo proceso, no reenvía la red y la
+ * primera actualización trae el estado actual con los eventos perdidos; {@link #leerActualizacion()}
+ * descarta las transmisiones repetidas, de modo que los ticks que se entregan siempre avanzan.
+ * </p>
+ */
+public class ConexionSimulacion implements Closeable {
+
+    private final Socket socket;
+    private final Compresion compresion;
+    private final ObjectInputStream entrada;
+    private final ObjectOutputStream salida; // Protegido por su propio monitor
+    private final RedDTO red;
+    private final long sesion;
+    private final boolean reanudada;
+    private volatile long ultimoTick;
+    private final AtomicLong siguienteId = new AtomicLong(1);
+    private final Map<Long, CompletableFuture<Serializable>> pendientes = new ConcurrentHashMap<>();
+    private volatile IOException cierre;
+
+    private ConexionSimulacion(Socket socket, Compresion compresion, ObjectInputStream entrada, ObjectOutputStream salida,
+                               RedDTO red, long sesion, boolean reanudada, long ultimoTick) {
+        this.socket = socket;
+        this.compresion = compresion;
+        this.entrada = entrada;
+        this.salida = salida;
+        this.red = red;
+        this.sesion = sesion;
+        this.reanudada = reanudada;
+        this.ultimoTick = ultimoTick;
+    }
+
+    /**
+     * Abre la conexión y completa el saludo.
+     *
+     * @param host       El host del servidor.
+     * @param puerto     El puerto del servidor.
+     * @param compresion El modo de compresión que se solicita.
+     * @return La conexión, con la red ya recibida.
+     * @throws IOException Si no se puede conectar o el servidor no responde como se espera.
+     */
+    public static ConexionSimulacion abrir(String host, int puerto, Compresion compresion) throws IOException {
+        return abrir(host, puerto, new Saludo(compresion), null);
+    }
+
+    /**
+     * Abre una conexión nueva que continúa la sesión de otra que se perdió. Si el servidor ya no tiene
+     * esa sesión (por ejemplo, porque se reinició), la conexión empieza de cero con la red que él envíe;
+     * ver {@link #isReanudada()}.
+     *
+     * @param host     El host del servidor.
+     * @param puerto   El puerto del servidor.
+     * @param anterior La conexión perdida.
+     * @return La nueva conexión.
+     * @throws IOException Si no se puede conectar o el servidor no responde como se espera.
+     */
+    public static ConexionSimulacion reanudar(String host, int puerto, ConexionSimulacion anterior) throws IOException {
+        return abrir(host, puerto, new Saludo(anterior.compresion, anterior.sesion, anterior.ultimoTick), anterior);
+    }
+
+    private static ConexionSimulacion abrir(String host, int puerto, Saludo saludo, ConexionSimulacion anterior)
+            throws IOException {
+        Socket socket = new Socket(host, puerto);
+        try {
+            DataOutputStream datosSalida = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            saludo.escribir(datosSalida);
+            ObjectOutputStream salida = new ObjectOutputStream(datosSalida);
+            salida.flush();
+            DataInputStream datos = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            Saludo.Respuesta respuesta = Saludo.leerRespuesta(datos);
+            Compresion aceptada = respuesta.getCompresion();
+            boolean reanudada = respuesta.isReanudada() && anterior != null;
+
+            EntradaComprimida comprimida = aceptada != Compresion.NINGUNA ? new EntradaComprimida(datos) : null;
+            InputStream flujo = comprimida != null ? comprimida : datos;
+            ObjectInputStream entrada = new ObjectInputStream(flujo);
+            // Al reanudar, la red es la misma de la conexión anterior y el servidor no la reenvía
+            RedDTO red = reanudada ? anterior.red : (RedDTO) entrada.readObject();
+            if (comprimida != null) {
+                comprimida.establecerDiccionario(DiccionarioCompresion.crear(red));
+            }
+            return new ConexionSimulacion(socket, aceptada, entrada, salida, red, respuesta.getSesion(), reanudada,
+                    reanudada ? anterior.ultimoTick : -1);
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            socket.close();
+            throw e instanceof IOException io ? io : new IOException("Respuesta inesperada del servidor", e);
+        }
+    }
+
+    /** @return La red recibida al conectar. */
+    public RedDTO getRed() { return red; }
+
+    /** @return El modo de compresión que aceptó el servidor. */
+    public Compresion getCompresion() { return compresion; }
+
+    /** @return El socket de la conexión. */
+    public Socket getSocket() { return socket; }
+
+    /** @return {@code true} si esta conexión continúa la sesión de una anterior sin perder ticks de estado. */
+    public boolean isReanudada() { return reanudada; }
+
+    /** @return El último tick entregado por {@link #leerActualizacion()}, o -1 si aún no hay ninguno. */
+    public long getUltimoTick() { return ultimoTick; }
+
+    /**
+     * Bloquea hasta recibir la siguiente actualización. Las respuestas a consultas que lleguen antes se
+     * entregan a sus futuros.
+     *
+     * @return La actualización recibida.
+     * @throws IOException Si se pierde la conexión.
+     */
+    public UpdatePayload leerActualizacion() throws IOException {
+        try {
+            while (true) {
+                Object objeto = entrada.readObject();
+                if (objeto instanceof RespuestaConsulta respuesta) {
+                    entregar(respuesta);
+                } else {
+                    UpdatePayload payload = (UpdatePayload) objeto;
+                    // Tras reanudar puede llegar repetido el tick del estado inicial
+                    if (payload.getTick() > ultimoTick) {
+                        ultimoTick = payload.getTick();
+                        return payload;
+                    }
+                }
+            }
+        } catch (ClassNotFoundException | ClassCastException e) {
+            IOException error = new IOException("Objeto inesperado del servidor", e);
+            fallarPendientes(error);
+            throw error;
+        } catch (IOException e) {
+            fallarPendientes(e);
+            throw e;
+        }
+    }
+
+    /** @return El estado detallado de un autobús, o {@code null} si no existe. */
+    public CompletableFuture<DetalleAutobusDTO> consultarAutobus(int idAutobus) {
+        return consultar(TipoConsulta.ESTADO_AUTOBUS, idAutobus, 0, 0).thenApply(r -> (DetalleAutobusDTO) r);
+    }
+
+    /** @return Los eventos entre dos ticks, inclusive (a lo sumo 1000). */
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<List<EventoLog>> consultarEventos(long desdeTick, long hastaTick) {
+        return consultar(TipoConsulta.EVENTOS_RANGO, 0, desdeTick, hastaTick).thenApply(r -> (List<EventoLog>) r);
+    }
+
+    /** @return La ruta con el índice dado en {@link #getRed()}, con sus paradas. */
+    public CompletableFuture<RutaDTO> consultarParadasRuta(int indiceRuta) {
+        return consultar(TipoConsulta.PARADAS_RUTA, indiceRuta, 0, 0).thenApply(r -> (RutaDTO) r);
+    }
+
+    /** @return Cuántos autobuses hay en cada estado. */
+    public CompletableFuture<ResumenFlotaDTO> consultarResumenFlota() {
+        return consultar(TipoConsulta.RESUMEN_FLOTA, 0, 0, 0).thenApply(r -> (ResumenFlotaDTO) r);
+    }
+
+    /** @return El tablero de próximas llegadas de una parada, o {@code null} si no existe. */
+    public CompletableFuture<TableroLlegadasDTO> consultarTablero(int idParada) {
+        return consultar(TipoConsulta.TABLERO_PARADA, idParada, 0, 0).thenApply(r -> (TableroLlegadasDTO) r);
+    }
+
+    /** @return Las posiciones de un autobús entre dos ticks, o {@code null} si no existe. */
+    public CompletableFuture<TrayectoriaDTO> consultarTrayectoria(int idAutobus, long desdeTick, long hastaTick) {
+        return consultar(TipoConsulta.TRAYECTORIA_AUTOBUS, idAutobus, desdeTick, hastaTick).thenApply(r -> (TrayectoriaDTO) r);
+    }
+
+    /** @return La posición de todos los autobuses en un tick pasado. */
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<List<AutobusDTO>> consultarFlotaEnTick(long tick) {
+        return consultar(TipoConsulta.FLOTA_EN_TICK, 0, tick, tick).thenApply(r -> (List<AutobusDTO>) r);
+    }
+
+    /**
+     * Envía una consulta sin esperar la respuesta.
+     *
+     * @return El futuro que se completa con el resultado, o con una {@link IllegalArgumentException} si
+     * el servidor rechaza la consulta, o con una {@link IOException} si se pierde la conexión.
+     */
+    public CompletableFuture<Serializable> consultar(TipoConsulta tipo, int parametro, long desde, long hasta) {
+        long id = siguienteId.getAndIncrement();
+        CompletableFuture<Serializable> futuro = new CompletableFuture<>();
+        pendientes.put(id, futuro);
+        if (cierre != null) {
+            fallarPendientes(cierre);
+            return futuro;
+        }
+        try {
+            synchronized (salida) {
+                salida.writeObject(new Consulta(id, tipo, parametro, desde, hasta));
+                salida.flush();
+                salida.reset();
+            }
+        } catch (IOException e) {
+            pendientes.remove(id);
+            futuro.completeExceptionally(e);
+        }
+        return futuro;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+        fallarPendientes(new IOException("Conexión cerrada"));
+    }
+
+    private void entregar(RespuestaConsulta respuesta) {
+        CompletableFuture<Serializable> futuro = pendientes.remove(respuesta.getIdConsulta());
+        if (futuro == null) {
+            return;
+        }
+        if (respuesta.esError()) {
+            futuro.completeExceptionally(new IllegalArgumentException(respuesta.getError()));
+        } else {
+            futuro.complete(respuesta.getResultado());
+        }
+    }
+
+    private void fallarPendientes(IOException error) {
+        cierre = error;
+        for (Long id : pendientes.keySet()) {
+            CompletableFuture<Serializable> futuro = pendientes.remove(id);
+            if (futuro != null) {
+                futuro.completeExceptionally(error);
+            }
+        }
+    }
+}
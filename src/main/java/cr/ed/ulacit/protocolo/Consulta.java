@@ -0,0 +1,42 @@
+package cr.ed.ulacit.protocolo;
+
+import java.io.Serializable;
+
+/**
+ * Una consulta enviada por el cliente al servidor.
+ * <p>
+ * Cada consulta lleva un identificador elegido por el cliente que el servidor copia en su
+ * {@link RespuestaConsulta}. Así el cliente puede tener muchas consultas en curso a la vez sobre la
+ * misma conexión y emparejar las respuestas aunque lleguen en otro orden.
+ * </p>
+ */
+public class Consulta implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long id;
+    private final TipoConsulta tipo;
+    private final int parametro;
+    private final long desde;
+    private final long hasta;
+
+    /**
+     * @param id        El identificador de correlación.
+     * @param tipo      El tipo de consulta.
+     * @param parametro El parámetro entero de la consulta (ID de autobús, de parada o índice de ruta).
+     * @param desde     El inicio del rango de ticks, para {@link TipoConsulta#EVENTOS_RANGO}.
+     * @param hasta     El fin del rango de ticks (inclusive), para {@link TipoConsulta#EVENTOS_RANGO}.
+     */
+    public Consulta(long id, TipoConsulta tipo, int parametro, long desde, long hasta) {
+        this.id = id;
+        this.tipo = tipo;
+        this.parametro = parametro;
+        this.desde = desde;
+        this.hasta = hasta;
+    }
+
+    public long getId() { return id; }
+    public TipoConsulta getTipo() { return tipo; }
+    public int getParametro() { return parametro; }
+    public long getDesde() { return desde; }
+    public long getHasta() { return hasta; }
+}
@@ -0,0 +1,113 @@
+package cr.ed.ulacit.protocolo;
+
+import cr.ed.ulacit.EstadoAutobus;
+import cr.ed.ulacit.dto.AutobusDTO;
+import cr.ed.ulacit.dto.ParadaDTO;
+import cr.ed.ulacit.dto.RedDTO;
+import cr.ed.ulacit.dto.RutaDTO;
+import cr.ed.ulacit.dto.UpdatePayload;
+import cr.ed.ulacit.servidor.EventoLog;
+
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Construye el diccionario inicial de la compresión a partir de la red que el cliente recibe al conectarse.
+ * <p>
+ * Servidor y cliente llaman a {@link #crear(RedDTO)} con la misma red y obtienen los mismos bytes, así que
+ * el diccionario nunca viaja por el socket. Contiene lo que más se repite en las actualizaciones: los
+ * nombres de las paradas y rutas, las frases de los eventos y una actualización serializada de ejemplo,
+ * con los descriptores de clase que {@code ObjectOutputStream} vuelve a escribir en cada tick.
+ * </p>
+ * <p>
+ * Diseño: Deflate solo alcanza los últimos 32 KB, y las referencias cortas (al final) son más baratas,
+ * así que lo más frecuente va al final y los nombres se recortan si la red es muy grande.
+ * </p>
+ */
+public final class DiccionarioCompresion {
+
+    private static final int TAMANO_MAXIMO = 32 * 1024;
+
+    // Fragmentos de los mensajes que genera el servidor. Si cambian, la compresión solo empeora un poco.
+    private static final String[] FRASES = {
+            " ha salido de la parada.",
+            " ha iniciado su ruta.",
+            " ha finalizado su ruta.",
+            " ha llegado a la parada ",
+            "El autobús ",
+    };
+
+    private DiccionarioCompresion() {
+    }
+
+    /**
+     * @param red La red enviada al cliente al inicio de la conexión.
+     * @return Los bytes del diccionario, a lo sumo 32 KB.
+     */
+    public static byte[] crear(RedDTO red) {
+        byte[] muestra = serializarMuestra(red);
+        StringBuilder frases = new StringBuilder();
+        for (String frase : FRASES) {
+            frases.append(frase);
+        }
+        byte[] bytesFrases = frases.toString().getBytes(StandardCharsets.UTF_8);
+
+        // Los nombres, sin repetir, hasta llenar el espacio restante
+        int disponible = TAMANO_MAXIMO - muestra.length - bytesFrases.length;
+        Set<String> nombres = new LinkedHashSet<>();
+        for (RutaDTO ruta : red.getRutas()) {
+            nombres.add(ruta.getNombreRuta());
+            for (ParadaDTO parada : ruta.getParadas()) {
+                nombres.add(parada.getNombre());
+            }
+        }
+        ByteArrayOutputStream diccionario = new ByteArrayOutputStream(TAMANO_MAXIMO);
+        for (String nombre : nombres) {
+            byte[] bytes = nombre.getBytes(StandardCharsets.UTF_8);
+            if (diccionario.size() + bytes.length > disponible) {
+                break;
+            }
+            diccionario.writeBytes(bytes);
+        }
+        diccionario.writeBytes(bytesFrases);
+        diccionario.writeBytes(muestra);
+        byte[] resultado = diccionario.toByteArray();
+        if (resultado.length > TAMANO_MAXIMO) {
+            return Arrays.copyOfRange(resultado, resultado.length - TAMANO_MAXIMO, resultado.length);
+        }
+        return resultado;
+    }
+
+    /**
+     * Serializa una actualización con un autobús y un evento, igual que lo hace {@code ClientHandler}.
+     */
+    private static byte[] serializarMuestra(RedDTO red) {
+        String parada = "";
+        if (!red.getRutas().isEmpty() && !red.getRutas().get(0).getParadas().isEmpty()) {
+            parada = red.getRutas().get(0).getParadas().get(0).getNombre();
+        }
+        List<AutobusDTO> autobuses = new ArrayList<>();
+        autobuses.add(new AutobusDTO(1, Color.RED, 100, 100, EstadoAutobus.EN_RUTA));
+        autobuses.add(new AutobusDTO(2, Color.BLUE, 200, 200, EstadoAutobus.DETENIDO));
+        List<EventoLog> eventos = new ArrayList<>();
+        eventos.add(new EventoLog("05:00:00", "El autobús 1 ha llegado a la parada " + parada + "."));
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream salida = new ObjectOutputStream(bytes);
+            salida.writeObject(new UpdatePayload(0, autobuses, eventos));
+            salida.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package cr.ed.ulacit.protocolo;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Flujo de entrada que lee los marcos producidos por {@link SalidaComprimida} y entrega su contenido
+ * descomprimido.
+ */
+public class EntradaComprimida extends InputStream {
+
+    /** Tamaño máximo de un marco; ningún tick se le acerca, así una cabecera corrupta no agota la memoria. */
+    static final int MAX_MARCO = 64 * 1024 * 1024;
+
+    private final DataInputStream origen;
+    private final Inflater inflater = new Inflater(true);
+    private byte[] marco = new byte[8192];
+    private byte[] datos = new byte[8192];
+    private int posicion;
+    private int limite;
+
+    /**
+     * @param origen El flujo del socket.
+     */
+    public EntradaComprimida(InputStream origen) {
+        this.origen = origen instanceof DataInputStream ? (DataInputStream) origen : new DataInputStream(origen);
+    }
+
+    /**
+     * Precarga el flujo deflate con el mismo diccionario que usó el servidor en
+     * {@link SalidaComprimida#iniciarFlujo(byte[])}. Debe llamarse antes de leer el primer marco de flujo.
+     *
+     * @param diccionario Los bytes del diccionario, o {@code null} si no se usa.
+     */
+    public void establecerDiccionario(byte[] diccionario) {
+        if (diccionario != null && diccionario.length > 0) {
+            inflater.setDictionary(diccionario);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (posicion == limite && !leerMarco()) {
+            return -1;
+        }
+        return datos[posicion++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (posicion == limite && !leerMarco()) {
+            return -1;
+        }
+        int cantidad = Math.min(len, limite - posicion);
+        System.arraycopy(datos, posicion, b, off, cantidad);
+        posicion += cantidad;
+        return cantidad;
+    }
+
+    @Override
+    public int available() {
+        return limite - posicion;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        origen.close();
+    }
+
+    /**
+     * Lee y descomprime el siguiente marco no vacío.
+     *
+     * @return {@code false} si el flujo terminó.
+     */
+    private boolean leerMarco() throws IOException {
+        do {
+            int tipo = origen.read();
+            if (tipo < 0) {
+                return false;
+            }
+            int longitudContenido = origen.readInt();
+            int longitudOriginal = origen.readInt();
+            if (longitudContenido < 0 || longitudOriginal < 0 || longitudContenido > MAX_MARCO
+                    || longitudOriginal > MAX_MARCO
+                    || (tipo == SalidaComprimida.MARCO_CRUDO && longitudContenido != longitudOriginal)) {
+                throw new IOException("Cabecera de marco inválida");
+            }
+            if (datos.length < longitudOriginal) {
+                datos = new byte[Math.max(datos.length * 2, longitudOriginal)];
+            }
+            if (tipo == SalidaComprimida.MARCO_CRUDO) {
+                origen.readFully(datos, 0, longitudContenido);
+            } else {
+                if (marco.length < longitudContenido) {
+                    marco = new byte[Math.max(marco.length * 2, longitudContenido)];
+                }
+                origen.readFully(marco, 0, longitudContenido);
+                if (tipo == SalidaComprimida.MARCO_FLUJO) {
+                    descomprimir(inflater, longitudContenido, longitudOriginal);
+                } else if (tipo == SalidaComprimida.MARCO_INDEPENDIENTE) {
+                    Inflater independiente = new Inflater(true);
+                    try {
+                        descomprimir(independiente, longitudContenido, longitudOriginal);
+                    } finally {
+                        independiente.end();
+                    }
+                } else {
+                    throw new IOException("Tipo de marco desconocido: " + tipo);
+                }
+            }
+            posicion = 0;
+            limite = longitudOriginal;
+        } while (limite == 0);
+        return true;
+    }
+
+    private void descomprimir(Inflater inf, int longitudContenido, int longitudOriginal) throws IOException {
+        inf.setInput(marco, 0, longitudContenido);
+        int total = 0;
+        try {
+            while (total < longitudOriginal) {
+                int n = inf.inflate(datos, total, longitudOriginal - total);
+                if (n == 0 && (inf.needsInput() || inf.needsDictionary() || inf.finished())) {
+                    throw new EOFException("Marco comprimido incompleto");
+                }
+                total += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Marco comprimido corrupto: " + e.getMessage(), e);
+        }
+    }
+}
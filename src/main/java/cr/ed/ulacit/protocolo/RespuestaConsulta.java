@@ -0,0 +1,42 @@
+package cr.ed.ulacit.protocolo;
+
+import java.io.Serializable;
+
+/**
+ * La respuesta del servidor a una {@link Consulta}. Viaja por el mismo flujo que las actualizaciones
+ * de la simulación, intercalada con ellas.
+ */
+public class RespuestaConsulta implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long idConsulta;
+    private final Serializable resultado;
+    private final String error;
+
+    private RespuestaConsulta(long idConsulta, Serializable resultado, String error) {
+        this.idConsulta = idConsulta;
+        this.resultado = resultado;
+        this.error = error;
+    }
+
+    /**
+     * @param idConsulta El identificador de la consulta respondida.
+     * @param resultado  El resultado (puede ser {@code null}, ej. un autobús que no existe).
+     */
+    public static RespuestaConsulta exito(long idConsulta, Serializable resultado) {
+        return new RespuestaConsulta(idConsulta, resultado, null);
+    }
+
+    /**
+     * @param idConsulta El identificador de la consulta rechazada.
+     * @param error      El motivo.
+     */
+    public static RespuestaConsulta error(long idConsulta, String error) {
+        return new RespuestaConsulta(idConsulta, null, error);
+    }
+
+    public long getIdConsulta() { return idConsulta; }
+    public Serializable getResultado() { return resultado; }
+    public String getError() { return error; }
+    public boolean esError() { return error != null; }
+}
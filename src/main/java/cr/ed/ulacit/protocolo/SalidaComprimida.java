@@ -0,0 +1,174 @@
+package cr.ed.ulacit.protocolo;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Flujo de salida que agrupa lo escrito entre dos {@code flush()} en un marco y lo comprime con deflate.
+ * <p>
+ * Formato de cada marco: un byte de tipo, la longitud del contenido y la longitud original (dos enteros),
+ * seguidos del contenido. Tipos:
+ * <ul>
+ *     <li>{@link #MARCO_CRUDO}: sin comprimir; se usa cuando el marco es más chico que el umbral.</li>
+ *     <li>{@link #MARCO_INDEPENDIENTE}: deflate completo y autónomo; se usa antes de iniciar el flujo.</li>
+ *     <li>{@link #MARCO_FLUJO}: continuación de un único flujo deflate terminado con {@code SYNC_FLUSH}, que
+ *     aprovecha todo lo enviado antes (y el diccionario inicial) para comprimir el tick siguiente.</li>
+ * </ul>
+ * </p>
+ * <p>
+ * Diseño: Como {@code ObjectOutputStream} hace {@code flush()} una vez por tick, cada tick viaja en un
+ * marco que el cliente puede descomprimir completo apenas lo recibe, sin esperar al siguiente.
+ * </p>
+ */
+public class SalidaComprimida extends OutputStream {
+
+    /** Marcos de menos bytes que este umbral se envían sin comprimir. */
+    public static final int UMBRAL_POR_DEFECTO = 256;
+
+    static final int MARCO_CRUDO = 0;
+    static final int MARCO_FLUJO = 1;
+    static final int MARCO_INDEPENDIENTE = 2;
+
+    private final DataOutputStream destino;
+    private final int nivel;
+    private final int umbral;
+    private final Deflater deflater;
+    private boolean flujoIniciado;
+    private byte[] pendiente = new byte[8192];
+    private int longitud;
+    private byte[] comprimido = new byte[8192];
+
+    private long bytesOriginales;
+    private long bytesEnviados;
+    private long nanosCompresion;
+
+    /**
+     * @param destino El flujo del socket.
+     * @param nivel   El nivel de compresión de {@link Deflater}.
+     * @param umbral  El tamaño mínimo, en bytes, a partir del cual un marco se comprime.
+     */
+    public SalidaComprimida(OutputStream destino, int nivel, int umbral) {
+        this.destino = new DataOutputStream(destino);
+        this.nivel = nivel;
+        this.umbral = umbral;
+        this.deflater = new Deflater(nivel, true);
+    }
+
+    /**
+     * Inicia el flujo deflate compartido entre marcos, opcionalmente precargado con un diccionario que el
+     * otro extremo también conoce. Los marcos comprimidos anteriores a esta llamada son independientes.
+     *
+     * @param diccionario Los bytes del diccionario, o {@code null} para no usar diccionario.
+     */
+    public void iniciarFlujo(byte[] diccionario) {
+        if (diccionario != null && diccionario.length > 0) {
+            deflater.setDictionary(diccionario);
+        }
+        flujoIniciado = true;
+    }
+
+    @Override
+    public void write(int b) {
+        asegurarCapacidad(1);
+        pendiente[longitud++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        asegurarCapacidad(len);
+        System.arraycopy(b, off, pendiente, longitud, len);
+        longitud += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (longitud > 0) {
+            emitirMarco();
+        }
+        destino.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            deflater.end();
+            destino.close();
+        }
+    }
+
+    /** @return Los bytes escritos por la aplicación, antes de comprimir. */
+    public long getBytesOriginales() { return bytesOriginales; }
+
+    /** @return Los bytes enviados al socket, incluidas las cabeceras de los marcos. */
+    public long getBytesEnviados() { return bytesEnviados; }
+
+    /** @return El tiempo de CPU acumulado en compresión, en nanosegundos. */
+    public long getNanosCompresion() { return nanosCompresion; }
+
+    private void emitirMarco() throws IOException {
+        long inicio = System.nanoTime();
+        int tipo;
+        byte[] contenido;
+        int longitudContenido;
+        if (longitud < umbral) {
+            tipo = MARCO_CRUDO;
+            contenido = pendiente;
+            longitudContenido = longitud;
+        } else if (flujoIniciado) {
+            tipo = MARCO_FLUJO;
+            deflater.setInput(pendiente, 0, longitud);
+            longitudContenido = comprimir(deflater, Deflater.SYNC_FLUSH);
+            contenido = comprimido;
+        } else {
+            tipo = MARCO_INDEPENDIENTE;
+            Deflater independiente = new Deflater(nivel, true);
+            try {
+                independiente.setInput(pendiente, 0, longitud);
+                independiente.finish();
+                longitudContenido = comprimir(independiente, Deflater.NO_FLUSH);
+            } finally {
+                independiente.end();
+            }
+            contenido = comprimido;
+        }
+        nanosCompresion += System.nanoTime() - inicio;
+
+        destino.writeByte(tipo);
+        destino.writeInt(longitudContenido);
+        destino.writeInt(longitud);
+        destino.write(contenido, 0, longitudContenido);
+        bytesOriginales += longitud;
+        bytesEnviados += 9 + longitudContenido;
+        longitud = 0;
+    }
+
+    /**
+     * Vacía el deflater en {@code comprimido}, agrandándolo si hace falta.
+     *
+     * @return La cantidad de bytes comprimidos producidos.
+     */
+    private int comprimir(Deflater d, int modo) {
+        int total = 0;
+        while (true) {
+            if (total == comprimido.length) {
+                comprimido = Arrays.copyOf(comprimido, comprimido.length * 2);
+            }
+            total += d.deflate(comprimido, total, comprimido.length - total, modo);
+            boolean terminado = modo == Deflater.SYNC_FLUSH ? total < comprimido.length : d.finished();
+            if (terminado) {
+                return total;
+            }
+        }
+    }
+
+    private void asegurarCapacidad(int adicional) {
+        if (longitud + adicional > pendiente.length) {
+            pendiente = Arrays.copyOf(pendiente, Math.max(pendiente.length * 2, longitud + adicional));
+        }
+    }
+}
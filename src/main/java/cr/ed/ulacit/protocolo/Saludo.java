@@ -0,0 +1,138 @@
+package cr.ed.ulacit.protocolo;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * El saludo con el que empieza cada conexión, antes de cualquier objeto serializado.
+ * <p>
+ * El cliente envía {@link #MAGIA}, las opciones que desea y, si se está reconectando, la sesión del
+ * servidor a la que estaba conectado y el último tick que recibió. El servidor responde con el modo de
+ * compresión aceptado, su propia sesión y si reanuda la anterior. A partir de ahí ambos extremos
+ * envuelven el socket según lo acordado.
+ * </p>
+ * <p>
+ * Una sesión es una ejecución de un servidor (o pasarela): cambia si el proceso se reinicia. Si el
+ * servidor reanuda la sesión, no vuelve a enviar la red y empieza con una actualización que trae el
+ * estado actual y los eventos que el cliente no recibió.
+ * </p>
+ */
+public class Saludo {
+
+    /** Identifica el protocolo ("BUS2"). */
+    public static final int MAGIA = 0x42555332;
+    /** La sesión de un cliente que se conecta por primera vez. */
+    public static final long SIN_SESION = 0;
+
+    private final Compresion compresion;
+    private final long sesion;
+    private final long ultimoTick;
+
+    /**
+     * Crea el saludo de una conexión nueva.
+     *
+     * @param compresion El modo de compresión que el cliente solicita.
+     */
+    public Saludo(Compresion compresion) {
+        this(compresion, SIN_SESION, -1);
+    }
+
+    /**
+     * @param compresion El modo de compresión que el cliente solicita.
+     * @param sesion     La sesión del servidor a la que estaba conectado, o {@link #SIN_SESION}.
+     * @param ultimoTick El último tick que recibió en esa sesión, o -1.
+     */
+    public Saludo(Compresion compresion, long sesion, long ultimoTick) {
+        this.compresion = compresion;
+        this.sesion = sesion;
+        this.ultimoTick = ultimoTick;
+    }
+
+    /** @return El modo de compresión solicitado. */
+    public Compresion getCompresion() { return compresion; }
+
+    /** @return La sesión que el cliente quiere reanudar, o {@link #SIN_SESION}. */
+    public long getSesion() { return sesion; }
+
+    /** @return El último tick que recibió el cliente en esa sesión, o -1. */
+    public long getUltimoTick() { return ultimoTick; }
+
+    /**
+     * Escribe el saludo del cliente.
+     *
+     * @param salida El flujo del socket.
+     */
+    public void escribir(DataOutputStream salida) throws IOException {
+        salida.writeInt(MAGIA);
+        salida.writeByte(compresion.getCodigo());
+        salida.writeLong(sesion);
+        salida.writeLong(ultimoTick);
+        salida.flush();
+    }
+
+    /**
+     * Lee el saludo de un cliente.
+     *
+     * @param entrada El flujo del socket.
+     * @return El saludo recibido.
+     * @throws IOException Si el cliente no habla este protocolo.
+     */
+    public static Saludo leer(DataInputStream entrada) throws IOException {
+        int magia = entrada.readInt();
+        if (magia != MAGIA) {
+            throw new IOException("Saludo inválido: 0x" + Integer.toHexString(magia));
+        }
+        Compresion compresion = Compresion.porCodigo(entrada.readUnsignedByte());
+        return new Saludo(compresion, entrada.readLong(), entrada.readLong());
+    }
+
+    /**
+     * Responde al cliente.
+     *
+     * @param salida    El flujo del socket.
+     * @param respuesta La respuesta del servidor.
+     */
+    public static void responder(DataOutputStream salida, Respuesta respuesta) throws IOException {
+        salida.writeByte(respuesta.compresion.getCodigo());
+        salida.writeLong(respuesta.sesion);
+        salida.writeBoolean(respuesta.reanudada);
+        salida.flush();
+    }
+
+    /**
+     * Lee la respuesta del servidor al saludo.
+     *
+     * @param entrada El flujo del socket.
+     * @return La respuesta del servidor.
+     */
+    public static Respuesta leerRespuesta(DataInputStream entrada) throws IOException {
+        Compresion compresion = Compresion.porCodigo(entrada.readUnsignedByte());
+        long sesion = entrada.readLong();
+        return new Respuesta(compresion, sesion, entrada.readBoolean());
+    }
+
+    /**
+     * La respuesta del servidor al saludo.
+     */
+    public static class Respuesta {
+        private final Compresion compresion;
+        private final long sesion;
+        private final boolean reanudada;
+
+        /**
+         * @param compresion El modo de compresión aceptado.
+         * @param sesion     La sesión del servidor.
+         * @param reanudada  Si el servidor reanuda la sesión que pidió el cliente.
+         */
+        public Respuesta(Compresion compresion, long sesion, boolean reanudada) {
+            this.compresion = compresion;
+            this.sesion = sesion;
+            this.reanudada = reanudada;
+        }
+
+        public Compresion getCompresion() { return compresion; }
+        public long getSesion() { return sesion; }
+        public boolean isReanudada() { return reanudada; }
+    }
+}
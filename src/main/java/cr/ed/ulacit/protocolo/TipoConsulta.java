@@ -0,0 +1,41 @@
+package cr.ed.ulacit.protocolo;
+
+/**
+ * Los tipos de consulta que un cliente puede hacer al servidor por el canal de consultas.
+ */
+public enum TipoConsulta {
+    /**
+     * El estado detallado de un autobús. Parámetro: el ID del autobús. Resultado: un
+     * {@code DetalleAutobusDTO}, o {@code null} si el autobús no existe.
+     */
+    ESTADO_AUTOBUS,
+    /**
+     * Los eventos registrados entre dos ticks, inclusive. Parámetros: {@code desde} y {@code hasta}.
+     * Resultado: una lista de {@code EventoLog}, recortada a los primeros 1000.
+     */
+    EVENTOS_RANGO,
+    /**
+     * Las paradas de una ruta. Parámetro: el índice de la ruta en el {@code RedDTO} recibido al conectar.
+     * Resultado: un {@code RutaDTO}.
+     */
+    PARADAS_RUTA,
+    /**
+     * Cuántos autobuses hay en cada estado. Resultado: un {@code ResumenFlotaDTO}.
+     */
+    RESUMEN_FLOTA,
+    /**
+     * Las próximas llegadas a una parada. Parámetro: el ID de la parada. Resultado: un
+     * {@code TableroLlegadasDTO}, o {@code null} si la parada no existe.
+     */
+    TABLERO_PARADA,
+    /**
+     * Las posiciones de un autobús entre dos ticks, inclusive. Parámetros: el ID del autobús, {@code desde}
+     * y {@code hasta}. Resultado: un {@code TrayectoriaDTO}, o {@code null} si el autobús no existe.
+     */
+    TRAYECTORIA_AUTOBUS,
+    /**
+     * La posición de todos los autobuses en un tick pasado. Parámetro: el tick en {@code desde}.
+     * Resultado: una lista de {@code AutobusDTO}.
+     */
+    FLOTA_EN_TICK
+}
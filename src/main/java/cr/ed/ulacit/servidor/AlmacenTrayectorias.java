@@ -0,0 +1,409 @@
+package cr.ed.ulacit.servidor;
+
+import cr.ed.ulacit.Autobus;
+import cr.ed.ulacit.EstadoAutobus;
+import cr.ed.ulacit.dto.AutobusDTO;
+import cr.ed.ulacit.dto.TrayectoriaDTO;
+
+import java.awt.Color;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Historial comprimido de las posiciones de cada autobús, alimentado por el bucle de simulación.
+ * <p>
+ * Cada autobús tiene su propia serie, dividida en bloques de {@value #TAMANO_BLOQUE} bytes. Solo se
+ * registra una muestra cuando cambia la posición o el estado del autobús, y cada muestra se codifica
+ * respecto de la anterior del mismo bloque:
+ * <ul>
+ *     <li>el tick, como delta de delta (casi siempre 0 mientras el autobús se mueve), junto con el
+ *     estado en los dos bits bajos;</li>
+ *     <li>x e y, como diferencias con la muestra anterior.</li>
+ * </ul>
+ * Todo en varints con zigzag, así que una muestra típica ocupa tres bytes. Cuando los bloques sellados
+ * superan el límite de memoria, los más viejos se vuelcan a un archivo temporal y se leen de ahí al
+ * consultarlos.
+ * </p>
+ * <p>
+ * Diseño: Solo el hilo de simulación escribe. Los bytes de un bloque nunca se reescriben y las
+ * longitudes se publican en campos {@code volatile} después de escribir los datos, así que las consultas
+ * (desde los hilos de los clientes) leen sin candados, igual que {@link RegistroEventos}.
+ * </p>
+ */
+public class AlmacenTrayectorias implements Closeable {
+
+    static final int TAMANO_BLOQUE = 1024;
+    private static final int MAX_BYTES_MUESTRA = 10 + 5 + 5;
+    private static final EstadoAutobus[] ESTADOS = EstadoAutobus.values();
+
+    private final Map<Integer, Serie> seriesPorId = new ConcurrentHashMap<>();
+    private final List<Serie> series = new ArrayList<>(); // En el orden de la lista de autobuses; solo el escritor
+    private final long limiteMemoria;
+    private final ArrayDeque<Bloque> selladosEnMemoria = new ArrayDeque<>(); // Solo el escritor
+    private final FileChannel archivo;
+    private long bytesEnMemoria;
+    private long finArchivo;
+    private volatile long bytesDatos;
+    private volatile long muestras;
+    private volatile long bytesEnDisco;
+
+    /**
+     * @param directorio    El directorio donde se crea el archivo temporal de derrame.
+     * @param limiteMemoria Los bytes de bloques que se mantienen en memoria antes de volcarlos a disco.
+     * @throws IOException Si no se puede crear el archivo de derrame.
+     */
+    public AlmacenTrayectorias(Path directorio, long limiteMemoria) throws IOException {
+        this.limiteMemoria = limiteMemoria;
+        Path ruta = Files.createTempFile(directorio, "trayectorias", ".bin");
+        this.archivo = FileChannel.open(ruta, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    /**
+     * Registra las posiciones de los autobuses al final de un tick. Solo debe llamarlo el hilo de
+     * simulación, siempre con la misma lista (en el mismo orden) y con ticks crecientes.
+     *
+     * @param tick      El tick actual.
+     * @param autobuses Los autobuses de la simulación.
+     */
+    public void registrar(long tick, List<Autobus> autobuses) {
+        for (int i = series.size(); i < autobuses.size(); i++) {
+            Autobus bus = autobuses.get(i);
+            Serie serie = new Serie(bus.getId(), bus.getColor());
+            series.add(serie);
+            seriesPorId.put(bus.getId(), serie);
+        }
+        for (int i = 0; i < autobuses.size(); i++) {
+            Autobus bus = autobuses.get(i);
+            Serie serie = series.get(i);
+            if (serie.activo == null || bus.getX() != serie.ultimoX || bus.getY() != serie.ultimoY
+                    || bus.getEstado().ordinal() != serie.ultimoEstado) {
+                agregarMuestra(serie, tick, bus.getX(), bus.getY(), bus.getEstado().ordinal());
+            }
+        }
+    }
+
+    /**
+     * Las posiciones de un autobús entre dos ticks, inclusive.
+     *
+     * @return La trayectoria, que empieza con la muestra vigente en {@code desde}, o {@code null} si el
+     * autobús no existe.
+     */
+    public TrayectoriaDTO trayectoria(int idAutobus, long desde, long hasta) {
+        Serie serie = seriesPorId.get(idAutobus);
+        if (serie == null) {
+            return null;
+        }
+        int numBloques = serie.numBloques;
+        Bloque[] bloques = serie.bloques;
+        Columnas columnas = new Columnas();
+        Lector lector = new Lector();
+        for (int b = Math.max(0, buscarBloque(bloques, numBloques, desde)); b < numBloques; b++) {
+            lector.iniciar(bloques[b], leerDatos(bloques[b]));
+            while (lector.siguiente()) {
+                if (lector.tick > hasta) {
+                    return columnas.aDTO(idAutobus);
+                }
+                if (lector.tick <= desde) {
+                    columnas.cantidad = 0; // Solo interesa la última muestra antes del rango
+                }
+                columnas.agregar(lector);
+            }
+        }
+        return columnas.aDTO(idAutobus);
+    }
+
+    /**
+     * La posición de todos los autobuses en un tick.
+     *
+     * @return Un autobús por cada serie que ya tenía alguna muestra en ese tick.
+     */
+    public ArrayList<AutobusDTO> flotaEnTick(long tick) {
+        ArrayList<AutobusDTO> resultado = new ArrayList<>();
+        Lector lector = new Lector();
+        for (Serie serie : seriesPorId.values()) {
+            int numBloques = serie.numBloques;
+            Bloque[] bloques = serie.bloques;
+            int b = buscarBloque(bloques, numBloques, tick);
+            if (b < 0) {
+                continue;
+            }
+            lector.iniciar(bloques[b], leerDatos(bloques[b]));
+            int x = 0;
+            int y = 0;
+            int estado = 0;
+            while (lector.siguiente() && lector.tick <= tick) {
+                x = lector.x;
+                y = lector.y;
+                estado = lector.estado;
+            }
+            resultado.add(new AutobusDTO(serie.id, serie.color, x, y, ESTADOS[estado]));
+        }
+        resultado.sort((a, c) -> Integer.compare(a.getId(), c.getId()));
+        return resultado;
+    }
+
+    /** @return Los bytes de datos codificados, en memoria y en disco. */
+    public long getBytesDatos() { return bytesDatos; }
+
+    /** @return Los bytes de datos que ya se volcaron a disco. */
+    public long getBytesEnDisco() { return bytesEnDisco; }
+
+    /** @return La cantidad de muestras registradas. */
+    public long getMuestras() { return muestras; }
+
+    @Override
+    public void close() throws IOException {
+        archivo.close();
+    }
+
+    private void agregarMuestra(Serie serie, long tick, int x, int y, int estado) {
+        Bloque bloque = serie.activo;
+        if (bloque == null || bloque.longitud + MAX_BYTES_MUESTRA > TAMANO_BLOQUE) {
+            if (bloque != null) {
+                sellar(bloque);
+            }
+            bloque = new Bloque(tick);
+            serie.agregarBloque(bloque);
+            serie.activo = bloque;
+            serie.deltaTick = 0;
+            serie.ultimoTick = tick;
+            serie.ultimoX = 0;
+            serie.ultimoY = 0;
+            bytesEnMemoria += TAMANO_BLOQUE;
+        }
+        long delta = tick - serie.ultimoTick;
+        byte[] datos = bloque.datos;
+        int pos = bloque.longitud;
+        pos = escribirVarint(datos, pos, (zigzag(delta - serie.deltaTick) << 2) | estado);
+        pos = escribirVarint(datos, pos, zigzag(x - serie.ultimoX));
+        pos = escribirVarint(datos, pos, zigzag(y - serie.ultimoY));
+        bytesDatos += pos - bloque.longitud;
+        muestras++;
+        bloque.longitud = pos; // Publica la muestra
+
+        serie.deltaTick = delta;
+        serie.ultimoTick = tick;
+        serie.ultimoX = x;
+        serie.ultimoY = y;
+        serie.ultimoEstado = estado;
+    }
+
+    /**
+     * Marca un bloque como completo y, si la memoria pasa del límite, vuelca a disco los más viejos.
+     */
+    private void sellar(Bloque bloque) {
+        selladosEnMemoria.add(bloque);
+        while (bytesEnMemoria > limiteMemoria && !selladosEnMemoria.isEmpty()) {
+            Bloque viejo = selladosEnMemoria.poll();
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(viejo.datos, 0, viejo.longitud);
+                long posicion = finArchivo;
+                while (buffer.hasRemaining()) {
+                    posicion += archivo.write(buffer, posicion);
+                }
+                viejo.posicionArchivo = finArchivo;
+                finArchivo = posicion;
+                viejo.datos = null; // Publica la posición en el archivo
+                bytesEnMemoria -= TAMANO_BLOQUE;
+                bytesEnDisco += viejo.longitud;
+            } catch (IOException e) {
+                System.err.println("No se pudo volcar el historial de trayectorias a disco: " + e.getMessage());
+                selladosEnMemoria.addFirst(viejo);
+                return;
+            }
+        }
+    }
+
+    private byte[] leerDatos(Bloque bloque) {
+        byte[] datos = bloque.datos;
+        if (datos != null) {
+            return datos;
+        }
+        byte[] leidos = new byte[bloque.longitud];
+        ByteBuffer buffer = ByteBuffer.wrap(leidos);
+        try {
+            long posicion = bloque.posicionArchivo;
+            while (buffer.hasRemaining()) {
+                int n = archivo.read(buffer, posicion);
+                if (n < 0) {
+                    throw new IOException("Fin inesperado del archivo de trayectorias");
+                }
+                posicion += n;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return leidos;
+    }
+
+    /**
+     * @return El índice del último bloque que empieza en o antes de {@code tick}, o -1 si no hay.
+     */
+    private static int buscarBloque(Bloque[] bloques, int numBloques, long tick) {
+        int bajo = 0;
+        int alto = numBloques - 1;
+        int resultado = -1;
+        while (bajo <= alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (bloques[medio].tickInicio <= tick) {
+                resultado = medio;
+                bajo = medio + 1;
+            } else {
+                alto = medio - 1;
+            }
+        }
+        return resultado;
+    }
+
+    private static long zigzag(long valor) {
+        return (valor << 1) ^ (valor >> 63);
+    }
+
+    private static long deszigzag(long valor) {
+        return (valor >>> 1) ^ -(valor & 1);
+    }
+
+    private static int escribirVarint(byte[] destino, int pos, long valor) {
+        while ((valor & ~0x7FL) != 0) {
+            destino[pos++] = (byte) ((valor & 0x7F) | 0x80);
+            valor >>>= 7;
+        }
+        destino[pos++] = (byte) valor;
+        return pos;
+    }
+
+    /**
+     * La serie de un autobús: sus bloques, publicados para los lectores, y el estado del codificador,
+     * que solo usa el escritor.
+     */
+    private static final class Serie {
+        private final int id;
+        private final Color color;
+        private volatile Bloque[] bloques = new Bloque[4];
+        private volatile int numBloques;
+
+        private Bloque activo;
+        private long ultimoTick;
+        private long deltaTick;
+        private int ultimoX;
+        private int ultimoY;
+        private int ultimoEstado = -1;
+
+        private Serie(int id, Color color) {
+            this.id = id;
+            this.color = color;
+        }
+
+        private void agregarBloque(Bloque bloque) {
+            Bloque[] actuales = bloques;
+            if (numBloques == actuales.length) {
+                actuales = Arrays.copyOf(actuales, actuales.length * 2);
+            }
+            actuales[numBloques] = bloque;
+            bloques = actuales;
+            numBloques = numBloques + 1;
+        }
+    }
+
+    private static final class Bloque {
+        private final long tickInicio;
+        private volatile byte[] datos = new byte[TAMANO_BLOQUE]; // null cuando está en disco
+        private volatile int longitud;
+        private long posicionArchivo; // Válida cuando datos es null
+
+        private Bloque(long tickInicio) {
+            this.tickInicio = tickInicio;
+        }
+    }
+
+    /**
+     * Decodifica las muestras de un bloque, en orden.
+     */
+    private static final class Lector {
+        private byte[] datos;
+        private int limite;
+        private int pos;
+        private long tick;
+        private long deltaTick;
+        private int x;
+        private int y;
+        private int estado;
+
+        private void iniciar(Bloque bloque, byte[] datos) {
+            this.limite = Math.min(bloque.longitud, datos.length);
+            this.datos = datos;
+            this.pos = 0;
+            this.tick = bloque.tickInicio;
+            this.deltaTick = 0;
+            this.x = 0;
+            this.y = 0;
+        }
+
+        private boolean siguiente() {
+            if (pos >= limite) {
+                return false;
+            }
+            long cabecera = leerVarint();
+            estado = (int) (cabecera & 3);
+            deltaTick += deszigzag(cabecera >>> 2);
+            tick += deltaTick;
+            x += (int) deszigzag(leerVarint());
+            y += (int) deszigzag(leerVarint());
+            return true;
+        }
+
+        private long leerVarint() {
+            long valor = 0;
+            int desplazamiento = 0;
+            byte b;
+            do {
+                b = datos[pos++];
+                valor |= (long) (b & 0x7F) << desplazamiento;
+                desplazamiento += 7;
+            } while (b < 0);
+            return valor;
+        }
+    }
+
+    /** Acumula muestras decodificadas en arreglos que crecen. */
+    private static final class Columnas {
+        private long[] ticks = new long[64];
+        private int[] x = new int[64];
+        private int[] y = new int[64];
+        private byte[] estados = new byte[64];
+        private int cantidad;
+
+        private void agregar(Lector lector) {
+            if (cantidad == ticks.length) {
+                int nueva = cantidad * 2;
+                ticks = Arrays.copyOf(ticks, nueva);
+                x = Arrays.copyOf(x, nueva);
+                y = Arrays.copyOf(y, nueva);
+                estados = Arrays.copyOf(estados, nueva);
+            }
+            ticks[cantidad] = lector.tick;
+            x[cantidad] = lector.x;
+            y[cantidad] = lector.y;
+            estados[cantidad] = (byte) lector.estado;
+            cantidad++;
+        }
+
+        private TrayectoriaDTO aDTO(int idAutobus) {
+            return new TrayectoriaDTO(idAutobus, Arrays.copyOf(ticks, cantidad), Arrays.copyOf(x, cantidad),
+                    Arrays.copyOf(y, cantidad), Arrays.copyOf(estados, cantidad));
+        }
+    }
+}
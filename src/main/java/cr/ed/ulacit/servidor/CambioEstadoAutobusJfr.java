@@ -0,0 +1,58 @@
+package cr.ed.ulacit.servidor;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evento de JDK Flight Recorder para un cambio de estado de un autobús: sale de la terminal, llega a una
+ * parada, sale de ella o termina la ruta.
+ * <p>
+ * Con una red GTFS grande son miles por segundo, así que viene desactivado y hay que activarlo en la
+ * configuración de la grabación ({@code cr.ed.ulacit.CambioEstadoAutobus#enabled=true}). Desactivado,
+ * no cuesta más que una comprobación por cambio.
+ * </p>
+ */
+@Name("cr.ed.ulacit.CambioEstadoAutobus")
+@Label("Cambio de estado de autobús")
+@Category({"Simulador de autobuses", "Simulación"})
+@Description("Un autobús sale de la terminal, llega a una parada, sale de ella o termina su ruta.")
+@StackTrace(false)
+@Enabled(false)
+class CambioEstadoAutobusJfr extends Event {
+
+    @Label("Autobús")
+    int autobus;
+
+    @Label("Ruta")
+    String ruta;
+
+    @Label("Estado")
+    String estado;
+
+    @Label("Parada")
+    String parada;
+
+    /**
+     * Registra el cambio si el evento está activo.
+     *
+     * @param autobus El ID del autobús.
+     * @param ruta    El nombre de la ruta.
+     * @param estado  El nuevo estado.
+     * @param parada  La parada donde ocurre, o {@code null}.
+     */
+    static void registrar(int autobus, String ruta, String estado, String parada) {
+        CambioEstadoAutobusJfr evento = new CambioEstadoAutobusJfr();
+        if (evento.isEnabled()) {
+            evento.autobus = autobus;
+            evento.ruta = ruta;
+            evento.estado = estado;
+            evento.parada = parada;
+            evento.commit();
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package cr.ed.ulacit.servidor;
+
+import cr.ed.ulacit.Parada;
+import cr.ed.ulacit.RedTransporte;
+import cr.ed.ulacit.Ruta;
+import cr.ed.ulacit.Viaje;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Carga una {@link RedTransporte} desde un directorio con archivos al estilo GTFS.
+ * <p>
+ * Archivos y columnas que se usan:
+ * <ul>
+ *     <li>{@code stops.txt}: {@code stop_id}, {@code stop_name}, {@code stop_lat}, {@code stop_lon}.</li>
+ *     <li>{@code routes.txt}: {@code route_id}, {@code route_short_name}, {@code route_long_name}.</li>
+ *     <li>{@code trips.txt}: {@code route_id}, {@code trip_id}.</li>
+ *     <li>{@code stop_times.txt}: {@code trip_id}, {@code departure_time} (o {@code arrival_time}),
+ *     {@code stop_id}, {@code stop_sequence}.</li>
+ * </ul>
+ * La secuencia de paradas de cada ruta se toma del primer viaje de esa ruta en {@code trips.txt}, y cada
+ * viaje se convierte en un {@link Viaje} que sale a la hora de su primera parada. Las coordenadas
+ * geográficas se proyectan al área de dibujo del mapa.
+ * </p>
+ * <p>
+ * Diseño: Cada archivo se recorre una sola vez con {@link LectorCsv}, que no crea objetos por campo. Los
+ * identificadores GTFS se traducen a índices enteros al leerlos, los datos intermedios se guardan en
+ * arreglos primitivos y los nombres repetidos se internan, de modo que el costo de la carga lo domina la
+ * lectura de {@code stop_times.txt}. Cada instancia carga una sola red.
+ * </p>
+ */
+public class CargadorRedGtfs {
+
+    private static final int ANCHO_MAPA = 1200;
+    private static final int ALTO_MAPA = 800;
+    private static final int MARGEN = 50;
+
+    private final Map<String, String> nombresInternados = new HashMap<>();
+
+    // Paradas
+    private final Map<String, Integer> indiceParada = new HashMap<>();
+    private final List<String> nombresParada = new ArrayList<>();
+    private double[] latitudes = new double[1024];
+    private double[] longitudes = new double[1024];
+
+    // Rutas
+    private final Map<String, Integer> indiceRuta = new HashMap<>();
+    private final List<String> nombresRuta = new ArrayList<>();
+    private int[] viajeModeloDeRuta = new int[256]; // Primer viaje de cada ruta, o -1
+
+    // Viajes
+    private final Map<String, Integer> indiceViaje = new HashMap<>();
+    private int[] rutaDeViaje = new int[1024];
+    private int[] salidaDeViaje = new int[1024];
+    private int[] menorSecuenciaDeViaje = new int[1024];
+    private int numViajes;
+
+    // Secuencias de paradas de los viajes modelo: (stop_sequence << 32) | índice de parada
+    private final Map<Integer, long[]> secuenciasModelo = new HashMap<>();
+    private final Map<Integer, Integer> longitudSecuenciaModelo = new HashMap<>();
+
+    /**
+     * Carga la red desde el directorio indicado.
+     *
+     * @param directorio El directorio que contiene los archivos GTFS.
+     * @return La red con sus rutas y viajes.
+     * @throws IOException Si falta algún archivo o columna obligatoria, o si un valor tiene un formato inválido.
+     */
+    public RedTransporte cargar(Path directorio) throws IOException {
+        leerParadas(directorio.resolve("stops.txt"));
+        leerRutas(directorio.resolve("routes.txt"));
+        leerViajes(directorio.resolve("trips.txt"));
+        leerHorarios(directorio.resolve("stop_times.txt"));
+        return construirRed();
+    }
+
+    private void leerParadas(Path archivo) throws IOException {
+        try (LectorCsv csv = new LectorCsv(archivo)) {
+            int colId = csv.columnaObligatoria("stop_id");
+            int colNombre = csv.columna("stop_name");
+            int colLat = csv.columnaObligatoria("stop_lat");
+            int colLon = csv.columnaObligatoria("stop_lon");
+            while (csv.siguiente()) {
+                int indice = nombresParada.size();
+                if (indiceParada.putIfAbsent(csv.texto(colId), indice) != null) {
+                    continue; // stop_id duplicado: se conserva el primero
+                }
+                if (indice == latitudes.length) {
+                    latitudes = Arrays.copyOf(latitudes, indice * 2);
+                    longitudes = Arrays.copyOf(longitudes, indice * 2);
+                }
+                latitudes[indice] = csv.decimal(colLat);
+                longitudes[indice] = csv.decimal(colLon);
+                nombresParada.add(internar(csv.texto(colNombre)));
+            }
+        }
+    }
+
+    private void leerRutas(Path archivo) throws IOException {
+        try (LectorCsv csv = new LectorCsv(archivo)) {
+            int colId = csv.columnaObligatoria("route_id");
+            int colCorto = csv.columna("route_short_name");
+            int colLargo = csv.columna("route_long_name");
+            while (csv.siguiente()) {
+                String id = csv.texto(colId);
+                int indice = nombresRuta.size();
+                if (indiceRuta.putIfAbsent(id, indice) != null) {
+                    continue;
+                }
+                if (indice == viajeModeloDeRuta.length) {
+                    viajeModeloDeRuta = Arrays.copyOf(viajeModeloDeRuta, indice * 2);
+                }
+                viajeModeloDeRuta[indice] = -1;
+                String nombre = !csv.esVacio(colLargo) ? csv.texto(colLargo)
+                        : !csv.esVacio(colCorto) ? csv.texto(colCorto) : id;
+                nombresRuta.add(internar(nombre));
+            }
+        }
+    }
+
+    private void leerViajes(Path archivo) throws IOException {
+        try (LectorCsv csv = new LectorCsv(archivo)) {
+            int colRuta = csv.columnaObligatoria("route_id");
+            int colViaje = csv.columnaObligatoria("trip_id");
+            while (csv.siguiente()) {
+                Integer ruta = indiceRuta.get(csv.texto(colRuta));
+                if (ruta == null || indiceViaje.putIfAbsent(csv.texto(colViaje), numViajes) != null) {
+                    continue; // Ruta desconocida o trip_id duplicado
+                }
+                if (numViajes == rutaDeViaje.length) {
+                    int capacidad = numViajes * 2;
+                    rutaDeViaje = Arrays.copyOf(rutaDeViaje, capacidad);
+                    salidaDeViaje = Arrays.copyOf(salidaDeViaje, capacidad);
+                    menorSecuenciaDeViaje = Arrays.copyOf(menorSecuenciaDeViaje, capacidad);
+                }
+                rutaDeViaje[numViajes] = ruta;
+                salidaDeViaje[numViajes] = -1;
+                menorSecuenciaDeViaje[numViajes] = Integer.MAX_VALUE;
+                if (viajeModeloDeRuta[ruta] < 0) {
+                    viajeModeloDeRuta[ruta] = numViajes;
+                    secuenciasModelo.put(numViajes, new long[32]);
+                    longitudSecuenciaModelo.put(numViajes, 0);
+                }
+                numViajes++;
+            }
+        }
+    }
+
+    private void leerHorarios(Path archivo) throws IOException {
+        try (LectorCsv csv = new LectorCsv(archivo)) {
+            int colViaje = csv.columnaObligatoria("trip_id");
+            int colSalida = csv.columna("departure_time");
+            int colLlegada = csv.columna("arrival_time");
+            int colParada = csv.columnaObligatoria("stop_id");
+            int colSecuencia = csv.columnaObligatoria("stop_sequence");
+
+            // stop_times.txt suele venir agrupado por viaje: se evita crear un String por línea
+            // recordando los bytes del último trip_id resuelto.
+            byte[] ultimoViajeBytes = new byte[64];
+            int ultimoViajeLongitud = -1;
+            int viaje = -1;
+            long[] secuencia = null;
+            int longitudSecuencia = 0;
+
+            while (csv.siguiente()) {
+                if (!csv.esIgual(colViaje, ultimoViajeBytes, ultimoViajeLongitud)) {
+                    if (secuencia != null) {
+                        guardarSecuenciaModelo(viaje, secuencia, longitudSecuencia);
+                    }
+                    ultimoViajeBytes = csv.copiar(colViaje, ultimoViajeBytes);
+                    ultimoViajeLongitud = csv.longitud(colViaje);
+                    Integer indice = indiceViaje.get(csv.texto(colViaje));
+                    viaje = indice == null ? -1 : indice;
+                    secuencia = viaje >= 0 ? secuenciasModelo.get(viaje) : null;
+                    longitudSecuencia = secuencia != null ? longitudSecuenciaModelo.get(viaje) : 0;
+                }
+                if (viaje < 0) {
+                    continue;
+                }
+
+                int orden = csv.entero(colSecuencia, 0);
+                if (orden < menorSecuenciaDeViaje[viaje]) {
+                    int hora = csv.horaEnSegundos(colSalida);
+                    if (hora < 0) {
+                        hora = csv.horaEnSegundos(colLlegada);
+                    }
+                    if (hora >= 0) {
+                        menorSecuenciaDeViaje[viaje] = orden;
+                        salidaDeViaje[viaje] = hora;
+                    }
+                }
+                if (secuencia != null) {
+                    Integer parada = indiceParada.get(csv.texto(colParada));
+                    if (parada != null) {
+                        if (longitudSecuencia == secuencia.length) {
+                            secuencia = Arrays.copyOf(secuencia, longitudSecuencia * 2);
+                        }
+                        secuencia[longitudSecuencia++] = ((long) orden << 32) | parada;
+                    }
+                }
+            }
+            if (secuencia != null) {
+                guardarSecuenciaModelo(viaje, secuencia, longitudSecuencia);
+            }
+        }
+    }
+
+    private void guardarSecuenciaModelo(int viaje, long[] secuencia, int longitud) {
+        secuenciasModelo.put(viaje, secuencia);
+        longitudSecuenciaModelo.put(viaje, longitud);
+    }
+
+    private RedTransporte construirRed() {
+        Parada[] paradas = new Parada[nombresParada.size()];
+        Proyeccion proyeccion = new Proyeccion(latitudes, longitudes, paradas.length);
+
+        List<Ruta> rutas = new ArrayList<>();
+        Ruta[] rutaPorIndice = new Ruta[nombresRuta.size()];
+        for (int r = 0; r < nombresRuta.size(); r++) {
+            int modelo = viajeModeloDeRuta[r];
+            if (modelo < 0) {
+                continue;
+            }
+            long[] secuencia = secuenciasModelo.get(modelo);
+            int longitud = longitudSecuenciaModelo.get(modelo);
+            Arrays.sort(secuencia, 0, longitud);
+            if (longitud < 2) {
+                continue; // Una ruta necesita al menos dos paradas
+            }
+            List<Parada> paradasRuta = new ArrayList<>(longitud);
+            for (int i = 0; i < longitud; i++) {
+                int indice = (int) secuencia[i];
+                if (paradas[indice] == null) {
+                    paradas[indice] = new Parada(indice + 1, nombresParada.get(indice),
+                            proyeccion.x(longitudes[indice]), proyeccion.y(latitudes[indice]));
+                }
+                paradasRuta.add(paradas[indice]);
+            }
+            rutaPorIndice[r] = new Ruta(nombresRuta.get(r), paradasRuta);
+            rutas.add(rutaPorIndice[r]);
+        }
+
+        List<Viaje> viajes = new ArrayList<>();
+        for (int v = 0; v < numViajes; v++) {
+            Ruta ruta = rutaPorIndice[rutaDeViaje[v]];
+            if (ruta != null && salidaDeViaje[v] >= 0) {
+                viajes.add(new Viaje(v + 1, ruta, salidaDeViaje[v]));
+            }
+        }
+        return new RedTransporte(rutas, viajes);
+    }
+
+    private String internar(String texto) {
+        String existente = nombresInternados.putIfAbsent(texto, texto);
+        return existente != null ? existente : texto;
+    }
+
+    /**
+     * Proyección equirectangular de latitud/longitud al área de dibujo, conservando la proporción.
+     */
+    private static final class Proyeccion {
+        private final double minLon;
+        private final double maxLat;
+        private final double escalaX;
+        private final double escalaY;
+
+        private Proyeccion(double[] latitudes, double[] longitudes, int cantidad) {
+            double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+            double minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+            for (int i = 0; i < cantidad; i++) {
+                minLat = Math.min(minLat, latitudes[i]);
+                maxLat = Math.max(maxLat, latitudes[i]);
+                minLon = Math.min(minLon, longitudes[i]);
+                maxLon = Math.max(maxLon, longitudes[i]);
+            }
+            double factorLon = Math.cos(Math.toRadians((minLat + maxLat) / 2));
+            double ancho = Math.max((maxLon - minLon) * factorLon, 1e-9);
+            double alto = Math.max(maxLat - minLat, 1e-9);
+            double escala = Math.min((ANCHO_MAPA - 2.0 * MARGEN) / ancho, (ALTO_MAPA - 2.0 * MARGEN) / alto);
+            this.minLon = minLon;
+            this.maxLat = maxLat;
+            this.escalaX = escala * factorLon;
+            this.escalaY = escala;
+        }
+
+        private int x(double longitud) {
+            return MARGEN + (int) Math.round((longitud - minLon) * escalaX);
+        }
+
+        private int y(double latitud) {
+            return MARGEN + (int) Math.round((maxLat - latitud) * escalaY);
+        }
+    }
+}
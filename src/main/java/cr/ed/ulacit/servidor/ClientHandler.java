@@ -1,67 +1,219 @@
 package cr.ed.ulacit.servidor;
 
-import cr.ed.ulacit.dto.RutaDTO;
+import cr.ed.ulacit.dto.RedDTO;
 import cr.ed.ulacit.dto.UpdatePayload;
+import cr.ed.ulacit.protocolo.Compresion;
+import cr.ed.ulacit.protocolo.Consulta;
+import cr.ed.ulacit.protocolo.DiccionarioCompresion;
+import cr.ed.ulacit.protocolo.RespuestaConsulta;
+import cr.ed.ulacit.protocolo.SalidaComprimida;
+import cr.ed.ulacit.protocolo.Saludo;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
 import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 /**
  * Gestiona la comunicación con un único cliente conectado al servidor.
  * <p>
  * Cada instancia de esta clase se ejecuta en su propio hilo, dedicándose a un solo cliente.
- * Su principal responsabilidad es enviar la información inicial de la ruta y luego transmitir
+ * Su principal responsabilidad es enviar la información inicial de la red de rutas y luego transmitir
  * las actualizaciones periódicas del estado de la simulación ({@link UpdatePayload}).
  * </p>
+ * <p>
+ * Antes de cualquier objeto, el cliente envía un {@link Saludo} con la compresión que desea. Si pide
+ * compresión, todo lo que sigue viaja en marcos de {@link SalidaComprimida}: la red en un marco
+ * independiente y, a partir de ahí, un flujo deflate con el diccionario de la red y un marco por tick.
+ * </p>
+ * <p>
+ * Si el saludo trae la sesión actual del servidor, el cliente se está reconectando: ya tiene la red, así
+ * que en su lugar se le envía una actualización con el estado actual y los eventos que no recibió
+ * ({@link ProveedorSimulacion#reanudar(long)}), y luego sigue con las transmisiones normales.
+ * </p>
+ * <p>
+ * Después de recibir la red, el cliente puede enviar {@link Consulta}s en cualquier momento, sin esperar
+ * las respuestas anteriores. El hilo de este manejador las lee y responde cada una con una
+ * {@link RespuestaConsulta} que lleva el mismo identificador, intercalada con las actualizaciones.
+ * </p>
+ * <p>
+ * Hay dos modos de escritura. Sin cola, quien envía (el hilo de simulación) escribe en el socket con el
+ * monitor del manejador, y un cliente lento lo hace esperar. Con cola ({@link #ClientHandler(Socket,
+ * ProveedorSimulacion, boolean)}, pensado para hilos virtuales), enviar solo encola y un hilo virtual
+ * escritor por conexión escribe. Cada actualización se serializa una sola vez para todas las conexiones
+ * con cola de un mismo emisor, que la envuelve en una {@link ActualizacionSerializada} al difundirla: tras un {@code reset()} el flujo no recuerda nada, así que {@code writeObject} escribiría los
+ * mismos bytes en cualquiera, y se escriben esos bytes. La cola guarda a lo sumo {@value #ACTUALIZACIONES_PENDIENTES}
+ * actualizaciones: si se llena se descarta la más vieja (las respuestas nunca se descartan), y si una
+ * escritura no avanza en {@value #PLAZO_SIN_PROGRESO_MS} ms se cierra la conexión. Así un cliente caído sin
+ * cerrar la conexión se detecta aunque no envíe nada; el búfer de envío del socket se fija en
+ * {@value #TAMANO_BUFFER_ENVIO} bytes para que se llene pronto y acote la memoria del sistema por conexión.
+ * </p>
+ * <p>
+ * La conexión, cada escritura de una actualización y la desconexión se registran como eventos de JDK
+ * Flight Recorder ({@link ConexionClienteJfr}, {@link EscrituraClienteJfr}, {@link DesconexionClienteJfr})
+ * cuando hay una grabación activa.
+ * </p>
  */
 public class ClientHandler implements Runnable {
 
+    /** Las actualizaciones que esperan en la cola de una conexión con cola antes de descartar la más vieja. */
+    public static final int ACTUALIZACIONES_PENDIENTES = 4;
+    private static final int PLAZO_SALUDO_MS = 10000;
+    private static final long PLAZO_SIN_PROGRESO_MS = 10000;
+    private static final int TAMANO_BUFFER_ENVIO = 32 * 1024;
+    private static final int CABECERA_FLUJO = 4; // Lo que escribe el constructor de ObjectOutputStream
+    // Del cliente solo se aceptan consultas: cualquier otra clase se rechaza antes de deserializarla.
+    private static final ObjectInputFilter FILTRO_CONSULTAS = ObjectInputFilter.Config.createFilter(
+            "maxdepth=4;cr.ed.ulacit.protocolo.Consulta;cr.ed.ulacit.protocolo.TipoConsulta;java.lang.Enum;!*");
+
     private final Socket socket;
-    private final Servidor servidor;
+    private final ProveedorSimulacion servidor;
+    private final String direccion;
     private ObjectOutputStream objectOutputStream;
+    private OutputStream salida; // Debajo de objectOutputStream: el socket o el flujo comprimido
+    private SalidaComprimida salidaComprimida; // null si la conexión no usa compresión
+    private SalidaContada salidaContada;
+    private Compresion compresion = Compresion.NINGUNA;
+    // Protegidos por el monitor de this
+    private boolean redEnviada;
+    private long actualizacionesEnviadas; // Con cola lo escribe solo el hilo escritor
+    private volatile String motivoDesconexion;
+    // Solo con cola; null si quien envía escribe directamente
+    private final BlockingQueue<Object> pendientes;
+    private final AtomicInteger actualizacionesEnCola = new AtomicInteger();
+    private Thread escritor;
+    private long ultimoTickEnviado = -1; // Del hilo escritor; las actualizaciones no más nuevas se omiten
+    private volatile long escribiendoDesde; // 0 si el escritor no está bloqueado en una escritura
+    private volatile long actualizacionesDescartadas;
 
     /**
      * Constructor para el manejador de cliente.
      *
      * @param socket   El socket del cliente que se ha conectado.
-     * @param servidor La instancia del servidor principal, usada para obtener datos y gestionar la desconexión.
+     * @param servidor El servidor (o la pasarela) del que se obtienen los datos y que gestiona la desconexión.
+     */
+    public ClientHandler(Socket socket, ProveedorSimulacion servidor) {
+        this(socket, servidor, false);
+    }
+
+    /**
+     * Constructor para el manejador de cliente, eligiendo el modo de escritura.
+     *
+     * @param socket   El socket del cliente que se ha conectado.
+     * @param servidor El servidor (o la pasarela) del que se obtienen los datos y que gestiona la desconexión.
+     * @param conCola  Si las actualizaciones y las respuestas se encolan y las escribe un hilo virtual propio
+     *                 de la conexión, en lugar de escribirlas quien las envía.
      */
-    public ClientHandler(Socket socket, Servidor servidor) {
+    public ClientHandler(Socket socket, ProveedorSimulacion servidor, boolean conCola) {
         this.socket = socket;
         this.servidor = servidor;
-        try {
-            this.objectOutputStream = new ObjectOutputStream(socket.getOutputStream());
-        } catch (IOException e) {
-            System.err.println("Error al crear el stream de salida para el cliente: " + e.getMessage());
-        }
+        this.direccion = String.valueOf(socket.getRemoteSocketAddress());
+        this.pendientes = conCola ? new LinkedBlockingQueue<>() : null;
     }
 
     /**
-     * El método principal del hilo. Envía la información de la ruta al cliente una vez
-     * y luego entra en un bucle para mantener la conexión viva, permitiendo que el servidor
-     * envíe actualizaciones.
+     * El método principal del hilo. Negocia la compresión, envía la información de la red al cliente una vez
+     * y luego entra en un bucle que atiende las consultas del cliente mientras el servidor le envía
+     * actualizaciones. El bucle también detecta la desconexión.
      */
     @Override
     public void run() {
+        ConexionClienteJfr eventoConexion = new ConexionClienteJfr();
+        DesconexionClienteJfr eventoDesconexion = new DesconexionClienteJfr();
+        eventoConexion.begin();
+        eventoDesconexion.begin();
         try {
-            // Enviar la información de la ruta una sola vez al conectar
-            RutaDTO ruta = servidor.getRutaDTO();
-            objectOutputStream.writeObject(ruta);
-            objectOutputStream.flush();
+            // Negociar la compresión. El plazo evita que un cliente mudo retenga el hilo para siempre.
+            socket.setSoTimeout(PLAZO_SALUDO_MS);
+            if (pendientes != null) {
+                socket.setSendBufferSize(TAMANO_BUFFER_ENVIO);
+            }
+            DataInputStream entradaSocket = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            Saludo saludo = Saludo.leer(entradaSocket);
+            socket.setSoTimeout(0);
+            boolean reanudada = saludo.getSesion() == servidor.getSesion();
+            salidaContada = new SalidaContada(socket.getOutputStream());
+            DataOutputStream salidaSocket = new DataOutputStream(new BufferedOutputStream(salidaContada));
+            Saludo.responder(salidaSocket, new Saludo.Respuesta(saludo.getCompresion(), servidor.getSesion(), reanudada));
+
+            salida = salidaSocket;
+            if (saludo.getCompresion() != Compresion.NINGUNA) {
+                salidaComprimida = new SalidaComprimida(salidaSocket, saludo.getCompresion().getNivel(), SalidaComprimida.UMBRAL_POR_DEFECTO);
+                salida = salidaComprimida;
+            }
+
+            // Enviar la información de la red una sola vez al conectar. Se sincroniza con
+            // enviarActualizacion() para que ninguna actualización se escriba antes que la red.
+            RedDTO red = servidor.getRedDTO();
+            synchronized (this) {
+                compresion = saludo.getCompresion();
+                objectOutputStream = new ObjectOutputStream(salida);
+                if (!reanudada) {
+                    objectOutputStream.writeObject(red);
+                    objectOutputStream.reset(); // Las actualizaciones serializadas aparte suponen un flujo reiniciado
+                }
+                objectOutputStream.flush();
+                if (salidaComprimida != null) {
+                    salidaComprimida.iniciarFlujo(DiccionarioCompresion.crear(red));
+                }
+                if (reanudada) {
+                    // Se prepara dentro del candado: ninguna transmisión posterior a este estado se pierde
+                    UpdatePayload reanudacion = servidor.reanudar(saludo.getUltimoTick());
+                    objectOutputStream.writeObject(reanudacion);
+                    objectOutputStream.flush();
+                    objectOutputStream.reset();
+                    // Con cola, las actualizaciones encoladas mientras tanto que ya cubre la reanudación se omiten
+                    ultimoTickEnviado = reanudacion.getTick();
+                }
+                redEnviada = true;
+            }
+            if (pendientes != null) {
+                escritor = Thread.ofVirtual().name("escritor-" + direccion).start(this::escribirPendientes);
+            }
+            eventoConexion.end();
+            if (eventoConexion.shouldCommit()) {
+                eventoConexion.cliente = direccion;
+                eventoConexion.compresion = saludo.getCompresion().name();
+                eventoConexion.reanudada = reanudada;
+                eventoConexion.commit();
+            }
 
             // El servidor se encargará de empujar las actualizaciones a través de enviarActualizacion().
-            // Este bucle mantiene el hilo y la conexión vivos para detectar una desconexión.
+            // Este hilo atiende las consultas hasta que el cliente se desconecta.
+            ObjectInputStream objectInputStream = new ObjectInputStream(entradaSocket);
+            objectInputStream.setObjectInputFilter(FILTRO_CONSULTAS);
             while (!socket.isClosed()) {
-                Thread.sleep(5000); // Pausa para no consumir CPU innecesariamente.
+                atenderConsulta((Consulta) objectInputStream.readObject());
             }
 
+        } catch (EOFException e) {
+            // El cliente cerró la conexión; removerCliente() lo informa.
+            anotarMotivo("el cliente cerró la conexión");
+        } catch (InvalidClassException | ClassNotFoundException | ClassCastException e) {
+            System.err.println("Mensaje inválido del cliente " + socket.getInetAddress() + ": " + e.getMessage());
+            anotarMotivo("mensaje inválido: " + e.getMessage());
         } catch (IOException e) {
             // Esto suele ocurrir si el cliente se desconecta. No es un error crítico del servidor.
             System.out.println("Cliente desconectado (IO): " + socket.getInetAddress());
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            System.out.println("Hilo del cliente interrumpido: " + socket.getInetAddress());
+            anotarMotivo("error de lectura: " + e.getMessage());
         } finally {
             servidor.removerCliente(this);
             try {
@@ -69,41 +221,307 @@ public class ClientHandler implements Runnable {
             } catch (IOException e) {
                 // Ignorar errores al cerrar el socket, ya que probablemente ya esté cerrado.
             }
+            detenerEscritor();
+            eventoDesconexion.end();
+            if (eventoDesconexion.shouldCommit()) {
+                synchronized (this) {
+                    eventoDesconexion.cliente = direccion;
+                    eventoDesconexion.motivo = motivoDesconexion;
+                    eventoDesconexion.actualizaciones = actualizacionesEnviadas;
+                    eventoDesconexion.descartadas = actualizacionesDescartadas;
+                    eventoDesconexion.bytes = salidaContada != null ? salidaContada.bytes : 0;
+                }
+                eventoDesconexion.commit();
+            }
+        }
+    }
+
+    /** Guarda el primer motivo por el que se corta la conexión, para el evento de desconexión. */
+    private void anotarMotivo(String motivo) {
+        if (motivoDesconexion == null) {
+            motivoDesconexion = motivo;
         }
     }
 
     /**
      * Envía un paquete de actualización (payload) al cliente.
      * <p>
-     * Este método es llamado por el hilo principal del servidor. Si el envío falla
-     * (por ejemplo, porque el cliente cerró la aplicación), se encarga de limpiar
-     * la conexión y notificar al servidor para que elimine al cliente de la lista de activos.
+     * Este método es llamado por el hilo principal del servidor. Sin cola escribe la actualización; si el
+     * envío falla (por ejemplo, porque el cliente cerró la aplicación), se encarga de limpiar la conexión y
+     * notificar al servidor para que elimine al cliente de la lista de activos. Con cola solo la encola y
+     * revisa que la escritura en curso no lleve demasiado tiempo detenida.
      * </p>
      *
      * @param payload El objeto {@link UpdatePayload} que contiene el estado más reciente de la simulación.
      */
     public void enviarActualizacion(UpdatePayload payload) {
+        enviarActualizacion(new ActualizacionSerializada(payload));
+    }
+
+    /**
+     * Igual que {@link #enviarActualizacion(UpdatePayload)}, pero con la actualización ya envuelta: quien
+     * difunde a varios clientes pasa la misma instancia a todos y, con cola, se serializa una sola vez.
+     *
+     * @param actualizacion La actualización, compartida entre los clientes de un mismo emisor.
+     */
+    void enviarActualizacion(ActualizacionSerializada actualizacion) {
+        if (pendientes != null) {
+            encolarActualizacion(actualizacion);
+            return;
+        }
+        UpdatePayload payload = actualizacion.payload;
+        synchronized (this) {
+            try {
+                if (objectOutputStream != null && redEnviada) {
+                    escribirActualizacion(payload);
+                }
+            } catch (IOException e) {
+                System.err.println("Error al enviar actualización al cliente " + socket.getInetAddress() + ". Eliminando cliente.");
+                anotarMotivo("error de escritura: " + e.getMessage());
+                servidor.removerCliente(this);
+                cerrarSocket();
+            }
+        }
+    }
+
+    /** Escribe una actualización y la registra en JFR, con el monitor tomado (sin cola). */
+    private void escribirActualizacion(UpdatePayload payload) throws IOException {
+        EscrituraClienteJfr evento = new EscrituraClienteJfr();
+        evento.begin();
+        long bytesAntes = salidaContada.bytes;
+        objectOutputStream.writeObject(payload);
+        objectOutputStream.flush();
+        objectOutputStream.reset(); // Esencial para prevenir que la caché de ObjectOutputStream reutilice objetos antiguos.
+        actualizacionesEnviadas++;
+        evento.end();
+        if (evento.shouldCommit()) {
+            evento.cliente = direccion;
+            evento.tick = payload.getTick();
+            evento.bytes = salidaContada.bytes - bytesAntes;
+            evento.compresion = compresion.name();
+            evento.commit();
+        }
+    }
+
+    /**
+     * Encola una actualización descartando la más vieja si ya hay demasiadas, y cierra la conexión si la
+     * escritura en curso no avanza. No bloquea: lo llama el hilo de simulación.
+     */
+    private void encolarActualizacion(ActualizacionSerializada actualizacion) {
+        long desde = escribiendoDesde;
+        if (desde != 0 && System.currentTimeMillis() - desde > PLAZO_SIN_PROGRESO_MS && !socket.isClosed()) {
+            anotarMotivo("sin progreso al escribir en " + PLAZO_SIN_PROGRESO_MS + " ms");
+            cerrarSocket(); // El lector y el escritor terminan y dan de baja al cliente
+            return;
+        }
+        if (actualizacionesEnCola.get() >= ACTUALIZACIONES_PENDIENTES) {
+            for (Object mensaje : pendientes) {
+                // Si el escritor la tomó mientras tanto, remove() no la encuentra y ya no cuenta
+                if (mensaje instanceof ActualizacionSerializada && pendientes.remove(mensaje)) {
+                    actualizacionesEnCola.decrementAndGet();
+                    actualizacionesDescartadas++;
+                    break;
+                }
+            }
+        }
+        actualizacionesEnCola.incrementAndGet();
+        pendientes.add(actualizacion);
+    }
+
+    /**
+     * El bucle del hilo escritor en el modo con cola: escribe en orden lo encolado hasta que la conexión
+     * se cierra. Como es el único que escribe después del saludo, no toma el monitor mientras escribe.
+     * <p>
+     * Cada vez escribe todo lo que haya en la cola y lo envía de una vez, así que un cliente atrasado
+     * recibe varias actualizaciones en una sola escritura al socket (y en un solo marco si hay compresión).
+     * Cada envío se registra como un {@link EscrituraClienteJfr} con el tick de la última actualización.
+     * </p>
+     */
+    private void escribirPendientes() {
         try {
-            if (objectOutputStream != null) {
-                objectOutputStream.writeObject(payload);
+            while (true) {
+                Object mensaje = pendientes.take();
+                EscrituraClienteJfr evento = new EscrituraClienteJfr();
+                evento.begin();
+                escribiendoDesde = System.currentTimeMillis();
+                long bytesAntes = salidaContada.bytes;
+                do {
+                    escribirPendiente(mensaje);
+                } while ((mensaje = pendientes.poll()) != null);
                 objectOutputStream.flush();
-                objectOutputStream.reset(); // Esencial para prevenir que la caché de ObjectOutputStream reutilice objetos antiguos.
+                escribiendoDesde = 0;
+                evento.end();
+                if (evento.shouldCommit()) {
+                    evento.cliente = direccion;
+                    evento.tick = ultimoTickEnviado;
+                    evento.bytes = salidaContada.bytes - bytesAntes;
+                    evento.compresion = compresion.name();
+                    evento.commit();
+                }
             }
+        } catch (InterruptedException e) {
+            // El lector cerró la conexión
         } catch (IOException e) {
-            System.err.println("Error al enviar actualización al cliente " + socket.getInetAddress() + ". Eliminando cliente.");
-            servidor.removerCliente(this);
+            anotarMotivo("error de escritura: " + e.getMessage());
+            cerrarSocket(); // El hilo lector termina y da de baja al cliente
+        }
+    }
+
+    /** Escribe un mensaje de la cola sin enviarlo todavía; las actualizaciones no más nuevas se omiten. */
+    private void escribirPendiente(Object mensaje) throws IOException {
+        if (mensaje instanceof ActualizacionSerializada) {
+            actualizacionesEnCola.decrementAndGet();
+            ActualizacionSerializada actualizacion = (ActualizacionSerializada) mensaje;
+            if (actualizacion.payload.getTick() > ultimoTickEnviado) {
+                // Los bytes ya traen el reset del final y objectOutputStream está reiniciado, como suponen
+                salida.write(actualizacion.getBytes());
+                ultimoTickEnviado = actualizacion.payload.getTick();
+                actualizacionesEnviadas++;
+            }
+        } else {
+            objectOutputStream.writeObject(mensaje);
+            objectOutputStream.reset(); // Pasa el marcador al flujo de abajo, antes de la próxima actualización
+        }
+    }
+
+    /** Detiene el hilo escritor, si lo hay, y espera a que termine. */
+    private void detenerEscritor() {
+        if (escritor == null) {
+            return;
+        }
+        escritor.interrupt();
+        try {
+            escritor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Pide al servidor la respuesta de una consulta y la envía al cliente cuando esté lista, sin esperarla:
+     * mientras tanto este hilo sigue leyendo las consultas siguientes.
+     * <p>
+     * Diseño: Una respuesta que ya está lista se envía desde este mismo hilo. Una que se completa después
+     * lo hace en un hilo ajeno (el lector de un fragmento, en la {@link Pasarela}), que no debe quedar
+     * bloqueado escribiendo a un cliente lento; en ese caso el envío se hace desde un hilo virtual propio.
+     * </p>
+     */
+    private void atenderConsulta(Consulta consulta) {
+        CompletableFuture<? extends Serializable> resultado;
+        try {
+            resultado = servidor.consultar(consulta);
+        } catch (RuntimeException e) {
+            resultado = CompletableFuture.failedFuture(e);
+        }
+        BiConsumer<Serializable, Throwable> responder = (valor, error) -> {
+            if (error == null) {
+                enviarRespuesta(RespuestaConsulta.exito(consulta.getId(), valor));
+            } else {
+                Throwable causa = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                enviarRespuesta(RespuestaConsulta.error(consulta.getId(), String.valueOf(causa.getMessage())));
+            }
+        };
+        if (resultado.isDone()) {
+            resultado.whenComplete(responder);
+        } else {
+            resultado.whenCompleteAsync(responder, tarea -> Thread.ofVirtual().name("respuesta-" + direccion).start(tarea));
+        }
+    }
+
+    /**
+     * Envía la respuesta de una consulta. Comparte el flujo (y su candado) con las actualizaciones; con
+     * cola, se encola detrás de ellas y nunca se descarta.
+     */
+    private void enviarRespuesta(RespuestaConsulta respuesta) {
+        if (pendientes != null) {
+            pendientes.add(respuesta);
+            return;
+        }
+        synchronized (this) {
             try {
-                socket.close();
-            } catch (IOException ioException) {
-                // Ignorar.
+                objectOutputStream.writeObject(respuesta);
+                objectOutputStream.flush();
+                objectOutputStream.reset();
+            } catch (IOException e) {
+                System.err.println("Error al responder al cliente " + socket.getInetAddress() + ": " + e.getMessage());
+                anotarMotivo("error al responder: " + e.getMessage());
+                cerrarSocket(); // El hilo lector termina y da de baja al cliente
             }
         }
     }
 
+    private void cerrarSocket() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ignorar.
+        }
+    }
+
+    /**
+     * @return El flujo comprimido de la conexión, o {@code null} si el cliente no pidió compresión.
+     */
+    public synchronized SalidaComprimida getSalidaComprimida() {
+        return salidaComprimida;
+    }
+
     /**
      * @return El socket asociado a este cliente.
      */
     public Socket getSocket() {
         return this.socket;
     }
+
+    /**
+     * Una actualización serializada una sola vez para todas las conexiones con cola: lo que escribirían
+     * {@code writeObject} y {@code reset()} en un flujo recién reiniciado. La serializa el primer escritor
+     * que la necesita; crearla no cuesta nada, así que el emisor crea una por tick aunque no haya conexiones
+     * con cola.
+     */
+    static final class ActualizacionSerializada {
+        private final UpdatePayload payload;
+        private byte[] bytes;
+
+        /** @param payload La actualización que se difunde. */
+        ActualizacionSerializada(UpdatePayload payload) {
+            this.payload = payload;
+        }
+
+        synchronized byte[] getBytes() throws IOException {
+            if (bytes == null) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                try (ObjectOutputStream flujo = new ObjectOutputStream(buffer)) {
+                    flujo.writeObject(payload);
+                    flujo.reset();
+                }
+                byte[] conCabecera = buffer.toByteArray();
+                bytes = Arrays.copyOfRange(conCabecera, CABECERA_FLUJO, conCabecera.length);
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Cuenta los bytes que salen por el socket, después de la compresión. Después del saludo solo se
+     * escribe con el monitor del manejador tomado o, con cola, desde el hilo escritor.
+     */
+    private static final class SalidaContada extends FilterOutputStream {
+        private long bytes;
+
+        SalidaContada(OutputStream salida) {
+            super(salida);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            bytes += len;
+        }
+    }
 }
@@ -0,0 +1,30 @@
+package cr.ed.ulacit.servidor;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evento de JDK Flight Recorder para la conexión de un cliente. Su duración es la del saludo y el envío
+ * de la red (o del estado de reanudación), hasta que el cliente empieza a recibir las actualizaciones.
+ */
+@Name("cr.ed.ulacit.ConexionCliente")
+@Label("Conexión de cliente")
+@Category({"Simulador de autobuses", "Clientes"})
+@Description("Un cliente completó el saludo y recibió la red o el estado de reanudación.")
+@StackTrace(false)
+class ConexionClienteJfr extends Event {
+
+    @Label("Cliente")
+    String cliente;
+
+    @Label("Compresión")
+    String compresion;
+
+    @Label("Reanudada")
+    @Description("Si el cliente reanudó una sesión anterior en lugar de recibir la red.")
+    boolean reanudada;
+}
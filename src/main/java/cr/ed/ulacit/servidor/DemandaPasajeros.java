@@ -0,0 +1,257 @@
+package cr.ed.ulacit.servidor;
+
+import cr.ed.ulacit.Autobus;
+import cr.ed.ulacit.Parada;
+import cr.ed.ulacit.RedTransporte;
+import cr.ed.ulacit.Ruta;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Modelo de demanda de pasajeros: las llegadas a las paradas, las filas de espera y el abordaje.
+ * <p>
+ * Cada par (ruta, parada) tiene su propia fila. Los pasajeros llegan a una parada según un proceso de
+ * Poisson con la tasa de {@link Parada#getPasajerosPorHora()}, repartida entre las rutas que pasan por
+ * ella. Al llegar un autobús bajan los pasajeros con ese destino, suben los que esperan (en orden de
+ * llegada y hasta llenar el autobús) y cada uno elige al azar una de las paradas siguientes como
+ * destino. El tiempo en la parada depende de cuántos suben y bajan.
+ * </p>
+ * <p>
+ * Diseño: No hay un objeto por pasajero. Las llegadas se generan de forma perezosa, solo cuando alguien
+ * mira la fila: se sortea cuántos pasajeros llegaron desde la última vez y se agregan como una cohorte
+ * (cantidad e instante medio de llegada). Las cohortes se guardan en arreglos primitivos circulares y
+ * las que llegan casi juntas se fusionan, así que la memoria depende del número de filas y no del número
+ * de pasajeros, y el costo por tick solo lo pagan las paradas donde hay un autobús. Usa el mismo
+ * {@link Random} que la simulación, de modo que una semilla reproduce también la demanda.
+ * </p>
+ */
+final class DemandaPasajeros {
+
+    /** Tiempo fijo de cada parada (abrir y cerrar puertas, arrancar), en segundos de simulación. */
+    static final int SEGUNDOS_PARADA_BASE = 20;
+    /** Segundos de simulación que agrega cada pasajero que sube. */
+    static final int SEGUNDOS_POR_ABORDAJE = 3;
+    /** Segundos de simulación que agrega cada pasajero que baja. */
+    static final int SEGUNDOS_POR_DESCENSO = 2;
+    // Dos cohortes que llegan con menos de esta separación se fusionan en una
+    private static final long SEPARACION_MINIMA_COHORTES_MS = 60L * Simulacion.MS_POR_SEGUNDO_SIMULADO;
+
+    private final Map<Ruta, Integer> inicioDeRuta = new IdentityHashMap<>();
+    private final double[] tasaPorMs; // Por fila
+    private final long[] ultimaGeneracion; // Por fila
+    private final Fila[] filas;
+    private final Random aleatorio;
+
+    private long pasajerosGenerados;
+    private long pasajerosAbordados;
+    private long pasajerosDescendidos;
+    private long esperaTotalMs;
+
+    /**
+     * @param red       La red; se crea una fila por cada parada de cada ruta.
+     * @param epoca     El instante (ms) desde el que empiezan a llegar pasajeros.
+     * @param aleatorio La fuente de aleatoriedad de las llegadas y los destinos.
+     */
+    DemandaPasajeros(RedTransporte red, long epoca, Random aleatorio) {
+        this.aleatorio = aleatorio;
+        int total = 0;
+        Map<Parada, Integer> rutasPorParada = new HashMap<>();
+        for (Ruta ruta : red.getRutas()) {
+            inicioDeRuta.put(ruta, total);
+            total += ruta.getLongitudRuta();
+            List<Parada> paradas = ruta.getParadas();
+            for (int i = 0; i < paradas.size() - 1; i++) { // En la última parada nadie sube
+                rutasPorParada.merge(paradas.get(i), 1, Integer::sum);
+            }
+        }
+
+        tasaPorMs = new double[total];
+        ultimaGeneracion = new long[total];
+        filas = new Fila[total];
+        Arrays.fill(ultimaGeneracion, epoca);
+        double msPorHora = 3600.0 * Simulacion.MS_POR_SEGUNDO_SIMULADO;
+        for (Ruta ruta : red.getRutas()) {
+            int inicio = inicioDeRuta.get(ruta);
+            List<Parada> paradas = ruta.getParadas();
+            for (int i = 0; i < paradas.size(); i++) {
+                filas[inicio + i] = new Fila();
+                if (i < paradas.size() - 1) {
+                    Parada parada = paradas.get(i);
+                    tasaPorMs[inicio + i] = parada.getPasajerosPorHora() / msPorHora / rutasPorParada.get(parada);
+                }
+            }
+        }
+    }
+
+    /**
+     * Atiende a un autobús que acaba de detenerse en la parada de destino: bajan los pasajeros que llegan
+     * a ella y suben los que esperan, hasta llenar el autobús.
+     *
+     * @param bus   El autobús detenido.
+     * @param ahora El instante de la llegada.
+     * @return El tiempo que el autobús permanece en la parada, en milisegundos de simulación.
+     */
+    long atenderParada(Autobus bus, long ahora) {
+        Ruta ruta = bus.getRuta();
+        int indiceParada = bus.getParadaDestinoIndex();
+        int bajan = bus.bajarPasajeros();
+        pasajerosDescendidos += bajan;
+
+        int suben = 0;
+        int siguientes = ruta.getLongitudRuta() - indiceParada - 1;
+        if (siguientes > 0) {
+            int indice = inicioDeRuta.get(ruta) + indiceParada;
+            generar(indice, ahora);
+            Fila fila = filas[indice];
+            suben = Math.min(fila.total, bus.getLugaresLibres());
+            esperaTotalMs += fila.extraer(suben, ahora);
+            pasajerosAbordados += suben;
+            for (int i = 0; i < suben; i++) {
+                bus.subirPasajeros(indiceParada + 1 + aleatorio.nextInt(siguientes), 1);
+            }
+        }
+        return (long) (SEGUNDOS_PARADA_BASE + SEGUNDOS_POR_ABORDAJE * suben + SEGUNDOS_POR_DESCENSO * bajan)
+                * Simulacion.MS_POR_SEGUNDO_SIMULADO;
+    }
+
+    /**
+     * Genera las llegadas pendientes de todas las filas y devuelve cuántos pasajeros esperan en cada una.
+     * <p>
+     * Las filas están en el orden de las rutas de la red y, dentro de cada ruta, en el orden de sus paradas;
+     * es el mismo orden en que el {@link cr.ed.ulacit.dto.RedDTO} lista las rutas y sus paradas.
+     * </p>
+     *
+     * @param ahora El instante actual.
+     * @return Un arreglo nuevo con el número de pasajeros en cada fila.
+     */
+    int[] esperando(long ahora) {
+        int[] resultado = new int[filas.length];
+        for (int i = 0; i < filas.length; i++) {
+            generar(i, ahora);
+            resultado[i] = filas[i].total;
+        }
+        return resultado;
+    }
+
+    /** @return Cuántos pasajeros han llegado a las paradas (solo cuenta las llegadas ya generadas). */
+    long getPasajerosGenerados() {
+        return pasajerosGenerados;
+    }
+
+    /** @return Cuántos pasajeros han subido a un autobús. */
+    long getPasajerosAbordados() {
+        return pasajerosAbordados;
+    }
+
+    /** @return Cuántos pasajeros han bajado en su destino. */
+    long getPasajerosDescendidos() {
+        return pasajerosDescendidos;
+    }
+
+    /** @return La suma de los tiempos de espera de los pasajeros que ya subieron, en ms de simulación. */
+    long getEsperaTotalMs() {
+        return esperaTotalMs;
+    }
+
+    /** Agrega a la fila los pasajeros que llegaron desde la última generación. */
+    private void generar(int indice, long ahora) {
+        long desde = ultimaGeneracion[indice];
+        if (ahora <= desde || tasaPorMs[indice] == 0) {
+            return;
+        }
+        ultimaGeneracion[indice] = ahora;
+        int cantidad = poisson(tasaPorMs[indice] * (ahora - desde));
+        if (cantidad > 0) {
+            filas[indice].agregar((desde + ahora) / 2, cantidad);
+            pasajerosGenerados += cantidad;
+        }
+    }
+
+    /**
+     * Sortea una variable de Poisson. Para medias pequeñas usa el método de Knuth, que es exacto; para
+     * medias grandes, la aproximación normal, que no depende de la media.
+     */
+    private int poisson(double media) {
+        if (media < 30) {
+            double limite = Math.exp(-media);
+            double producto = aleatorio.nextDouble();
+            int cantidad = 0;
+            while (producto > limite) {
+                producto *= aleatorio.nextDouble();
+                cantidad++;
+            }
+            return cantidad;
+        }
+        return (int) Math.max(0, Math.round(media + Math.sqrt(media) * aleatorio.nextGaussian()));
+    }
+
+    /**
+     * Fila de espera de una parada: cohortes de pasajeros en orden de llegada, en arreglos circulares.
+     */
+    private static final class Fila {
+        private long[] llegadas = new long[4]; // Instante medio de llegada de cada cohorte
+        private int[] cantidades = new int[4];
+        private int cabeza;
+        private int cohortes;
+        private int total;
+
+        void agregar(long llegada, int cantidad) {
+            total += cantidad;
+            if (cohortes > 0) {
+                int ultima = (cabeza + cohortes - 1) & (llegadas.length - 1);
+                if (llegada - llegadas[ultima] < SEPARACION_MINIMA_COHORTES_MS) {
+                    // Se conserva el instante medio ponderado, así la suma de las esperas no cambia
+                    cantidades[ultima] += cantidad;
+                    llegadas[ultima] += (llegada - llegadas[ultima]) * cantidad / cantidades[ultima];
+                    return;
+                }
+            }
+            if (cohortes == llegadas.length) {
+                crecer();
+            }
+            int posicion = (cabeza + cohortes) & (llegadas.length - 1);
+            llegadas[posicion] = llegada;
+            cantidades[posicion] = cantidad;
+            cohortes++;
+        }
+
+        /**
+         * Saca de la fila a los primeros {@code cantidad} pasajeros.
+         *
+         * @return La suma de sus tiempos de espera hasta {@code ahora}.
+         */
+        long extraer(int cantidad, long ahora) {
+            long espera = 0;
+            total -= cantidad;
+            while (cantidad > 0) {
+                int tomados = Math.min(cantidad, cantidades[cabeza]);
+                espera += tomados * (ahora - llegadas[cabeza]);
+                cantidades[cabeza] -= tomados;
+                cantidad -= tomados;
+                if (cantidades[cabeza] == 0) {
+                    cabeza = (cabeza + 1) & (llegadas.length - 1);
+                    cohortes--;
+                }
+            }
+            return espera;
+        }
+
+        private void crecer() {
+            long[] nuevasLlegadas = new long[llegadas.length * 2];
+            int[] nuevasCantidades = new int[cantidades.length * 2];
+            for (int i = 0; i < cohortes; i++) {
+                int posicion = (cabeza + i) & (llegadas.length - 1);
+                nuevasLlegadas[i] = llegadas[posicion];
+                nuevasCantidades[i] = cantidades[posicion];
+            }
+            llegadas = nuevasLlegadas;
+            cantidades = nuevasCantidades;
+            cabeza = 0;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package cr.ed.ulacit.servidor;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evento de JDK Flight Recorder para la desconexión de un cliente. Su duración es la de toda la
+ * conexión, desde que se aceptó el socket, y lleva el total de lo que se le envió.
+ */
+@Name("cr.ed.ulacit.DesconexionCliente")
+@Label("Desconexión de cliente")
+@Category({"Simulador de autobuses", "Clientes"})
+@Description("Un cliente se desconectó o fue dado de baja; la duración es la de la conexión.")
+@StackTrace(false)
+class DesconexionClienteJfr extends Event {
+
+    @Label("Cliente")
+    String cliente;
+
+    @Label("Motivo")
+    String motivo;
+
+    @Label("Actualizaciones")
+    long actualizaciones;
+
+    @Label("Actualizaciones descartadas")
+    @Description("Las que se descartaron porque la cola de escritura estaba llena; 0 sin cola.")
+    long descartadas;
+
+    @Label("Bytes enviados")
+    @DataAmount
+    long bytes;
+}
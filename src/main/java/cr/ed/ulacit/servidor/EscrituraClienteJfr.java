@@ -0,0 +1,41 @@
+package cr.ed.ulacit.servidor;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Evento de JDK Flight Recorder para la escritura de una actualización a un cliente: serializar,
+ * comprimir y enviar por el socket. Con cola de escritura es un envío del hilo escritor, que puede llevar
+ * varias actualizaciones atrasadas; el tick es el de la última.
+ * <p>
+ * Los bytes son los que salen por el socket, ya comprimidos. Con el umbral por defecto (1 ms) solo
+ * quedan las escrituras lentas, que suelen ser las de un cliente que no lee y llenó el búfer del socket.
+ * </p>
+ */
+@Name("cr.ed.ulacit.EscrituraCliente")
+@Label("Escritura a cliente")
+@Category({"Simulador de autobuses", "Clientes"})
+@Description("El envío de una actualización a un cliente.")
+@StackTrace(false)
+@Threshold("1 ms")
+class EscrituraClienteJfr extends Event {
+
+    @Label("Cliente")
+    String cliente;
+
+    @Label("Tick")
+    long tick;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Compresión")
+    String compresion;
+}
@@ -0,0 +1,238 @@
+package cr.ed.ulacit.servidor;
+
+import cr.ed.ulacit.Autobus;
+import cr.ed.ulacit.EstadoAutobus;
+import cr.ed.ulacit.Parada;
+import cr.ed.ulacit.Ruta;
+import cr.ed.ulacit.dto.AutobusDTO;
+import cr.ed.ulacit.dto.DetalleAutobusDTO;
+import cr.ed.ulacit.dto.ResumenFlotaDTO;
+
+import java.awt.Color;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * El estado de la flota al final del último tick, publicado por el hilo de simulación para que cualquier
+ * cantidad de hilos lo lea sin candados y sin ver nunca un autobús a medio actualizar.
+ * <p>
+ * Cada tick se copia en arreglos primitivos (posición, estado, ocupación, paradas y progreso) y se publica
+ * con una sola escritura de una referencia {@code volatile}, junto con su versión (el número de tick).
+ * Lo que no cambia durante la simulación (IDs, colores, capacidades y rutas) se guarda una sola vez.
+ * </p>
+ * <p>
+ * Diseño: hay dos juegos de arreglos que se alternan: el hilo de simulación escribe el tick nuevo en el
+ * que no está publicado y después lo publica, así que publicar no crea ningún objeto. Como un lector lento
+ * podría seguir leyendo un juego viejo mientras se reescribe, cada juego tiene un sello que es impar
+ * durante la escritura, y la lectura es optimista, como en {@link java.util.concurrent.locks.StampedLock}:
+ * {@link #leer(Function)} lee el sello, aplica la función, comprueba que el sello no cambió y si cambió
+ * vuelve a intentarlo con la publicación más reciente. El tick nunca espera a los lectores.
+ * </p>
+ */
+final class EstadoFlotaPublicado {
+
+    private static final EstadoAutobus[] ESTADOS = EstadoAutobus.values();
+
+    // Fijos durante la simulación, por índice de autobús
+    private final int[] ids;
+    private final Color[] colores;
+    private final int[] capacidades;
+    private final Ruta[] rutas;
+    private final Map<Integer, Integer> indicePorId;
+    private final Vista[] juegos = {null, null};
+    private volatile Vista publicada;
+
+    /**
+     * Crea el estado y publica la flota inicial como tick 0. Debe llamarse antes de arrancar el hilo de
+     * simulación, o desde él: el inicio del hilo hace visibles los arreglos que se llenan aquí.
+     *
+     * @param autobuses   Los autobuses de la simulación; la lista no cambia de tamaño ni de orden.
+     * @param indicePorId La posición de cada autobús en {@code autobuses} según su ID.
+     */
+    EstadoFlotaPublicado(List<Autobus> autobuses, Map<Integer, Integer> indicePorId) {
+        int n = autobuses.size();
+        this.ids = new int[n];
+        this.colores = new Color[n];
+        this.capacidades = new int[n];
+        this.rutas = new Ruta[n];
+        this.indicePorId = indicePorId;
+        for (int i = 0; i < n; i++) {
+            Autobus bus = autobuses.get(i);
+            ids[i] = bus.getId();
+            colores[i] = bus.getColor();
+            capacidades[i] = bus.getCapacidad();
+            rutas[i] = bus.getRuta();
+        }
+        juegos[0] = new Vista(n);
+        juegos[1] = new Vista(n);
+        publicar(0, autobuses);
+    }
+
+    /**
+     * Copia el estado de los autobuses en el juego de arreglos libre y lo publica. Solo debe llamarse
+     * desde el hilo de simulación; no crea objetos.
+     *
+     * @param tick      El tick que terminó.
+     * @param autobuses Los autobuses de la simulación.
+     */
+    void publicar(long tick, List<Autobus> autobuses) {
+        Vista vista = juegos[0] == publicada ? juegos[1] : juegos[0];
+        vista.sello++; // Impar: en escritura
+        VarHandle.storeStoreFence(); // Ninguna escritura de los arreglos se adelanta al sello impar
+        vista.tick = tick;
+        for (int i = 0; i < ids.length; i++) {
+            Autobus bus = autobuses.get(i);
+            vista.x[i] = bus.getX();
+            vista.y[i] = bus.getY();
+            vista.estado[i] = (byte) bus.getEstado().ordinal();
+            vista.ocupacion[i] = bus.getOcupacion();
+            vista.paradaActual[i] = bus.getParadaActualIndex();
+            vista.paradaDestino[i] = bus.getParadaDestinoIndex();
+            vista.progreso[i] = bus.getProgreso();
+        }
+        vista.sello++; // Par: estable; la escritura volatile publica los arreglos
+        publicada = vista;
+    }
+
+    /**
+     * Aplica una lectura a la última publicación y devuelve su resultado, repitiéndola si el hilo de
+     * simulación reescribió los arreglos mientras se leían. La función puede ejecutarse más de una vez y
+     * ver datos a medio escribir en los intentos descartados, así que no debe tener efectos ni confiar en
+     * la coherencia de lo que lee más allá de devolver un valor.
+     *
+     * @param lectura Lo que se lee de la vista.
+     * @param <T>     El tipo del resultado.
+     * @return El resultado de una lectura que vio un solo tick completo.
+     */
+    <T> T leer(Function<Vista, T> lectura) {
+        while (true) {
+            Vista vista = publicada;
+            long sello = vista.sello;
+            if ((sello & 1) == 0) {
+                T resultado = lectura.apply(vista);
+                VarHandle.acquireFence(); // Las lecturas de los arreglos terminan antes de volver a leer el sello
+                if (vista.sello == sello) {
+                    return resultado;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /** @return El último tick publicado. */
+    long getTick() {
+        return publicada.tick;
+    }
+
+    /** @return Una copia inmutable del último tick, con el detalle de cada autobús. */
+    InstantaneaSimulacion capturar() {
+        return leer(Vista::copiar);
+    }
+
+    /**
+     * @param idAutobus El ID del autobús.
+     * @return Su estado detallado en el último tick, o {@code null} si no existe.
+     */
+    DetalleAutobusDTO detalle(int idAutobus) {
+        Integer indice = indicePorId.get(idAutobus);
+        if (indice == null) {
+            return null;
+        }
+        return leer(vista -> vista.detalle(indice));
+    }
+
+    /** @return Cuántos autobuses hay en cada estado en el último tick. */
+    ResumenFlotaDTO resumen() {
+        return leer(Vista::resumen);
+    }
+
+    /**
+     * Un juego de arreglos con el estado de un tick. Solo se lee dentro de {@link #leer(Function)}.
+     */
+    final class Vista {
+        private volatile long sello; // Impar mientras el hilo de simulación escribe
+        private long tick;
+        private final int[] x;
+        private final int[] y;
+        private final byte[] estado;
+        private final int[] ocupacion;
+        private final int[] paradaActual;
+        private final int[] paradaDestino;
+        private final double[] progreso;
+
+        private Vista(int n) {
+            x = new int[n];
+            y = new int[n];
+            estado = new byte[n];
+            ocupacion = new int[n];
+            paradaActual = new int[n];
+            paradaDestino = new int[n];
+            progreso = new double[n];
+        }
+
+        long getTick() {
+            return tick;
+        }
+
+        int getCantidad() {
+            return ids.length;
+        }
+
+        int getX(int i) {
+            return x[i];
+        }
+
+        int getY(int i) {
+            return y[i];
+        }
+
+        EstadoAutobus getEstado(int i) {
+            return ESTADOS[estado[i]];
+        }
+
+        double getProgreso(int i) {
+            return progreso[i];
+        }
+
+        int getParadaDestino(int i) {
+            return paradaDestino[i];
+        }
+
+        /** @return El estado de los autobuses como se transmite a los clientes. */
+        List<AutobusDTO> autobusesDTO() {
+            List<AutobusDTO> dtos = new ArrayList<>(ids.length);
+            for (int i = 0; i < ids.length; i++) {
+                dtos.add(new AutobusDTO(ids[i], colores[i], x[i], y[i], ESTADOS[estado[i]], ocupacion[i], capacidades[i]));
+            }
+            return dtos;
+        }
+
+        private InstantaneaSimulacion copiar() {
+            return new InstantaneaSimulacion(tick, autobusesDTO(), indicePorId, rutas, paradaActual.clone(),
+                    paradaDestino.clone(), progreso.clone());
+        }
+
+        private DetalleAutobusDTO detalle(int i) {
+            Ruta ruta = rutas[i];
+            return new DetalleAutobusDTO(ids[i], tick, ruta.getNombreRuta(), ESTADOS[estado[i]], x[i], y[i],
+                    nombreParada(ruta, paradaActual[i]), nombreParada(ruta, paradaDestino[i]), progreso[i]);
+        }
+
+        private ResumenFlotaDTO resumen() {
+            int[] porEstado = new int[ESTADOS.length];
+            for (int i = 0; i < ids.length; i++) {
+                porEstado[estado[i]]++;
+            }
+            return new ResumenFlotaDTO(tick, porEstado[EstadoAutobus.INACTIVO.ordinal()], porEstado[EstadoAutobus.EN_RUTA.ordinal()],
+                    porEstado[EstadoAutobus.DETENIDO.ordinal()], porEstado[EstadoAutobus.FINALIZADO.ordinal()]);
+        }
+    }
+
+    private static String nombreParada(Ruta ruta, int indice) {
+        Parada parada = ruta.getParadaPorIndice(indice);
+        return parada != null ? parada.getNombre() : null;
+    }
+}
@@ -9,12 +9,18 @@ import java.io.Serializable;
  * un mensaje de log y la hora en que ocurrió. Se utiliza para enviar notificaciones de eventos
  * desde el servidor a los clientes de una manera estructurada.
  * </p>
+ * <p>
+ * Cada evento lleva además un número de secuencia, consecutivo dentro de una sesión del servidor, que
+ * le asigna {@link RegistroEventos} al registrarlo. Con él un cliente que se reconecta sabe si recibió
+ * todos los eventos o si se perdió alguno.
+ * </p>
  */
 public class EventoLog implements Serializable {
     private static final long serialVersionUID = 1L;
 
     private final String hora;
     private final String mensaje;
+    private long secuencia = -1; // Se asigna una sola vez, antes de publicar el evento
 
     /**
      * Constructor para un nuevo evento de log.
@@ -37,6 +43,15 @@ public class EventoLog implements Serializable {
         return mensaje;
     }
 
+    /** @return El número de secuencia del evento, o -1 si aún no se registró. */
+    public long getSecuencia() {
+        return secuencia;
+    }
+
+    void asignarSecuencia(long secuencia) {
+        this.secuencia = secuencia;
+    }
+
     /**
      * Devuelve una representación formateada del log, ideal para mostrar en la GUI del cliente.
      * @return Una cadena con la hora y el mensaje, ej. "[05:01:00] Autobús 1 ha iniciado su ruta."
@@ -0,0 +1,69 @@
+package cr.ed.ulacit.servidor;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Evento de JDK Flight Recorder para una fase de un tick, para saber en cuál se fue el tiempo de un tick lento.
+ * <p>
+ * Solo se registran las fases que duran al menos el umbral (1 ms por defecto; se cambia con la
+ * configuración de la grabación). Con JFR apagado, {@link #terminar(long)} no hace más que una
+ * comprobación.
+ * </p>
+ */
+@Name("cr.ed.ulacit.FaseTick")
+@Label("Fase de tick")
+@Category({"Simulador de autobuses", "Simulación"})
+@Description("Una fase de un tick: simular, publicar, preparar, difundir o combinar.")
+@StackTrace(false)
+@Threshold("1 ms")
+class FaseTickJfr extends Event {
+
+    /** Mover los autobuses y generar los eventos del tick. */
+    static final String SIMULAR = "simular";
+    /** Publicar el resultado: llegadas estimadas, registro de eventos, trayectorias e instantánea. */
+    static final String PUBLICAR = "publicar";
+    /** Preparar la actualización que se envía a los clientes. */
+    static final String PREPARAR = "preparar";
+    /** Escribir la actualización a cada cliente conectado. */
+    static final String DIFUNDIR = "difundir";
+    /** En la pasarela: combinar los estados de los fragmentos. */
+    static final String COMBINAR = "combinar";
+
+    @Label("Fase")
+    String fase;
+
+    @Label("Tick")
+    long tick;
+
+    /**
+     * Empieza a medir una fase.
+     *
+     * @param fase Una de las constantes de esta clase.
+     * @return El evento, que se cierra con {@link #terminar(long)}.
+     */
+    static FaseTickJfr iniciar(String fase) {
+        FaseTickJfr evento = new FaseTickJfr();
+        evento.fase = fase;
+        evento.begin();
+        return evento;
+    }
+
+    /**
+     * Termina de medir la fase y la registra si JFR está activo y la fase superó el umbral.
+     *
+     * @param tick El tick al que pertenece la fase.
+     */
+    void terminar(long tick) {
+        end();
+        if (shouldCommit()) {
+            this.tick = tick;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package cr.ed.ulacit.servidor;
+
+import cr.ed.ulacit.Parada;
+import cr.ed.ulacit.RedTransporte;
+import cr.ed.ulacit.Ruta;
+import cr.ed.ulacit.Viaje;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Genera redes de transporte sintéticas de tamaño y forma configurables, para probar el servidor a
+ * distintas escalas sin depender de archivos GTFS.
+ * <p>
+ * Cada ruta es un recorrido aleatorio por el área del mapa: parte de un punto al azar y avanza en tramos
+ * de longitud variable, girando poco a poco y rebotando en los bordes. Una fracción de las paradas se
+ * comparte con otras rutas cercanas, como en una red real. Cada ruta tiene sus viajes separados por el
+ * intervalo indicado, con un desfase al azar entre rutas para que no salgan todos a la vez, y cada parada
+ * una demanda al azar alrededor de {@link Parada#PASAJEROS_POR_HORA_POR_DEFECTO}.
+ * </p>
+ * <p>
+ * La misma configuración con la misma semilla genera siempre la misma red. Los valores por defecto
+ * reproducen el tamaño de la red predefinida: una ruta de 20 paradas con 10 viajes cada 15 segundos.
+ * </p>
+ */
+public class GeneradorEscenarios {
+
+    private static final int ANCHO_MAPA = 1200;
+    private static final int ALTO_MAPA = 800;
+    private static final int MARGEN = 50;
+    private static final int TRAMO_MINIMO = 25;
+    private static final int TRAMO_MAXIMO = 60;
+    private static final int DISTANCIA_COMPARTIDA = 30; // Una parada se comparte si hay otra a menos de esto
+    private static final double GIRO_TIPICO = 0.5; // Radianes, desviación típica del giro entre tramos
+
+    private final int rutas;
+    private final int paradasPorRuta;
+    private final int viajesPorRuta;
+    private final int intervaloSeg;
+    private final double fraccionCompartidas;
+    private final long semilla;
+
+    /** Crea un generador con la configuración por defecto. */
+    public GeneradorEscenarios() {
+        this(1, 20, 10, 15, 0.0, 1);
+    }
+
+    /**
+     * @param rutas               La cantidad de rutas.
+     * @param paradasPorRuta      Las paradas de cada ruta (al menos 2).
+     * @param viajesPorRuta       Los viajes (autobuses) de cada ruta.
+     * @param intervaloSeg        Los segundos de simulación entre salidas consecutivas de una ruta.
+     * @param fraccionCompartidas La fracción de paradas, entre 0 y 1, que se comparten con una ruta cercana.
+     * @param semilla             La semilla de la red.
+     */
+    public GeneradorEscenarios(int rutas, int paradasPorRuta, int viajesPorRuta, int intervaloSeg,
+                               double fraccionCompartidas, long semilla) {
+        if (rutas < 1 || paradasPorRuta < 2 || viajesPorRuta < 0 || intervaloSeg < 1
+                || fraccionCompartidas < 0 || fraccionCompartidas > 1) {
+            throw new IllegalArgumentException("Escenario inválido: rutas=" + rutas + ", paradas=" + paradasPorRuta
+                    + ", viajes=" + viajesPorRuta + ", intervalo=" + intervaloSeg + ", compartidas=" + fraccionCompartidas);
+        }
+        this.rutas = rutas;
+        this.paradasPorRuta = paradasPorRuta;
+        this.viajesPorRuta = viajesPorRuta;
+        this.intervaloSeg = intervaloSeg;
+        this.fraccionCompartidas = fraccionCompartidas;
+        this.semilla = semilla;
+    }
+
+    /**
+     * Crea un generador a partir de un texto {@code clave=valor} separado por comas, por ejemplo
+     * {@code rutas=500,paradas=20,viajes=10,intervalo=15,compartidas=0.2,semilla=7}. Las claves que
+     * faltan toman el valor por defecto.
+     *
+     * @param texto La configuración.
+     * @return El generador.
+     * @throws IllegalArgumentException Si hay una clave desconocida o un valor inválido.
+     */
+    public static GeneradorEscenarios desdeTexto(String texto) {
+        GeneradorEscenarios base = new GeneradorEscenarios();
+        int rutas = base.rutas;
+        int paradas = base.paradasPorRuta;
+        int viajes = base.viajesPorRuta;
+        int intervalo = base.intervaloSeg;
+        double compartidas = base.fraccionCompartidas;
+        long semilla = base.semilla;
+        for (String par : texto.split(",")) {
+            if (par.isBlank()) {
+                continue;
+            }
+            String[] partes = par.split("=", 2);
+            if (partes.length != 2) {
+                throw new IllegalArgumentException("Se esperaba clave=valor: " + par);
+            }
+            String valor = partes[1].trim();
+            switch (partes[0].trim()) {
+                case "rutas":
+                    rutas = Integer.parseInt(valor);
+                    break;
+                case "paradas":
+                    paradas = Integer.parseInt(valor);
+                    break;
+                case "viajes":
+                    viajes = Integer.parseInt(valor);
+                    break;
+                case "intervalo":
+                    intervalo = Integer.parseInt(valor);
+                    break;
+                case "compartidas":
+                    compartidas = Double.parseDouble(valor);
+                    break;
+                case "semilla":
+                    semilla = Long.parseLong(valor);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Clave desconocida: " + partes[0]);
+            }
+        }
+        return new GeneradorEscenarios(rutas, paradas, viajes, intervalo, compartidas, semilla);
+    }
+
+    /**
+     * Genera la red.
+     *
+     * @return Una red nueva con {@code rutas} rutas y {@code rutas * viajesPorRuta} viajes.
+     */
+    public RedTransporte generar() {
+        Random aleatorio = new Random(semilla);
+        Map<Long, List<Parada>> celdas = new HashMap<>(); // Paradas por celda de DISTANCIA_COMPARTIDA píxeles
+        List<Ruta> listaRutas = new ArrayList<>(rutas);
+        List<Viaje> viajes = new ArrayList<>(rutas * viajesPorRuta);
+        int siguienteParada = 1;
+        for (int r = 0; r < rutas; r++) {
+            List<Parada> paradas = new ArrayList<>(paradasPorRuta);
+            double x = MARGEN + aleatorio.nextDouble() * (ANCHO_MAPA - 2 * MARGEN);
+            double y = MARGEN + aleatorio.nextDouble() * (ALTO_MAPA - 2 * MARGEN);
+            double rumbo = aleatorio.nextDouble() * 2 * Math.PI;
+            for (int i = 0; i < paradasPorRuta; i++) {
+                if (i > 0) {
+                    double tramo = TRAMO_MINIMO + aleatorio.nextDouble() * (TRAMO_MAXIMO - TRAMO_MINIMO);
+                    rumbo += aleatorio.nextGaussian() * GIRO_TIPICO;
+                    x += Math.cos(rumbo) * tramo;
+                    y += Math.sin(rumbo) * tramo;
+                    // Rebota en los bordes del mapa
+                    if (x < MARGEN || x > ANCHO_MAPA - MARGEN) {
+                        rumbo = Math.PI - rumbo;
+                        x = Math.max(MARGEN, Math.min(ANCHO_MAPA - MARGEN, x));
+                    }
+                    if (y < MARGEN || y > ALTO_MAPA - MARGEN) {
+                        rumbo = -rumbo;
+                        y = Math.max(MARGEN, Math.min(ALTO_MAPA - MARGEN, y));
+                    }
+                }
+                Parada parada = null;
+                if (aleatorio.nextDouble() < fraccionCompartidas) {
+                    parada = paradaCercana(celdas, (int) x, (int) y, paradas);
+                }
+                if (parada == null) {
+                    double pasajerosPorHora = Parada.PASAJEROS_POR_HORA_POR_DEFECTO * (0.5 + aleatorio.nextDouble());
+                    parada = new Parada(siguienteParada, "Parada " + siguienteParada, (int) x, (int) y, pasajerosPorHora);
+                    siguienteParada++;
+                    celdas.computeIfAbsent(celda((int) x, (int) y), c -> new ArrayList<>()).add(parada);
+                }
+                paradas.add(parada);
+            }
+            Ruta ruta = new Ruta("Ruta " + (r + 1), paradas);
+            listaRutas.add(ruta);
+
+            int desfase = aleatorio.nextInt(intervaloSeg);
+            for (int v = 0; v < viajesPorRuta; v++) {
+                viajes.add(new Viaje(viajes.size() + 1, ruta, Simulacion.HORA_INICIO_SEG + desfase + v * intervaloSeg));
+            }
+        }
+        return new RedTransporte(listaRutas, viajes);
+    }
+
+    /** @return Una parada a menos de {@link #DISTANCIA_COMPARTIDA} que la ruta aún no usa, o {@code null}. */
+    private static Parada paradaCercana(Map<Long, List<Parada>> celdas, int x, int y, List<Parada> usadas) {
+        int cx = x / DISTANCIA_COMPARTIDA;
+        int cy = y / DISTANCIA_COMPARTIDA;
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                List<Parada> candidatas = celdas.get(((long) (cx + dx) << 32) | ((cy + dy) & 0xffffffffL));
+                if (candidatas == null) {
+                    continue;
+                }
+                for (Parada candidata : candidatas) {
+                    int ddx = candidata.getCoordX() - x;
+                    int ddy = candidata.getCoordY() - y;
+                    if (ddx * ddx + ddy * ddy < DISTANCIA_COMPARTIDA * DISTANCIA_COMPARTIDA && !usadas.contains(candidata)) {
+                        return candidata;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static long celda(int x, int y) {
+        return ((long) (x / DISTANCIA_COMPARTIDA) << 32) | ((y / DISTANCIA_COMPARTIDA) & 0xffffffffL);
+    }
+
+    /** @return La cantidad de autobuses de la red generada. */
+    public int getAutobuses() {
+        return rutas * viajesPorRuta;
+    }
+
+    /** @return La configuración en el formato de {@link #desdeTexto(String)}. */
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "rutas=%d,paradas=%d,viajes=%d,intervalo=%d,compartidas=%s,semilla=%d",
+                rutas, paradasPorRuta, viajesPorRuta, intervaloSeg, fraccionCompartidas, semilla);
+    }
+}
@@ -0,0 +1,110 @@
+package cr.ed.ulacit.servidor;
+
+import cr.ed.ulacit.Parada;
+import cr.ed.ulacit.Ruta;
+import cr.ed.ulacit.dto.AutobusDTO;
+import cr.ed.ulacit.dto.DetalleAutobusDTO;
+import cr.ed.ulacit.dto.ResumenFlotaDTO;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copia inmutable del estado de la flota en un tick.
+ * <p>
+ * En el servidor se obtiene de {@link EstadoFlotaPublicado#capturar()} cuando alguien necesita conservar
+ * un tick completo (por ejemplo, para reanudar la sesión de un cliente); las consultas puntuales leen
+ * directamente la publicación, sin copiarla. La pasarela crea una por tick con los estados combinados de
+ * los fragmentos, sin detalle por autobús.
+ * </p>
+ */
+final class InstantaneaSimulacion {
+
+    private final long tick;
+    private final List<AutobusDTO> autobuses;
+    // Detalle por autobús, en el mismo orden que autobuses. Son null en la pasarela, que no los tiene.
+    private final Map<Integer, Integer> indicePorId;
+    private final Ruta[] rutas;
+    private final int[] paradaActual;
+    private final int[] paradaDestino;
+    private final double[] progreso;
+
+    /**
+     * Crea una instantánea sin detalle por autobús, solo con lo que se transmite en cada tick.
+     *
+     * @param tick      El tick al que corresponde.
+     * @param autobuses El estado de los autobuses; la lista no debe modificarse después.
+     */
+    InstantaneaSimulacion(long tick, List<AutobusDTO> autobuses) {
+        this(tick, autobuses, null, null, null, null, null);
+    }
+
+    /**
+     * Crea una instantánea con el detalle de cada autobús. Los arreglos no deben modificarse después.
+     *
+     * @param tick          El tick al que corresponde.
+     * @param autobuses     El estado de los autobuses.
+     * @param indicePorId   La posición de cada autobús en {@code autobuses} según su ID.
+     * @param rutas         La ruta de cada autobús.
+     * @param paradaActual  El índice de la última parada de cada autobús.
+     * @param paradaDestino El índice de la parada a la que se dirige cada autobús.
+     * @param progreso      El progreso de cada autobús en su tramo.
+     */
+    InstantaneaSimulacion(long tick, List<AutobusDTO> autobuses, Map<Integer, Integer> indicePorId,
+                          Ruta[] rutas, int[] paradaActual, int[] paradaDestino, double[] progreso) {
+        this.tick = tick;
+        this.autobuses = Collections.unmodifiableList(autobuses);
+        this.indicePorId = indicePorId;
+        this.rutas = rutas;
+        this.paradaActual = paradaActual;
+        this.paradaDestino = paradaDestino;
+        this.progreso = progreso;
+    }
+
+    long getTick() {
+        return tick;
+    }
+
+    List<AutobusDTO> getAutobuses() {
+        return autobuses;
+    }
+
+    /**
+     * @param idAutobus El ID del autobús.
+     * @return Su estado detallado, o {@code null} si no existe o la instantánea no tiene detalle.
+     */
+    DetalleAutobusDTO detalle(int idAutobus) {
+        Integer indice = indicePorId != null ? indicePorId.get(idAutobus) : null;
+        if (indice == null) {
+            return null;
+        }
+        AutobusDTO dto = autobuses.get(indice);
+        Ruta ruta = rutas[indice];
+        return new DetalleAutobusDTO(dto.getId(), tick, ruta.getNombreRuta(), dto.getEstado(), dto.getX(), dto.getY(),
+                nombreParada(ruta, paradaActual[indice]), nombreParada(ruta, paradaDestino[indice]), progreso[indice]);
+    }
+
+    /** @return Cuántos autobuses hay en cada estado. */
+    ResumenFlotaDTO resumen() {
+        int inactivos = 0;
+        int enRuta = 0;
+        int detenidos = 0;
+        int finalizados = 0;
+        for (AutobusDTO bus : autobuses) {
+            switch (bus.getEstado()) {
+                case INACTIVO: inactivos++; break;
+                case EN_RUTA: enRuta++; break;
+                case DETENIDO: detenidos++; break;
+                case FINALIZADO: finalizados++; break;
+                default: break;
+            }
+        }
+        return new ResumenFlotaDTO(tick, inactivos, enRuta, detenidos, finalizados);
+    }
+
+    private static String nombreParada(Ruta ruta, int indice) {
+        Parada parada = ruta.getParadaPorIndice(indice);
+        return parada != null ? parada.getNombre() : null;
+    }
+}
@@ -0,0 +1,52 @@
+package cr.ed.ulacit.servidor;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Arranca en la máquina local una simulación repartida: {@code n} procesos {@link Servidor}, cada uno
+ * con un fragmento de la red, y una {@link Pasarela} en este mismo proceso que los combina.
+ * <p>
+ * Uso: {@code LanzadorFragmentos n [directorioGtfs]}
+ * </p>
+ * <p>
+ * Los fragmentos escuchan en los puertos siguientes al de la pasarela (12346, 12347, ...) y reciben
+ * una época común unos segundos en el futuro, para que todos empiecen el tick 0 a la vez. Al terminar
+ * este proceso se destruyen los fragmentos.
+ * </p>
+ */
+public class LanzadorFragmentos {
+
+    private static final int PUERTO_PASARELA = 12345;
+    private static final long MARGEN_ARRANQUE_MS = 5000;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Uso: LanzadorFragmentos n [directorioGtfs]");
+            System.exit(1);
+        }
+        int total = Integer.parseInt(args[0]);
+        String directorio = args.length > 1 ? args[1] : null;
+        long epoca = System.currentTimeMillis() + MARGEN_ARRANQUE_MS;
+
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        String classpath = System.getProperty("java.class.path");
+        List<Process> procesos = new ArrayList<>();
+        List<String> direcciones = new ArrayList<>();
+        for (int i = 0; i < total; i++) {
+            int puerto = PUERTO_PASARELA + 1 + i;
+            List<String> comando = new ArrayList<>(List.of(java, "-cp", classpath, Servidor.class.getName(),
+                    "--puerto", String.valueOf(puerto), "--fragmento", i + "/" + total, "--epoca", String.valueOf(epoca)));
+            if (directorio != null) {
+                comando.add(directorio);
+            }
+            procesos.add(new ProcessBuilder(comando).inheritIO().start());
+            direcciones.add("127.0.0.1:" + puerto);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> procesos.forEach(Process::destroy)));
+
+        new Pasarela(PUERTO_PASARELA, direcciones).iniciar();
+    }
+}
@@ -0,0 +1,386 @@
+package cr.ed.ulacit.servidor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lector de archivos CSV por flujo, pensado para archivos grandes como los de una red GTFS.
+ * <p>
+ * Lee el archivo en bloques de bytes y separa los campos de cada registro sin crear objetos intermedios:
+ * los números y horas se interpretan directamente desde los bytes, y solo se crea un {@link String} cuando
+ * se pide explícitamente con {@link #texto(int)}. Soporta campos entre comillas (con comillas duplicadas
+ * como escape) y el BOM de UTF-8. La primera línea se interpreta como encabezado.
+ * </p>
+ */
+class LectorCsv implements Closeable {
+
+    private static final int TAMANO_BLOQUE = 1 << 17;
+
+    private final Path archivo;
+    private final InputStream entrada;
+    private final byte[] bloque = new byte[TAMANO_BLOQUE];
+    private int posicion;
+    private int limite;
+
+    private byte[] registro = new byte[256];
+    private int longitud;
+    private byte[] datos = registro; // Arreglo donde están los campos del registro actual: el bloque o registro
+    private int[] inicios = new int[16];
+    private int[] fines = new int[16];
+    private int numCampos;
+    private long numLinea;
+    private final Map<String, Integer> columnas = new HashMap<>();
+
+    /**
+     * Abre el archivo y lee su encabezado.
+     *
+     * @param archivo La ruta del archivo CSV.
+     * @throws IOException Si el archivo no existe o no se puede leer.
+     */
+    LectorCsv(Path archivo) throws IOException {
+        this.archivo = archivo;
+        this.entrada = Files.newInputStream(archivo);
+        saltarBom();
+        if (siguiente()) {
+            for (int i = 0; i < numCampos; i++) {
+                columnas.put(texto(i).trim(), i);
+            }
+        }
+    }
+
+    /**
+     * @param nombre El nombre de la columna en el encabezado.
+     * @return El índice de la columna, o -1 si el archivo no la tiene.
+     */
+    int columna(String nombre) {
+        return columnas.getOrDefault(nombre, -1);
+    }
+
+    /**
+     * Igual que {@link #columna(String)}, pero la columna es obligatoria.
+     *
+     * @throws IOException Si el archivo no tiene la columna.
+     */
+    int columnaObligatoria(String nombre) throws IOException {
+        int indice = columna(nombre);
+        if (indice < 0) {
+            throw new IOException("Falta la columna '" + nombre + "' en " + archivo.getFileName());
+        }
+        return indice;
+    }
+
+    /**
+     * Avanza al siguiente registro no vacío.
+     *
+     * @return {@code false} si se llegó al final del archivo.
+     */
+    boolean siguiente() throws IOException {
+        do {
+            if (!leerRegistro()) {
+                return false;
+            }
+        } while (numCampos == 1 && fines[0] == inicios[0]);
+        return true;
+    }
+
+    /** @return {@code true} si el campo no existe en el registro actual o está vacío. */
+    boolean esVacio(int col) {
+        return col < 0 || col >= numCampos || fines[col] == inicios[col];
+    }
+
+    /** @return El campo como texto, o una cadena vacía si no existe. */
+    String texto(int col) {
+        if (esVacio(col)) {
+            return "";
+        }
+        return new String(datos, inicios[col], fines[col] - inicios[col], StandardCharsets.UTF_8);
+    }
+
+    /** @return {@code true} si el campo contiene exactamente los bytes indicados. */
+    boolean esIgual(int col, byte[] bytes, int cantidad) {
+        if (col < 0 || col >= numCampos || fines[col] - inicios[col] != cantidad) {
+            return false;
+        }
+        return Arrays.equals(datos, inicios[col], fines[col], bytes, 0, cantidad);
+    }
+
+    /**
+     * Copia los bytes del campo en el arreglo destino, agrandándolo si hace falta.
+     *
+     * @return El arreglo que contiene los bytes (el mismo destino u otro más grande).
+     */
+    byte[] copiar(int col, byte[] destino) {
+        int cantidad = longitud(col);
+        if (cantidad == 0) {
+            return destino;
+        }
+        byte[] resultado = destino.length >= cantidad ? destino : new byte[cantidad * 2];
+        System.arraycopy(datos, inicios[col], resultado, 0, cantidad);
+        return resultado;
+    }
+
+    /** @return La longitud en bytes del campo. */
+    int longitud(int col) {
+        return esVacio(col) ? 0 : fines[col] - inicios[col];
+    }
+
+    /**
+     * @return El campo como entero, o {@code porDefecto} si está vacío.
+     * @throws IOException Si el campo no es un entero o no cabe en un {@code int}.
+     */
+    int entero(int col, int porDefecto) throws IOException {
+        if (esVacio(col)) {
+            return porDefecto;
+        }
+        int i = inicios[col];
+        int fin = fines[col];
+        boolean negativo = datos[i] == '-';
+        if (negativo) {
+            i++;
+        }
+        if (i == fin) {
+            throw errorDeFormato(col, "un entero"); // Solo el signo
+        }
+        long maximo = negativo ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+        long valor = 0;
+        for (; i < fin; i++) {
+            int digito = datos[i] - '0';
+            if (digito < 0 || digito > 9) {
+                throw errorDeFormato(col, "un entero");
+            }
+            valor = valor * 10 + digito;
+            if (valor > maximo) {
+                throw errorDeFormato(col, "un entero de 32 bits");
+            }
+        }
+        return (int) (negativo ? -valor : valor);
+    }
+
+    /** @return El campo como número decimal. */
+    double decimal(int col) throws IOException {
+        if (esVacio(col)) {
+            throw errorDeFormato(col, "un número");
+        }
+        int i = inicios[col];
+        int fin = fines[col];
+        boolean negativo = datos[i] == '-';
+        if (negativo || datos[i] == '+') {
+            i++;
+        }
+        long mantisa = 0;
+        int decimales = -1;
+        int digitos = 0;
+        for (; i < fin; i++) {
+            byte b = datos[i];
+            if (b == '.' && decimales < 0) {
+                decimales = 0;
+            } else if (b >= '0' && b <= '9' && digitos < 18) {
+                mantisa = mantisa * 10 + (b - '0');
+                digitos++;
+                if (decimales >= 0) {
+                    decimales++;
+                }
+            } else if (b >= '0' && b <= '9' && decimales >= 0) {
+                continue; // Precisión de más en la parte decimal: se descarta
+            } else {
+                // Parte entera de más de 18 dígitos, notación científica u otros formatos poco comunes
+                return decimalLento(col);
+            }
+        }
+        if (digitos == 0) {
+            throw errorDeFormato(col, "un número"); // Solo el signo o el punto
+        }
+        double valor = decimales > 0 ? mantisa / Math.pow(10, decimales) : mantisa;
+        return negativo ? -valor : valor;
+    }
+
+    private double decimalLento(int col) throws IOException {
+        try {
+            return Double.parseDouble(texto(col));
+        } catch (NumberFormatException e) {
+            throw errorDeFormato(col, "un número");
+        }
+    }
+
+    /**
+     * Interpreta una hora GTFS ({@code H:MM:SS}, donde las horas pueden pasar de 24).
+     *
+     * @return Los segundos desde la medianoche, o -1 si el campo está vacío.
+     */
+    int horaEnSegundos(int col) throws IOException {
+        if (esVacio(col)) {
+            return -1;
+        }
+        int total = 0;
+        int parte = 0;
+        int partes = 1;
+        for (int i = inicios[col]; i < fines[col]; i++) {
+            byte b = datos[i];
+            if (b == ':') {
+                total = total * 60 + parte;
+                parte = 0;
+                partes++;
+            } else if (b >= '0' && b <= '9') {
+                parte = parte * 10 + (b - '0');
+            } else if (b != ' ') {
+                throw errorDeFormato(col, "una hora H:MM:SS");
+            }
+        }
+        if (partes != 3) {
+            throw errorDeFormato(col, "una hora H:MM:SS");
+        }
+        return total * 60 + parte;
+    }
+
+    @Override
+    public void close() throws IOException {
+        entrada.close();
+    }
+
+    private IOException errorDeFormato(int col, String esperado) {
+        return new IOException("Se esperaba " + esperado + " en " + archivo.getFileName()
+                + ", línea " + numLinea + ", columna " + (col + 1) + ": '" + texto(col) + "'");
+    }
+
+    /**
+     * Salta la marca de orden de bytes UTF-8 si el archivo empieza con ella. Se revisa directamente al
+     * inicio del primer bloque, completándolo hasta tener tres bytes, para no perder ninguno si no la hay.
+     */
+    private void saltarBom() throws IOException {
+        if (!rellenar()) {
+            return;
+        }
+        while (limite < 3) {
+            int leidos = entrada.read(bloque, limite, bloque.length - limite);
+            if (leidos <= 0) {
+                break;
+            }
+            limite += leidos;
+        }
+        if (limite >= 3 && (bloque[0] & 0xFF) == 0xEF && (bloque[1] & 0xFF) == 0xBB && (bloque[2] & 0xFF) == 0xBF) {
+            posicion = 3;
+        }
+    }
+
+    private boolean rellenar() throws IOException {
+        limite = entrada.read(bloque, 0, bloque.length);
+        posicion = 0;
+        if (limite <= 0) {
+            limite = 0;
+            return false;
+        }
+        return true;
+    }
+
+    private int leerByte() throws IOException {
+        if (posicion == limite && !rellenar()) {
+            return -1;
+        }
+        return bloque[posicion++] & 0xFF;
+    }
+
+    /**
+     * Lee un registro completo y guarda el inicio y fin de cada campo.
+     * <p>
+     * En el caso común (registro sin comillas contenido en el bloque actual) los campos se señalan
+     * directamente dentro del bloque, sin copiar bytes. Si el registro tiene comillas o cruza el final
+     * del bloque, se reconstruye en {@code registro}, quitando las comillas; en ese caso puede abarcar
+     * varias líneas.
+     * </p>
+     */
+    private boolean leerRegistro() throws IOException {
+        numCampos = 0;
+        if (posicion == limite && !rellenar()) {
+            return false;
+        }
+        numLinea++;
+
+        // Camino rápido
+        int inicioRegistro = posicion;
+        int inicioCampo = posicion;
+        for (int i = posicion; i < limite; i++) {
+            byte c = bloque[i];
+            if (c == ',') {
+                cerrarCampo(inicioCampo, i);
+                inicioCampo = i + 1;
+            } else if (c == '\n') {
+                cerrarCampo(inicioCampo, i > inicioCampo && bloque[i - 1] == '\r' ? i - 1 : i);
+                datos = bloque;
+                posicion = i + 1;
+                return true;
+            } else if (c == '"') {
+                break;
+            }
+        }
+
+        // Camino lento: se copia el registro desde su inicio
+        numCampos = 0;
+        longitud = 0;
+        datos = registro;
+        posicion = inicioRegistro;
+        inicioCampo = 0;
+        boolean inicioDeCampo = true;
+        while (posicion < limite || rellenar()) {
+            byte c = bloque[posicion++];
+            if (c == ',') {
+                cerrarCampo(inicioCampo, longitud);
+                inicioCampo = longitud;
+                inicioDeCampo = true;
+                continue;
+            } else if (c == '\n') {
+                break;
+            } else if (c == '"' && inicioDeCampo) {
+                leerCampoEntreComillas();
+            } else if (c != '\r') {
+                agregar(c);
+            }
+            inicioDeCampo = false;
+        }
+        cerrarCampo(inicioCampo, longitud);
+        datos = registro; // agregar() pudo haber reemplazado el arreglo
+        return true;
+    }
+
+    /** Lee el contenido de un campo entre comillas, ya consumida la comilla de apertura. */
+    private void leerCampoEntreComillas() throws IOException {
+        int b;
+        while ((b = leerByte()) >= 0) {
+            if (b == '"') {
+                int siguiente = leerByte();
+                if (siguiente != '"') {
+                    if (siguiente >= 0) {
+                        posicion--; // Devuelve el byte al bloque; siempre está en el bloque actual
+                    }
+                    return;
+                }
+            } else if (b == '\n') {
+                numLinea++;
+            }
+            agregar(b);
+        }
+    }
+
+    private void agregar(int b) {
+        if (longitud == registro.length) {
+            registro = Arrays.copyOf(registro, longitud * 2);
+        }
+        registro[longitud++] = (byte) b;
+    }
+
+    private void cerrarCampo(int inicio, int fin) {
+        if (numCampos == inicios.length) {
+            inicios = Arrays.copyOf(inicios, numCampos * 2);
+            fines = Arrays.copyOf(fines, numCampos * 2);
+        }
+        inicios[numCampos] = inicio;
+        fines[numCampos] = fin;
+        numCampos++;
+    }
+}
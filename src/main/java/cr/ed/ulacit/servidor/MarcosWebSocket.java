@@ -0,0 +1,251 @@
+package cr.ed.ulacit.servidor;
+
+import cr.ed.ulacit.EstadoAutobus;
+import cr.ed.ulacit.dto.AutobusDTO;
+import cr.ed.ulacit.dto.ParadaDTO;
+import cr.ed.ulacit.dto.RedDTO;
+import cr.ed.ulacit.dto.RutaDTO;
+import cr.ed.ulacit.dto.UpdatePayload;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Codifica los mensajes del {@link ServidorWebSocket} como marcos WebSocket completos (RFC 6455), con la
+ * cabecera incluida, listos para escribirse tal cual en cualquier sesión.
+ * <p>
+ * Formato JSON (marcos de texto):
+ * </p>
+ * <ul>
+ *     <li>Al conectar: {@code {"tipo":"red","campos":[...],"estados":[...],"rutas":[{"nombre":...,
+ *     "paradas":[{"id":1,"nombre":...,"x":...,"y":...}]}]}}. {@code campos} nombra las columnas de cada
+ *     autobús en los ticks y {@code estados} los valores de la columna {@code estado}.</li>
+ *     <li>En cada tick: {@code {"tipo":"tick","tick":N,"autobuses":[[id,x,y,estado,ocupacion,capacidad,color],...],
+ *     "eventos":[{"secuencia":S,"hora":"HH:mm:ss","mensaje":...}],"pasajeros":[...]}}. El color es RGB en un
+ *     entero y {@code pasajeros} solo viene en algunos ticks, como en {@link UpdatePayload}.</li>
+ * </ul>
+ * <p>
+ * Formato binario (marcos binarios, enteros big-endian): el mensaje de la red es el mismo JSON; cada tick es
+ * {@code byte 1, long tick, int n} y {@code n} autobuses de 17 bytes ({@code int id, short x, short y,
+ * byte estado, short ocupacion, short capacidad, int color}), luego {@code int} eventos, cada uno
+ * {@code long secuencia} y la hora y el mensaje como {@code int} longitud y bytes UTF-8, y por último
+ * {@code int} paradas ({@code -1} si el tick no trae pasajeros) y un {@code int} por parada.
+ * </p>
+ */
+final class MarcosWebSocket {
+
+    static final int OPCODE_TEXTO = 0x1;
+    static final int OPCODE_BINARIO = 0x2;
+    static final int OPCODE_CIERRE = 0x8;
+    static final int OPCODE_PING = 0x9;
+    static final int OPCODE_PONG = 0xA;
+    static final byte TIPO_TICK = 1;
+    private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final EstadoAutobus[] ESTADOS = EstadoAutobus.values();
+
+    private MarcosWebSocket() {
+    }
+
+    /**
+     * @param clave El valor de la cabecera {@code Sec-WebSocket-Key} del cliente.
+     * @return El valor de {@code Sec-WebSocket-Accept} que le corresponde.
+     */
+    static String aceptacion(String clave) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] resumen = sha1.digest((clave.trim() + GUID).getBytes(StandardCharsets.ISO_8859_1));
+            return Base64.getEncoder().encodeToString(resumen);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 no disponible", e);
+        }
+    }
+
+    /**
+     * Arma un marco del servidor al cliente: completo (FIN) y sin máscara.
+     *
+     * @param opcode El tipo de marco.
+     * @param datos  El contenido.
+     * @return La cabecera seguida del contenido.
+     */
+    static byte[] marco(int opcode, byte[] datos) {
+        int n = datos.length;
+        int cabecera = n < 126 ? 2 : n <= 0xFFFF ? 4 : 10;
+        byte[] marco = new byte[cabecera + n];
+        marco[0] = (byte) (0x80 | opcode);
+        if (n < 126) {
+            marco[1] = (byte) n;
+        } else if (n <= 0xFFFF) {
+            marco[1] = 126;
+            marco[2] = (byte) (n >>> 8);
+            marco[3] = (byte) n;
+        } else {
+            marco[1] = 127;
+            for (int i = 0; i < 8; i++) {
+                marco[2 + i] = (byte) ((long) n >>> (56 - 8 * i));
+            }
+        }
+        System.arraycopy(datos, 0, marco, cabecera, n);
+        return marco;
+    }
+
+    /** @return El marco de texto con la red, que se envía a cada sesión al conectarse. */
+    static byte[] red(RedDTO red) {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"tipo\":\"red\",\"campos\":[\"id\",\"x\",\"y\",\"estado\",\"ocupacion\",\"capacidad\",\"color\"],\"estados\":[");
+        for (int i = 0; i < ESTADOS.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            cadena(json, ESTADOS[i].name());
+        }
+        json.append("],\"rutas\":[");
+        boolean primeraRuta = true;
+        for (RutaDTO ruta : red.getRutas()) {
+            if (!primeraRuta) {
+                json.append(',');
+            }
+            primeraRuta = false;
+            json.append("{\"nombre\":");
+            cadena(json, ruta.getNombreRuta());
+            json.append(",\"paradas\":[");
+            boolean primeraParada = true;
+            for (ParadaDTO parada : ruta.getParadas()) {
+                if (!primeraParada) {
+                    json.append(',');
+                }
+                primeraParada = false;
+                json.append("{\"id\":").append(parada.getId()).append(",\"nombre\":");
+                cadena(json, parada.getNombre());
+                json.append(",\"x\":").append(parada.getCoordX()).append(",\"y\":").append(parada.getCoordY()).append('}');
+            }
+            json.append("]}");
+        }
+        json.append("]}");
+        return marco(OPCODE_TEXTO, json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** @return El marco de texto de un tick. */
+    static byte[] tickJson(UpdatePayload payload) {
+        List<AutobusDTO> autobuses = payload.getAutobuses();
+        StringBuilder json = new StringBuilder(64 + autobuses.size() * 32);
+        json.append("{\"tipo\":\"tick\",\"tick\":").append(payload.getTick()).append(",\"autobuses\":[");
+        for (int i = 0; i < autobuses.size(); i++) {
+            AutobusDTO bus = autobuses.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append('[').append(bus.getId()).append(',').append(bus.getX()).append(',').append(bus.getY())
+                    .append(',').append(bus.getEstado().ordinal()).append(',').append(bus.getOcupacion())
+                    .append(',').append(bus.getCapacidad()).append(',').append(bus.getColor().getRGB() & 0xFFFFFF)
+                    .append(']');
+        }
+        json.append("],\"eventos\":[");
+        List<EventoLog> eventos = payload.getEventos();
+        for (int i = 0; i < eventos.size(); i++) {
+            EventoLog evento = eventos.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"secuencia\":").append(evento.getSecuencia()).append(",\"hora\":");
+            cadena(json, evento.getHora());
+            json.append(",\"mensaje\":");
+            cadena(json, evento.getMensaje());
+            json.append('}');
+        }
+        json.append(']');
+        int[] pasajeros = payload.getPasajerosEsperando();
+        if (pasajeros != null) {
+            json.append(",\"pasajeros\":[");
+            for (int i = 0; i < pasajeros.length; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append(pasajeros[i]);
+            }
+            json.append(']');
+        }
+        json.append('}');
+        return marco(OPCODE_TEXTO, json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** @return El marco binario de un tick. */
+    static byte[] tickBinario(UpdatePayload payload) {
+        List<AutobusDTO> autobuses = payload.getAutobuses();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + autobuses.size() * 17);
+        try (DataOutputStream salida = new DataOutputStream(bytes)) {
+            salida.writeByte(TIPO_TICK);
+            salida.writeLong(payload.getTick());
+            salida.writeInt(autobuses.size());
+            for (AutobusDTO bus : autobuses) {
+                salida.writeInt(bus.getId());
+                salida.writeShort(bus.getX());
+                salida.writeShort(bus.getY());
+                salida.writeByte(bus.getEstado().ordinal());
+                salida.writeShort(bus.getOcupacion());
+                salida.writeShort(bus.getCapacidad());
+                salida.writeInt(bus.getColor().getRGB() & 0xFFFFFF);
+            }
+            salida.writeInt(payload.getEventos().size());
+            for (EventoLog evento : payload.getEventos()) {
+                salida.writeLong(evento.getSecuencia());
+                escribirUtf8(salida, evento.getHora());
+                escribirUtf8(salida, evento.getMensaje());
+            }
+            int[] pasajeros = payload.getPasajerosEsperando();
+            salida.writeInt(pasajeros != null ? pasajeros.length : -1);
+            if (pasajeros != null) {
+                for (int p : pasajeros) {
+                    salida.writeInt(p);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // No ocurre: se escribe en memoria
+        }
+        return marco(OPCODE_BINARIO, bytes.toByteArray());
+    }
+
+    private static void escribirUtf8(DataOutputStream salida, String texto) throws IOException {
+        byte[] utf8 = texto.getBytes(StandardCharsets.UTF_8);
+        salida.writeInt(utf8.length);
+        salida.write(utf8);
+    }
+
+    /** Agrega una cadena JSON entre comillas, escapando lo necesario. */
+    private static void cadena(StringBuilder json, String texto) {
+        json.append('"');
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,284 @@
+package cr.ed.ulacit.servidor;
+
+import cr.ed.ulacit.Autobus;
+import cr.ed.ulacit.EstadoAutobus;
+import cr.ed.ulacit.Parada;
+import cr.ed.ulacit.Ruta;
+import cr.ed.ulacit.dto.LlegadaEstimadaDTO;
+import cr.ed.ulacit.dto.TableroLlegadasDTO;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Motor incremental de predicción de llegadas (ETA) para las paradas de una red de rutas.
+ * <p>
+ * Mantiene, para cada autobús activo, la hora estimada de llegada a cada una de las paradas que le
+ * quedan por recorrer. Las estimaciones se basan en estadísticas por tramo (promedio móvil exponencial
+ * del tiempo de viaje entre dos paradas consecutivas de una {@link Ruta}) y del tiempo de permanencia en
+ * parada, aprendidas de los recorridos recientes. Cada parada tiene un único tablero que reúne los
+ * autobuses de todas las rutas que pasan por ella.
+ * </p>
+ * <p>
+ * Diseño: El motor solo recibe los autobuses que se movieron o cambiaron de estado en el tick, y la fila
+ * de un autobús en movimiento solo se recalcula cuando su llegada a la próxima parada se desvía más de
+ * {@value #TOLERANCIA_MS} ms de lo previsto. Al final del tick se publican, como objetos inmutables, los
+ * tableros de las paradas afectadas; leer un tablero es una simple lectura de una referencia
+ * {@code volatile}, apta para cualquier hilo. El resto de métodos debe llamarse desde el hilo de simulación.
+ * </p>
+ */
+public class MotorEta {
+
+    private static final long TOLERANCIA_MS = 250;
+    private static final double ALFA = 0.2; // Peso de la observación más reciente en el promedio móvil
+
+    private final Map<Ruta, double[]> tiempoTramoMs = new IdentityHashMap<>(); // [i]: viaje de la parada i a la i + 1
+    private double tiempoParadaMs;
+    private final Map<Integer, FilaEta> filas = new HashMap<>();
+    private final Map<Integer, TableroParada> tableros = new HashMap<>(); // Por ID de parada
+    private final List<TableroParada> tablerosSucios = new ArrayList<>();
+
+    /**
+     * Constructor del motor de ETA.
+     *
+     * @param rutas                 Las rutas cuyas paradas se van a predecir.
+     * @param tiempoTramoInicialMs  La estimación inicial del tiempo de viaje entre dos paradas consecutivas.
+     * @param tiempoParadaInicialMs La estimación inicial del tiempo de permanencia en una parada.
+     */
+    public MotorEta(List<Ruta> rutas, double tiempoTramoInicialMs, double tiempoParadaInicialMs) {
+        this.tiempoParadaMs = tiempoParadaInicialMs;
+        for (Ruta ruta : rutas) {
+            double[] tramos = new double[Math.max(0, ruta.getLongitudRuta() - 1)];
+            Arrays.fill(tramos, tiempoTramoInicialMs);
+            tiempoTramoMs.put(ruta, tramos);
+            for (Parada parada : ruta.getParadas()) {
+                tableros.computeIfAbsent(parada.getId(), id -> new TableroParada(parada));
+            }
+        }
+    }
+
+    /**
+     * Actualiza las predicciones de un autobús que se movió o cambió de estado en este tick.
+     *
+     * @param bus   El autobús afectado.
+     * @param ahora El instante actual en milisegundos.
+     */
+    public void actualizar(Autobus bus, long ahora) {
+        FilaEta fila = filas.computeIfAbsent(bus.getId(), id -> new FilaEta(bus.getRuta()));
+        EstadoAutobus estado = bus.getEstado();
+        boolean recalcular = estado != fila.estado;
+        if (recalcular) {
+            registrarTransicion(bus, fila, estado, ahora);
+        }
+
+        switch (estado) {
+            case EN_RUTA: {
+                int siguiente = bus.getParadaDestinoIndex();
+                long eta = ahora + Math.round((1.0 - bus.getProgreso()) * fila.tramos[siguiente - 1]);
+                if (recalcular || Math.abs(eta - fila.eta[siguiente]) > TOLERANCIA_MS) {
+                    recalcularFila(bus.getId(), fila, siguiente, eta);
+                }
+                break;
+            }
+            case DETENIDO: {
+                int parada = bus.getParadaDestinoIndex();
+                if (parada + 1 >= fila.eta.length) {
+                    quitarFila(bus.getId(), fila); // Terminal final: no quedan paradas por predecir
+                    break;
+                }
+                long salida = Math.max(ahora, fila.llegadaMs + Math.round(tiempoParadaMs));
+                long eta = salida + Math.round(fila.tramos[parada]);
+                if (recalcular || Math.abs(eta - fila.eta[parada + 1]) > TOLERANCIA_MS) {
+                    recalcularFila(bus.getId(), fila, parada + 1, eta);
+                }
+                break;
+            }
+            case FINALIZADO:
+                quitarFila(bus.getId(), fila);
+                filas.remove(bus.getId());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Publica los tableros de las paradas cuyas predicciones cambiaron en este tick y notifica
+     * a sus suscriptores. Debe llamarse una vez al final de cada tick.
+     *
+     * @param ahora El instante actual en milisegundos.
+     */
+    public void publicar(long ahora) {
+        for (TableroParada tablero : tablerosSucios) {
+            tablero.publicar(ahora);
+        }
+        tablerosSucios.clear();
+    }
+
+    /**
+     * Obtiene el último tablero publicado de una parada. Es seguro llamarlo desde cualquier hilo.
+     *
+     * @param idParada El ID de la parada.
+     * @return El tablero de llegadas, o {@code null} si la parada no pertenece a la red.
+     */
+    public TableroLlegadasDTO getTablero(int idParada) {
+        TableroParada tablero = tableros.get(idParada);
+        return tablero == null ? null : tablero.publicado;
+    }
+
+    /**
+     * Registra un observador que recibe cada nueva versión del tablero de una parada.
+     * <p>
+     * El observador se invoca en el hilo de simulación, por lo que debe ser rápido y no bloquear.
+     * </p>
+     *
+     * @param idParada   El ID de la parada.
+     * @param observador La acción a ejecutar con cada tablero publicado.
+     * @return {@code true} si la parada existe y se registró el observador.
+     */
+    public boolean suscribir(int idParada, Consumer<TableroLlegadasDTO> observador) {
+        TableroParada tablero = tableros.get(idParada);
+        if (tablero == null) {
+            return false;
+        }
+        tablero.observadores.add(observador);
+        return true;
+    }
+
+    /**
+     * Da de baja un observador registrado con {@link #suscribir}.
+     *
+     * @param idParada   El ID de la parada.
+     * @param observador El observador a eliminar.
+     */
+    public void desuscribir(int idParada, Consumer<TableroLlegadasDTO> observador) {
+        TableroParada tablero = tableros.get(idParada);
+        if (tablero != null) {
+            tablero.observadores.remove(observador);
+        }
+    }
+
+    /**
+     * Aprende de una transición de estado: al llegar a una parada se mide el tiempo del tramo recorrido y
+     * al salir se mide el tiempo de permanencia.
+     */
+    private void registrarTransicion(Autobus bus, FilaEta fila, EstadoAutobus estado, long ahora) {
+        if (estado == EstadoAutobus.DETENIDO) {
+            int parada = bus.getParadaDestinoIndex();
+            if (fila.salidaMs >= 0) {
+                fila.tramos[parada - 1] += ALFA * ((ahora - fila.salidaMs) - fila.tramos[parada - 1]);
+            }
+            fila.llegadaMs = ahora;
+            quitarHasta(bus.getId(), fila, parada + 1); // Ya llegó: sale del tablero de esta parada
+        } else if (estado == EstadoAutobus.EN_RUTA) {
+            if (fila.estado == EstadoAutobus.DETENIDO && fila.llegadaMs >= 0) {
+                tiempoParadaMs += ALFA * ((ahora - fila.llegadaMs) - tiempoParadaMs);
+            }
+            fila.salidaMs = ahora;
+        }
+        fila.estado = estado;
+    }
+
+    /**
+     * Recalcula la fila de un autobús a partir de su próxima parada y actualiza los tableros afectados.
+     */
+    private void recalcularFila(int idAutobus, FilaEta fila, int siguiente, long etaSiguiente) {
+        quitarHasta(idAutobus, fila, siguiente);
+        long eta = etaSiguiente;
+        for (int j = siguiente; j < fila.eta.length; j++) {
+            fila.eta[j] = eta;
+            fila.tablero(j).poner(idAutobus, eta);
+            if (j < fila.tramos.length) {
+                eta += Math.round(tiempoParadaMs + fila.tramos[j]);
+            }
+        }
+        fila.desde = siguiente;
+    }
+
+    /** Elimina al autobús de los tableros de las paradas anteriores a {@code limite}. */
+    private void quitarHasta(int idAutobus, FilaEta fila, int limite) {
+        for (int j = fila.desde; j < Math.min(limite, fila.eta.length); j++) {
+            fila.tablero(j).quitar(idAutobus);
+        }
+        fila.desde = Math.max(fila.desde, limite);
+    }
+
+    private void quitarFila(int idAutobus, FilaEta fila) {
+        quitarHasta(idAutobus, fila, fila.eta.length);
+    }
+
+    /** Las predicciones de un autobús, indexadas por el índice de la parada en su ruta. */
+    private final class FilaEta {
+        private final Ruta ruta;
+        private final double[] tramos;
+        private final long[] eta;
+        private int desde; // Primera parada con predicción vigente
+        private EstadoAutobus estado = EstadoAutobus.INACTIVO;
+        private long salidaMs = -1;
+        private long llegadaMs = -1;
+
+        private FilaEta(Ruta ruta) {
+            this.ruta = ruta;
+            this.tramos = tiempoTramoMs.get(ruta);
+            this.eta = new long[ruta.getLongitudRuta()];
+            this.desde = eta.length;
+        }
+
+        private TableroParada tablero(int indiceParada) {
+            return tableros.get(ruta.getParadaPorIndice(indiceParada).getId());
+        }
+    }
+
+    /** Estado mutable del tablero de una parada y su última versión publicada. */
+    private final class TableroParada {
+        private final Parada parada;
+        private final Map<Integer, Long> etas = new HashMap<>();
+        private final List<Consumer<TableroLlegadasDTO>> observadores = new CopyOnWriteArrayList<>();
+        private volatile TableroLlegadasDTO publicado;
+        private boolean sucio;
+
+        private TableroParada(Parada parada) {
+            this.parada = parada;
+            this.publicado = new TableroLlegadasDTO(parada.getId(), parada.getNombre(), 0, Collections.emptyList());
+        }
+
+        private void poner(int idAutobus, long eta) {
+            etas.put(idAutobus, eta);
+            marcarSucio();
+        }
+
+        private void quitar(int idAutobus) {
+            if (etas.remove(idAutobus) != null) {
+                marcarSucio();
+            }
+        }
+
+        private void marcarSucio() {
+            if (!sucio) {
+                sucio = true;
+                tablerosSucios.add(this);
+            }
+        }
+
+        private void publicar(long ahora) {
+            List<LlegadaEstimadaDTO> llegadas = new ArrayList<>(etas.size());
+            for (Map.Entry<Integer, Long> entrada : etas.entrySet()) {
+                llegadas.add(new LlegadaEstimadaDTO(entrada.getKey(), entrada.getValue()));
+            }
+            llegadas.sort(Comparator.comparingLong(LlegadaEstimadaDTO::getLlegadaEstimadaMs));
+            publicado = new TableroLlegadasDTO(parada.getId(), parada.getNombre(), ahora, Collections.unmodifiableList(llegadas));
+            sucio = false;
+            for (Consumer<TableroLlegadasDTO> observador : observadores) {
+                observador.accept(publicado);
+            }
+        }
+    }
+}
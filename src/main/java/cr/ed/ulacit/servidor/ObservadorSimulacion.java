@@ -0,0 +1,34 @@
+package cr.ed.ulacit.servidor;
+
+import cr.ed.ulacit.Autobus;
+import cr.ed.ulacit.Parada;
+
+/**
+ * Recibe los sucesos de una {@link Simulacion} a medida que ocurren, en el hilo que la ejecuta.
+ * <p>
+ * Todos los métodos tienen una implementación vacía para que cada observador implemente solo los que
+ * necesita. El instante {@code ahora} es el tiempo de simulación en milisegundos.
+ * </p>
+ */
+public interface ObservadorSimulacion {
+
+    /** Un autobús sale de la terminal para empezar su viaje. */
+    default void salidaTerminal(Autobus bus, long ahora) {
+    }
+
+    /** Un autobús llega a una parada y se detiene. */
+    default void llegadaParada(Autobus bus, Parada parada, long ahora) {
+    }
+
+    /** Un autobús sale de la parada en la que estaba detenido hacia la siguiente. */
+    default void salidaParada(Autobus bus, Parada parada, long ahora) {
+    }
+
+    /** Un autobús termina su ruta, al final del tiempo en la última parada. */
+    default void finRuta(Autobus bus, long ahora) {
+    }
+
+    /** El estado o la posición de un autobús cambió en este tick (se llama después de los métodos anteriores). */
+    default void autobusActualizado(Autobus bus, long ahora) {
+    }
+}
@@ -0,0 +1,505 @@
+package cr.ed.ulacit.servidor;
+
+import cr.ed.ulacit.dto.AutobusDTO;
+import cr.ed.ulacit.dto.LlegadaEstimadaDTO;
+import cr.ed.ulacit.dto.RedDTO;
+import cr.ed.ulacit.dto.RutaDTO;
+import cr.ed.ulacit.dto.TableroLlegadasDTO;
+import cr.ed.ulacit.dto.UpdatePayload;
+import cr.ed.ulacit.protocolo.Compresion;
+import cr.ed.ulacit.protocolo.ConexionSimulacion;
+import cr.ed.ulacit.protocolo.Consulta;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Pasarela que combina la simulación repartida entre varios procesos {@link Servidor} (fragmentos).
+ * <p>
+ * La pasarela se conecta a cada fragmento como si fuera un cliente más, une las redes que recibe en un
+ * solo {@link RedDTO} y acepta conexiones de {@code ClienteGUI}. En cada tick combina los estados de los
+ * fragmentos en un único {@link UpdatePayload} y lo reenvía a sus clientes, que no notan la diferencia
+ * con un servidor único.
+ * </p>
+ * <p>
+ * Diseño: Los fragmentos comparten la misma época, así que sus números de tick están alineados. Un hilo
+ * lector por fragmento solo encola lo que recibe; el hilo de combinación emite el tick más alto que ya
+ * reportaron todos los fragmentos vivos, tomando de cada uno su estado en ese tick y todos los eventos
+ * acumulados hasta él. Un fragmento que deja de reportar durante {@value #PLAZO_FRAGMENTO_MS} ms no
+ * detiene la transmisión: se consume lo que quedó pendiente de él y, una vez agotado, sus autobuses dejan
+ * de transmitirse y sus paradas se reportan sin pasajeros en espera, para que los clientes no muestren un
+ * estado congelado. Si vuelve a reportar, su estado reaparece con la siguiente actualización que envíe.
+ * </p>
+ * <p>
+ * Si se pierde la conexión con un fragmento, su hilo lector vuelve a conectarse con esperas crecientes
+ * (de {@value #ESPERA_RECONEXION_MIN_MS} ms hasta {@value #ESPERA_RECONEXION_MAX_MS} ms), presentando la
+ * sesión y el último tick recibidos para que el fragmento envíe solo lo que se perdió. Si el fragmento se
+ * reinició, se acepta su nueva sesión siempre que su red tenga la misma forma; si no, se sigue reintentando.
+ * </p>
+ * <p>
+ * Los clientes se atienden con cola (ver {@link ClientHandler#ClientHandler(Socket, ProveedorSimulacion, boolean)}):
+ * el hilo de combinación solo encola cada estado, y un cliente lento no retrasa a los demás.
+ * </p>
+ * <p>
+ * Las consultas de los clientes sobre la flota, los eventos y las rutas se responden con el estado
+ * combinado de la pasarela. Las que necesitan datos que solo tiene un fragmento (el detalle de un
+ * autobús o el tablero de una parada) se reenvían a los fragmentos conectados y se combinan sus respuestas.
+ * </p>
+ */
+public class Pasarela implements ProveedorSimulacion {
+
+    private static final int PUERTO = 12345;
+    private static final int TICK_SIMULACION = 50; // 50 ms, igual que el servidor
+    private static final long PLAZO_FRAGMENTO_MS = 1000;
+    private static final long ESPERA_CONEXION_MS = 30000;
+    private static final long ESPERA_RECONEXION_MIN_MS = 200;
+    private static final long ESPERA_RECONEXION_MAX_MS = 5000;
+
+    private final int puerto;
+    private final List<String> direccionesFragmentos;
+    private final List<Fragmento> fragmentos = new ArrayList<>();
+    private final List<ClientHandler> clientes = new CopyOnWriteArrayList<>();
+    private final RegistroEventos registroEventos = new RegistroEventos();
+    private RedDTO redDTO;
+    private volatile InstantaneaSimulacion instantanea = new InstantaneaSimulacion(-1, Collections.emptyList());
+    private volatile int[] pasajerosEsperando; // Los últimos que se transmitieron
+    private final long sesion = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    private long ultimoTickEmitido = -1;
+
+    /**
+     * Punto de entrada de la pasarela.
+     * <p>
+     * Uso: {@code Pasarela [--puerto N] host:puerto [host:puerto ...]}
+     * </p>
+     *
+     * @param args El puerto propio (opcional) y las direcciones de los fragmentos.
+     */
+    public static void main(String[] args) {
+        int puerto = PUERTO;
+        List<String> direcciones = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--puerto")) {
+                puerto = Integer.parseInt(args[++i]);
+            } else {
+                direcciones.add(args[i]);
+            }
+        }
+        if (direcciones.isEmpty()) {
+            System.err.println("Uso: Pasarela [--puerto N] host:puerto [host:puerto ...]");
+            System.exit(1);
+        }
+        new Pasarela(puerto, direcciones).iniciar();
+    }
+
+    /**
+     * Constructor de la pasarela.
+     *
+     * @param puerto                El puerto donde se aceptan los clientes.
+     * @param direccionesFragmentos Las direcciones {@code host:puerto} de los servidores fragmento.
+     */
+    public Pasarela(int puerto, List<String> direccionesFragmentos) {
+        this.puerto = puerto;
+        this.direccionesFragmentos = direccionesFragmentos;
+    }
+
+    /**
+     * Se conecta a los fragmentos, arranca los hilos de lectura y de combinación, y acepta clientes.
+     */
+    public void iniciar() {
+        try {
+            List<RutaDTO> rutas = new ArrayList<>();
+            for (String direccion : direccionesFragmentos) {
+                Fragmento fragmento = conectar(direccion);
+                fragmentos.add(fragmento);
+                rutas.addAll(fragmento.red.getRutas());
+            }
+            redDTO = new RedDTO(rutas);
+        } catch (IOException e) {
+            System.err.println("No se pudo conectar con los fragmentos: " + e.getMessage());
+            return;
+        }
+
+        for (Fragmento fragmento : fragmentos) {
+            Thread lector = new Thread(fragmento::leer, "fragmento-" + fragmento.direccion);
+            lector.setDaemon(true);
+            lector.start();
+        }
+        Thread combinador = new Thread(this::iniciarLoopCombinacion, "combinador");
+        combinador.setDaemon(true);
+        combinador.start();
+
+        try (ServerSocket serverSocket = new ServerSocket(puerto)) {
+            System.out.println("Pasarela iniciada en el puerto " + puerto + " con " + fragmentos.size() + " fragmentos.");
+            while (true) {
+                Socket socketCliente = serverSocket.accept();
+                System.out.println("Nuevo cliente conectado: " + socketCliente.getInetAddress());
+                ClientHandler clientHandler = new ClientHandler(socketCliente, this, true);
+                clientes.add(clientHandler);
+                new Thread(clientHandler).start();
+            }
+        } catch (IOException e) {
+            System.err.println("Error fatal en la pasarela: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public RedDTO getRedDTO() {
+        return redDTO;
+    }
+
+    @Override
+    public long getSesion() {
+        return sesion;
+    }
+
+    @Override
+    public UpdatePayload reanudar(long ultimoTick) {
+        InstantaneaSimulacion actual = instantanea;
+        return new UpdatePayload(actual.getTick(), actual.getAutobuses(),
+                registroEventos.reanudacion(ultimoTick, actual.getTick()), pasajerosEsperando);
+    }
+
+    @Override
+    public CompletableFuture<? extends Serializable> consultar(Consulta consulta) {
+        switch (consulta.getTipo()) {
+            case EVENTOS_RANGO:
+                return CompletableFuture.completedFuture(registroEventos.entre(consulta.getDesde(), consulta.getHasta()));
+            case PARADAS_RUTA:
+                int indice = consulta.getParametro();
+                if (indice < 0 || indice >= redDTO.getRutas().size()) {
+                    return CompletableFuture.failedFuture(new IllegalArgumentException("No existe la ruta " + indice));
+                }
+                return CompletableFuture.completedFuture(redDTO.getRutas().get(indice));
+            case RESUMEN_FLOTA:
+                return CompletableFuture.completedFuture(instantanea.resumen());
+            case ESTADO_AUTOBUS:
+                // El autobús está en un solo fragmento: vale la primera respuesta no nula
+                return reenviar(consulta).thenApply(respuestas -> respuestas.stream()
+                        .filter(r -> r != null).findFirst().orElse(null));
+            case TABLERO_PARADA:
+                // Una parada puede estar en rutas de varios fragmentos: se unen sus llegadas
+                return reenviar(consulta).thenApply(Pasarela::combinarTableros);
+            case TRAYECTORIA_AUTOBUS:
+                return reenviar(consulta).thenApply(respuestas -> respuestas.stream()
+                        .filter(r -> r != null).findFirst().orElse(null));
+            case FLOTA_EN_TICK:
+                // Cada fragmento guarda el historial de sus propios autobuses
+                return reenviar(consulta).thenApply(Pasarela::combinarFlotas);
+            default:
+                return CompletableFuture.failedFuture(new IllegalArgumentException("Consulta no soportada: " + consulta.getTipo()));
+        }
+    }
+
+    /**
+     * Reenvía una consulta a todos los fragmentos conectados.
+     *
+     * @return Un futuro con las respuestas de todos los fragmentos; un fragmento que falla aporta {@code null}.
+     */
+    private CompletableFuture<List<Serializable>> reenviar(Consulta consulta) {
+        List<CompletableFuture<Serializable>> futuros = new ArrayList<>();
+        for (Fragmento fragmento : fragmentos) {
+            if (fragmento.conectado) {
+                futuros.add(fragmento.conexion.consultar(consulta.getTipo(), consulta.getParametro(),
+                        consulta.getDesde(), consulta.getHasta()).exceptionally(e -> null));
+            }
+        }
+        return CompletableFuture.allOf(futuros.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            List<Serializable> respuestas = new ArrayList<>(futuros.size());
+            for (CompletableFuture<Serializable> futuro : futuros) {
+                respuestas.add(futuro.join());
+            }
+            return respuestas;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArrayList<AutobusDTO> combinarFlotas(List<Serializable> respuestas) {
+        ArrayList<AutobusDTO> autobuses = new ArrayList<>();
+        for (Serializable respuesta : respuestas) {
+            if (respuesta instanceof List) {
+                autobuses.addAll((List<AutobusDTO>) respuesta);
+            }
+        }
+        autobuses.sort(Comparator.comparingInt(AutobusDTO::getId));
+        return autobuses;
+    }
+
+    private static TableroLlegadasDTO combinarTableros(List<Serializable> respuestas) {
+        TableroLlegadasDTO primero = null;
+        long generado = 0;
+        List<LlegadaEstimadaDTO> llegadas = new ArrayList<>();
+        for (Serializable respuesta : respuestas) {
+            if (respuesta instanceof TableroLlegadasDTO tablero) {
+                if (primero == null) {
+                    primero = tablero;
+                }
+                generado = Math.max(generado, tablero.getGeneradoMs());
+                llegadas.addAll(tablero.getLlegadas());
+            }
+        }
+        if (primero == null) {
+            return null;
+        }
+        llegadas.sort(Comparator.comparingLong(LlegadaEstimadaDTO::getLlegadaEstimadaMs));
+        return new TableroLlegadasDTO(primero.getIdParada(), primero.getNombreParada(), generado, llegadas);
+    }
+
+    @Override
+    public void removerCliente(ClientHandler clientHandler) {
+        clientes.remove(clientHandler);
+        System.out.println("Cliente desconectado: " + clientHandler.getSocket().getInetAddress());
+    }
+
+    /**
+     * Abre la conexión con un fragmento, reintentando mientras el proceso termina de arrancar. Los
+     * fragmentos corren en la misma máquina, así que la conexión no usa compresión.
+     */
+    private Fragmento conectar(String direccion) throws IOException {
+        String[] partes = direccion.split(":");
+        long limite = System.currentTimeMillis() + ESPERA_CONEXION_MS;
+        while (true) {
+            try {
+                ConexionSimulacion conexion = ConexionSimulacion.abrir(partes[0], Integer.parseInt(partes[1]), Compresion.NINGUNA);
+                RedDTO red = conexion.getRed();
+                System.out.println("Conectado al fragmento " + direccion + " (" + red.getRutas().size() + " rutas).");
+                return new Fragmento(direccion, conexion, red);
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > limite) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrumpido al conectar con " + direccion, ie);
+                }
+            }
+        }
+    }
+
+    /**
+     * Bucle del hilo de combinación: una vez por tick intenta emitir un nuevo estado combinado.
+     */
+    private void iniciarLoopCombinacion() {
+        while (true) {
+            FaseTickJfr fase = FaseTickJfr.iniciar(FaseTickJfr.COMBINAR);
+            UpdatePayload payload = combinar();
+            fase.terminar(ultimoTickEmitido);
+            if (payload != null && !clientes.isEmpty()) {
+                fase = FaseTickJfr.iniciar(FaseTickJfr.DIFUNDIR);
+                ClientHandler.ActualizacionSerializada compartida = new ClientHandler.ActualizacionSerializada(payload);
+                for (ClientHandler cliente : clientes) {
+                    cliente.enviarActualizacion(compartida);
+                }
+                fase.terminar(payload.getTick());
+            }
+            try {
+                Thread.sleep(TICK_SIMULACION);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.err.println("El hilo de combinación fue interrumpido.");
+                return;
+            }
+        }
+    }
+
+    /**
+     * Combina los estados de los fragmentos en el tick más alto que todos los fragmentos vivos ya reportaron.
+     *
+     * @return El payload combinado, o {@code null} si no hay un tick nuevo que emitir.
+     */
+    private UpdatePayload combinar() {
+        long ahora = System.currentTimeMillis();
+        long tick = Long.MAX_VALUE;
+        for (Fragmento fragmento : fragmentos) {
+            if (fragmento.estaVivo(ahora)) {
+                tick = Math.min(tick, fragmento.ultimoTick);
+            }
+        }
+        if (tick == Long.MAX_VALUE || tick <= ultimoTickEmitido) {
+            return null;
+        }
+
+        List<AutobusDTO> autobuses = new ArrayList<>();
+        List<EventoLog> eventos = new ArrayList<>();
+        boolean hayPasajeros = false;
+        for (Fragmento fragmento : fragmentos) {
+            // De un fragmento caído o retrasado se consume todo lo recibido hasta ahora.
+            long hasta = fragmento.estaVivo(ahora) ? tick : Long.MAX_VALUE;
+            UpdatePayload siguiente;
+            while ((siguiente = fragmento.pendientes.peek()) != null && siguiente.getTick() <= hasta) {
+                fragmento.pendientes.poll();
+                eventos.addAll(siguiente.getEventos());
+                fragmento.autobuses = siguiente.getAutobuses();
+                if (siguiente.getPasajerosEsperando() != null) {
+                    fragmento.pasajerosEsperando = siguiente.getPasajerosEsperando();
+                    hayPasajeros = true;
+                }
+            }
+            if (siguiente == null && !fragmento.estaVivo(ahora)) {
+                // Agotado lo pendiente de un fragmento caído, su último estado ya no es vigente
+                fragmento.autobuses = Collections.emptyList();
+                if (fragmento.pasajerosEsperando != null) {
+                    fragmento.pasajerosEsperando = null;
+                    hayPasajeros = true; // Se retransmiten una vez para que sus paradas queden en cero
+                }
+            }
+            autobuses.addAll(fragmento.autobuses);
+        }
+        ultimoTickEmitido = tick;
+        registroEventos.agregar(tick, eventos);
+        instantanea = new InstantaneaSimulacion(tick, autobuses);
+        int[] esperando = null;
+        if (hayPasajeros) {
+            esperando = combinarPasajeros();
+            pasajerosEsperando = esperando;
+        }
+        return new UpdatePayload(tick, autobuses, eventos, esperando);
+    }
+
+    /**
+     * Une los pasajeros en espera de los fragmentos en el orden de las rutas de {@link #redDTO}, que es el
+     * de los fragmentos. Un fragmento del que aún no se reciben se completa con ceros.
+     */
+    private int[] combinarPasajeros() {
+        int total = 0;
+        for (Fragmento fragmento : fragmentos) {
+            total += fragmento.paradas;
+        }
+        int[] combinados = new int[total];
+        int inicio = 0;
+        for (Fragmento fragmento : fragmentos) {
+            if (fragmento.pasajerosEsperando != null) {
+                System.arraycopy(fragmento.pasajerosEsperando, 0, combinados, inicio,
+                        Math.min(fragmento.paradas, fragmento.pasajerosEsperando.length));
+            }
+            inicio += fragmento.paradas;
+        }
+        return combinados;
+    }
+
+    /**
+     * La conexión con un servidor fragmento y lo que se ha recibido de él.
+     */
+    private static final class Fragmento {
+        private final String direccion;
+        private volatile ConexionSimulacion conexion; // La cambia el hilo lector al reconectarse
+        private final RedDTO red;
+        private final Queue<UpdatePayload> pendientes = new ConcurrentLinkedQueue<>();
+        private volatile long ultimoTick = -1;
+        private volatile long ultimaRecepcion = System.currentTimeMillis();
+        private volatile boolean conectado = true;
+        private final int paradas; // Paradas de todas sus rutas, el tamaño de sus pasajeros en espera
+        // Solo los usa el hilo de combinación
+        private List<AutobusDTO> autobuses = Collections.emptyList();
+        private int[] pasajerosEsperando;
+
+        private Fragmento(String direccion, ConexionSimulacion conexion, RedDTO red) {
+            this.direccion = direccion;
+            this.conexion = conexion;
+            this.red = red;
+            this.paradas = red.getRutas().stream().mapToInt(r -> r.getParadas().size()).sum();
+        }
+
+        private boolean estaVivo(long ahora) {
+            return conectado && ahora - ultimaRecepcion <= PLAZO_FRAGMENTO_MS;
+        }
+
+        /**
+         * Bucle del hilo lector: encola cada actualización recibida del fragmento y, si se pierde la
+         * conexión, se vuelve a conectar.
+         */
+        private void leer() {
+            while (true) {
+                try {
+                    while (true) {
+                        UpdatePayload payload = conexion.leerActualizacion();
+                        pendientes.add(payload);
+                        ultimoTick = payload.getTick();
+                        ultimaRecepcion = System.currentTimeMillis();
+                    }
+                } catch (IOException e) {
+                    System.err.println("Se perdió la conexión con el fragmento " + direccion + ": " + e.getMessage());
+                } finally {
+                    conectado = false;
+                    try {
+                        conexion.close();
+                    } catch (IOException e) {
+                        // Ignorar.
+                    }
+                }
+                if (!reconectar()) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Vuelve a conectarse con el fragmento, con esperas crecientes entre intentos, continuando la sesión
+         * de la conexión perdida.
+         *
+         * @return {@code false} si el hilo fue interrumpido antes de lograrlo.
+         */
+        private boolean reconectar() {
+            String[] partes = direccion.split(":");
+            long espera = ESPERA_RECONEXION_MIN_MS;
+            while (true) {
+                try {
+                    Thread.sleep(espera);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                espera = Math.min(espera * 2, ESPERA_RECONEXION_MAX_MS);
+                ConexionSimulacion nueva;
+                try {
+                    nueva = ConexionSimulacion.reanudar(partes[0], Integer.parseInt(partes[1]), conexion);
+                } catch (IOException e) {
+                    continue;
+                }
+                if (!nueva.isReanudada() && !mismaForma(nueva.getRed())) {
+                    System.err.println("El fragmento " + direccion + " volvió con una red distinta; se sigue reintentando.");
+                    try {
+                        nueva.close();
+                    } catch (IOException e) {
+                        // Ignorar.
+                    }
+                    continue;
+                }
+                conexion = nueva;
+                ultimaRecepcion = System.currentTimeMillis();
+                conectado = true;
+                System.out.println("Reconectado al fragmento " + direccion
+                        + (nueva.isReanudada() ? " (sesión reanudada)." : " (sesión nueva)."));
+                return true;
+            }
+        }
+
+        /** @return {@code true} si la red tiene las mismas rutas y paradas que la recibida al conectar. */
+        private boolean mismaForma(RedDTO otra) {
+            List<RutaDTO> rutas = red.getRutas();
+            List<RutaDTO> otras = otra.getRutas();
+            if (rutas.size() != otras.size()) {
+                return false;
+            }
+            for (int i = 0; i < rutas.size(); i++) {
+                if (rutas.get(i).getParadas().size() != otras.get(i).getParadas().size()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
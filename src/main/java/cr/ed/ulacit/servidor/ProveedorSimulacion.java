@@ -0,0 +1,55 @@
+package cr.ed.ulacit.servidor;
+
+import cr.ed.ulacit.dto.RedDTO;
+import cr.ed.ulacit.dto.UpdatePayload;
+import cr.ed.ulacit.protocolo.Consulta;
+
+import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Lo que un {@link ClientHandler} necesita del proceso que lo atiende.
+ * <p>
+ * Lo implementan el {@link Servidor}, que ejecuta la simulación, y la {@link Pasarela}, que combina
+ * las transmisiones de varios servidores fragmento. Así el mismo manejador de clientes sirve a ambos.
+ * </p>
+ */
+public interface ProveedorSimulacion {
+
+    /**
+     * @return El DTO de la red que se envía a cada cliente al conectarse.
+     */
+    RedDTO getRedDTO();
+
+    /**
+     * @return El identificador de esta ejecución del proceso; un cliente que se reconecta con la misma
+     * sesión ya tiene la red y puede reanudar desde su último tick.
+     */
+    long getSesion();
+
+    /**
+     * Prepara la primera actualización de un cliente que reanuda la sesión: el estado del último tick
+     * y los eventos que el cliente no recibió (ver {@link RegistroEventos#reanudacion(long, long)}).
+     *
+     * @param ultimoTick El último tick que recibió el cliente.
+     * @return La actualización que se le envía antes de las siguientes transmisiones.
+     */
+    UpdatePayload reanudar(long ultimoTick);
+
+    /**
+     * Responde una consulta de un cliente. Se llama desde el hilo del cliente, así que no debe bloquear
+     * la simulación; la respuesta puede completarse más tarde en otro hilo (ej. en la pasarela, que
+     * reenvía algunas consultas a los fragmentos).
+     *
+     * @param consulta La consulta recibida.
+     * @return El resultado de la consulta. Si la consulta no es válida, se completa con una
+     * {@link IllegalArgumentException}.
+     */
+    CompletableFuture<? extends Serializable> consultar(Consulta consulta);
+
+    /**
+     * Elimina un cliente de la lista de clientes activos (ej. cuando se desconecta).
+     * @param clientHandler El handler del cliente a eliminar.
+     */
+    void removerCliente(ClientHandler clientHandler);
+}
@@ -0,0 +1,175 @@
+package cr.ed.ulacit.servidor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registro de los eventos recientes de la simulación, ordenados por tick, que se puede consultar por
+ * rango sin bloquear al hilo que lo escribe.
+ * <p>
+ * Solo se conservan los eventos más recientes ({@value #MAX_EVENTOS_RETENIDOS} por defecto; se descartan
+ * por bloques enteros), para que la memoria no crezca sin límite en un servidor que corre por días; las
+ * consultas por rangos más antiguos devuelven solo lo que queda.
+ * </p>
+ * <p>
+ * La posición de cada evento en el registro es su número de secuencia ({@link EventoLog#getSecuencia()}).
+ * Al reanudar una sesión se reenvían desde aquí los eventos que el cliente no recibió, pero solo los de
+ * los últimos {@value #TICKS_REANUDACION} ticks y a lo sumo {@value #MAX_EVENTOS_REANUDACION}: un cliente
+ * que estuvo desconectado más tiempo recupera el estado actual pero no todo el historial.
+ * </p>
+ * <p>
+ * Diseño: Un solo hilo escribe (el de simulación o el de combinación de la pasarela) y los eventos nunca
+ * se modifican. Se guardan en bloques de tamaño fijo dentro de un anillo de bloques, y la cantidad de
+ * eventos se publica en un campo {@code volatile} después de escribirlos: un lector que lee primero la
+ * cantidad ve completos todos los eventos anteriores a ella, sin candados. Al llenarse el anillo, el bloque
+ * más antiguo se reemplaza por uno nuevo (nunca se reescribe), y cada bloque sabe en qué posición empieza:
+ * un lector que llega tarde a un bloque ya reemplazado lo reconoce y lo trata como descartado.
+ * </p>
+ */
+class RegistroEventos {
+
+    /** Máximo de eventos que devuelve una consulta por rango. */
+    static final int MAX_EVENTOS_POR_CONSULTA = 1000;
+    /** Ticks hacia atrás (cinco minutos) de los que se reenvían eventos al reanudar una sesión. */
+    static final long TICKS_REANUDACION = 6000;
+    /** Máximo de eventos que se reenvían al reanudar una sesión. */
+    static final int MAX_EVENTOS_REANUDACION = 5000;
+    /** Cuántos eventos recientes se conservan por defecto, como mínimo. */
+    static final int MAX_EVENTOS_RETENIDOS = 1 << 18;
+
+    private static final int BITS_BLOQUE = 10;
+    private static final int TAMANO_BLOQUE = 1 << BITS_BLOQUE;
+    private static final int MASCARA_BLOQUE = TAMANO_BLOQUE - 1;
+
+    private final Bloque[] bloques;
+    private volatile long cantidad;
+
+    private static final class Bloque {
+        private final long inicio; // Posición del primer evento del bloque
+        private final long[] ticks = new long[TAMANO_BLOQUE];
+        private final EventoLog[] eventos = new EventoLog[TAMANO_BLOQUE];
+
+        private Bloque(long inicio) {
+            this.inicio = inicio;
+        }
+    }
+
+    /** Crea un registro que conserva {@value #MAX_EVENTOS_RETENIDOS} eventos. */
+    RegistroEventos() {
+        this(MAX_EVENTOS_RETENIDOS);
+    }
+
+    /**
+     * @param eventosRetenidos Cuántos eventos recientes se conservan como mínimo; se redondea hacia arriba
+     *                         a bloques de {@value #TAMANO_BLOQUE}.
+     */
+    RegistroEventos(int eventosRetenidos) {
+        // Un bloque más que los retenidos: el que se está llenando
+        bloques = new Bloque[(eventosRetenidos + TAMANO_BLOQUE - 1) / TAMANO_BLOQUE + 1];
+    }
+
+    /**
+     * Agrega los eventos de un tick. Solo debe llamarlo el hilo escritor, con ticks no decrecientes.
+     *
+     * @param tick    El tick en que ocurrieron.
+     * @param eventos Los eventos, en orden.
+     */
+    void agregar(long tick, List<EventoLog> eventos) {
+        long n = cantidad;
+        for (EventoLog evento : eventos) {
+            int posicion = (int) (n & MASCARA_BLOQUE);
+            if (posicion == 0) {
+                bloques[(int) ((n >>> BITS_BLOQUE) % bloques.length)] = new Bloque(n); // Descarta el más antiguo
+            }
+            Bloque bloque = bloques[(int) ((n >>> BITS_BLOQUE) % bloques.length)];
+            bloque.ticks[posicion] = tick;
+            bloque.eventos[posicion] = evento;
+            evento.asignarSecuencia(n);
+            n++;
+        }
+        cantidad = n; // Publica los eventos escritos
+    }
+
+    /** @return La cantidad de eventos registrados desde el inicio, incluidos los ya descartados. */
+    long getCantidad() {
+        return cantidad;
+    }
+
+    /** @return La posición del evento más antiguo que se conserva cuando hay {@code n} registrados. */
+    private long primeroRetenido(long n) {
+        return Math.max(0, (n >>> BITS_BLOQUE) - (bloques.length - 1)) << BITS_BLOQUE;
+    }
+
+    /** @return El bloque que contiene la posición, o {@code null} si ya se descartó. */
+    private Bloque bloque(long indice) {
+        Bloque bloque = bloques[(int) ((indice >>> BITS_BLOQUE) % bloques.length)];
+        return bloque != null && bloque.inicio == (indice & ~(long) MASCARA_BLOQUE) ? bloque : null;
+    }
+
+    /**
+     * Busca los eventos ocurridos entre dos ticks, inclusive.
+     *
+     * @param desde El primer tick del rango.
+     * @param hasta El último tick del rango.
+     * @return Hasta {@value #MAX_EVENTOS_POR_CONSULTA} eventos del rango, en orden.
+     */
+    ArrayList<EventoLog> entre(long desde, long hasta) {
+        long n = cantidad;
+        long bajo = primeroDesde(n, desde);
+        ArrayList<EventoLog> resultado = new ArrayList<>();
+        for (long i = bajo; i < n && resultado.size() < MAX_EVENTOS_POR_CONSULTA; i++) {
+            Bloque bloque = bloque(i);
+            if (bloque == null) {
+                continue; // Se descartó mientras se leía
+            }
+            if (bloque.ticks[(int) (i & MASCARA_BLOQUE)] > hasta) {
+                break;
+            }
+            resultado.add(bloque.eventos[(int) (i & MASCARA_BLOQUE)]);
+        }
+        return resultado;
+    }
+
+    /**
+     * Busca los eventos que un cliente que se reconecta no recibió.
+     *
+     * @param ultimoTick El último tick que recibió el cliente.
+     * @param tickActual El tick del estado que se le enviará.
+     * @return Los eventos posteriores a {@code ultimoTick} hasta {@code tickActual}, inclusive, limitados a
+     * la ventana de reanudación; si son demasiados, los más recientes.
+     */
+    ArrayList<EventoLog> reanudacion(long ultimoTick, long tickActual) {
+        long n = cantidad;
+        long desde = Math.max(ultimoTick + 1, tickActual - TICKS_REANUDACION + 1);
+        long inicio = primeroDesde(n, desde);
+        long fin = primeroDesde(n, tickActual + 1);
+        inicio = Math.max(inicio, fin - MAX_EVENTOS_REANUDACION);
+        ArrayList<EventoLog> resultado = new ArrayList<>((int) Math.max(0, fin - inicio));
+        for (long i = inicio; i < fin; i++) {
+            Bloque bloque = bloque(i);
+            if (bloque != null) {
+                resultado.add(bloque.eventos[(int) (i & MASCARA_BLOQUE)]);
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * @return La posición del primer evento conservado con tick mayor o igual a {@code desde}, o {@code n}
+     * si no hay. Los eventos descartados durante la búsqueda cuentan como anteriores a {@code desde}.
+     */
+    private long primeroDesde(long n, long desde) {
+        long bajo = primeroRetenido(n);
+        long alto = n;
+        while (bajo < alto) {
+            long medio = (bajo + alto) >>> 1;
+            Bloque bloque = bloque(medio);
+            if (bloque == null || bloque.ticks[(int) (medio & MASCARA_BLOQUE)] < desde) {
+                bajo = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        return bajo;
+    }
+}
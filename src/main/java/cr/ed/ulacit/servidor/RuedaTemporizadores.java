@@ -0,0 +1,172 @@
+package cr.ed.ulacit.servidor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Planificador de eventos temporizados basado en una rueda de tiempo jerárquica.
+ * <p>
+ * Cada nivel de la rueda tiene {@value #RANURAS} ranuras; una ranura del nivel 0 cubre un tick de
+ * {@code resolucionMs} milisegundos y cada nivel superior cubre {@value #RANURAS} veces más tiempo que el
+ * anterior. Al programar un evento se ubica en el nivel más bajo capaz de contenerlo y, conforme avanza el
+ * tiempo, las ranuras de niveles superiores se "derraman" (cascada) hacia los inferiores.
+ * </p>
+ * <p>
+ * Diseño: Programar y disparar un evento cuesta O(1) amortizado, y avanzar un tick solo toca la ranura
+ * que vence en ese instante. Así el bucle de simulación deja de revisar todos los autobuses para saber
+ * cuál debe salir de la terminal o terminar su tiempo en una parada. La clase no es segura para hilos:
+ * está pensada para usarse únicamente desde el hilo de simulación.
+ * </p>
+ *
+ * @param <T> El tipo de elemento asociado a cada evento programado.
+ */
+public class RuedaTemporizadores<T> {
+
+    private static final int BITS_POR_NIVEL = 6;
+    private static final int RANURAS = 1 << BITS_POR_NIVEL;
+    private static final int MASCARA = RANURAS - 1;
+    private static final int NIVELES = 4; // 64^4 ticks de horizonte
+
+    private final long resolucionMs;
+    private final List<List<Entrada<T>>> ranuras = new ArrayList<>();
+    private final List<Entrada<T>> vencidos = new ArrayList<>();
+    private long tickActual;
+    private int tamano;
+
+    /**
+     * Constructor de la rueda.
+     *
+     * @param resolucionMs La duración en milisegundos de un tick de la rueda.
+     * @param inicioMs     El instante (en milisegundos) a partir del cual empieza a contar la rueda.
+     */
+    public RuedaTemporizadores(long resolucionMs, long inicioMs) {
+        if (resolucionMs <= 0) {
+            throw new IllegalArgumentException("La resolución debe ser positiva: " + resolucionMs);
+        }
+        this.resolucionMs = resolucionMs;
+        this.tickActual = inicioMs / resolucionMs;
+        for (int i = 0; i < NIVELES * RANURAS; i++) {
+            ranuras.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Programa un elemento para que venza en el instante indicado.
+     * <p>
+     * Si el instante ya pasó, el elemento se entregará en la próxima llamada a {@link #avanzar}.
+     * </p>
+     *
+     * @param vencimientoMs El instante (en milisegundos) en que debe dispararse el evento.
+     * @param valor         El elemento que se entregará al vencer.
+     */
+    public void programar(long vencimientoMs, T valor) {
+        // Redondeo hacia arriba: un evento nunca se dispara antes de su vencimiento.
+        long tickVencimiento = Math.floorDiv(vencimientoMs + resolucionMs - 1, resolucionMs);
+        Entrada<T> entrada = new Entrada<>(tickVencimiento, valor);
+        if (tickVencimiento <= tickActual) {
+            vencidos.add(entrada);
+        } else {
+            insertar(entrada);
+        }
+        tamano++;
+    }
+
+    /**
+     * Avanza la rueda hasta el instante indicado y entrega, en orden de vencimiento, todos los
+     * elementos cuyo tiempo ha llegado.
+     *
+     * @param ahoraMs   El instante actual en milisegundos.
+     * @param alVencer  La acción a ejecutar por cada elemento vencido. Puede programar nuevos eventos.
+     */
+    public void avanzar(long ahoraMs, Consumer<T> alVencer) {
+        if (!vencidos.isEmpty()) {
+            List<Entrada<T>> pendientes = new ArrayList<>(vencidos);
+            vencidos.clear();
+            disparar(pendientes, alVencer);
+        }
+
+        long tickObjetivo = Math.floorDiv(ahoraMs, resolucionMs);
+        while (tickActual < tickObjetivo) {
+            tickActual++;
+            cascada();
+            List<Entrada<T>> ranura = ranuras.get(indice(0, tickActual));
+            if (!ranura.isEmpty()) {
+                List<Entrada<T>> aDisparar = new ArrayList<>(ranura);
+                ranura.clear();
+                disparar(aDisparar, alVencer);
+            }
+        }
+    }
+
+    /**
+     * @return El número de eventos programados que aún no se han disparado.
+     */
+    public int getTamano() {
+        return tamano;
+    }
+
+    /**
+     * @return {@code true} si no hay eventos pendientes.
+     */
+    public boolean estaVacia() {
+        return tamano == 0;
+    }
+
+    private void disparar(List<Entrada<T>> entradas, Consumer<T> alVencer) {
+        for (Entrada<T> entrada : entradas) {
+            tamano--;
+            alVencer.accept(entrada.valor);
+        }
+    }
+
+    /**
+     * Redistribuye las ranuras de los niveles superiores que vencen en el tick actual. Se procesa del
+     * nivel más alto al más bajo para que una entrada pueda descender varios niveles en un mismo tick.
+     */
+    private void cascada() {
+        for (int nivel = NIVELES - 1; nivel >= 1; nivel--) {
+            long mascaraInferior = (1L << (BITS_POR_NIVEL * nivel)) - 1;
+            if ((tickActual & mascaraInferior) != 0) {
+                continue;
+            }
+            List<Entrada<T>> ranura = ranuras.get(indice(nivel, tickActual));
+            if (ranura.isEmpty()) {
+                continue;
+            }
+            List<Entrada<T>> aReubicar = new ArrayList<>(ranura);
+            ranura.clear();
+            for (Entrada<T> entrada : aReubicar) {
+                insertar(entrada);
+            }
+        }
+    }
+
+    private void insertar(Entrada<T> entrada) {
+        long delta = Math.max(0, entrada.tick - tickActual);
+        for (int nivel = 0; nivel < NIVELES; nivel++) {
+            if (delta < (1L << (BITS_POR_NIVEL * (nivel + 1)))) {
+                ranuras.get(indice(nivel, entrada.tick)).add(entrada);
+                return;
+            }
+        }
+        // Más allá del horizonte: se deja en la última ranura alcanzable del nivel superior y se
+        // reubicará (posiblemente de nuevo aquí) cuando esa ranura caiga en cascada.
+        long tickLimite = tickActual + (1L << (BITS_POR_NIVEL * NIVELES)) - 1;
+        ranuras.get(indice(NIVELES - 1, tickLimite)).add(entrada);
+    }
+
+    private static int indice(int nivel, long tick) {
+        return nivel * RANURAS + (int) ((tick >> (BITS_POR_NIVEL * nivel)) & MASCARA);
+    }
+
+    private static final class Entrada<T> {
+        private final long tick;
+        private final T valor;
+
+        private Entrada(long tick, T valor) {
+            this.tick = tick;
+            this.valor = valor;
+        }
+    }
+}
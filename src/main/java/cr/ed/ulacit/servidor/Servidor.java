@@ -1,24 +1,32 @@
 package cr.ed.ulacit.servidor;
 
 import cr.ed.ulacit.Autobus;
-import cr.ed.ulacit.EstadoAutobus;
 import cr.ed.ulacit.Parada;
+import cr.ed.ulacit.RedTransporte;
 import cr.ed.ulacit.Ruta;
-import cr.ed.ulacit.dto.AutobusDTO;
+import cr.ed.ulacit.Viaje;
 import cr.ed.ulacit.dto.ParadaDTO;
+import cr.ed.ulacit.dto.RedDTO;
 import cr.ed.ulacit.dto.RutaDTO;
+import cr.ed.ulacit.dto.TableroLlegadasDTO;
 import cr.ed.ulacit.dto.UpdatePayload;
+import cr.ed.ulacit.protocolo.Consulta;
 
-import java.awt.Color;
 import java.io.IOException;
+import java.io.Serializable;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.text.SimpleDateFormat;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -27,141 +35,362 @@ import java.util.stream.Collectors;
  * <p>
  * Responsabilidades:
  * <ul>
- *     <li>Inicializar la ruta y los autobuses.</li>
+ *     <li>Inicializar la red de rutas (predefinida o cargada desde archivos GTFS) y los autobuses.</li>
  *     <li>Ejecutar un bucle de simulación para actualizar el estado de los autobuses.</li>
  *     <li>Escuchar y aceptar conexiones de clientes TCP.</li>
  *     <li>Enviar el estado completo de la simulación (posiciones de autobuses y eventos) a todos los clientes conectados.</li>
  *     <li>Registrar eventos clave de la simulación.</li>
+ *     <li>Opcionalmente, transmitir lo mismo a navegadores por WebSocket ({@link ServidorWebSocket}).</li>
  * </ul>
  * </p>
  */
-public class Servidor {
+public class Servidor implements ProveedorSimulacion {
 
     private static final int PUERTO = 12345;
     private static final int INTERVALO_SALIDA_BUS = 15000; // 15 segundos
-    private static final int TIEMPO_PARADA = 5000; // 5 segundos
-    private static final int TICK_SIMULACION = 50; // 50 ms
+    private static final int TICK_SIMULACION = Simulacion.TICK_SIMULACION; // 50 ms
+    private static final int TICKS_ENTRE_PASAJEROS = 20; // Cada cuántos ticks se envían los pasajeros en espera
+    private static final int COLA_ACEPTACION = 1024; // Conexiones que esperan accept(); miles de clientes pueden llegar juntos
+    /** Memoria por defecto del historial de trayectorias; lo demás se vuelca a disco. */
+    public static final long MEMORIA_TRAYECTORIAS = 64L * 1024 * 1024;
+    /** Eventos recientes que se conservan por defecto para las consultas y las reanudaciones. */
+    public static final int EVENTOS_RETENIDOS = RegistroEventos.MAX_EVENTOS_RETENIDOS;
 
-    private final List<Autobus> autobuses = new ArrayList<>();
-    private final Ruta ruta;
+    private final Simulacion simulacion;
+    private final List<Autobus> autobuses;
+    private final List<Ruta> rutas;
+    private final RedDTO redDTO;
     private final List<ClientHandler> clientes = new CopyOnWriteArrayList<>();
-    private final List<EventoLog> logEventos = Collections.synchronizedList(new ArrayList<>());
-    private final Calendar calendarioSimulacion;
-    private final SimpleDateFormat formatHora = new SimpleDateFormat("HH:mm:ss");
-    private int proximoAutobusEnSalir = 0;
-    private long ultimoTiempoSalida = -1;
+    private final RegistroEventos registroEventos;
+    private final AlmacenTrayectorias almacenTrayectorias;
+    private final Map<Integer, Integer> indicePorId = new HashMap<>();
+    private final EstadoFlotaPublicado estadoFlota; // Lo que leen los demás hilos; solo lo escribe el de simulación
+    private volatile int[] pasajerosEsperando; // Los últimos que se transmitieron
+    private final long sesion = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    private final MotorEta motorEta;
+    private final int puerto;
+    private final long epoca; // Instante real en que empieza el tick 0
+    private ServerSocket serverSocket;
+    private ServidorWebSocket webSocket; // null si no se habilitó
+    private boolean hilosVirtuales;
+    private Thread hiloSimulacion;
+    private volatile boolean detenido;
 
-    public static void main(String[] args) {
-        new Servidor().iniciar();
+    /**
+     * Punto de entrada del servidor.
+     * <p>
+     * Uso: {@code Servidor [directorioGtfs | --sintetica config] [--puerto N] [--websocket N] [--hilos-virtuales]
+     * [--fragmento i/n] [--epoca ms]}
+     * </p>
+     * <ul>
+     *     <li>{@code directorioGtfs}: directorio con {@code stops.txt}, {@code routes.txt}, {@code trips.txt} y
+     *     {@code stop_times.txt}. Sin él se usa la ruta San José - Paso Canoas predefinida.</li>
+     *     <li>{@code --sintetica}: simula una red generada por {@link GeneradorEscenarios}, con la configuración
+     *     en el formato de {@link GeneradorEscenarios#desdeTexto(String)}.</li>
+     *     <li>{@code --puerto}: puerto TCP donde se aceptan clientes (por defecto 12345).</li>
+     *     <li>{@code --websocket}: puerto donde se aceptan además sesiones WebSocket (ver {@link ServidorWebSocket}).</li>
+     *     <li>{@code --hilos-virtuales}: atiende cada cliente con hilos virtuales y una cola de escritura
+     *     (ver {@link #habilitarHilosVirtuales()}).</li>
+     *     <li>{@code --fragmento i/n}: simula solo el fragmento {@code i} (desde 0) de {@code n} de la red.</li>
+     *     <li>{@code --epoca}: instante (ms desde 1970) en que empieza el tick 0; los fragmentos de una misma
+     *     simulación deben compartirlo para que sus ticks queden alineados.</li>
+     * </ul>
+     * <p>
+     * Para dejar una grabación continua de JDK Flight Recorder con los eventos del servidor (categoría
+     * "Simulador de autobuses"): {@code java -XX:StartFlightRecording=maxage=1h,dumponexit=true ...}.
+     * </p>
+     *
+     * @param args Los argumentos de la línea de comandos.
+     */
+    public static void main(String[] args) throws IOException {
+        String directorio = null;
+        String sintetica = null;
+        int puerto = PUERTO;
+        int puertoWebSocket = -1;
+        boolean hilosVirtuales = false;
+        int fragmento = 0;
+        int totalFragmentos = 1;
+        long epoca = System.currentTimeMillis();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--puerto":
+                    puerto = Integer.parseInt(args[++i]);
+                    break;
+                case "--websocket":
+                    puertoWebSocket = Integer.parseInt(args[++i]);
+                    break;
+                case "--hilos-virtuales":
+                    hilosVirtuales = true;
+                    break;
+                case "--fragmento":
+                    String[] partes = args[++i].split("/");
+                    fragmento = Integer.parseInt(partes[0]);
+                    totalFragmentos = Integer.parseInt(partes[1]);
+                    break;
+                case "--epoca":
+                    epoca = Long.parseLong(args[++i]);
+                    break;
+                case "--sintetica":
+                    sintetica = args[++i];
+                    break;
+                default:
+                    directorio = args[i];
+            }
+        }
+        RedTransporte red = directorio != null ? new CargadorRedGtfs().cargar(Paths.get(directorio))
+                : sintetica != null ? GeneradorEscenarios.desdeTexto(sintetica).generar()
+                : inicializarRed();
+        if (totalFragmentos > 1) {
+            red = red.fragmento(fragmento, totalFragmentos);
+            System.out.println("Fragmento " + fragmento + "/" + totalFragmentos + ": " + red.getRutas().size()
+                    + " rutas, " + red.getViajes().size() + " viajes.");
+        }
+        Servidor servidor = new Servidor(red, puerto, epoca);
+        if (puertoWebSocket >= 0) {
+            servidor.habilitarWebSocket(puertoWebSocket);
+        }
+        if (hilosVirtuales) {
+            servidor.habilitarHilosVirtuales();
+        }
+        servidor.arrancar();
     }
 
     /**
-     * Constructor del servidor. Inicializa la ruta, los autobuses y el calendario de simulación.
+     * Constructor del servidor con la red predefinida.
      */
-    public Servidor() {
-        this.ruta = inicializarRuta();
-        this.calendarioSimulacion = Calendar.getInstance();
-        this.calendarioSimulacion.set(Calendar.HOUR_OF_DAY, 5);
-        this.calendarioSimulacion.set(Calendar.MINUTE, 0);
-        this.calendarioSimulacion.set(Calendar.SECOND, 0);
-        inicializarAutobuses();
+    public Servidor() throws IOException {
+        this(inicializarRed(), PUERTO, System.currentTimeMillis());
     }
 
     /**
-     * Inicia los dos hilos principales del servidor: uno para la lógica de simulación
-     * y otro para aceptar conexiones de clientes.
+     * Constructor del servidor. Inicializa las rutas, los autobuses y el calendario de simulación.
+     * <p>
+     * La lógica de la simulación está en {@link Simulacion}; el servidor le agrega el reloj real, las
+     * conexiones de los clientes, las llegadas estimadas y los historiales que se consultan.
+     * </p>
+     *
+     * @param red    La red de transporte (rutas y viajes) a simular.
+     * @param puerto El puerto TCP donde se aceptan clientes.
+     * @param epoca  El instante real (ms desde 1970) en que empieza el tick 0 de la simulación.
+     * @throws IOException Si no se puede crear el archivo temporal del historial de trayectorias.
+     */
+    public Servidor(RedTransporte red, int puerto, long epoca) throws IOException {
+        this(red, puerto, epoca, MEMORIA_TRAYECTORIAS, EVENTOS_RETENIDOS);
+    }
+
+    /**
+     * Constructor del servidor con límites de memoria propios, por ejemplo para que una prueba de
+     * resistencia llene pronto las estructuras acotadas y vea solo el crecimiento que no lo está.
+     *
+     * @param red                 La red de transporte (rutas y viajes) a simular.
+     * @param puerto              El puerto TCP donde se aceptan clientes (0 para uno libre).
+     * @param epoca               El instante real (ms desde 1970) en que empieza el tick 0 de la simulación.
+     * @param memoriaTrayectorias Los bytes del historial de trayectorias que se guardan en memoria.
+     * @param eventosRetenidos    Cuántos eventos recientes se conservan.
+     * @throws IOException Si no se puede crear el archivo temporal del historial de trayectorias.
      */
-    private void iniciar() {
-        Thread hiloSimulacion = new Thread(this::iniciarLoopSimulacion);
+    public Servidor(RedTransporte red, int puerto, long epoca, long memoriaTrayectorias, int eventosRetenidos)
+            throws IOException {
+        this.puerto = puerto;
+        this.epoca = epoca;
+        this.rutas = red.getRutas();
+        this.simulacion = new Simulacion(red, epoca, new Random());
+        this.autobuses = simulacion.getAutobuses();
+        for (int i = 0; i < autobuses.size(); i++) {
+            indicePorId.put(autobuses.get(i).getId(), i);
+        }
+        this.estadoFlota = new EstadoFlotaPublicado(autobuses, indicePorId);
+        this.almacenTrayectorias = new AlmacenTrayectorias(Paths.get(System.getProperty("java.io.tmpdir")), memoriaTrayectorias);
+        this.registroEventos = new RegistroEventos(eventosRetenidos);
+        this.redDTO = crearRedDTO();
+        this.motorEta = new MotorEta(rutas, TICK_SIMULACION / Simulacion.VELOCIDAD_BASE, Simulacion.TIEMPO_PARADA);
+        simulacion.setObservador(new ObservadorSimulacion() {
+            @Override
+            public void salidaTerminal(Autobus bus, long ahora) {
+                CambioEstadoAutobusJfr.registrar(bus.getId(), bus.getRuta().getNombreRuta(), bus.getEstado().name(), null);
+            }
+
+            @Override
+            public void llegadaParada(Autobus bus, Parada parada, long ahora) {
+                CambioEstadoAutobusJfr.registrar(bus.getId(), bus.getRuta().getNombreRuta(), bus.getEstado().name(), parada.getNombre());
+            }
+
+            @Override
+            public void salidaParada(Autobus bus, Parada parada, long ahora) {
+                CambioEstadoAutobusJfr.registrar(bus.getId(), bus.getRuta().getNombreRuta(), bus.getEstado().name(), parada.getNombre());
+            }
+
+            @Override
+            public void finRuta(Autobus bus, long ahora) {
+                CambioEstadoAutobusJfr.registrar(bus.getId(), bus.getRuta().getNombreRuta(), bus.getEstado().name(), null);
+            }
+
+            @Override
+            public void autobusActualizado(Autobus bus, long ahora) {
+                motorEta.actualizar(bus, ahora);
+            }
+        });
+    }
+
+    /**
+     * Transmite también la simulación por WebSocket en el puerto indicado. Debe llamarse antes de
+     * {@link #arrancar()}.
+     *
+     * @param puertoWebSocket El puerto de las sesiones WebSocket (0 para uno libre).
+     */
+    public void habilitarWebSocket(int puertoWebSocket) {
+        webSocket = new ServidorWebSocket(puertoWebSocket, redDTO);
+    }
+
+    /** @return El acceso WebSocket, o {@code null} si no se habilitó. */
+    public ServidorWebSocket getWebSocket() {
+        return webSocket;
+    }
+
+    /**
+     * Atiende a cada cliente con un hilo virtual en lugar de uno de plataforma, y con una cola de escritura
+     * (ver {@link ClientHandler#ClientHandler(Socket, ProveedorSimulacion, boolean)}): el hilo de simulación
+     * solo encola las actualizaciones y un hilo virtual escritor por cliente las escribe. Así miles de
+     * clientes no cuestan un hilo del sistema cada uno, un cliente lento no retrasa el tick y uno caído se
+     * detecta aunque no cierre la conexión. Debe llamarse antes de {@link #arrancar()}.
+     */
+    public void habilitarHilosVirtuales() {
+        hilosVirtuales = true;
+    }
+
+    /** @return Cuántos clientes TCP están conectados. */
+    public int getClientesConectados() {
+        return clientes.size();
+    }
+
+    /**
+     * Abre el puerto e inicia los dos hilos principales del servidor: uno para la lógica de simulación
+     * y otro para aceptar conexiones de clientes. No bloquea; el servidor corre hasta {@link #detener()}.
+     *
+     * @throws IOException Si no se puede abrir el puerto.
+     */
+    public void arrancar() throws IOException {
+        if (webSocket != null) {
+            webSocket.arrancar();
+        }
+        serverSocket = new ServerSocket(puerto, COLA_ACEPTACION);
+        hiloSimulacion = new Thread(this::iniciarLoopSimulacion, "simulacion");
         hiloSimulacion.setDaemon(true);
         hiloSimulacion.start();
+        new Thread(this::aceptarClientes, "aceptacion").start();
+        System.out.println("Servidor de simulación de autobuses iniciado en el puerto " + getPuerto());
+    }
+
+    /**
+     * Detiene el servidor: deja de aceptar clientes, desconecta a los conectados, detiene la simulación
+     * y cierra el historial de trayectorias.
+     */
+    public void detener() throws IOException, InterruptedException {
+        detenido = true;
+        serverSocket.close();
+        hiloSimulacion.interrupt();
+        hiloSimulacion.join();
+        for (ClientHandler cliente : clientes) {
+            cliente.getSocket().close();
+        }
+        if (webSocket != null) {
+            webSocket.detener();
+        }
+        almacenTrayectorias.close();
+    }
+
+    /** @return El puerto en que escucha el servidor (el asignado por el sistema si se pidió el 0). */
+    public int getPuerto() {
+        return serverSocket.getLocalPort();
+    }
 
-        try (ServerSocket serverSocket = new ServerSocket(PUERTO)) {
-            System.out.println("Servidor de simulación de autobuses iniciado en el puerto " + PUERTO);
-            while (true) {
+    /**
+     * El bucle del hilo que acepta conexiones: un {@link ClientHandler} con su propio hilo por cliente, de
+     * plataforma o virtual según el modo.
+     */
+    private void aceptarClientes() {
+        try {
+            while (!detenido) {
                 Socket socketCliente = serverSocket.accept();
                 System.out.println("Nuevo cliente conectado: " + socketCliente.getInetAddress());
-                ClientHandler clientHandler = new ClientHandler(socketCliente, this);
+                ClientHandler clientHandler = new ClientHandler(socketCliente, this, hilosVirtuales);
                 clientes.add(clientHandler);
-                new Thread(clientHandler).start();
+                if (hilosVirtuales) {
+                    Thread.ofVirtual().name("cliente-" + socketCliente.getRemoteSocketAddress()).start(clientHandler);
+                } else {
+                    new Thread(clientHandler).start();
+                }
             }
         } catch (IOException e) {
-            System.err.println("Error fatal en el servidor: " + e.getMessage());
-            e.printStackTrace();
+            if (!detenido) {
+                System.err.println("Error fatal en el servidor: " + e.getMessage());
+                e.printStackTrace();
+            }
         }
     }
 
     /**
      * El bucle principal de la simulación. Se ejecuta continuamente para actualizar el estado
      * y notificar a los clientes.
+     * <p>
+     * Los ticks se ejecutan a ritmo fijo respecto de la época: el tick {@code k} corre en
+     * {@code epoca + k * TICK_SIMULACION}. Así el reloj no acumula desfase y varios procesos que
+     * comparten la época simulan el mismo tick al mismo tiempo.
+     * </p>
+     * <p>
+     * Cada tick y cada una de sus fases se registran como eventos de JDK Flight Recorder ({@link TickJfr},
+     * {@link FaseTickJfr}) cuando hay una grabación activa.
+     * </p>
      */
     private void iniciarLoopSimulacion() {
-        while (true) {
-            List<EventoLog> nuevosEventos = actualizarSimulacion();
-            notificarAClientes(nuevosEventos);
-            try {
-                Thread.sleep(TICK_SIMULACION);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+        try {
+            while (!detenido) {
+                long programado = epoca + (simulacion.getTick() + 1) * TICK_SIMULACION;
+                long espera = programado - System.currentTimeMillis();
+                if (espera > 0) {
+                    Thread.sleep(espera);
+                }
+                long retraso = Math.max(0, System.currentTimeMillis() - programado);
+                TickJfr eventoTick = new TickJfr();
+                eventoTick.begin();
+                List<EventoLog> nuevosEventos = actualizarSimulacion();
+                notificarAClientes(nuevosEventos);
+                eventoTick.end();
+                if (eventoTick.shouldCommit()) {
+                    eventoTick.tick = simulacion.getTick();
+                    eventoTick.autobuses = autobuses.size();
+                    eventoTick.eventos = nuevosEventos.size();
+                    eventoTick.clientes = clientes.size();
+                    eventoTick.retraso = retraso;
+                    eventoTick.commit();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (!detenido) {
                 System.err.println("El hilo de simulación fue interrumpido.");
             }
         }
     }
 
     /**
-     * Actualiza el estado de todos los autobuses y genera eventos de log.
+     * Avanza la simulación un tick y publica su resultado: las llegadas estimadas, el registro de eventos,
+     * el historial de trayectorias y el estado de la flota del que leen los demás hilos.
      *
      * @return Una lista de los nuevos eventos generados en este tick.
      */
     private List<EventoLog> actualizarSimulacion() {
-        long tiempoActual = System.currentTimeMillis();
-        calendarioSimulacion.add(Calendar.SECOND, 1); // Avanza el tiempo de la simulación
-        String horaActual = formatHora.format(calendarioSimulacion.getTime());
-        List<EventoLog> nuevosEventos = new ArrayList<>();
-
-        // Lógica para que los autobuses salgan de la terminal
-        if (proximoAutobusEnSalir < autobuses.size() && (ultimoTiempoSalida == -1 || (tiempoActual - ultimoTiempoSalida) > INTERVALO_SALIDA_BUS)) {
-            Autobus proximo = autobuses.get(proximoAutobusEnSalir);
-            if (proximo.getEstado() == EstadoAutobus.INACTIVO) {
-                proximo.iniciarRuta();
-                ultimoTiempoSalida = tiempoActual;
-                proximoAutobusEnSalir++;
-                nuevosEventos.add(new EventoLog(horaActual, "El autobús " + proximo.getId() + " ha iniciado su ruta."));
-            }
-        }
+        FaseTickJfr fase = FaseTickJfr.iniciar(FaseTickJfr.SIMULAR);
+        List<EventoLog> nuevosEventos = simulacion.avanzar();
+        long tick = simulacion.getTick();
+        fase.terminar(tick);
 
-        double velocidadBase = 0.01;
-        for (Autobus bus : autobuses) {
-            EstadoAutobus estadoAnterior = bus.getEstado();
-
-            if (bus.getEstado() == EstadoAutobus.EN_RUTA) {
-                double velocidadIndividual = velocidadBase * (1.0 + Math.random() * 0.5 - 0.25);
-                bus.mover(ruta, velocidadIndividual);
-            } else if (bus.getEstado() == EstadoAutobus.DETENIDO) {
-                if (System.currentTimeMillis() - bus.getTiempoDetenido() > TIEMPO_PARADA) {
-                    bus.reanudarRuta(ruta);
-                }
-            }
-
-            // Comprobar si hubo un cambio de estado para generar un evento
-            if (estadoAnterior != bus.getEstado()) {
-                switch (bus.getEstado()) {
-                    case DETENIDO:
-                        Parada parada = ruta.getParadaPorIndice(bus.getParadaDestinoIndex() - 1); // La parada en la que se detuvo
-                        nuevosEventos.add(new EventoLog(horaActual, "El autobús " + bus.getId() + " ha llegado a la parada " + parada.getNombre() + "."));
-                        break;
-                    case EN_RUTA:
-                        if (estadoAnterior == EstadoAutobus.DETENIDO) {
-                            nuevosEventos.add(new EventoLog(horaActual, "El autobús " + bus.getId() + " ha salido de la parada."));
-                        }
-                        break;
-                    case FINALIZADO:
-                        nuevosEventos.add(new EventoLog(horaActual, "El autobús " + bus.getId() + " ha finalizado su ruta."));
-                        break;
-                }
-            }
-        }
-        logEventos.addAll(nuevosEventos);
+        fase = FaseTickJfr.iniciar(FaseTickJfr.PUBLICAR);
+        motorEta.publicar(simulacion.getTiempoActual());
+        registroEventos.agregar(tick, nuevosEventos);
+        almacenTrayectorias.registrar(tick, autobuses);
+        estadoFlota.publicar(tick, autobuses);
+        fase.terminar(tick);
         return nuevosEventos;
     }
 
@@ -171,44 +400,154 @@ public class Servidor {
      * @param nuevosEventos Los eventos que ocurrieron en el último tick de simulación.
      */
     private void notificarAClientes(List<EventoLog> nuevosEventos) {
-        if (clientes.isEmpty()) return;
-
-        List<AutobusDTO> estadoActualAutobuses = autobuses.stream()
-                .map(bus -> new AutobusDTO(bus.getId(), bus.getColor(), bus.getX(), bus.getY(), bus.getEstado()))
-                .collect(Collectors.toList());
+        long tick = simulacion.getTick();
+        FaseTickJfr fase = FaseTickJfr.iniciar(FaseTickJfr.PREPARAR);
+        // Las filas de las paradas cambian poco de un tick a otro; se envían solo de vez en cuando.
+        // Se calculan aunque no haya clientes, para tenerlas al día si alguno reanuda la sesión.
+        int[] esperando = null;
+        if (tick % TICKS_ENTRE_PASAJEROS == 0) {
+            esperando = simulacion.getDemanda().esperando(simulacion.getTiempoActual());
+            pasajerosEsperando = esperando;
+        }
+        boolean hayWebSocket = webSocket != null && webSocket.getSesiones() > 0;
+        if (clientes.isEmpty() && !hayWebSocket) {
+            fase.terminar(tick);
+            return;
+        }
 
-        UpdatePayload payload = new UpdatePayload(estadoActualAutobuses, nuevosEventos);
+        // Los DTO se crean solo cuando hay a quién enviarlos, desde el estado recién publicado
+        UpdatePayload payload = new UpdatePayload(tick, estadoFlota.leer(EstadoFlotaPublicado.Vista::autobusesDTO),
+                nuevosEventos, esperando);
+        fase.terminar(tick);
+        if (hayWebSocket) {
+            // Solo se encola: la codificación y las escrituras ocurren en el hilo del acceso WebSocket
+            webSocket.publicar(payload);
+        }
 
+        fase = FaseTickJfr.iniciar(FaseTickJfr.DIFUNDIR);
+        ClientHandler.ActualizacionSerializada compartida = new ClientHandler.ActualizacionSerializada(payload);
         for (ClientHandler cliente : clientes) {
-            cliente.enviarActualizacion(payload);
+            cliente.enviarActualizacion(compartida);
         }
+        fase.terminar(tick);
     }
 
     /**
-     * Crea un DTO de la ruta para ser enviado a los nuevos clientes.
-     * @return Un objeto {@link RutaDTO} con la información de la ruta.
+     * Devuelve el DTO de la red para ser enviado a los nuevos clientes. La red no cambia durante la
+     * simulación, por lo que el DTO se construye una sola vez y se comparte entre todos los clientes.
+     * @return Un objeto {@link RedDTO} con la información de todas las rutas.
      */
-    public RutaDTO getRutaDTO() {
-        List<ParadaDTO> paradasDTO = ruta.getParadas().stream()
-                .map(p -> new ParadaDTO(p.getId(), p.getNombre(), p.getCoordX(), p.getCoordY()))
-                .collect(Collectors.toList());
-        return new RutaDTO(ruta.getNombreRuta(), paradasDTO);
+    @Override
+    public RedDTO getRedDTO() {
+        return redDTO;
+    }
+
+    @Override
+    public long getSesion() {
+        return sesion;
+    }
+
+    @Override
+    public UpdatePayload reanudar(long ultimoTick) {
+        InstantaneaSimulacion actual = estadoFlota.capturar();
+        return new UpdatePayload(actual.getTick(), actual.getAutobuses(),
+                registroEventos.reanudacion(ultimoTick, actual.getTick()), pasajerosEsperando);
+    }
+
+    /**
+     * Construye el DTO de la red a partir de las rutas cargadas.
+     * @return Un objeto {@link RedDTO} con la información de todas las rutas.
+     */
+    private RedDTO crearRedDTO() {
+        List<RutaDTO> rutasDTO = new ArrayList<>(rutas.size());
+        for (Ruta ruta : rutas) {
+            List<ParadaDTO> paradasDTO = ruta.getParadas().stream()
+                    .map(p -> new ParadaDTO(p.getId(), p.getNombre(), p.getCoordX(), p.getCoordY()))
+                    .collect(Collectors.toList());
+            rutasDTO.add(new RutaDTO(ruta.getNombreRuta(), paradasDTO));
+        }
+        return new RedDTO(rutasDTO);
+    }
+
+    /**
+     * Responde una consulta de un cliente desde el último estado publicado por el hilo de simulación,
+     * sin bloquearlo.
+     */
+    @Override
+    public CompletableFuture<? extends Serializable> consultar(Consulta consulta) {
+        switch (consulta.getTipo()) {
+            case ESTADO_AUTOBUS:
+                return CompletableFuture.completedFuture(estadoFlota.detalle(consulta.getParametro()));
+            case EVENTOS_RANGO:
+                return CompletableFuture.completedFuture(registroEventos.entre(consulta.getDesde(), consulta.getHasta()));
+            case PARADAS_RUTA:
+                int indice = consulta.getParametro();
+                if (indice < 0 || indice >= redDTO.getRutas().size()) {
+                    return CompletableFuture.failedFuture(new IllegalArgumentException("No existe la ruta " + indice));
+                }
+                return CompletableFuture.completedFuture(redDTO.getRutas().get(indice));
+            case RESUMEN_FLOTA:
+                return CompletableFuture.completedFuture(estadoFlota.resumen());
+            case TABLERO_PARADA:
+                return CompletableFuture.completedFuture(motorEta.getTablero(consulta.getParametro()));
+            case TRAYECTORIA_AUTOBUS:
+                return CompletableFuture.completedFuture(
+                        almacenTrayectorias.trayectoria(consulta.getParametro(), consulta.getDesde(), consulta.getHasta()));
+            case FLOTA_EN_TICK:
+                return CompletableFuture.completedFuture(almacenTrayectorias.flotaEnTick(consulta.getDesde()));
+            default:
+                return CompletableFuture.failedFuture(new IllegalArgumentException("Consulta no soportada: " + consulta.getTipo()));
+        }
+    }
+
+    /**
+     * Obtiene el tablero de próximas llegadas de una parada. La consulta no bloquea la simulación:
+     * devuelve la última versión publicada al final de un tick.
+     *
+     * @param idParada El ID de la parada.
+     * @return El {@link TableroLlegadasDTO} de la parada, o {@code null} si no existe.
+     */
+    public TableroLlegadasDTO getTableroLlegadas(int idParada) {
+        return motorEta.getTablero(idParada);
+    }
+
+    /**
+     * Suscribe un observador a los cambios del tablero de llegadas de una parada.
+     *
+     * @param idParada   El ID de la parada.
+     * @param observador La acción que recibe cada nueva versión del tablero (se ejecuta en el hilo de simulación).
+     * @return {@code true} si la parada existe.
+     */
+    public boolean suscribirTableroLlegadas(int idParada, Consumer<TableroLlegadasDTO> observador) {
+        return motorEta.suscribir(idParada, observador);
+    }
+
+    /**
+     * Cancela una suscripción hecha con {@link #suscribirTableroLlegadas}.
+     *
+     * @param idParada   El ID de la parada.
+     * @param observador El observador a eliminar.
+     */
+    public void desuscribirTableroLlegadas(int idParada, Consumer<TableroLlegadasDTO> observador) {
+        motorEta.desuscribir(idParada, observador);
     }
 
     /**
      * Elimina un cliente de la lista de clientes activos (ej. cuando se desconecta).
      * @param clientHandler El handler del cliente a eliminar.
      */
+    @Override
     public void removerCliente(ClientHandler clientHandler) {
         clientes.remove(clientHandler);
         System.out.println("Cliente desconectado: " + clientHandler.getSocket().getInetAddress());
     }
 
     /**
-     * Configura la ruta inicial con todas sus paradas.
-     * @return Un objeto {@link Ruta} completamente inicializado.
+     * Configura la red predefinida: la ruta San José - Paso Canoas con todas sus paradas y diez viajes
+     * que salen de la terminal cada {@code INTERVALO_SALIDA_BUS}.
+     * @return Un objeto {@link RedTransporte} completamente inicializado.
      */
-    private Ruta inicializarRuta() {
+    static RedTransporte inicializarRed() {
         List<Parada> paradas = new ArrayList<>();
         paradas.add(new Parada(1, "Terminal Tica Bus San José", 1100, 150));
         paradas.add(new Parada(2, "Barrio Los Ángeles", 1050, 180));
@@ -230,19 +569,13 @@ public class Servidor {
         paradas.add(new Parada(18, "Sucursal Dos Pinos, Río Claro", 250, 660));
         paradas.add(new Parada(19, "Terminal municipal ciudad Nelly", 200, 690));
         paradas.add(new Parada(20, "Terminal de transporte", 150, 720));
-        return new Ruta("Ruta San José - Paso Canoas", paradas);
-    }
+        Ruta ruta = new Ruta("Ruta San José - Paso Canoas", paradas);
 
-    /**
-     * Crea las instancias de los autobuses al inicio de la simulación.
-     */
-    private void inicializarAutobuses() {
-        Color[] colores = {
-                Color.RED, Color.BLUE, Color.GREEN, Color.ORANGE, Color.MAGENTA,
-                Color.CYAN, Color.PINK, new Color(128, 0, 128), new Color(139, 69, 19), Color.GRAY
-        };
+        List<Viaje> viajes = new ArrayList<>();
+        int intervaloSeg = INTERVALO_SALIDA_BUS / Simulacion.MS_POR_SEGUNDO_SIMULADO;
         for (int i = 0; i < 10; i++) {
-            autobuses.add(new Autobus(i + 1, colores[i % colores.length], ruta.getParadaPorIndice(0)));
+            viajes.add(new Viaje(i + 1, ruta, Simulacion.HORA_INICIO_SEG + i * intervaloSeg));
         }
+        return new RedTransporte(Collections.singletonList(ruta), viajes);
     }
 }
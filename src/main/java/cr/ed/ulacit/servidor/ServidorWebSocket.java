@@ -0,0 +1,518 @@
+package cr.ed.ulacit.servidor;
+
+import cr.ed.ulacit.dto.RedDTO;
+import cr.ed.ulacit.dto.UpdatePayload;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Un punto de acceso WebSocket (RFC 6455) que transmite la simulación a navegadores y a cualquier cliente
+ * que no sea Java: la red al conectarse y, en cada tick, el estado de la flota, los eventos y los pasajeros
+ * en espera, en JSON o en binario (ver {@link MarcosWebSocket}).
+ * <p>
+ * Una sesión se abre con un {@code GET} de actualización a WebSocket en cualquier ruta; con
+ * {@code ?formato=binario} recibe los ticks en marcos binarios y si no, en JSON. Lo que la sesión envía
+ * se ignora, salvo los marcos de control: a un ping se responde con un pong y a un cierre, con otro cierre.
+ * </p>
+ * <p>
+ * Diseño: el hilo de simulación solo llama a {@link #publicar(UpdatePayload)}, que encola el tick y
+ * despierta al hilo de este servidor, sin ningún trabajo por sesión. Ese hilo atiende todas las sesiones
+ * con un {@link Selector} y codifica cada tick una sola vez por formato; todas las sesiones comparten los
+ * mismos bytes, cada una con su propia posición de escritura. Si el hilo se atrasa, junta los ticks
+ * encolados en uno solo con el último estado y todos los eventos.
+ * </p>
+ * <p>
+ * Cada sesión tiene a lo sumo {@value #MARCOS_PENDIENTES} ticks en cola: si el cliente no lee a tiempo, al
+ * llegar uno nuevo se descarta el más viejo que aún no empezó a enviarse (el cliente lo nota por el salto
+ * en el número de tick y pierde los eventos de los ticks descartados). Una sesión que no acepta ni un
+ * byte durante {@value #PLAZO_SIN_PROGRESO_MS} ms se cierra. Así un cliente lento no retrasa a los demás
+ * ni hace crecer la memoria del servidor.
+ * </p>
+ */
+public class ServidorWebSocket {
+
+    /** Ticks que puede tener en cola una sesión; al llegar otro se descarta el más viejo. */
+    public static final int MARCOS_PENDIENTES = 4;
+    private static final long PLAZO_SIN_PROGRESO_MS = 10000;
+    private static final long PLAZO_SALUDO_MS = 10000;
+    private static final long PERIODO_REVISION_MS = 1000;
+    private static final int TAMANO_ENTRADA = 4096; // El saludo HTTP y los marcos del cliente deben caber aquí
+    private static final byte[] FIN_CABECERAS = {'\r', '\n', '\r', '\n'};
+    private static final byte[] SOLICITUD_INVALIDA =
+            "HTTP/1.1 400 Bad Request\r\nContent-Length: 0\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final int CIERRE_PROTOCOLO = 1002;
+    private static final int CIERRE_DEMASIADO_GRANDE = 1009;
+
+    private final int puerto;
+    private final ByteBuffer marcoRed;
+    private final Queue<UpdatePayload> pendientes = new ConcurrentLinkedQueue<>();
+    // Solo los usa el hilo del selector
+    private final List<Sesion> sesiones = new ArrayList<>();
+    private int sesionesJson;
+    private int sesionesBinarias;
+    private long ahora;
+    private Selector selector;
+    private ServerSocketChannel canalServidor;
+    private Thread hilo;
+    private volatile boolean detenido;
+    private volatile int sesionesConectadas;
+    private volatile long marcosDescartados;
+    private volatile long bytesEnviados;
+
+    /**
+     * @param puerto El puerto TCP donde se aceptan sesiones (0 para uno libre).
+     * @param red    La red que se envía a cada sesión al conectarse; se codifica una sola vez.
+     */
+    public ServidorWebSocket(int puerto, RedDTO red) {
+        this.puerto = puerto;
+        this.marcoRed = directo(MarcosWebSocket.red(red));
+    }
+
+    /**
+     * Abre el puerto e inicia el hilo que atiende las sesiones. No bloquea.
+     *
+     * @throws IOException Si no se puede abrir el puerto.
+     */
+    public void arrancar() throws IOException {
+        selector = Selector.open();
+        canalServidor = ServerSocketChannel.open();
+        canalServidor.bind(new InetSocketAddress(puerto), 1024);
+        canalServidor.configureBlocking(false);
+        canalServidor.register(selector, SelectionKey.OP_ACCEPT);
+        hilo = new Thread(this::bucle, "websocket");
+        hilo.setDaemon(true);
+        hilo.start();
+        System.out.println("Acceso WebSocket iniciado en el puerto " + getPuerto());
+    }
+
+    /** Cierra todas las sesiones y el puerto, y espera a que termine el hilo. */
+    public void detener() throws InterruptedException {
+        detenido = true;
+        selector.wakeup();
+        hilo.join();
+    }
+
+    /** @return El puerto en que escucha (el asignado por el sistema si se pidió el 0). */
+    public int getPuerto() {
+        return canalServidor.socket().getLocalPort();
+    }
+
+    /**
+     * Entrega un tick para transmitirlo a todas las sesiones. Lo llama el hilo de simulación; solo encola
+     * el tick y despierta al hilo de este servidor. Si no hay sesiones no hace nada.
+     *
+     * @param payload El tick; no debe modificarse después.
+     */
+    public void publicar(UpdatePayload payload) {
+        if (sesionesConectadas == 0) {
+            return;
+        }
+        pendientes.add(payload);
+        selector.wakeup();
+    }
+
+    /** @return Cuántas sesiones están conectadas, incluidas las que aún no terminan el saludo. */
+    public int getSesiones() {
+        return sesionesConectadas;
+    }
+
+    /** @return Cuántos ticks se descartaron en total porque una sesión no los leyó a tiempo. */
+    public long getMarcosDescartados() {
+        return marcosDescartados;
+    }
+
+    /** @return Los bytes escritos en total en todas las sesiones. */
+    public long getBytesEnviados() {
+        return bytesEnviados;
+    }
+
+    /** El bucle del hilo del selector: acepta sesiones, lee lo que envían, difunde los ticks y escribe. */
+    private void bucle() {
+        long siguienteRevision = 0;
+        try {
+            while (!detenido) {
+                selector.select(PERIODO_REVISION_MS);
+                ahora = System.currentTimeMillis();
+                difundirPendientes();
+                Iterator<SelectionKey> claves = selector.selectedKeys().iterator();
+                while (claves.hasNext()) {
+                    SelectionKey clave = claves.next();
+                    claves.remove();
+                    if (!clave.isValid()) {
+                        continue;
+                    }
+                    if (clave.isAcceptable()) {
+                        try {
+                            aceptar();
+                        } catch (IOException e) {
+                            // Por ejemplo, sin descriptores libres: se reintenta en la siguiente vuelta
+                            System.err.println("No se pudo aceptar una sesión WebSocket: " + e.getMessage());
+                        }
+                        continue;
+                    }
+                    Sesion sesion = (Sesion) clave.attachment();
+                    try {
+                        if (clave.isReadable()) {
+                            sesion.leer();
+                        }
+                        if (clave.isValid() && clave.isWritable()) {
+                            sesion.escribir();
+                        }
+                    } catch (IOException e) {
+                        cerrar(sesion);
+                    } catch (RuntimeException e) {
+                        // Un error al atender una sesión la cierra a ella sola; el hilo sigue con las demás
+                        System.err.println("Error en la sesión WebSocket " + sesion.canal.socket().getRemoteSocketAddress() + ": " + e);
+                        cerrar(sesion);
+                    }
+                }
+                if (ahora >= siguienteRevision) {
+                    revisarPlazos();
+                    siguienteRevision = ahora + PERIODO_REVISION_MS;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error fatal en el acceso WebSocket: " + e.getMessage());
+        } finally {
+            for (int i = sesiones.size() - 1; i >= 0; i--) {
+                cerrar(sesiones.get(i));
+            }
+            try {
+                canalServidor.close();
+                selector.close();
+            } catch (IOException e) {
+                // Ignorar.
+            }
+        }
+    }
+
+    private void aceptar() throws IOException {
+        SocketChannel canal;
+        while ((canal = canalServidor.accept()) != null) {
+            canal.configureBlocking(false);
+            canal.socket().setTcpNoDelay(true);
+            Sesion sesion = new Sesion(canal);
+            sesion.clave = canal.register(selector, SelectionKey.OP_READ, sesion);
+            sesiones.add(sesion);
+            sesionesConectadas = sesiones.size();
+        }
+    }
+
+    /**
+     * Codifica los ticks encolados y los entrega a las sesiones abiertas. Si hay más de uno (el hilo se
+     * atrasó), se envía solo el último estado con los eventos de todos.
+     */
+    private void difundirPendientes() {
+        UpdatePayload payload = pendientes.poll();
+        if (payload == null) {
+            return;
+        }
+        List<EventoLog> eventos = null;
+        int[] pasajeros = payload.getPasajerosEsperando();
+        UpdatePayload siguiente;
+        while ((siguiente = pendientes.poll()) != null) {
+            if (eventos == null) {
+                eventos = new ArrayList<>(payload.getEventos());
+            }
+            eventos.addAll(siguiente.getEventos());
+            if (siguiente.getPasajerosEsperando() != null) {
+                pasajeros = siguiente.getPasajerosEsperando();
+            }
+            payload = siguiente;
+        }
+        if (eventos != null) {
+            payload = new UpdatePayload(payload.getTick(), payload.getAutobuses(), eventos, pasajeros);
+        }
+
+        ByteBuffer json = sesionesJson > 0 ? directo(MarcosWebSocket.tickJson(payload)) : null;
+        ByteBuffer binario = sesionesBinarias > 0 ? directo(MarcosWebSocket.tickBinario(payload)) : null;
+        // Hacia atrás: si una sesión falla se quita de la lista sin saltarse la siguiente
+        for (int i = sesiones.size() - 1; i >= 0; i--) {
+            Sesion sesion = sesiones.get(i);
+            if (sesion.abierta && !sesion.cerrando) {
+                try {
+                    sesion.encolarTick(sesion.binaria ? binario : json);
+                } catch (IOException e) {
+                    cerrar(sesion);
+                }
+            }
+        }
+    }
+
+    /** Cierra las sesiones que no terminaron el saludo o que llevan demasiado sin aceptar datos. */
+    private void revisarPlazos() {
+        for (int i = sesiones.size() - 1; i >= 0; i--) {
+            Sesion sesion = sesiones.get(i);
+            if ((!sesion.abierta && ahora - sesion.conectada > PLAZO_SALUDO_MS)
+                    || (!sesion.salida.isEmpty() && ahora - sesion.ultimoProgreso > PLAZO_SIN_PROGRESO_MS)) {
+                cerrar(sesion);
+            }
+        }
+    }
+
+    private void cerrar(Sesion sesion) {
+        if (!sesiones.remove(sesion)) {
+            return;
+        }
+        sesionesConectadas = sesiones.size();
+        if (sesion.abierta) {
+            if (sesion.binaria) {
+                sesionesBinarias--;
+            } else {
+                sesionesJson--;
+            }
+        }
+        sesion.clave.cancel();
+        try {
+            sesion.canal.close();
+        } catch (IOException e) {
+            // Ignorar.
+        }
+    }
+
+    /**
+     * Copia un marco compartido a memoria directa una sola vez; si no, el canal lo copiaría a un búfer
+     * directo temporal en cada escritura, es decir, una vez por sesión.
+     */
+    private static ByteBuffer directo(byte[] marco) {
+        ByteBuffer directo = ByteBuffer.allocateDirect(marco.length);
+        directo.put(marco).flip();
+        return directo.asReadOnlyBuffer();
+    }
+
+    /** Un marco en la cola de una sesión: una vista propia, con su posición, de bytes que pueden ser compartidos. */
+    private static final class Marco {
+        private final ByteBuffer datos;
+        private final boolean tick; // Los ticks se pueden descartar; el saludo, la red y los de control no
+
+        private Marco(ByteBuffer compartido, boolean tick) {
+            this.datos = compartido.duplicate();
+            this.tick = tick;
+        }
+
+        private Marco(byte[] datos) {
+            this.datos = ByteBuffer.wrap(datos);
+            this.tick = false;
+        }
+    }
+
+    /** El estado de una conexión. Solo lo usa el hilo del selector. */
+    private final class Sesion {
+        private final SocketChannel canal;
+        private final ByteBuffer entrada = ByteBuffer.allocate(TAMANO_ENTRADA);
+        private final ArrayDeque<Marco> salida = new ArrayDeque<>();
+        private final long conectada = ahora;
+        private SelectionKey clave;
+        private boolean abierta; // Terminó el saludo
+        private boolean binaria;
+        private boolean cerrando; // Se cierra en cuanto se vacíe la cola
+        private int ticksEnCola;
+        private long ultimoProgreso;
+
+        private Sesion(SocketChannel canal) {
+            this.canal = canal;
+        }
+
+        private void leer() throws IOException {
+            if (canal.read(entrada) < 0) {
+                throw new IOException("La sesión cerró la conexión");
+            }
+            if (!abierta) {
+                atenderSaludo();
+            } else {
+                atenderMarcos();
+            }
+        }
+
+        /** Procesa la solicitud HTTP de actualización cuando llegó completa. */
+        private void atenderSaludo() throws IOException {
+            int fin = buscarFinCabeceras();
+            if (fin < 0) {
+                if (!entrada.hasRemaining()) {
+                    rechazar();
+                }
+                return;
+            }
+            String[] lineas = new String(entrada.array(), 0, fin, StandardCharsets.ISO_8859_1).split("\r\n");
+            Map<String, String> cabeceras = new HashMap<>();
+            for (int i = 1; i < lineas.length; i++) {
+                int dosPuntos = lineas[i].indexOf(':');
+                if (dosPuntos > 0) {
+                    cabeceras.put(lineas[i].substring(0, dosPuntos).trim().toLowerCase(Locale.ROOT), lineas[i].substring(dosPuntos + 1).trim());
+                }
+            }
+            String clave = cabeceras.get("sec-websocket-key");
+            String actualizacion = cabeceras.getOrDefault("upgrade", "");
+            if (!lineas[0].startsWith("GET ") || clave == null || !actualizacion.equalsIgnoreCase("websocket")) {
+                rechazar();
+                return;
+            }
+            String[] solicitud = lineas[0].split(" ");
+            binaria = solicitud.length > 1 && solicitud[1].contains("formato=binario");
+
+            String respuesta = "HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                    + "Sec-WebSocket-Accept: " + MarcosWebSocket.aceptacion(clave) + "\r\n\r\n";
+            abierta = true;
+            if (binaria) {
+                sesionesBinarias++;
+            } else {
+                sesionesJson++;
+            }
+            // Lo que el cliente haya enviado después de las cabeceras ya son marcos
+            entrada.flip();
+            entrada.position(fin + FIN_CABECERAS.length);
+            entrada.compact();
+            encolar(new Marco(respuesta.getBytes(StandardCharsets.ISO_8859_1)));
+            encolar(new Marco(marcoRed, false));
+            escribir();
+            atenderMarcos();
+        }
+
+        /** @return La posición donde empieza el {@code \r\n\r\n} que cierra las cabeceras, o -1. */
+        private int buscarFinCabeceras() {
+            byte[] datos = entrada.array();
+            for (int i = 0; i + FIN_CABECERAS.length <= entrada.position(); i++) {
+                if (datos[i] == '\r' && datos[i + 1] == '\n' && datos[i + 2] == '\r' && datos[i + 3] == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void rechazar() throws IOException {
+            encolar(new Marco(SOLICITUD_INVALIDA));
+            cerrando = true;
+            escribir();
+        }
+
+        /** Procesa los marcos completos que envió el cliente; solo se responden los de control. */
+        private void atenderMarcos() throws IOException {
+            entrada.flip();
+            while (entrada.remaining() >= 2 && !cerrando) {
+                int inicio = entrada.position();
+                int b0 = entrada.get(inicio) & 0xFF;
+                int b1 = entrada.get(inicio + 1) & 0xFF;
+                int opcode = b0 & 0x0F;
+                int longitud = b1 & 0x7F;
+                int cabecera = 2 + (longitud == 126 ? 2 : longitud == 127 ? 8 : 0);
+                if ((b1 & 0x80) == 0) {
+                    cerrarCon(CIERRE_PROTOCOLO); // Los marcos del cliente siempre van enmascarados
+                    break;
+                }
+                if (entrada.remaining() < cabecera + 4) {
+                    break;
+                }
+                long largo = longitud == 126 ? entrada.getShort(inicio + 2) & 0xFFFF
+                        : longitud == 127 ? entrada.getLong(inicio + 2) : longitud;
+                if (largo < 0) {
+                    cerrarCon(CIERRE_PROTOCOLO); // El bit más significativo de la longitud de 64 bits debe ser 0
+                    break;
+                }
+                if (largo > TAMANO_ENTRADA - 14) {
+                    cerrarCon(CIERRE_DEMASIADO_GRANDE);
+                    break;
+                }
+                int total = cabecera + 4 + (int) largo;
+                if (entrada.remaining() < total) {
+                    break;
+                }
+                if (opcode == MarcosWebSocket.OPCODE_PING || opcode == MarcosWebSocket.OPCODE_CIERRE) {
+                    byte[] datos = new byte[(int) largo];
+                    int mascara = inicio + cabecera;
+                    for (int i = 0; i < datos.length; i++) {
+                        datos[i] = (byte) (entrada.get(mascara + 4 + i) ^ entrada.get(mascara + (i & 3)));
+                    }
+                    if (opcode == MarcosWebSocket.OPCODE_PING) {
+                        encolar(new Marco(MarcosWebSocket.marco(MarcosWebSocket.OPCODE_PONG, datos)));
+                    } else {
+                        encolar(new Marco(MarcosWebSocket.marco(MarcosWebSocket.OPCODE_CIERRE, datos)));
+                        cerrando = true;
+                    }
+                }
+                entrada.position(inicio + total);
+            }
+            entrada.compact();
+            escribir();
+        }
+
+        private void cerrarCon(int codigo) {
+            byte[] datos = {(byte) (codigo >>> 8), (byte) codigo};
+            encolar(new Marco(MarcosWebSocket.marco(MarcosWebSocket.OPCODE_CIERRE, datos)));
+            cerrando = true;
+        }
+
+        /**
+         * Agrega un tick a la cola y lo intenta escribir. Si la cola ya tiene {@link #MARCOS_PENDIENTES}
+         * ticks, descarta el más viejo que aún no empezó a enviarse.
+         */
+        private void encolarTick(ByteBuffer marco) throws IOException {
+            if (ticksEnCola >= MARCOS_PENDIENTES) {
+                Iterator<Marco> marcos = salida.iterator();
+                while (marcos.hasNext()) {
+                    Marco viejo = marcos.next();
+                    if (viejo.tick && viejo.datos.position() == 0) {
+                        marcos.remove();
+                        ticksEnCola--;
+                        marcosDescartados++;
+                        break;
+                    }
+                }
+            }
+            encolar(new Marco(marco, true));
+            escribir();
+        }
+
+        private void encolar(Marco marco) {
+            if (salida.isEmpty()) {
+                ultimoProgreso = ahora;
+            }
+            salida.add(marco);
+            if (marco.tick) {
+                ticksEnCola++;
+            }
+        }
+
+        /** Escribe lo que el socket acepte sin bloquear; si queda algo, espera a que vuelva a aceptar. */
+        private void escribir() throws IOException {
+            if (!clave.isValid()) {
+                return; // Ya se cerró
+            }
+            Marco marco;
+            while ((marco = salida.peek()) != null) {
+                int escritos = canal.write(marco.datos);
+                if (escritos > 0) {
+                    ultimoProgreso = ahora;
+                    bytesEnviados += escritos;
+                }
+                if (marco.datos.hasRemaining()) {
+                    clave.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                salida.poll();
+                if (marco.tick) {
+                    ticksEnCola--;
+                }
+            }
+            clave.interestOps(SelectionKey.OP_READ);
+            if (cerrando) {
+                cerrar(this);
+            }
+        }
+    }
+}
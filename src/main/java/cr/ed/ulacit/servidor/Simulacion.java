@@ -0,0 +1,245 @@
+package cr.ed.ulacit.servidor;
+
+import cr.ed.ulacit.Autobus;
+import cr.ed.ulacit.EstadoAutobus;
+import cr.ed.ulacit.OcupacionTramos;
+import cr.ed.ulacit.Parada;
+import cr.ed.ulacit.RedTransporte;
+import cr.ed.ulacit.Ruta;
+import cr.ed.ulacit.Viaje;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * El modelo de la simulación, sin red ni reloj real: los autobuses de una {@link RedTransporte} y la
+ * lógica que los hace avanzar un tick a la vez.
+ * <p>
+ * Lo usan el {@link Servidor}, que llama a {@link #avanzar()} cada {@value #TICK_SIMULACION} ms, y
+ * {@link SimulacionLotes}, que lo ejecuta tan rápido como da la CPU. Toda la aleatoriedad sale del
+ * {@link Random} recibido, así que una misma semilla reproduce exactamente la misma corrida.
+ * </p>
+ * <p>
+ * Los autobuses de una misma ruta no se atraviesan: cada ruta tiene su {@link OcupacionTramos}, con el que
+ * cada autobús sigue al que va delante y espera turno en las paradas llenas.
+ * </p>
+ * <p>
+ * No es seguro para hilos: solo el hilo que llama a {@link #avanzar()} debe usarlo.
+ * </p>
+ */
+public class Simulacion {
+
+    /** Milisegundos de simulación por tick; el servidor ejecuta un tick cada este tiempo real. */
+    public static final int TICK_SIMULACION = 50;
+    /**
+     * Tiempo típico que un autobús permanece en una parada, en milisegundos de simulación. El tiempo real
+     * de cada parada lo calcula {@link DemandaPasajeros}; este valor solo sirve como estimación inicial.
+     */
+    public static final int TIEMPO_PARADA = 5000;
+    /** Progreso por tick entre dos paradas. */
+    public static final double VELOCIDAD_BASE = 0.01;
+    /** La simulación arranca a las 05:00:00. */
+    public static final int HORA_INICIO_SEG = 5 * 3600;
+    /** Cada tick avanza un segundo del reloj de simulación. */
+    public static final int MS_POR_SEGUNDO_SIMULADO = TICK_SIMULACION;
+
+    private static final ObservadorSimulacion SIN_OBSERVADOR = new ObservadorSimulacion() {
+    };
+
+    private final List<Autobus> autobuses = new ArrayList<>();
+    private final List<Autobus> enMovimiento = new ArrayList<>();
+    private final Map<Ruta, OcupacionTramos> ocupaciones = new IdentityHashMap<>();
+    private final RuedaTemporizadores<Autobus> temporizadores;
+    private final DemandaPasajeros demanda;
+    private final Random aleatorio;
+    private final long epoca;
+    private ObservadorSimulacion observador = SIN_OBSERVADOR;
+    private boolean registrarEventos = true;
+    private long tick;
+    private int finalizados;
+
+    /**
+     * @param red       La red de transporte; se crea un autobús por cada viaje.
+     * @param epoca     El instante (ms) que corresponde al tick 0.
+     * @param aleatorio La fuente de aleatoriedad de las velocidades y de la demanda de pasajeros.
+     */
+    public Simulacion(RedTransporte red, long epoca, Random aleatorio) {
+        this.epoca = epoca;
+        this.aleatorio = aleatorio;
+        this.temporizadores = new RuedaTemporizadores<>(TICK_SIMULACION, epoca);
+        this.demanda = new DemandaPasajeros(red, epoca, aleatorio);
+        Color[] colores = {
+                Color.RED, Color.BLUE, Color.GREEN, Color.ORANGE, Color.MAGENTA,
+                Color.CYAN, Color.PINK, new Color(128, 0, 128), new Color(139, 69, 19), Color.GRAY
+        };
+        for (Viaje viaje : red.getViajes()) {
+            // El color depende del ID y no de la posición, para que sea el mismo en todos los fragmentos.
+            Color color = colores[Math.floorMod(viaje.getId() - 1, colores.length)];
+            OcupacionTramos ocupacion = ocupaciones.computeIfAbsent(viaje.getRuta(), OcupacionTramos::new);
+            Autobus bus = new Autobus(viaje.getId(), color, viaje.getRuta(), Autobus.CAPACIDAD_POR_DEFECTO, ocupacion);
+            autobuses.add(bus);
+            // Los viajes anteriores al inicio de la simulación salen de inmediato
+            int segundosDesdeInicio = Math.max(0, viaje.getHoraSalidaSeg() - HORA_INICIO_SEG);
+            temporizadores.programar(epoca + (long) segundosDesdeInicio * MS_POR_SEGUNDO_SIMULADO, bus);
+        }
+    }
+
+    /**
+     * @param observador Quien recibe los sucesos de la simulación, o {@code null} para ninguno.
+     */
+    public void setObservador(ObservadorSimulacion observador) {
+        this.observador = observador != null ? observador : SIN_OBSERVADOR;
+    }
+
+    /**
+     * @param registrarEventos Si {@code false}, {@link #avanzar()} no crea los {@link EventoLog} (ahorra
+     *                         tiempo cuando nadie los muestra).
+     */
+    public void setRegistrarEventos(boolean registrarEventos) {
+        this.registrarEventos = registrarEventos;
+    }
+
+    /**
+     * Avanza la simulación un tick.
+     * <p>
+     * Solo se procesan los autobuses cuyo temporizador (salida de la terminal o fin del tiempo en parada)
+     * vence en este tick y los que están en movimiento; los autobuses detenidos o en espera no se revisan.
+     * </p>
+     *
+     * @return Los eventos generados en este tick.
+     */
+    public List<EventoLog> avanzar() {
+        tick++;
+        long tiempoActual = getTiempoActual();
+        String horaActual = registrarEventos ? formatearHora(HORA_INICIO_SEG + tick) : null;
+        List<EventoLog> nuevosEventos = registrarEventos ? new ArrayList<>() : Collections.emptyList();
+
+        // Salidas de la terminal y fin de los tiempos de parada que vencen en este tick
+        temporizadores.avanzar(tiempoActual, bus -> atenderTemporizador(bus, tiempoActual, horaActual, nuevosEventos));
+
+        int i = 0;
+        while (i < enMovimiento.size()) {
+            Autobus bus = enMovimiento.get(i);
+            double velocidadIndividual = VELOCIDAD_BASE * (1.0 + aleatorio.nextDouble() * 0.5 - 0.25);
+            bus.mover(velocidadIndividual, tiempoActual);
+
+            if (bus.getEstado() == EstadoAutobus.DETENIDO) {
+                Parada parada = bus.getRuta().getParadaPorIndice(bus.getParadaDestinoIndex()); // La parada en la que se detuvo
+                if (registrarEventos) {
+                    nuevosEventos.add(new EventoLog(horaActual, "El autobús " + bus.getId() + " ha llegado a la parada " + parada.getNombre() + "."));
+                }
+                observador.llegadaParada(bus, parada, tiempoActual);
+                temporizadores.programar(bus.getTiempoDetenido() + demanda.atenderParada(bus, tiempoActual), bus);
+                quitarDeMovimiento(i);
+            } else {
+                i++;
+            }
+            observador.autobusActualizado(bus, tiempoActual);
+        }
+        return nuevosEventos;
+    }
+
+    /**
+     * Aplica la transición que corresponde a un autobús cuyo temporizador ha vencido.
+     *
+     * @param bus           El autobús cuyo temporizador venció.
+     * @param tiempoActual  El instante actual en milisegundos.
+     * @param horaActual    La hora de simulación del tick en curso.
+     * @param nuevosEventos La lista donde se registran los eventos generados.
+     */
+    private void atenderTemporizador(Autobus bus, long tiempoActual, String horaActual, List<EventoLog> nuevosEventos) {
+        switch (bus.getEstado()) {
+            case INACTIVO:
+                bus.iniciarRuta();
+                enMovimiento.add(bus);
+                if (registrarEventos) {
+                    nuevosEventos.add(new EventoLog(horaActual, "El autobús " + bus.getId() + " ha iniciado su ruta."));
+                }
+                observador.salidaTerminal(bus, tiempoActual);
+                break;
+            case DETENIDO:
+                Parada parada = bus.getRuta().getParadaPorIndice(bus.getParadaDestinoIndex());
+                bus.reanudarRuta();
+                if (bus.getEstado() == EstadoAutobus.FINALIZADO) {
+                    finalizados++;
+                    if (registrarEventos) {
+                        nuevosEventos.add(new EventoLog(horaActual, "El autobús " + bus.getId() + " ha finalizado su ruta."));
+                    }
+                    observador.finRuta(bus, tiempoActual);
+                } else {
+                    enMovimiento.add(bus);
+                    if (registrarEventos) {
+                        nuevosEventos.add(new EventoLog(horaActual, "El autobús " + bus.getId() + " ha salido de la parada."));
+                    }
+                    observador.salidaParada(bus, parada, tiempoActual);
+                }
+                break;
+            default:
+                break;
+        }
+        observador.autobusActualizado(bus, tiempoActual);
+    }
+
+    /**
+     * Quita un autobús de la lista de autobuses en movimiento en O(1), intercambiándolo con el último.
+     *
+     * @param indice La posición del autobús en la lista.
+     */
+    private void quitarDeMovimiento(int indice) {
+        int ultimo = enMovimiento.size() - 1;
+        enMovimiento.set(indice, enMovimiento.get(ultimo));
+        enMovimiento.remove(ultimo);
+    }
+
+    /** @return Los autobuses, uno por viaje, en el orden de los viajes de la red. */
+    public List<Autobus> getAutobuses() {
+        return autobuses;
+    }
+
+    /**
+     * @param ruta Una ruta de la red.
+     * @return El índice de ocupación de la ruta, o {@code null} si no tiene viajes.
+     */
+    public OcupacionTramos getOcupacion(Ruta ruta) {
+        return ocupaciones.get(ruta);
+    }
+
+    /** @return El modelo de pasajeros de la simulación. */
+    DemandaPasajeros getDemanda() {
+        return demanda;
+    }
+
+    /** @return El número del último tick ejecutado (0 antes del primero). */
+    public long getTick() {
+        return tick;
+    }
+
+    /** @return El instante de simulación del tick actual, en milisegundos. */
+    public long getTiempoActual() {
+        return epoca + tick * TICK_SIMULACION;
+    }
+
+    /** @return {@code true} si todos los autobuses terminaron su ruta. */
+    public boolean haTerminado() {
+        return finalizados == autobuses.size();
+    }
+
+    /**
+     * @param segundos Segundos desde la medianoche (pueden pasar de un día).
+     * @return La hora en formato {@code HH:mm:ss}.
+     */
+    static String formatearHora(long segundos) {
+        long s = Math.floorMod(segundos, 24L * 3600);
+        char[] texto = {
+                (char) ('0' + s / 36000), (char) ('0' + s / 3600 % 10), ':',
+                (char) ('0' + s / 600 % 6), (char) ('0' + s / 60 % 10), ':',
+                (char) ('0' + s / 10 % 6), (char) ('0' + s % 10)
+        };
+        return new String(texto);
+    }
+}
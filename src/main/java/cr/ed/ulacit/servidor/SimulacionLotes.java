@@ -0,0 +1,344 @@
+package cr.ed.ulacit.servidor;
+
+import cr.ed.ulacit.Autobus;
+import cr.ed.ulacit.Parada;
+import cr.ed.ulacit.RedTransporte;
+import cr.ed.ulacit.Ruta;
+import cr.ed.ulacit.Viaje;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Ejecuta réplicas independientes de una {@link Simulacion}, sin sockets ni reloj real, para estudiar
+ * un escenario por Monte Carlo.
+ * <p>
+ * Cada réplica usa su propia semilla ({@code semilla + i}) y sus propios autobuses; solo comparten la red,
+ * que no cambia durante la simulación. Las réplicas se reparten entre un grupo fijo de hilos y cada una
+ * corre tan rápido como da la CPU hasta que todos sus autobuses terminan (o hasta el límite de ticks).
+ * </p>
+ * <p>
+ * Por cada réplica se miden, en segundos de simulación:
+ * </p>
+ * <ul>
+ *     <li><b>intervalos</b> entre llegadas consecutivas de autobuses de una misma ruta a una misma parada;</li>
+ *     <li><b>tiempos en parada</b>, desde la llegada hasta la salida;</li>
+ *     <li><b>tiempos de viaje</b>, desde la salida de la terminal hasta la llegada a la última parada;</li>
+ *     <li><b>agrupamiento</b>: la fracción de intervalos menores que el {@value #UMBRAL_AGRUPAMIENTO} del
+ *     intervalo planificado de la ruta (la separación media entre las salidas de sus viajes);</li>
+ *     <li><b>pasajeros</b> transportados y su espera media en la parada ({@link DemandaPasajeros}).</li>
+ * </ul>
+ * <p>
+ * Uso: {@code SimulacionLotes [directorioGtfs] [--replicas N] [--hilos N] [--semilla S] [--max-ticks N]}
+ * </p>
+ * <p>
+ * Diseño: los datos se acumulan en histogramas de un segundo por casilla, que se combinan sumando, así que
+ * los percentiles del conjunto se calculan sin guardar cada muestra. Los hilos no comparten estado
+ * mutable: cada réplica devuelve su {@link Resultado} y el hilo principal los combina al recibirlos.
+ * </p>
+ */
+public class SimulacionLotes {
+
+    /** Un intervalo menor que esta fracción del planificado cuenta como agrupamiento. */
+    static final double UMBRAL_AGRUPAMIENTO = 0.25;
+    private static final long MAX_TICKS_POR_DEFECTO = 2L * 24 * 3600; // Dos días de simulación
+
+    public static void main(String[] args) throws Exception {
+        String directorio = null;
+        int hilos = Runtime.getRuntime().availableProcessors();
+        int replicas = 0;
+        long semilla = 1;
+        long maxTicks = MAX_TICKS_POR_DEFECTO;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--replicas":
+                    replicas = Integer.parseInt(args[++i]);
+                    break;
+                case "--hilos":
+                    hilos = Integer.parseInt(args[++i]);
+                    break;
+                case "--semilla":
+                    semilla = Long.parseLong(args[++i]);
+                    break;
+                case "--max-ticks":
+                    maxTicks = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    directorio = args[i];
+            }
+        }
+        if (replicas <= 0) {
+            replicas = Math.max(8, hilos * 2);
+        }
+
+        RedTransporte red = directorio != null
+                ? new CargadorRedGtfs().cargar(Paths.get(directorio))
+                : Servidor.inicializarRed();
+        Map<Ruta, Double> intervalosPlanificados = intervalosPlanificados(red);
+        System.out.printf("Red: %d rutas, %d viajes. %d réplicas en %d hilos.%n",
+                red.getRutas().size(), red.getViajes().size(), replicas, hilos);
+
+        ExecutorService ejecutor = Executors.newFixedThreadPool(hilos);
+        CompletionService<Resultado> completadas = new ExecutorCompletionService<>(ejecutor);
+        long inicio = System.nanoTime();
+        for (int i = 0; i < replicas; i++) {
+            long semillaReplica = semilla + i;
+            long limite = maxTicks;
+            completadas.submit(() -> ejecutarReplica(red, intervalosPlanificados, semillaReplica, limite));
+        }
+
+        Resultado total = new Resultado(semilla);
+        double[] fraccionesAgrupamiento = new double[replicas];
+        try {
+            for (int i = 0; i < replicas; i++) {
+                Resultado r = completadas.take().get();
+                fraccionesAgrupamiento[i] = r.fraccionAgrupamiento();
+                System.out.printf("Réplica semilla=%d: %d ticks en %d ms (%.0f ticks/s), viaje p50=%d s, "
+                                + "intervalo p50=%d s, agrupamiento %.2f%%%s%n",
+                        r.semilla, r.ticks, r.nanos / 1_000_000, r.ticksPorSegundo(), r.viajes.percentil(0.5),
+                        r.intervalos.percentil(0.5), 100 * r.fraccionAgrupamiento(),
+                        r.completa ? "" : " (límite de ticks alcanzado)");
+                total.combinar(r);
+            }
+        } finally {
+            ejecutor.shutdownNow();
+        }
+        long transcurrido = System.nanoTime() - inicio;
+
+        System.out.println();
+        System.out.printf("Total: %d ticks en %d ms (%.0f ticks/s entre todos los hilos)%n",
+                total.ticks, transcurrido / 1_000_000, total.ticks * 1e9 / transcurrido);
+        imprimir("Intervalos (s)", total.intervalos);
+        imprimir("Tiempos en parada (s)", total.paradas);
+        imprimir("Tiempos de viaje (s)", total.viajes);
+        System.out.printf("Tiempo total en paradas: %.1f h por réplica%n",
+                total.paradas.getSuma() / 3600.0 / replicas);
+        System.out.printf("Pasajeros: %d por réplica, espera media %.1f s%n", total.pasajeros / replicas,
+                total.pasajeros == 0 ? 0 : total.esperaMs / (double) total.pasajeros / Simulacion.MS_POR_SEGUNDO_SIMULADO);
+        double media = Arrays.stream(fraccionesAgrupamiento).average().orElse(0);
+        double varianza = Arrays.stream(fraccionesAgrupamiento).map(f -> (f - media) * (f - media)).sum()
+                / Math.max(1, replicas - 1);
+        System.out.printf("Agrupamiento: %.2f%% ± %.2f%% de los intervalos (media ± desviación entre réplicas)%n",
+                100 * media, 100 * Math.sqrt(varianza));
+    }
+
+    /**
+     * Ejecuta una réplica completa en el hilo actual.
+     *
+     * @param red                    La red a simular (solo se lee).
+     * @param intervalosPlanificados El intervalo planificado de cada ruta, en segundos de simulación.
+     * @param semilla                La semilla de la réplica.
+     * @param maxTicks               El número máximo de ticks a simular.
+     * @return Las estadísticas de la réplica.
+     */
+    static Resultado ejecutarReplica(RedTransporte red, Map<Ruta, Double> intervalosPlanificados,
+                                     long semilla, long maxTicks) {
+        Simulacion simulacion = new Simulacion(red, 0, new Random(semilla));
+        simulacion.setRegistrarEventos(false);
+        Resultado resultado = new Resultado(semilla);
+        simulacion.setObservador(new Medidor(simulacion.getAutobuses(), intervalosPlanificados, resultado));
+
+        long inicio = System.nanoTime();
+        while (!simulacion.haTerminado() && simulacion.getTick() < maxTicks) {
+            simulacion.avanzar();
+        }
+        resultado.nanos = System.nanoTime() - inicio;
+        resultado.ticks = simulacion.getTick();
+        resultado.completa = simulacion.haTerminado();
+        resultado.pasajeros = simulacion.getDemanda().getPasajerosAbordados();
+        resultado.esperaMs = simulacion.getDemanda().getEsperaTotalMs();
+        return resultado;
+    }
+
+    /**
+     * Calcula el intervalo planificado de cada ruta: la separación media entre las salidas de sus viajes.
+     * Las rutas con un solo viaje no tienen intervalo y no se incluyen.
+     */
+    static Map<Ruta, Double> intervalosPlanificados(RedTransporte red) {
+        Map<Ruta, List<Integer>> salidas = new IdentityHashMap<>();
+        for (Viaje viaje : red.getViajes()) {
+            salidas.computeIfAbsent(viaje.getRuta(), r -> new ArrayList<>()).add(viaje.getHoraSalidaSeg());
+        }
+        Map<Ruta, Double> intervalos = new IdentityHashMap<>();
+        salidas.forEach((ruta, horas) -> {
+            if (horas.size() > 1) {
+                int primera = horas.stream().mapToInt(Integer::intValue).min().getAsInt();
+                int ultima = horas.stream().mapToInt(Integer::intValue).max().getAsInt();
+                intervalos.put(ruta, (ultima - primera) / (double) (horas.size() - 1));
+            }
+        });
+        return intervalos;
+    }
+
+    private static void imprimir(String nombre, Histograma h) {
+        System.out.printf("%-22s n=%d media=%.1f p50=%d p90=%d p99=%d máx=%d%n", nombre, h.getCantidad(),
+                h.media(), h.percentil(0.5), h.percentil(0.9), h.percentil(0.99), h.percentil(1.0));
+    }
+
+    /**
+     * Observa una réplica y acumula sus estadísticas. Los tiempos se reciben en milisegundos de simulación
+     * y se guardan en segundos de simulación.
+     */
+    private static class Medidor implements ObservadorSimulacion {
+
+        private final Map<Autobus, long[]> tiempos = new IdentityHashMap<>(); // {salida de la terminal, última llegada}
+        private final Map<Ruta, long[]> ultimasLlegadas = new IdentityHashMap<>(); // Por índice de parada
+        private final Map<Ruta, Double> intervalosPlanificados;
+        private final Resultado resultado;
+
+        Medidor(List<Autobus> autobuses, Map<Ruta, Double> intervalosPlanificados, Resultado resultado) {
+            this.intervalosPlanificados = intervalosPlanificados;
+            this.resultado = resultado;
+            for (Autobus bus : autobuses) {
+                tiempos.put(bus, new long[2]);
+                ultimasLlegadas.computeIfAbsent(bus.getRuta(), r -> {
+                    long[] llegadas = new long[r.getLongitudRuta()];
+                    Arrays.fill(llegadas, -1);
+                    return llegadas;
+                });
+            }
+        }
+
+        @Override
+        public void salidaTerminal(Autobus bus, long ahora) {
+            tiempos.get(bus)[0] = ahora;
+        }
+
+        @Override
+        public void llegadaParada(Autobus bus, Parada parada, long ahora) {
+            long[] t = tiempos.get(bus);
+            t[1] = ahora;
+            Ruta ruta = bus.getRuta();
+            int indice = bus.getParadaDestinoIndex();
+            if (indice == ruta.getLongitudRuta() - 1) {
+                resultado.viajes.agregar(segundos(ahora - t[0]));
+            }
+
+            long[] llegadas = ultimasLlegadas.get(ruta);
+            if (llegadas[indice] >= 0) {
+                long intervalo = segundos(ahora - llegadas[indice]);
+                resultado.intervalos.agregar(intervalo);
+                Double planificado = intervalosPlanificados.get(ruta);
+                if (planificado != null && intervalo < UMBRAL_AGRUPAMIENTO * planificado) {
+                    resultado.agrupamientos++;
+                }
+            }
+            llegadas[indice] = ahora;
+        }
+
+        @Override
+        public void salidaParada(Autobus bus, Parada parada, long ahora) {
+            resultado.paradas.agregar(segundos(ahora - tiempos.get(bus)[1]));
+        }
+
+        @Override
+        public void finRuta(Autobus bus, long ahora) {
+            resultado.paradas.agregar(segundos(ahora - tiempos.get(bus)[1]));
+        }
+
+        private static long segundos(long milisegundos) {
+            return milisegundos / Simulacion.MS_POR_SEGUNDO_SIMULADO;
+        }
+    }
+
+    /** Las estadísticas de una réplica, o de varias combinadas. */
+    static class Resultado {
+        final long semilla;
+        final Histograma intervalos = new Histograma();
+        final Histograma paradas = new Histograma();
+        final Histograma viajes = new Histograma();
+        long agrupamientos;
+        long pasajeros;
+        long esperaMs;
+        long ticks;
+        long nanos;
+        boolean completa = true;
+
+        Resultado(long semilla) {
+            this.semilla = semilla;
+        }
+
+        /** @return La fracción de los intervalos medidos que son agrupamientos. */
+        double fraccionAgrupamiento() {
+            return intervalos.getCantidad() == 0 ? 0 : agrupamientos / (double) intervalos.getCantidad();
+        }
+
+        double ticksPorSegundo() {
+            return nanos == 0 ? 0 : ticks * 1e9 / nanos;
+        }
+
+        void combinar(Resultado otro) {
+            intervalos.combinar(otro.intervalos);
+            paradas.combinar(otro.paradas);
+            viajes.combinar(otro.viajes);
+            agrupamientos += otro.agrupamientos;
+            pasajeros += otro.pasajeros;
+            esperaMs += otro.esperaMs;
+            ticks += otro.ticks;
+            nanos += otro.nanos;
+            completa &= otro.completa;
+        }
+    }
+
+    /** Histograma de valores enteros no negativos con una casilla por valor; crece según haga falta. */
+    static class Histograma {
+        private long[] casillas = new long[256];
+        private long cantidad;
+        private long suma;
+
+        void agregar(long valor) {
+            int casilla = (int) Math.min(Math.max(valor, 0), Integer.MAX_VALUE - 8);
+            if (casilla >= casillas.length) {
+                casillas = Arrays.copyOf(casillas, Math.max(casilla + 1, casillas.length * 2));
+            }
+            casillas[casilla]++;
+            cantidad++;
+            suma += valor;
+        }
+
+        void combinar(Histograma otro) {
+            if (otro.casillas.length > casillas.length) {
+                casillas = Arrays.copyOf(casillas, otro.casillas.length);
+            }
+            for (int i = 0; i < otro.casillas.length; i++) {
+                casillas[i] += otro.casillas[i];
+            }
+            cantidad += otro.cantidad;
+            suma += otro.suma;
+        }
+
+        /** @return El menor valor que cubre la fracción {@code p} de las muestras, o 0 si no hay muestras. */
+        long percentil(double p) {
+            long objetivo = Math.max(1, (long) Math.ceil(p * cantidad));
+            long acumulado = 0;
+            for (int i = 0; i < casillas.length; i++) {
+                acumulado += casillas[i];
+                if (acumulado >= objetivo) {
+                    return i;
+                }
+            }
+            return 0;
+        }
+
+        double media() {
+            return cantidad == 0 ? 0 : suma / (double) cantidad;
+        }
+
+        long getCantidad() {
+            return cantidad;
+        }
+
+        long getSuma() {
+            return suma;
+        }
+    }
+}
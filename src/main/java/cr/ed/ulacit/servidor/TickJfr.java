@@ -0,0 +1,45 @@
+package cr.ed.ulacit.servidor;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Evento de JDK Flight Recorder que cubre un tick completo del servidor: simular, publicar y difundir.
+ * <p>
+ * Se registran todos los ticks (son {@value Simulacion#TICK_SIMULACION} ms cada uno, unos veinte eventos
+ * por segundo), así la grabación continua tiene la línea base contra la que comparar un tick lento con las
+ * pausas del recolector y los safepoints de la misma grabación. El retraso indica cuánto tarde empezó el
+ * tick respecto del reloj: si crece, el tick anterior no cupo en su intervalo.
+ * </p>
+ */
+@Name("cr.ed.ulacit.Tick")
+@Label("Tick de simulación")
+@Category({"Simulador de autobuses", "Simulación"})
+@Description("Un tick completo del servidor: simular, publicar y difundir a los clientes.")
+@StackTrace(false)
+@Threshold("0 ms")
+class TickJfr extends Event {
+
+    @Label("Tick")
+    long tick;
+
+    @Label("Autobuses")
+    int autobuses;
+
+    @Label("Eventos")
+    int eventos;
+
+    @Label("Clientes")
+    int clientes;
+
+    @Label("Retraso")
+    @Description("Cuánto después de su instante programado empezó el tick.")
+    @Timespan(Timespan.MILLISECONDS)
+    long retraso;
+}